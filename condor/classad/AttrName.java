@@ -16,6 +16,8 @@
 
 package condor.classad;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.io.*;
 
 /** An attribute name.  It behaves like a String except for its equals
@@ -40,9 +42,13 @@ import java.io.*;
  * same instance of AttrName, as do <code>fromString("one two\nthree")</code>
  * and <code>fromText("'one two\\012three'")</code>.
  * <p>
- * The raw and canon strings are "interned" to save space and to speed up
- * comparisons:  The {@link #equals(Object)} method simply compares canon
- * strings for pointer equality.
+ * The canon strings are "interned" to save space and to speed up
+ * comparisons:  There is only one canon string with a given value, so the
+ * {@link #equals(Object)} method simply compares canon strings for pointer
+ * equality.
+ * <p>
+ * The factory methods may be called concurrently by several threads.  They
+ * do not lock in the common case that the name has been seen before.
  * @see AttrRef
  * @author <a href="mailto:solomon@cs.wisc.edu">Marvin Solomon</a>
  * @version 2.2
@@ -61,16 +67,34 @@ public class AttrName {
      */
     private String pname;
 
+    /** The canonical (lower-case) strings of all extant instances.  Each
+     * string maps to itself.
+     */
+    private static final ConcurrentMap canonMap = new ConcurrentHashMap();
+
+    /** A mapping from String values to instances of AttrName.
+     * If instanceMap.get(s) is non-null, it is the unique instance c of
+     * AttrName such that c.raw == s.
+     * Note that original-case strings are stored only once and shared as
+     * keys in instanceMap and values of c.raw.
+     */
+    private static final ConcurrentMap instanceMap = new ConcurrentHashMap();
+
     /** The reseved word PARENT. */
-    /*package*/ static final AttrName PARENT = new AttrName("parent");
+    /*package*/ static final AttrName PARENT = fromString("parent");
 
     /** Constructor.  Note that it is private.  Clients should use
      * the fromString() or fromText() method rather than new.
      * @param v the original String.
      */
     private AttrName(String v) {
-        raw = v.intern();
-        canon = v.toLowerCase().intern();
+        raw = v;
+        String lower = v.toLowerCase();
+        if (lower.equals(v)) {
+            lower = v;
+        }
+        String c = (String) canonMap.putIfAbsent(lower, lower);
+        canon = c == null ? lower : c;
     } // AttrName(String)
 
     /** Converts to a printable String.  The "raw" value is returned as is
@@ -129,18 +153,9 @@ public class AttrName {
      * @return the hash code.
      */
     public int hashCode() {
-        return System.identityHashCode(canon);
+        return canon.hashCode();
     } // hashCode
 
-    /** A mapping from String values to instances of AttrName.
-     * If instanceMap.get(s) is non-null, it is an instance c of AttrName such
-     * c.canon is the unescaped, lower-case version of s, and it is the
-     * unique such instance such that c.pname == s.
-     * Note that original-case strings are stored only once and shared as
-     * keys in instanceMap and values of c.pname.
-     */
-    private static Map instanceMap = new HashMap();
-
     /** Returns the instance corresponding to a given NATIVE representation.
      * @param v the NATIVE representation.
      * @return the corresponding AttrName instance, or null on errors.
@@ -174,8 +189,12 @@ public class AttrName {
         }
         AttrName result = (AttrName) instanceMap.get(v);
         if (result == null) {
-            result = new AttrName(v);
-            instanceMap.put(v, result);
+            // If another thread gets there first, use its instance.
+            AttrName created = new AttrName(v);
+            result = (AttrName) instanceMap.putIfAbsent(v, created);
+            if (result == null) {
+                result = created;
+            }
         }
         return result;
     } // fromString(String)
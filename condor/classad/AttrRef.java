@@ -31,6 +31,11 @@ public class AttrRef extends Expr {
     /** The string name associated with this reference. */
     public final AttrName name;
 
+    /** The slot in which name was last found, or null.
+     * @see RecordExpr#lookup(AttrRef)
+     */
+    /*package*/ Shape.Slot slot;
+
     /** Create a new AttrRef.
      * @param name the string name associated with this reference.
      */
@@ -106,10 +111,12 @@ public class AttrRef extends Expr {
                 result =  Constant.undefined("No parent record");
             }
         } else {
-            result = env.search(name);
+            result = env.search(this);
             if (result == null) {
-                result
-                    = Constant.undefined("attribute " + name + " not found");
+                result = Constant.undefined(new Object[] {
+                    "attribute ", name, " not found" });
+            } else {
+                result = env.top().cachedValue(name, result, env);
             }
         }
         return result;
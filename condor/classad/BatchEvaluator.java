@@ -0,0 +1,365 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An evaluator of one expression over many ads.
+ * It gives the same results as calling
+ * {@link ClassAd#eval(AttrName,Expr,RecordExpr)} (or, if a context has been
+ * set, {@link ClassAd#eval(AttrName,Expr,RecordExpr,RecordExpr)}) once for
+ * each ad, but the results are collected into a compact array, and the
+ * evaluation environment is set up once per batch rather than once per ad.
+ * Optionally, the ads are divided among the threads of a
+ * {@link ForkJoinPool}.
+ * <p>
+ * For example, to select the machine ads satisfying a query:
+ * <pre>
+ *     BatchEvaluator b = new BatchEvaluator("Requirements", whereClause);
+ *     BitSet selected = b.isTrue(machineAds);
+ * </pre>
+ * To find the machines whose ads satisfy a job's Requirements:
+ * <pre>
+ *     BatchEvaluator b
+ *         = new BatchEvaluator("Requirements", job.lookup("Requirements"));
+ *     b.setContext(job);
+ *     BitSet candidates = b.isTrue(machineAds);
+ * </pre>
+ * Neither the expression nor the ads are modified, so a BatchEvaluator may
+ * be used by several threads at once, provided that its settings are not
+ * changed while it is in use.
+ * @see ClassAd
+ * @version 2.2
+ */
+public final class BatchEvaluator {
+    private static String VERSION = "$Id$";
+
+    /** Attribute name used to build the environment of bind(). */
+    private static final AttrName OTHER = AttrName.fromString("other");
+
+    /** Attribute name used to build the environment of bind(). */
+    private static final AttrName SELF = AttrName.fromString("self");
+
+    /** Attribute name used to build the environment of bind(). */
+    private static final AttrName AD1 = AttrName.fromString("Ad1");
+
+    /** Attribute name used to build the environment of bind(). */
+    private static final AttrName AD2 = AttrName.fromString("Ad2");
+
+    /** The default minimum number of ads evaluated by one task. */
+    private static final int DEFAULT_GRAIN = 1024;
+
+    /** The name of the attribute as which the expression is evaluated. */
+    private final AttrName name;
+
+    /** The expression. */
+    private final Expr expr;
+
+    /** The ad in which the expression is evaluated, or null if it is
+     * evaluated in each ad of the batch.
+     */
+    private RecordExpr context;
+
+    /** The record <code>[ other = Ad2.self; self = context ]</code>, which
+     * is the same for every ad of a batch, or null if there is no context.
+     */
+    private RecordExpr contextSide;
+
+    /** The expression <code>Ad1.self</code>, which is the value of other
+     * for each ad of a batch when there is a context.
+     */
+    private final Expr ad1Self = new AttrRef(AD1).selectExpr("self");
+
+    /** The pool used to evaluate batches in parallel, or null. */
+    private ForkJoinPool pool;
+
+    /** The minimum number of ads evaluated by one task. */
+    private int grain = DEFAULT_GRAIN;
+
+    /** Where to put the results of a batch.  Exactly one of the arrays is
+     * non-null.  Each task stores into a different part of the array.
+     */
+    private static final class Results {
+        /** Bit i is set if the value for ad i is true. */
+        long[] bits;
+
+        /** The integer values. */
+        int[] ints;
+
+        /** The value stored in ints for a result that is not an integer. */
+        int intDefault;
+
+        /** The numeric values. */
+        double[] reals;
+
+        /** The value stored in reals for a result that is not a number. */
+        double realDefault;
+
+        /** The values themselves. */
+        Expr[] values;
+    } // Results
+
+    /** A task that evaluates the expression over part of a batch. */
+    private final class Task extends RecursiveAction {
+        /** RecursiveAction is Serializable, but Tasks are never
+         * serialized.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /** The ads of the batch. */
+        private final RecordExpr[] ads;
+
+        /** The index of the first ad evaluated by this task. */
+        private final int lo;
+
+        /** One more than the index of the last ad evaluated by this task. */
+        private final int hi;
+
+        /** Where to put the results. */
+        private final Results results;
+
+        /** Create a task.
+         * @param ads the ads of the batch.
+         * @param lo the index of the first ad to evaluate.
+         * @param hi one more than the index of the last ad to evaluate.
+         * @param results where to put the results.
+         */
+        Task(RecordExpr[] ads, int lo, int hi, Results results) {
+            this.ads = ads;
+            this.lo = lo;
+            this.hi = hi;
+            this.results = results;
+        } // Task(RecordExpr[],int,int,Results)
+
+        /** Evaluate the ads, dividing them into two tasks if there are
+         * more than enough.  The division is on a multiple of 64, so that
+         * no two tasks store into the same element of a bit map.
+         */
+        protected void compute() {
+            int mid = lo + ((hi - lo) / 2 & ~63);
+            if (hi - lo <= grain || mid == lo) {
+                run(ads, lo, hi, results);
+            } else {
+                invokeAll(new Task(ads, lo, mid, results),
+                          new Task(ads, mid, hi, results));
+            }
+        } // compute()
+    } // Task
+
+    /** Create an evaluator.
+     * @param name the name of the attribute as which the expression is
+     * evaluated.
+     * @param expr the expression.
+     */
+    public BatchEvaluator(AttrName name, Expr expr) {
+        this.name = name;
+        this.expr = expr;
+    } // BatchEvaluator(AttrName,Expr)
+
+    /** Create an evaluator.
+     * @param name the name of the attribute as which the expression is
+     * evaluated.
+     * @param expr the expression.
+     */
+    public BatchEvaluator(String name, Expr expr) {
+        this(AttrName.fromString(name), expr);
+    } // BatchEvaluator(String,Expr)
+
+    /** Set the ad in which the expression is evaluated.
+     * If the context is null (the default), the expression is evaluated in
+     * each ad of a batch, as by
+     * {@link ClassAd#eval(AttrName,Expr,RecordExpr)}.  Otherwise, it is
+     * evaluated in the context, with <code>other</code> referring to each ad
+     * of the batch in turn, as by
+     * {@link ClassAd#eval(AttrName,Expr,RecordExpr,RecordExpr)}.
+     * @param context the ad, or null.
+     */
+    public void setContext(RecordExpr context) {
+        this.context = context;
+        if (context == null) {
+            contextSide = null;
+        } else {
+            // The same as Ad1 in ClassAd.bind(context, ad).
+            contextSide = new RecordExpr(2);
+            contextSide
+                .insertAttribute(OTHER, new AttrRef(AD2).selectExpr("self"))
+                .insertAttribute(SELF, context);
+        }
+    } // setContext(RecordExpr)
+
+    /** Set the pool used to evaluate batches in parallel.
+     * @param pool the pool, or null to evaluate batches in the calling thread
+     * (the default).
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    } // setPool(ForkJoinPool)
+
+    /** Set the minimum number of ads evaluated by one task when batches are
+     * evaluated in parallel.
+     * @param grain the number of ads.
+     * @throws IllegalArgumentException if grain is not positive.
+     */
+    public void setGrain(int grain) {
+        if (grain <= 0) {
+            throw new IllegalArgumentException("bad grain " + grain);
+        }
+        this.grain = grain;
+    } // setGrain(int)
+
+    /** Find the ads for which the expression evaluates to true.
+     * @param ads the ads.
+     * @return a BitSet in which bit i is set if and only if the value for
+     * ads[i] is true.
+     */
+    public BitSet isTrue(RecordExpr[] ads) {
+        Results r = new Results();
+        r.bits = new long[(ads.length + 63) / 64];
+        evalAll(ads, r);
+        return BitSet.valueOf(r.bits);
+    } // isTrue(RecordExpr[])
+
+    /** Find the ads for which the expression evaluates to true.
+     * @param ads the ads (a List of RecordExprs).
+     * @return a BitSet in which bit i is set if and only if the value for
+     * the i'th ad is true.
+     */
+    public BitSet isTrue(List ads) {
+        return isTrue(toArray(ads));
+    } // isTrue(List)
+
+    /** Evaluate the expression for each ad, as an integer.
+     * @param ads the ads.
+     * @param dflt the value to use when the result is not an integer.
+     * @return the values, in the same order as the ads.
+     */
+    public int[] intValues(RecordExpr[] ads, int dflt) {
+        Results r = new Results();
+        r.ints = new int[ads.length];
+        r.intDefault = dflt;
+        evalAll(ads, r);
+        return r.ints;
+    } // intValues(RecordExpr[],int)
+
+    /** Evaluate the expression for each ad, as a real number.
+     * @param ads the ads.
+     * @param dflt the value to use when the result is not a number.
+     * @return the values, in the same order as the ads.
+     */
+    public double[] realValues(RecordExpr[] ads, double dflt) {
+        Results r = new Results();
+        r.reals = new double[ads.length];
+        r.realDefault = dflt;
+        evalAll(ads, r);
+        return r.reals;
+    } // realValues(RecordExpr[],double)
+
+    /** Evaluate the expression for each ad.
+     * @param ads the ads.
+     * @return the values, in the same order as the ads.
+     */
+    public Expr[] values(RecordExpr[] ads) {
+        Results r = new Results();
+        r.values = new Expr[ads.length];
+        evalAll(ads, r);
+        return r.values;
+    } // values(RecordExpr[])
+
+    /** Evaluate the expression for each ad.
+     * @param ads the ads (a List of RecordExprs).
+     * @return the values, in the same order as the ads.
+     */
+    public Expr[] values(List ads) {
+        return values(toArray(ads));
+    } // values(List)
+
+    /** Convert a List of ads to an array.
+     * @param ads the ads.
+     * @return the array.
+     */
+    private static RecordExpr[] toArray(List ads) {
+        return (RecordExpr[]) ads.toArray(new RecordExpr[ads.size()]);
+    } // toArray(List)
+
+    /** Evaluate a batch, in parallel if there is a pool and enough ads.
+     * @param ads the ads.
+     * @param r where to put the results.
+     */
+    private void evalAll(RecordExpr[] ads, Results r) {
+        if (pool == null || ads.length <= grain) {
+            run(ads, 0, ads.length, r);
+        } else {
+            pool.invoke(new Task(ads, 0, ads.length, r));
+        }
+    } // evalAll(RecordExpr[],Results)
+
+    /** Evaluate part of a batch in the current thread.  A single Env is used
+     * for all the ads.
+     * @param ads the ads of the batch.
+     * @param lo the index of the first ad to evaluate.
+     * @param hi one more than the index of the last ad to evaluate.
+     * @param r where to put the results.
+     */
+    private void run(RecordExpr[] ads, int lo, int hi, Results r) {
+        Env env = new Env();
+        for (int i = lo; i < hi; i++) {
+            Expr v = eval(ads[i], env);
+            if (r.bits != null) {
+                if (v.isTrue()) {
+                    r.bits[i >> 6] |= 1L << i;
+                }
+            } else if (r.ints != null) {
+                r.ints[i] = v.type == Expr.INTEGER
+                    ? ((Constant) v).intValue()
+                    : r.intDefault;
+            } else if (r.reals != null) {
+                r.reals[i] = v.type == Expr.INTEGER || v.type == Expr.REAL
+                    ? ((Constant) v).realValue()
+                    : r.realDefault;
+            } else {
+                r.values[i] = v;
+            }
+        }
+    } // run(RecordExpr[],int,int,Results)
+
+    /** Evaluate the expression for one ad.
+     * @param ad the ad.
+     * @param env an Env to use.  It is cleared first.
+     * @return the value.
+     */
+    private Expr eval(RecordExpr ad, Env env) {
+        env.clear();
+        if (context == null) {
+            env.push(ad, name, expr);
+        } else {
+            // The environment of ClassAd.bind(context, ad), sharing the part
+            // that does not depend on ad.
+            RecordExpr adSide = new RecordExpr(2);
+            adSide.insertAttribute(OTHER, ad1Self).insertAttribute(SELF, ad);
+            RecordExpr pair = new RecordExpr(2);
+            pair.insertAttribute(AD1, contextSide)
+                .insertAttribute(AD2, adSide);
+            env.push(pair);
+            env.push(contextSide);
+            env.push(context, name, expr);
+        }
+        return expr.eval(env);
+    } // eval(RecordExpr,Env)
+} // BatchEvaluator
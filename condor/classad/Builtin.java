@@ -16,7 +16,6 @@
 package condor.classad;
 
 import java.util.*;
-import java.text.SimpleDateFormat;
 import java.util.regex.Pattern;
 
 /**
@@ -477,6 +476,20 @@ public class Builtin {
         int ival = 0;
         double rval = 0;
         boolean anyReal = false;
+        int[] ints = le.intValues();
+        if (ints != null) {
+            for (int i = 0; i < ints.length; i++) {
+                ival += ints[i];
+            }
+            return Constant.getInstance(ival);
+        }
+        double[] reals = le.realValues();
+        if (reals != null) {
+            for (int i = 0; i < reals.length; i++) {
+                rval += reals[i];
+            }
+            return Constant.getInstance(ival + rval);
+        }
         for (Iterator i = le.iterator(); i.hasNext(); ) {
             Expr e = ((Expr) i.next()).eval();
             switch (e.type) {
@@ -514,6 +527,20 @@ public class Builtin {
             return Constant.getInstance(0.0);
         }
         double sum = 0;
+        int[] ints = le.intValues();
+        if (ints != null) {
+            for (int i = 0; i < ints.length; i++) {
+                sum += ints[i];
+            }
+            return Constant.getInstance(sum / ints.length);
+        }
+        double[] reals = le.realValues();
+        if (reals != null) {
+            for (int i = 0; i < reals.length; i++) {
+                sum += reals[i];
+            }
+            return Constant.getInstance(sum / reals.length);
+        }
         for (Iterator i = le.iterator(); i.hasNext(); ) {
             Expr e = ((Expr) i.next()).eval();
             switch (e.type) {
@@ -547,25 +574,42 @@ public class Builtin {
             return Constant.undefined("min of empty list");
         }
         int ival = Integer.MAX_VALUE;
-        double rval = Double.MAX_VALUE;
+        double rval = Double.POSITIVE_INFINITY;
+        boolean anyInt = false;
         boolean anyReal = false;
+        int[] ints = le.intValues();
+        if (ints != null) {
+            for (int i = 0; i < ints.length; i++) {
+                ival = Math.min(ival, ints[i]);
+            }
+            return Constant.getInstance(ival);
+        }
+        double[] reals = le.realValues();
+        if (reals != null) {
+            for (int i = 0; i < reals.length; i++) {
+                rval = Math.min(rval, reals[i]);
+            }
+            return Constant.getInstance(rval);
+        }
         for (Iterator i = le.iterator(); i.hasNext(); ) {
             Expr e = ((Expr) i.next()).eval();
             switch (e.type) {
             case Expr.INTEGER:
                 ival = Math.min(ival, e.intValue());
+                anyInt = true;
                 break;
             case Expr.REAL:
                 rval = Math.min(rval, e.realValue());
+                anyReal = true;
                 break;
             default:
                 return Constant.error("non-number in min of list: " + e);
             }
         }
-        return
-            anyReal
-                ? Constant.getInstance(Math.min(rval, ival))
-                : Constant.getInstance(ival);
+        if (!anyReal) {
+            return Constant.getInstance(ival);
+        }
+        return Constant.getInstance(anyInt ? Math.min(rval, ival) : rval);
     } /* min */
 
     /** Computes the maximum of a list of numbers.
@@ -585,25 +629,42 @@ public class Builtin {
             return Constant.undefined("max of empty list");
         }
         int ival = Integer.MIN_VALUE;
-        double rval = Double.MIN_VALUE;
+        double rval = Double.NEGATIVE_INFINITY;
+        boolean anyInt = false;
         boolean anyReal = false;
+        int[] ints = le.intValues();
+        if (ints != null) {
+            for (int i = 0; i < ints.length; i++) {
+                ival = Math.max(ival, ints[i]);
+            }
+            return Constant.getInstance(ival);
+        }
+        double[] reals = le.realValues();
+        if (reals != null) {
+            for (int i = 0; i < reals.length; i++) {
+                rval = Math.max(rval, reals[i]);
+            }
+            return Constant.getInstance(rval);
+        }
         for (Iterator i = le.iterator(); i.hasNext(); ) {
             Expr e = ((Expr) i.next()).eval();
             switch (e.type) {
             case Expr.INTEGER:
                 ival = Math.max(ival, e.intValue());
+                anyInt = true;
                 break;
             case Expr.REAL:
                 rval = Math.max(rval, e.realValue());
+                anyReal = true;
                 break;
             default:
                 return Constant.error("non-number in max of list: " + e);
             }
         }
-        return
-            anyReal
-                ? Constant.getInstance(Math.max(rval, ival))
-                : Constant.getInstance(ival);
+        if (!anyReal) {
+            return Constant.getInstance(ival);
+        }
+        return Constant.getInstance(anyInt ? Math.max(rval, ival) : rval);
     } /* max */
 
     /** Checks whether "list" is a ListExpr containing a member that
@@ -630,6 +691,10 @@ public class Builtin {
         }
         Constant e = (Constant) expr;
         ListExpr l = (ListExpr) list;
+        Constant found = l.contains(e, false);
+        if (found != null) {
+            return found;
+        }
         for (Iterator i = l.iterator(); i.hasNext(); ) {
             try {
                 Expr x = (Expr) i.next();
@@ -668,6 +733,10 @@ public class Builtin {
                                   + list.typeName());
         }
         ListExpr l = (ListExpr) list;
+        Constant found = l.contains((Constant) expr, true);
+        if (found != null) {
+            return found;
+        }
         for (Iterator i = l.iterator(); i.hasNext(); ) {
             try {
                 Expr x = (Expr) i.next();
@@ -706,7 +775,25 @@ public class Builtin {
             return Constant.error("regexpMember: arg 1 must be a String, not "
                                   + list.typeName());
         }
-        Pattern p = compilePattern(expr.stringValue(), null);
+        Pattern p;
+        try {
+            p = compilePattern(expr.stringValue(), null);
+        } catch (IllegalArgumentException ex) {
+            return Constant.error(ex.getMessage());
+        }
+        return regExpMember(env, p, list);
+    } // regExpMember(Expr[])
+
+    /** The body of regExpMember, for a pattern that has already been
+     * compiled.  It is also used directly by calls whose pattern argument is
+     * a constant.
+     * @param env an environment for evaluating the members of "list"
+     * @param p the pattern.
+     * @param list the evaluated list argument, which must be a ListExpr.
+     * @return a boolean constant or ERROR.
+     * @see FuncCall
+     */
+    /*package*/ static Expr regExpMember(Env env, Pattern p, Expr list) {
         ListExpr l = (ListExpr) list;
         for (Iterator i = l.iterator(); i.hasNext(); ) {
             Expr e = (Expr) i.next();
@@ -719,7 +806,7 @@ public class Builtin {
             }
         }
         return Constant.FALSE;
-    } // regExpMember(Expr[])
+    } // regExpMember(Env,Pattern,Expr)
 
     /** Helper function for anycompare and allcompare.  Returns the
      * constant Expr.LESS, Expr.SAME, etc. matching the operator "op" ("&lt;",
@@ -769,6 +856,12 @@ public class Builtin {
                                   + l.typeName());
         }
         ListExpr le = (ListExpr) l;
+        if (op == Expr.EQUAL && t instanceof Constant) {
+            Constant found = le.contains((Constant) t, false);
+            if (found != null) {
+                return found;
+            }
+        }
         for (Iterator i = le.iterator(); i.hasNext(); ) {
             Expr e = (Expr) i.next();
             e = new Op(op, e, t);
@@ -871,6 +964,23 @@ public class Builtin {
         }
     } // regexp(Expr[])
 
+    /** The body of regexp, for a pattern that has already been compiled.
+     * It is used directly by calls whose pattern (and options, if any)
+     * arguments are constants.
+     * @param p the pattern.
+     * @param str the value of the second argument.
+     * @return <b>true</b> if the pattern matches, <b>false</b> if it doesn't
+     *         match, or <b>error</b> if str is not a string.
+     * @see FuncCall
+     */
+    /*package*/ static Expr regexp(Pattern p, Expr str) {
+        if (str.type != Expr.STRING) {
+            return Constant.error("regexp: arg 2 must be string, not "
+                                  + str.typeName());
+        }
+        return Constant.bool(p.matcher(str.stringValue()).find());
+    } // regexp(Pattern,Expr)
+
     /** Compares a string with a shell-style "glob" pattern.
      * The pat string may contain instances of * and/or ?.  The result is true
      * if pat matches str and false otherwise.  The pattern character ? matches
@@ -1054,7 +1164,9 @@ public class Builtin {
         Constant arg = (Constant) args[0];
         switch (arg.type) {
         case Expr.ABSOLUTE_TIME: {
-            Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+            GregorianCalendar cal
+                = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+            cal.setGregorianChange(new Date(Long.MIN_VALUE));
             cal.setTimeInMillis(arg.milliseconds() + 1000 * arg.zone());
             RecordExpr res = new RecordExpr(8);
             res.insertAttribute("Type", Constant.getInstance("AbsoluteTime"));
@@ -1132,10 +1244,8 @@ public class Builtin {
             return Constant.error("invalid second argument to formatTime: "
                                     + f);
         }
-        String fmt = f.stringValue();
-        fmt = strftimeToSimpleDateFormat(fmt);
-        SimpleDateFormat df = new SimpleDateFormat(fmt);
-        return Constant.getInstance(df.format(new Date(time.milliseconds())));
+        return Constant.getInstance(
+                    TimeFormat.format(time.milliseconds(), f.stringValue()));
     } // formatTime(Expr, Expr);
 
     /** Convert a time constant to a string in "Unix" format, using GMT.
@@ -1147,18 +1257,8 @@ public class Builtin {
         if (secs.type != Expr.INTEGER) {
             return Constant.error("gmtTimeString(" + secs.typeName() + ")");
         }
-        Date when = new Date(1000L * secs.intValue());
-        SimpleDateFormat df
-            = new SimpleDateFormat("EEE MMM dd HH:mm:ss 'UTC' yyyy");
-        df.setTimeZone(TimeZone.getTimeZone("GMT"));
-        String s = df.format(when);
-        // SimpleDateFormat appears to have no way of specifying that
-        // the day of the month is to be formatted with a leading space
-        // rather than a leading zero if it is less than 10.
-        if (s.charAt(8)=='0') {
-            s = s.substring(0, 8) + ' ' + s.substring(9);
-        }
-        return Constant.getInstance(s);
+        return Constant.getInstance(
+                    TimeFormat.gmtTimeString(1000L * secs.intValue()));
     } // gmtTime(Expr)
 
     /** Convert a time constant to a string in "Unix" format, using the local
@@ -1171,17 +1271,8 @@ public class Builtin {
         if (secs.type != Expr.INTEGER) {
             return Constant.error("localTimeString(" + secs.typeName() + ")");
         }
-        Date when = new Date(1000L * secs.intValue());
-        SimpleDateFormat df
-            = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy");
-        String s = df.format(when);
-        // SimpleDateFormat appears to have no way of specifying that
-        // the day of the month is to be formatted with a leading space
-        // rather than a leading zero if it is less than 10.
-        if (s.charAt(8)=='0') {
-            s = s.substring(0, 8) + ' ' + s.substring(9);
-        }
-        return Constant.getInstance(s);
+        return Constant.getInstance(
+                    TimeFormat.localTimeString(1000L * secs.intValue()));
     } // localTime(Expr)
         
     //============= private helper methods ===================================
@@ -1276,136 +1367,16 @@ public class Builtin {
         }
     } // toReal(Constant)
 
-    /** Helper function for formatTime.
-     * Translates a strftime style format, e.g. "month %b year %Y" to a
-     * a  SimpleDateFormat style pattern, .e.g. "'month 'MMM' year 'yyyy".
-     *
-     * @param fmt the strftime format
-     * @return the SimpleDateFormat pattern.
-     */
-    private static String strftimeToSimpleDateFormat(String fmt) {
-        StringBuffer sb = new StringBuffer();
-        boolean literal = false;  // true if we are inside '...'
-        for (int i = 0; i < fmt.length(); i++) {
-            char c = fmt.charAt(i);
-            if (c == '%' && i < fmt.length() - 1) {
-                c = fmt.charAt(++i);
-                String op = null;
-                switch (fmt.charAt(i)) {
-                case 'a': // abbreviated weekday name
-                    op = "EEE";
-                    break;
-                case 'A': // full weekday name
-                    op = "EEEE";
-                    break;
-                case 'b': // abbreviated month name
-                    op = "MMM";
-                    break;
-                case 'B': // full month name
-                    op = "MMMM";
-                    break;
-                case 'c': // local date and time representation
-                    op = "EEE MMM dd HH:mm:ss yyyy";
-                    break;
-                case 'd': // day of the month (01-31
-                    op = "dd";
-                    break;
-                case 'H': // hour in the 24-hour clock (0-23
-                    op = "HH";
-                    break;
-                case 'I': // hour in the 12-hour clock (01-12
-                    op = "hh";
-                    break;
-                case 'j': // day of the year (001-366
-                    op = "D";
-                    break;
-                case 'm': // month (01-12
-                    op = "MM";
-                    break;
-                case 'M': // minute (00-59
-                    op = "mm";
-                    break;
-                case 'p': // local equivalent of AM or PM
-                    op = "a";
-                    break;
-                case 'S': // second (00-59
-                    op = "ss";
-                    break;
-                case 'w': // weekday (0-6, Sunday is 0
-                    op = "E";
-                    break;
-                case 'x': // local date representation
-                    op = "MM/dd/yy";
-                    break;
-                case 'X': // local time representation
-                    op = "HH:mm:ss";
-                    break;
-                case 'y': // year without century (00-99
-                    op = "yy";
-                    break;
-                case 'Y': // year with century
-                    op = "yyyy";
-                    break;
-                case 'Z': // time zone name, if any
-                    op = "zzz";
-                    break;
-                }
-                if (op == null) {
-                    // not %x for known x
-                    // Drop into literal mode
-                    if (!literal) {
-                        sb.append('\'');
-                        literal = true;
-                    }
-                    if (c == '%') {
-                        // %% => %
-                        sb.append('%');
-                    } else {
-                        // Unknown escape.  %? => %?
-                        sb.append(c);
-                        if (c == '\'') {
-                            // %' => %''
-                            sb.append('\'');
-                        }
-                    }
-                } else {
-                    // Get out of literal mode
-                    if (literal) {
-                        sb.append('\'');
-                        literal = false;
-                    }
-                    sb.append(op);
-                }
-            } else {
-                // Not %; output c in literal mode
-                if (!literal) {
-                    sb.append('\'');
-                    literal = true;
-                }
-                sb.append(c);
-                if (c == '\'') {
-                    sb.append(c);
-                }
-            }
-        } // for (int i = 0; i < fmt.length; i++)
-        // Must end up back in non-literal mode
-        if (literal) {
-            sb.append('\'');
-            literal = false;
-        }
-        return sb.toString();
-    } // strftimeToSimpleDateFormat(String);
-
     /**
      * Helper function for regexp and regexpMember.
-     * Compiles a pattern.
+     * Compiles a pattern, or finds it in the {@link PatternCache}.
      * @param pat the regular expression to compile.
      * @param opts a strings of options including any of the characters
      *             'imsx'.
      * @return the compiled pattern
      * @throws IllegalArgumentException if the pattern is not valid.
      */
-    private static Pattern compilePattern(String pat, String opts) {
+    /*package*/ static Pattern compilePattern(String pat, String opts) {
         int flags = 0;
         if (opts != null) {
             for (int i = 0; i < opts.length(); i++) {
@@ -1433,7 +1404,7 @@ public class Builtin {
             }
         }
         try {
-            return Pattern.compile(pat, flags);
+            return PatternCache.get(pat, flags);
         } catch (Exception ex) {
             // Only show the first line of the message
             String msg = ex.getMessage();
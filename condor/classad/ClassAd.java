@@ -91,6 +91,22 @@ public class ClassAd {
         return sel.eval();
     } // eval(RecordExpr,String[])
 
+    /** Evaluate a selection from a ClassAd, using a given Env.
+     * @param ad a ClassAd from which to select.
+     * @param attrs a sequence <code>attr1, attr2, ..., attrn</code> of
+     * attribute names.
+     * @param env the Env to use.  It is cleared first.
+     * @return the result of evaluating <code>ad.attr1.attr2...attrn</code>.
+     */
+    private static Expr eval(RecordExpr ad, String[] attrs, Env env) {
+        Expr sel = ad;
+        for (int i=0; i<attrs.length; i++) {
+            sel = sel.selectExpr(attrs[i]);
+        }
+        env.clear();
+        return sel.eval(env);
+    } // eval(RecordExpr,String[],Env)
+
     /** Evaluate a selection from a ClassAd.
      * @param ad a ClassAd from which to select.
      * @param attr an attribute name.
@@ -103,23 +119,35 @@ public class ClassAd {
 
     /** Evaluate an expression in the context of a ClassAd.
      * The <code>expr</code> is evaluated as if it were a the value of an
-     * attribute named <code>name</code> in <code>ad</code>.
-     * <p>
-     * <b>Note</b>: the RecordExpr <code>ad</code> is modified and then
-     * returned to its original state, so this method is not thread-safe.
+     * attribute named <code>name</code> in <code>ad</code> (replacing any
+     * existing attribute of that name).
+     * The RecordExpr <code>ad</code> is not modified, so several threads may
+     * evaluate expressions in the context of the same ad at once.
      * @param name the name of the attribute.
      * @param expr the expression to evaluate.
      * @param ad the context for evaluation.
      * @return the result of evaluating <code>expr</code> in the context of
      *         <code>ad</code>.
+     * @see Env#push(RecordExpr,AttrName,Expr)
      */
     public static Expr eval(String name, Expr expr, RecordExpr ad) {
-        AttrName n = AttrName.fromString(name);
-        ad.insertAttribute(n, expr);
-        Expr result = ad.selectExpr(name).eval();
-        ad.removeAttribute(n);
-        return result;
-    } // eval(Expr,RecordExpr)
+        return eval(AttrName.fromString(name), expr, ad);
+    } // eval(String,Expr,RecordExpr)
+
+    /** Evaluate an expression in the context of a ClassAd.
+     * This is the same as {@link #eval(String,Expr,RecordExpr)}, but avoids
+     * converting the name each time it is called.
+     * @param name the name of the attribute.
+     * @param expr the expression to evaluate.
+     * @param ad the context for evaluation.
+     * @return the result of evaluating <code>expr</code> in the context of
+     *         <code>ad</code>.
+     */
+    public static Expr eval(AttrName name, Expr expr, RecordExpr ad) {
+        Env env = new Env();
+        env.push(ad, name, expr);
+        return expr.eval(env);
+    } // eval(AttrName,Expr,RecordExpr)
 
     /** Evaluate an attribute of a ClassAd in an environment consisting of
      * a pair of ads.  The result is <code>ad1.attr</code> evaluated in
@@ -134,6 +162,30 @@ public class ClassAd {
         return eval(bind(ad1, ad2), new String[] { "Ad1", "self", attr });
     } // eval(String,RecordExpr,RecordExpr)
 
+    /** Evaluate an expression in the context of a pair of ads.
+     * The <code>expr</code> is evaluated as if it were the value of an
+     * attribute named <code>name</code> in <code>ad1</code>, in the
+     * environment produced by <code>bind(ad1, ad2)</code>.  Thus
+     * <code>other</code> in <code>expr</code> refers to <code>ad2</code>.
+     * Neither ad is modified.
+     * @param name the name of the attribute.
+     * @param expr the expression to evaluate.
+     * @param ad1 the ad in which expr is evaluated.
+     * @param ad2 the other ad.
+     * @return the result of the evaluation
+     * @see #bind(RecordExpr,RecordExpr)
+     */
+    public static Expr eval(AttrName name, Expr expr,
+                            RecordExpr ad1, RecordExpr ad2)
+    {
+        RecordExpr pair = bind(ad1, ad2);
+        Env env = new Env();
+        env.push(pair);
+        env.push((RecordExpr) pair.lookup(AD1));
+        env.push(ad1, name, expr);
+        return expr.eval(env);
+    } // eval(AttrName,Expr,RecordExpr,RecordExpr)
+
     /** Match two ClassAds.  The expressions <code>expr1.requirements</code>
      * and <code>expr2.requirments</code> both evaluate to <b>true</b> in
      * the environment produced by <code>bind(expr1, expr2)</code>, then
@@ -155,25 +207,28 @@ public class ClassAd {
             return null;
         }
 
-        // Create an evaluation environment
+        // Create an evaluation environment.  All four evaluations use the
+        // same Env, so they form a single session for any EvalCaches.
         RecordExpr ad = bind((RecordExpr) expr1, (RecordExpr) expr2);
+        Env env = new Env();
 
         // Check requirements
-        if (!eval(ad, AD1_SELF_REQUIREMENTS).isTrue()
-            || !eval(ad, AD2_SELF_REQUIREMENTS).isTrue())
+        if (!eval(ad, AD1_SELF_REQUIREMENTS, env).isTrue()
+            || !eval(ad, AD2_SELF_REQUIREMENTS, env).isTrue())
         {
             return null;
         }
 
-        // Evaluate ranks
-        try {
-            return new int[] {
-                eval(ad, AD1_SELF_RANK).intValue(),
-                eval(ad, AD2_SELF_RANK).intValue()
-            };
-        } catch (ArithmeticException e) {
+        // Evaluate ranks.  Both must be integers.
+        Expr rank1 = eval(ad, AD1_SELF_RANK, env);
+        if (rank1.type != Expr.INTEGER) {
             return null;
         }
+        Expr rank2 = eval(ad, AD2_SELF_RANK, env);
+        if (rank2.type != Expr.INTEGER) {
+            return null;
+        }
+        return new int[] { rank1.intValue(), rank2.intValue() };
     } // match(Expr,Expr)
 
     /** Loads a "library" of externally defined Java functions.
@@ -208,6 +263,9 @@ public class ClassAd {
         return FuncCall.loadJavaLibrary(className);
     } // loadJavaLibrary(String)
 
+    /** The name of the first ad in the result of bind(). */
+    private static final AttrName AD1 = AttrName.fromString("Ad1");
+
     /** Path expression for use in match(). */
     private static final String[] AD1_SELF_REQUIREMENTS =
                                 new String[] { "Ad1", "self", "requirements" };
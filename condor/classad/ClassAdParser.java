@@ -83,6 +83,11 @@ public class ClassAdParser {
      */
     private PrintStream errs = System.err;
 
+    /** If true, parsed expressions are hash-consed.
+     * @see #setHashConsing(boolean)
+     */
+    private boolean hashConsing = false;
+
     // ========== constructors ===========
 
     /** Create a parser to parse text input.
@@ -283,6 +288,9 @@ public class ClassAdParser {
             }
             break;
         }
+        if (hashConsing && result != null) {
+            result = ExprTable.canonicalize(result);
+        }
         return result;
     } // parse(boolean)
 
@@ -364,6 +372,26 @@ public class ClassAdParser {
         }
     } // enableTracing(boolean)
 
+    /** Control whether parsed expressions are "hash-consed".
+     * If hash-consing is on, each sub-expression of a parsed expression that
+     * is structurally identical to one already in use (for example, the
+     * Requirements expressions of many similar ads) is replaced by a
+     * reference to the existing copy, which can greatly reduce the memory
+     * needed to hold a large collection of ads.
+     * The expressions are shared through a global table that does not
+     * prevent them from being garbage collected.
+     * Lists and records (including ads themselves) are never shared, and
+     * shared sub-expressions print exactly as they were parsed.
+     * The default is not to hash-cons.
+     * @param on if true, turn on hash-consing; if false, turn it off.
+     * @return the previous value of the flag.
+     */
+    public boolean setHashConsing(boolean on) {
+        boolean result = hashConsing;
+        hashConsing = on;
+        return result;
+    } // setHashConsing(boolean)
+
     /** Set verbosity of error messages.
      * <dl>
      * <dt>0<dd>no messages
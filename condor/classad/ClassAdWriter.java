@@ -578,33 +578,39 @@ public class ClassAdWriter extends java.io.PrintWriter {
 
             if ((formatFlags & MULTI_LINE_ADS ) == 0) {
                 print('[');
-                for (Iterator i = e.attributes(); i.hasNext(); ) {
+                for (int i = 0, n = e.positions(); i < n; i++) {
+                    Expr value = e.valueAt(i);
+                    if (value == null) {
+                        continue;
+                    }
                     if (first) {
                         first = false;
                     } else {
                         print(';');
                     }
-                    AttrName attr = (AttrName) i.next();
-                    printNativeAttrName(attr, escapeXML);
+                    printNativeAttrName(e.nameAt(i), escapeXML);
                     print("=");
-                    printNative(e.lookup(attr), escapeXML);
+                    printNative(value, escapeXML);
                 }
                 print(']');
             } else {
                 println('[');
                 indentLevel++;
                 indent();
-                for (Iterator i = e.attributes(); i.hasNext(); ) {
+                for (int i = 0, n = e.positions(); i < n; i++) {
+                    Expr value = e.valueAt(i);
+                    if (value == null) {
+                        continue;
+                    }
                     if (first) {
                         first = false;
                     } else {
                         println(';');
                         indent();
                     }
-                    AttrName attr = (AttrName) i.next();
-                    printNativeAttrName(attr, escapeXML);
+                    printNativeAttrName(e.nameAt(i), escapeXML);
                     print(" = ");
-                    printNative(e.lookup(attr), escapeXML);
+                    printNative(value, escapeXML);
                 }
                 println();
                 indentLevel--;
@@ -740,25 +746,31 @@ public class ClassAdWriter extends java.io.PrintWriter {
 
             if ((formatFlags & MULTI_LINE_ADS ) == 0) {
                 print("<c>");
-                for (Iterator i = e.attributes(); i.hasNext(); ) {
-                    AttrName attr = (AttrName) i.next();
+                for (int i = 0, n = e.positions(); i < n; i++) {
+                    Expr value = e.valueAt(i);
+                    if (value == null) {
+                        continue;
+                    }
                     print("<a n=\"");
-                    printQuotedString(attr.rawString(), 'q', true);
+                    printQuotedString(e.nameAt(i).rawString(), 'q', true);
                     print("\">");
-                    printXML(e.lookup(attr));
+                    printXML(value);
                     print("</a>");
                 }
                 print("</c>");
             } else {
                 println("<c>");
                 indentLevel++;
-                for (Iterator i = e.attributes(); i.hasNext(); ) {
+                for (int i = 0, n = e.positions(); i < n; i++) {
+                    Expr value = e.valueAt(i);
+                    if (value == null) {
+                        continue;
+                    }
                     indent();
-                    AttrName attr = (AttrName) i.next();
                     print("<a n=\"");
-                    printQuotedString(attr.rawString(), 'q', true);
+                    printQuotedString(e.nameAt(i).rawString(), 'q', true);
                     print("\">");
-                    printXML(e.lookup(attr));
+                    printXML(value);
                     println("</a>");
                 }
                 indentLevel--;
@@ -0,0 +1,506 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A minimal assembler for Java class files, just powerful enough to support
+ * {@link ExprCompiler}.
+ * A ClassFileWriter accumulates a constant pool and a sequence of methods
+ * and then produces the bytes of a class file.
+ * Methods are built one at a time:  call {@link #beginMethod}, emit
+ * instructions with the various instruction methods, and finish with
+ * {@link #endMethod}.
+ * <p>
+ * The class file is generated with major version 49, which is verified by
+ * type inference, so no StackMapTable attributes are needed.  The
+ * maximum stack depth is tracked as instructions are emitted.  The caller is
+ * responsible for making sure that the stack depth is the same on all paths
+ * into a label.
+ * @version 2.2
+ */
+/*package*/ final class ClassFileWriter {
+    private static String VERSION = "$Id$";
+
+    // Opcodes used by ExprCompiler.
+
+    /*package*/ static final int ACONST_NULL = 1;
+    /*package*/ static final int ICONST_0 = 3;
+    /*package*/ static final int BIPUSH = 16;
+    /*package*/ static final int SIPUSH = 17;
+    /*package*/ static final int LDC_W = 19;
+    /*package*/ static final int LDC2_W = 20;
+    /*package*/ static final int ILOAD = 21;
+    /*package*/ static final int DLOAD = 24;
+    /*package*/ static final int ALOAD = 25;
+    /*package*/ static final int ISTORE = 54;
+    /*package*/ static final int DSTORE = 57;
+    /*package*/ static final int ASTORE = 58;
+    /*package*/ static final int AALOAD = 50;
+    /*package*/ static final int POP = 87;
+    /*package*/ static final int DUP = 89;
+    /*package*/ static final int IADD = 96;
+    /*package*/ static final int DADD = 99;
+    /*package*/ static final int ISUB = 100;
+    /*package*/ static final int DSUB = 103;
+    /*package*/ static final int IMUL = 104;
+    /*package*/ static final int DMUL = 107;
+    /*package*/ static final int IDIV = 108;
+    /*package*/ static final int DDIV = 111;
+    /*package*/ static final int IREM = 112;
+    /*package*/ static final int DREM = 115;
+    /*package*/ static final int DCMPL = 151;
+    /*package*/ static final int DCMPG = 152;
+    /*package*/ static final int IFEQ = 153;
+    /*package*/ static final int IFNE = 154;
+    /*package*/ static final int IFLT = 155;
+    /*package*/ static final int IFGE = 156;
+    /*package*/ static final int IFGT = 157;
+    /*package*/ static final int IFLE = 158;
+    /*package*/ static final int IF_ICMPEQ = 159;
+    /*package*/ static final int IF_ICMPNE = 160;
+    /*package*/ static final int IF_ICMPLT = 161;
+    /*package*/ static final int IF_ICMPGE = 162;
+    /*package*/ static final int IF_ICMPGT = 163;
+    /*package*/ static final int IF_ICMPLE = 164;
+    /*package*/ static final int IF_ACMPEQ = 165;
+    /*package*/ static final int IF_ACMPNE = 166;
+    /*package*/ static final int GOTO = 167;
+    /*package*/ static final int ARETURN = 176;
+    /*package*/ static final int RETURN = 177;
+    /*package*/ static final int GETSTATIC = 178;
+    /*package*/ static final int GETFIELD = 180;
+    /*package*/ static final int INVOKEVIRTUAL = 182;
+    /*package*/ static final int INVOKESPECIAL = 183;
+    /*package*/ static final int INVOKESTATIC = 184;
+    /*package*/ static final int NEW = 187;
+    /*package*/ static final int CHECKCAST = 192;
+
+    /** Access flags. */
+    /*package*/ static final int ACC_PUBLIC = 0x0001;
+    /*package*/ static final int ACC_FINAL = 0x0010;
+    /*package*/ static final int ACC_SUPER = 0x0020;
+
+    /** A position in the code of the current method that may be the target
+     * of branch instructions.
+     */
+    /*package*/ static final class Label {
+        /** The offset of this label in the code, or -1 if not yet placed. */
+        private int pos = -1;
+
+        /** The stack depth at this label, or -1 if not yet known. */
+        private int depth = -1;
+    } // Label
+
+    /** The constant pool, excluding the count. */
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+
+    /** A DataOutputStream writing to poolBytes. */
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+
+    /** The number of constant pool slots used so far, plus one. */
+    private int poolCount = 1;
+
+    /** Mapping from descriptions of constants to their pool indices. */
+    private final Map poolIndex = new HashMap();
+
+    /** The completed methods. */
+    private final ByteArrayOutputStream methodBytes =
+        new ByteArrayOutputStream();
+
+    /** A DataOutputStream writing to methodBytes. */
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+
+    /** The number of completed methods. */
+    private int methodCount = 0;
+
+    /** The code of the current method. */
+    private ByteArrayOutputStream code;
+
+    /** Branch instructions whose targets are not yet resolved.  Each entry
+     * is an Object[] { Integer(offset of the instruction), Label }.
+     */
+    private List fixups;
+
+    /** Access flags, name, and descriptor indices of the current method. */
+    private int mAccess, mName, mDesc;
+
+    /** The current stack depth. */
+    private int depth;
+
+    /** The maximum stack depth of the current method. */
+    private int maxDepth;
+
+    // ---------------------------------- CONSTANT POOL ----------------------
+
+    /** Find or create a constant pool entry.
+     * @param key a string uniquely identifying the entry.
+     * @param tag the constant pool tag.
+     * @param a the first component of the entry.
+     * @param b the second component of the entry, if any.
+     * @param size the number of bytes in each component (1 or 2, or 0 for
+     * none).
+     * @return the pool index.
+     */
+    private int entry(String key, int tag, int a, int b, int size) {
+        Integer old = (Integer) poolIndex.get(key);
+        if (old != null) {
+            return old.intValue();
+        }
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(a);
+            if (size == 2) {
+                pool.writeShort(b);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+        int result = poolCount++;
+        poolIndex.put(key, Integer.valueOf(result));
+        return result;
+    } // entry(String,int,int,int,int)
+
+    /** Find or create a CONSTANT_Utf8 entry.
+     * @param s the string.
+     * @return the pool index.
+     */
+    /*package*/ int utf8(String s) {
+        String key = "U" + s;
+        Integer old = (Integer) poolIndex.get(key);
+        if (old != null) {
+            return old.intValue();
+        }
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(s);
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+        int result = poolCount++;
+        poolIndex.put(key, Integer.valueOf(result));
+        return result;
+    } // utf8(String)
+
+    /** Find or create a CONSTANT_Class entry.
+     * @param name the internal (slash-separated) name of the class.
+     * @return the pool index.
+     */
+    /*package*/ int classRef(String name) {
+        return entry("C" + name, 7, utf8(name), 0, 1);
+    } // classRef(String)
+
+    /** Find or create a CONSTANT_NameAndType entry.
+     * @param name the member name.
+     * @param desc the member descriptor.
+     * @return the pool index.
+     */
+    private int nameAndType(String name, String desc) {
+        return entry("N" + name + " " + desc, 12, utf8(name), utf8(desc), 2);
+    } // nameAndType(String,String)
+
+    /** Find or create a member reference entry.
+     * @param tag 9 for a field or 10 for a method.
+     * @param owner the internal name of the class containing the member.
+     * @param name the member name.
+     * @param desc the member descriptor.
+     * @return the pool index.
+     */
+    private int memberRef(int tag, String owner, String name, String desc) {
+        return entry(tag + owner + "." + name + " " + desc, tag,
+            classRef(owner), nameAndType(name, desc), 2);
+    } // memberRef(int,String,String,String)
+
+    /** Find or create a CONSTANT_Integer entry.
+     * @param v the value.
+     * @return the pool index.
+     */
+    private int intConst(int v) {
+        return entry("I" + v, 3, v >>> 16, v & 0xffff, 2);
+    } // intConst(int)
+
+    /** Find or create a CONSTANT_Double entry.  Double constants use two
+     * slots of the pool.
+     * @param v the value.
+     * @return the pool index.
+     */
+    private int doubleConst(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        String key = "D" + bits;
+        Integer old = (Integer) poolIndex.get(key);
+        if (old != null) {
+            return old.intValue();
+        }
+        try {
+            pool.writeByte(6);
+            pool.writeLong(bits);
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+        int result = poolCount;
+        poolCount += 2;
+        poolIndex.put(key, Integer.valueOf(result));
+        return result;
+    } // doubleConst(double)
+
+    // ---------------------------------- METHODS ----------------------------
+
+    /** Start generating code for a new method.
+     * @param access the access flags.
+     * @param name the method name.
+     * @param desc the method descriptor.
+     */
+    /*package*/ void beginMethod(int access, String name, String desc) {
+        mAccess = access;
+        mName = utf8(name);
+        mDesc = utf8(desc);
+        code = new ByteArrayOutputStream();
+        fixups = new ArrayList();
+        depth = maxDepth = 0;
+    } // beginMethod(int,String,String)
+
+    /** Finish the current method.
+     * @param maxLocals the number of local variable slots used, including
+     * the parameters.
+     * @throws IllegalStateException if the method is too large or a label
+     * was never placed.
+     */
+    /*package*/ void endMethod(int maxLocals) {
+        byte[] b = code.toByteArray();
+        if (b.length >= 65535) {
+            throw new IllegalStateException("method too large");
+        }
+        for (Iterator i = fixups.iterator(); i.hasNext(); ) {
+            Object[] fix = (Object[]) i.next();
+            int at = ((Integer) fix[0]).intValue();
+            Label l = (Label) fix[1];
+            if (l.pos < 0) {
+                throw new IllegalStateException("unplaced label");
+            }
+            int offset = l.pos - at;
+            if (offset != (short) offset) {
+                throw new IllegalStateException("branch too far");
+            }
+            b[at + 1] = (byte) (offset >> 8);
+            b[at + 2] = (byte) offset;
+        }
+        try {
+            methods.writeShort(mAccess);
+            methods.writeShort(mName);
+            methods.writeShort(mDesc);
+            methods.writeShort(1);                // attributes_count
+            methods.writeShort(utf8("Code"));
+            methods.writeInt(12 + b.length);      // attribute_length
+            methods.writeShort(maxDepth);
+            methods.writeShort(maxLocals);
+            methods.writeInt(b.length);
+            methods.write(b);
+            methods.writeShort(0);                // exception_table_length
+            methods.writeShort(0);                // attributes_count
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+        methodCount++;
+        code = null;
+        fixups = null;
+    } // endMethod(int)
+
+    /** Produce the class file.
+     * @param name the internal name of the class.
+     * @param superName the internal name of its superclass.
+     * @return the bytes of the class file.
+     */
+    /*package*/ byte[] toByteArray(String name, String superName) {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);                    // minor_version
+            out.writeShort(49);                   // major_version
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0);                    // interfaces_count
+            out.writeShort(0);                    // fields_count
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0);                    // attributes_count
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+        return bytes.toByteArray();
+    } // toByteArray(String,String)
+
+    // ---------------------------------- INSTRUCTIONS -----------------------
+
+    /** Record a change in the stack depth.
+     * @param delta the number of words pushed (negative for popped).
+     */
+    private void stack(int delta) {
+        depth += delta;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    } // stack(int)
+
+    /** Emit an instruction with no operands.
+     * @param opcode the opcode.
+     * @param delta the effect of the instruction on the stack depth.
+     */
+    /*package*/ void op(int opcode, int delta) {
+        code.write(opcode);
+        stack(delta);
+    } // op(int,int)
+
+    /** Emit an instruction with a two-byte operand.
+     * @param opcode the opcode.
+     * @param operand the operand.
+     * @param delta the effect of the instruction on the stack depth.
+     */
+    private void op2(int opcode, int operand, int delta) {
+        code.write(opcode);
+        code.write(operand >> 8);
+        code.write(operand);
+        stack(delta);
+    } // op2(int,int,int)
+
+    /** Emit an instruction that loads or stores a local variable.
+     * @param opcode one of ILOAD, DLOAD, ALOAD, ISTORE, DSTORE, or ASTORE.
+     * @param slot the local variable slot.
+     */
+    /*package*/ void local(int opcode, int slot) {
+        if (slot > 255) {
+            throw new IllegalStateException("too many locals");
+        }
+        code.write(opcode);
+        code.write(slot);
+        switch (opcode) {
+        case ILOAD: case ALOAD: stack(1); break;
+        case DLOAD: stack(2); break;
+        case ISTORE: case ASTORE: stack(-1); break;
+        case DSTORE: stack(-2); break;
+        }
+    } // local(int,int)
+
+    /** Emit an instruction to push an integer constant.
+     * @param v the value.
+     */
+    /*package*/ void pushInt(int v) {
+        if (v >= -1 && v <= 5) {
+            op(ICONST_0 + v, 1);
+        } else if (v == (byte) v) {
+            code.write(BIPUSH);
+            code.write(v);
+            stack(1);
+        } else if (v == (short) v) {
+            op2(SIPUSH, v, 1);
+        } else {
+            op2(LDC_W, intConst(v), 1);
+        }
+    } // pushInt(int)
+
+    /** Emit an instruction to push a double constant.
+     * @param v the value.
+     */
+    /*package*/ void pushDouble(double v) {
+        op2(LDC2_W, doubleConst(v), 2);
+    } // pushDouble(double)
+
+    /** Emit a getfield or getstatic instruction.
+     * @param opcode GETFIELD or GETSTATIC.
+     * @param owner the internal name of the class containing the field.
+     * @param name the field name.
+     * @param desc the field descriptor.
+     */
+    /*package*/ void field(int opcode, String owner, String name, String desc) {
+        int size = (desc.equals("J") || desc.equals("D")) ? 2 : 1;
+        op2(opcode, memberRef(9, owner, name, desc),
+            opcode == GETFIELD ? size - 1 : size);
+    } // field(int,String,String,String)
+
+    /** Emit a method invocation instruction.
+     * @param opcode INVOKEVIRTUAL, INVOKESPECIAL, or INVOKESTATIC.
+     * @param owner the internal name of the class containing the method.
+     * @param name the method name.
+     * @param desc the method descriptor.
+     */
+    /*package*/ void invoke(int opcode, String owner, String name, String desc)
+    {
+        int delta = opcode == INVOKESTATIC ? 0 : -1;
+        int i = 1;
+        while (desc.charAt(i) != ')') {
+            char c = desc.charAt(i++);
+            delta -= (c == 'J' || c == 'D') ? 2 : 1;
+            while (c == '[') {
+                c = desc.charAt(i++);
+            }
+            if (c == 'L') {
+                i = desc.indexOf(';', i) + 1;
+            }
+        }
+        char r = desc.charAt(i + 1);
+        delta += r == 'V' ? 0 : (r == 'J' || r == 'D') ? 2 : 1;
+        op2(opcode, memberRef(10, owner, name, desc), delta);
+    } // invoke(int,String,String,String)
+
+    /** Emit an instruction that takes a class operand (NEW or CHECKCAST).
+     * @param opcode the opcode.
+     * @param name the internal name of the class.
+     */
+    /*package*/ void typeOp(int opcode, String name) {
+        op2(opcode, classRef(name), opcode == NEW ? 1 : 0);
+    } // typeOp(int,String)
+
+    /** Emit a branch instruction.
+     * @param opcode the opcode (a conditional branch or GOTO).
+     * @param target the target of the branch.
+     */
+    /*package*/ void jump(int opcode, Label target) {
+        int pops;
+        if (opcode == GOTO) {
+            pops = 0;
+        } else if (opcode >= IF_ICMPEQ) {
+            pops = 2;
+        } else {
+            pops = 1;
+        }
+        fixups.add(new Object[] { Integer.valueOf(code.size()), target });
+        op2(opcode, 0, -pops);
+        if (target.depth < 0) {
+            target.depth = depth;
+        }
+    } // jump(int,Label)
+
+    /** Place a label at the current position in the code.
+     * The stack depth is reset to the depth recorded by branches to the
+     * label, if any.
+     * @param l the label.
+     */
+    /*package*/ void place(Label l) {
+        l.pos = code.size();
+        if (l.depth >= 0) {
+            depth = l.depth;
+        } else {
+            l.depth = depth;
+        }
+    } // place(Label)
+} // ClassFileWriter
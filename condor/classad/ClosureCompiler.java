@@ -0,0 +1,409 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad;
+
+/**
+ * A compiler that translates expressions into trees of evaluator objects.
+ * Each node of the result is a {@link CompiledExpr} specialized for one
+ * node of the original expression:  the choice of operator, the number of
+ * operands, and whether an operand is a constant are all decided when the
+ * tree is built rather each time it is evaluated.
+ * Like {@link ExprCompiler}, this compiler only handles operators and
+ * conditional expressions, and hands all other nodes back to the
+ * interpreter, so that the result of evaluating the tree is always the
+ * same as the result of evaluating the original expression.
+ * <p>
+ * Building a tree of evaluators is much cheaper than generating bytecode,
+ * so this is the form used by {@link Expr#compile()}.
+ * @see Expr#compile()
+ * @version 2.2
+ */
+public final class ClosureCompiler {
+    private static String VERSION = "$Id$";
+
+    /** This class is not meant to be instantiated. */
+    private ClosureCompiler() {
+    } // ClosureCompiler()
+
+    /** Compile an expression.
+     * @param expr the expression to compile.
+     * @return a CompiledExpr equivalent to expr.
+     */
+    public static CompiledExpr compile(Expr expr) {
+        switch (expr.type) {
+        case Expr.OP: {
+            Op op = (Op) expr;
+            if (op.arg2 == null) {
+                return new Unary(op, compile(op.arg1));
+            }
+            return binary(op, compile(op.arg1), compile(op.arg2));
+        }
+        case Expr.COND: {
+            CondExpr c = (CondExpr) expr;
+            return new Cond(c, compile(c.ec), compile(c.et), compile(c.ef));
+        }
+        default:
+            if (expr.isConstant()) {
+                return new Value(expr);
+            }
+            return new Interpreted(expr);
+        }
+    } // compile(Expr)
+
+    // ---------------------------------- NODES ------------------------------
+
+    /** A node for a constant, list, or record, which evaluates to itself. */
+    private static final class Value extends CompiledExpr {
+        /** Create a node.
+         * @param expr the value.
+         */
+        Value(Expr expr) {
+            super(expr, null);
+        } // Value(Expr)
+
+        /** Evaluate this node.
+         * @param env the environment (ignored).
+         * @return the value.
+         */
+        public Expr eval(Env env) {
+            return expr;
+        } // eval(Env)
+    } // Value
+
+    /** A node for an expression not handled by this compiler. */
+    private static final class Interpreted extends CompiledExpr {
+        /** Create a node.
+         * @param expr the expression.
+         */
+        Interpreted(Expr expr) {
+            super(expr, null);
+        } // Interpreted(Expr)
+
+        /** Evaluate this node using the interpreter.
+         * @param env the environment.
+         * @return the result of expr.eval(env).
+         */
+        public Expr eval(Env env) {
+            return expr.eval(env);
+        } // eval(Env)
+    } // Interpreted
+
+    /** A node for a conditional expression. */
+    private static final class Cond extends CompiledExpr {
+        /** The condition. */
+        private final CompiledExpr ec;
+
+        /** The true part. */
+        private final CompiledExpr et;
+
+        /** The false part. */
+        private final CompiledExpr ef;
+
+        /** Create a node.
+         * @param expr the original expression.
+         * @param ec the compiled condition.
+         * @param et the compiled true part.
+         * @param ef the compiled false part.
+         */
+        Cond(CondExpr expr, CompiledExpr ec, CompiledExpr et, CompiledExpr ef)
+        {
+            super(expr, null);
+            this.ec = ec;
+            this.et = et;
+            this.ef = ef;
+        } // Cond(CondExpr,CompiledExpr,CompiledExpr,CompiledExpr)
+
+        /** Evaluate this node, following {@link CondExpr#eval1(Env)}.
+         * @param env the environment.
+         * @return the value.
+         */
+        public Expr eval(Env env) {
+            Env mark = env.mark();
+            Expr ecv = ec.eval(env);
+            env.reset(mark);
+            if (ecv.type == Expr.BOOLEAN) {
+                return ecv.isTrue() ? et.eval(env) : ef.eval(env);
+            }
+            env.clear();
+            return CondExpr.nonBoolean(ecv);
+        } // eval(Env)
+    } // Cond
+
+    /** A node for a unary operator. */
+    private static final class Unary extends CompiledExpr {
+        /** The operator. */
+        private final int op;
+
+        /** The operand. */
+        private final CompiledExpr arg;
+
+        /** Create a node.
+         * @param expr the original expression.
+         * @param arg the compiled operand.
+         */
+        Unary(Op expr, CompiledExpr arg) {
+            super(expr, null);
+            this.op = expr.op;
+            this.arg = arg;
+        } // Unary(Op,CompiledExpr)
+
+        /** Evaluate this node, following {@link Op#eval1(Env)}.
+         * @param env the environment.
+         * @return the value.
+         */
+        public Expr eval(Env env) {
+            Expr val = arg.eval(env);
+            env.clear();
+            return Op.apply(op, val, null);
+        } // eval(Env)
+    } // Unary
+
+    /** A node for a binary operator.  Subclasses supply the code to apply
+     * the operator to the values of the operands.
+     */
+    private static class Binary extends CompiledExpr {
+        /** The operator. */
+        protected final int op;
+
+        /** The first operand. */
+        protected final CompiledExpr arg1;
+
+        /** The second operand. */
+        protected final CompiledExpr arg2;
+
+        /** Create a node.
+         * @param expr the original expression.
+         * @param arg1 the compiled first operand.
+         * @param arg2 the compiled second operand.
+         */
+        Binary(Op expr, CompiledExpr arg1, CompiledExpr arg2) {
+            super(expr, null);
+            this.op = expr.op;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        } // Binary(Op,CompiledExpr,CompiledExpr)
+
+        /** Evaluate this node, following {@link Op#eval1(Env)}.
+         * @param env the environment.
+         * @return the value.
+         */
+        public Expr eval(Env env) {
+            Env mark = env.mark();
+            Expr val1 = arg1.eval(env);
+            env.reset(mark);
+            Expr val2 = arg2.eval(env);
+            env.clear();
+            return apply(val1, val2);
+        } // eval(Env)
+
+        /** Apply the operator to the values of the operands.
+         * @param val1 the value of the first operand.
+         * @param val2 the value of the second operand.
+         * @return the result.
+         */
+        protected Expr apply(Expr val1, Expr val2) {
+            return Op.apply(op, val1, val2);
+        } // apply(Expr,Expr)
+    } // Binary
+
+    /** A node for &amp;&amp; or ||, which skips the second operand if the
+     * first determines the result.
+     * @see Op#shortCircuit
+     */
+    private static final class ShortCircuit extends Binary {
+        /** Create a node.
+         * @param expr the original expression.
+         * @param arg1 the compiled first operand.
+         * @param arg2 the compiled second operand.
+         */
+        ShortCircuit(Op expr, CompiledExpr arg1, CompiledExpr arg2) {
+            super(expr, arg1, arg2);
+        } // ShortCircuit(Op,CompiledExpr,CompiledExpr)
+
+        /** Evaluate this node, following {@link Op#eval1(Env)}.
+         * @param env the environment.
+         * @return the value.
+         */
+        public Expr eval(Env env) {
+            Env mark = env.mark();
+            Expr val1 = arg1.eval(env);
+            Expr result = Op.shortCircuitValue(op, val1);
+            if (result != null) {
+                env.clear();
+                return result;
+            }
+            env.reset(mark);
+            Expr val2 = arg2.eval(env);
+            env.clear();
+            return apply(val1, val2);
+        } // eval(Env)
+    } // ShortCircuit
+
+    /** Create a node for a binary operator.  Arithmetic operators and
+     * comparisons get nodes with fast paths for the case that both operands
+     * are integers or both are reals, and &amp;&amp; and || get nodes that
+     * may skip the second operand.  All other cases use
+     * {@link Op#apply(int,Expr,Expr)}.
+     * @param e the original expression.
+     * @param arg1 the compiled first operand.
+     * @param arg2 the compiled second operand.
+     * @return the node.
+     */
+    private static CompiledExpr binary(Op e, CompiledExpr arg1,
+                                        CompiledExpr arg2)
+    {
+        switch (e.op) {
+        case Expr.PLUS:
+            return new Binary(e, arg1, arg2) {
+                protected Expr apply(Expr a, Expr b) {
+                    if (a.type == Expr.INTEGER && b.type == Expr.INTEGER) {
+                        return Constant.getInstance(a.intValue() + b.intValue());
+                    }
+                    if (a.type == Expr.REAL && b.type == Expr.REAL) {
+                        return Constant.getInstance(
+                            a.realValue() + b.realValue());
+                    }
+                    return Op.apply(op, a, b);
+                }
+            };
+        case Expr.MINUS:
+            return new Binary(e, arg1, arg2) {
+                protected Expr apply(Expr a, Expr b) {
+                    if (a.type == Expr.INTEGER && b.type == Expr.INTEGER) {
+                        return Constant.getInstance(a.intValue() - b.intValue());
+                    }
+                    if (a.type == Expr.REAL && b.type == Expr.REAL) {
+                        return Constant.getInstance(
+                            a.realValue() - b.realValue());
+                    }
+                    return Op.apply(op, a, b);
+                }
+            };
+        case Expr.TIMES:
+            return new Binary(e, arg1, arg2) {
+                protected Expr apply(Expr a, Expr b) {
+                    if (a.type == Expr.INTEGER && b.type == Expr.INTEGER) {
+                        return Constant.getInstance(a.intValue() * b.intValue());
+                    }
+                    if (a.type == Expr.REAL && b.type == Expr.REAL) {
+                        return Constant.getInstance(
+                            a.realValue() * b.realValue());
+                    }
+                    return Op.apply(op, a, b);
+                }
+            };
+        case Expr.DIV:
+            return new Binary(e, arg1, arg2) {
+                protected Expr apply(Expr a, Expr b) {
+                    if (a.type == Expr.REAL && b.type == Expr.REAL) {
+                        return Constant.getInstance(
+                            a.realValue() / b.realValue());
+                    }
+                    // Integer division may need to report division by zero.
+                    return Op.apply(op, a, b);
+                }
+            };
+        case Expr.EQUAL:
+        case Expr.NOT_EQUAL:
+        case Expr.LESS:
+        case Expr.GREATER:
+        case Expr.LESS_EQ:
+        case Expr.GREATER_EQ:
+            return comparison(e, arg1, arg2);
+        case Expr.AND:
+        case Expr.OR:
+            return new ShortCircuit(e, arg1, arg2);
+        default:
+            return new Binary(e, arg1, arg2);
+        }
+    } // binary(Op,CompiledExpr,CompiledExpr)
+
+    /** Create a node for a comparison.  The fast paths compute
+     * <code>cmp = v1 &lt; v2 ? -1 : v1 == v2 ? 0 : 1</code> exactly as the
+     * interpreter does (so that comparisons involving NaN give the same
+     * results) and then test cmp in a way specific to the operator.
+     * @param e the original expression.
+     * @param arg1 the compiled first operand.
+     * @param arg2 the compiled second operand.
+     * @return the node.
+     */
+    private static CompiledExpr comparison(Op e, CompiledExpr arg1,
+                                            CompiledExpr arg2)
+    {
+        switch (e.op) {
+        case Expr.EQUAL:
+            return new Comparison(e, arg1, arg2) {
+                protected boolean test(int cmp) { return cmp == 0; }
+            };
+        case Expr.NOT_EQUAL:
+            return new Comparison(e, arg1, arg2) {
+                protected boolean test(int cmp) { return cmp != 0; }
+            };
+        case Expr.LESS:
+            return new Comparison(e, arg1, arg2) {
+                protected boolean test(int cmp) { return cmp < 0; }
+            };
+        case Expr.GREATER:
+            return new Comparison(e, arg1, arg2) {
+                protected boolean test(int cmp) { return cmp > 0; }
+            };
+        case Expr.LESS_EQ:
+            return new Comparison(e, arg1, arg2) {
+                protected boolean test(int cmp) { return cmp <= 0; }
+            };
+        default:
+            return new Comparison(e, arg1, arg2) {
+                protected boolean test(int cmp) { return cmp >= 0; }
+            };
+        }
+    } // comparison(Op,CompiledExpr,CompiledExpr)
+
+    /** A node for a comparison operator. */
+    private static abstract class Comparison extends Binary {
+        /** Create a node.
+         * @param expr the original expression.
+         * @param arg1 the compiled first operand.
+         * @param arg2 the compiled second operand.
+         */
+        Comparison(Op expr, CompiledExpr arg1, CompiledExpr arg2) {
+            super(expr, arg1, arg2);
+        } // Comparison(Op,CompiledExpr,CompiledExpr)
+
+        /** Apply the operator to the values of the operands.
+         * @param a the value of the first operand.
+         * @param b the value of the second operand.
+         * @return the result.
+         */
+        protected Expr apply(Expr a, Expr b) {
+            if (a.type == Expr.INTEGER && b.type == Expr.INTEGER) {
+                int v1 = a.intValue(), v2 = b.intValue();
+                return Constant.bool(test(v1 < v2 ? -1 : v1 == v2 ? 0 : 1));
+            }
+            if (a.type == Expr.REAL && b.type == Expr.REAL) {
+                double v1 = a.realValue(), v2 = b.realValue();
+                return Constant.bool(test(v1 < v2 ? -1 : v1 == v2 ? 0 : 1));
+            }
+            return Op.apply(op, a, b);
+        } // apply(Expr,Expr)
+
+        /** Convert the result of comparing the operands to a truth value.
+         * @param cmp -1, 0, or 1 according to whether the first operand is
+         * less than, equal to, or greater than the second.
+         * @return the value of the comparison.
+         */
+        protected abstract boolean test(int cmp);
+    } // Comparison
+} // ClosureCompiler
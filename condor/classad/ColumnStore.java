@@ -0,0 +1,569 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.util.*;
+
+/**
+ * A collection of ads stored by attribute ("column") rather than by ad,
+ * for scanning large numbers of ads with the same query.
+ * Each attribute whose values are all integers, all real numbers, or all
+ * strings is kept in an array of that type (strings are kept as indices
+ * into a dictionary of the distinct values).  Other attributes are not
+ * copied.
+ * <p>
+ * {@link #select(AttrName,Expr)} finds the ads satisfying a condition.  It
+ * gives the same result as evaluating the condition in each ad with
+ * {@link ClassAd#eval(AttrName,Expr,RecordExpr)}, but the parts of the
+ * condition that compare an attribute kept in an array with a constant are
+ * evaluated a column at a time, into bit maps, and combined with
+ * &amp;&amp;, || and ! a word at a time.  The remaining parts are evaluated
+ * in each ad, and only in the ads where their values are needed.  For
+ * example, in
+ * <pre>
+ *     Memory &gt; 4096 &amp;&amp; Arch == "X86_64" &amp;&amp; regexp("^vm1@", Name)
+ * </pre>
+ * the first two comparisons are evaluated on columns, and the call to
+ * regexp is evaluated only in the ads that satisfy them.
+ * <p>
+ * The ads themselves are also kept, and changes to them after they have
+ * been added are not noticed.
+ * @see BatchEvaluator
+ * @version 2.2
+ */
+public final class ColumnStore {
+    private static String VERSION = "$Id$";
+
+    /** Kind of column holding integers. */
+    private static final int INT = 0;
+
+    /** Kind of column holding real numbers. */
+    private static final int REAL = 1;
+
+    /** Kind of column holding strings. */
+    private static final int STRING = 2;
+
+    /** Kind of column whose values are not copied. */
+    private static final int OTHER = 3;
+
+    /** Classification of values, as by Op.classify. */
+    private static final int F = 0;
+
+    /** Classification of values, as by Op.classify. */
+    private static final int U = 1;
+
+    /** Classification of values, as by Op.classify. */
+    private static final int T = 2;
+
+    /** Classification of values, as by Op.classify. */
+    private static final int E = 3;
+
+    /** The ads, in the order they were added. */
+    private RecordExpr[] rows = new RecordExpr[16];
+
+    /** The number of ads. */
+    private int count = 0;
+
+    /** The columns, indexed by AttrName. */
+    private Map columns = new HashMap();
+
+    /** The values of one attribute. */
+    private static final class Column {
+        /** The kind of values:  INT, REAL, STRING, or OTHER. */
+        int kind;
+
+        /** Bit i is set if ad i has the attribute. */
+        long[] present;
+
+        /** The values, if kind is INT. */
+        int[] ints;
+
+        /** The values, if kind is REAL. */
+        double[] reals;
+
+        /** The indices of the values in dict, if kind is STRING. */
+        int[] codes;
+
+        /** The distinct values, if kind is STRING. */
+        List dict;
+
+        /** The indices of the distinct values, if kind is STRING. */
+        Map dictIndex;
+
+        /** Create a column.
+         * @param kind the kind of values.
+         * @param capacity the number of ads for which there is room.
+         */
+        Column(int kind, int capacity) {
+            this.kind = kind;
+            present = new long[(capacity + 63) >> 6];
+            switch (kind) {
+            case INT:
+                ints = new int[capacity];
+                break;
+            case REAL:
+                reals = new double[capacity];
+                break;
+            case STRING:
+                codes = new int[capacity];
+                dict = new ArrayList();
+                dictIndex = new HashMap();
+                break;
+            }
+        } // Column(int,int)
+
+        /** Make room for more ads.
+         * @param capacity the new number of ads for which there is room.
+         */
+        void grow(int capacity) {
+            present = Arrays.copyOf(present, (capacity + 63) >> 6);
+            if (ints != null) {
+                ints = Arrays.copyOf(ints, capacity);
+            }
+            if (reals != null) {
+                reals = Arrays.copyOf(reals, capacity);
+            }
+            if (codes != null) {
+                codes = Arrays.copyOf(codes, capacity);
+            }
+        } // grow(int)
+
+        /** Record the value of the attribute in one ad, changing the kind of
+         * the column if the value does not fit.
+         * @param row the index of the ad.
+         * @param value the value.
+         */
+        void set(int row, Expr value) {
+            present[row >> 6] |= 1L << row;
+            if (kind == OTHER) {
+                return;
+            }
+            switch (value.type) {
+            case Expr.INTEGER:
+                int i = ((Constant) value).intValue();
+                if (kind == INT) {
+                    ints[row] = i;
+                    return;
+                }
+                if (kind == REAL) {
+                    reals[row] = i;
+                    return;
+                }
+                break;
+            case Expr.REAL:
+                if (kind == INT) {
+                    // Comparisons of integers with numbers give the same
+                    // results when the integers are converted to double.
+                    reals = new double[ints.length];
+                    for (int j = 0; j < row; j++) {
+                        reals[j] = ints[j];
+                    }
+                    ints = null;
+                    kind = REAL;
+                }
+                if (kind == REAL) {
+                    reals[row] = ((Constant) value).realValue();
+                    return;
+                }
+                break;
+            case Expr.STRING:
+                if (kind == STRING) {
+                    String s = ((Constant) value).stringValue();
+                    Integer code = (Integer) dictIndex.get(s);
+                    if (code == null) {
+                        code = Integer.valueOf(dict.size());
+                        dict.add(s);
+                        dictIndex.put(s, code);
+                    }
+                    codes[row] = code.intValue();
+                    return;
+                }
+                break;
+            }
+            kind = OTHER;
+            ints = null;
+            reals = null;
+            codes = null;
+            dict = null;
+            dictIndex = null;
+        } // set(int,Expr)
+    } // Column
+
+    /** The classification of the values of a condition in each ad, as three
+     * bit maps.  An ad in none of them is classified as E.
+     */
+    private static final class Result {
+        /** Ads in which the value is <b>true</b>. */
+        final long[] t;
+
+        /** Ads in which the value is <b>false</b>. */
+        final long[] f;
+
+        /** Ads in which the value is UNDEFINED. */
+        final long[] u;
+
+        /** Create a Result with all ads classified as E.
+         * @param words the number of words in each bit map.
+         */
+        Result(int words) {
+            t = new long[words];
+            f = new long[words];
+            u = new long[words];
+        } // Result(int)
+    } // Result
+
+    /** Create an empty store. */
+    public ColumnStore() {
+    } // ColumnStore()
+
+    /** Add an ad to this store.
+     * @param ad the ad.
+     * @return the index of the ad.
+     */
+    public int add(RecordExpr ad) {
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, 2 * count);
+            for (Iterator i = columns.values().iterator(); i.hasNext(); ) {
+                ((Column) i.next()).grow(rows.length);
+            }
+        }
+        int row = count++;
+        rows[row] = ad;
+        for (Iterator i = ad.attributes(); i.hasNext(); ) {
+            AttrName name = (AttrName) i.next();
+            Expr value = ad.lookup(name);
+            Column c = (Column) columns.get(name);
+            if (c == null) {
+                int kind;
+                switch (value.type) {
+                case Expr.INTEGER: kind = INT; break;
+                case Expr.REAL: kind = REAL; break;
+                case Expr.STRING: kind = STRING; break;
+                default: kind = OTHER; break;
+                }
+                c = new Column(kind, rows.length);
+                columns.put(name, c);
+            }
+            c.set(row, value);
+        }
+        return row;
+    } // add(RecordExpr)
+
+    /** Get the number of ads.
+     * @return the number of ads in this store.
+     */
+    public int size() {
+        return count;
+    } // size()
+
+    /** Get an ad.
+     * @param row the index of the ad.
+     * @return the ad.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     */
+    public RecordExpr get(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("row " + row);
+        }
+        return rows[row];
+    } // get(int)
+
+    /** Find the ads in which a condition is true.
+     * @param name the name of the attribute as which the condition is
+     * evaluated.
+     * @param where the condition.
+     * @return a BitSet in which bit i is set if and only if the condition
+     * evaluates to <b>true</b> in ad i.
+     */
+    public BitSet select(String name, Expr where) {
+        return select(AttrName.fromString(name), where);
+    } // select(String,Expr)
+
+    /** Find the ads in which a condition is true.
+     * @param name the name of the attribute as which the condition is
+     * evaluated.
+     * @param where the condition.
+     * @return a BitSet in which bit i is set if and only if the condition
+     * evaluates to <b>true</b> in ad i, as by
+     * {@link ClassAd#eval(AttrName,Expr,RecordExpr)}.
+     */
+    public BitSet select(AttrName name, Expr where) {
+        long[] all = new long[(count + 63) >> 6];
+        for (int w = 0; w < all.length; w++) {
+            all[w] = -1L;
+        }
+        if ((count & 63) != 0) {
+            all[all.length - 1] = (1L << count) - 1;
+        }
+        long[] t = eval(where, name, where, all).t;
+        for (int w = 0; w < all.length; w++) {
+            t[w] &= all[w];
+        }
+        return BitSet.valueOf(t);
+    } // select(AttrName,Expr)
+
+    /** Classify the values of part of a condition.
+     * @param e the part of the condition.
+     * @param name the name of the attribute as which the condition is
+     * evaluated.
+     * @param where the whole condition.
+     * @param needed the ads in which the value is needed.  The result for
+     * other ads is unspecified.
+     * @return the classification of the values.
+     */
+    private Result eval(Expr e, AttrName name, Expr where, long[] needed) {
+        if (e.type == Expr.OP) {
+            Op o = (Op) e;
+            switch (o.op) {
+            case Expr.AND: {
+                // The second operand is needed only where the first is U or
+                // T:  F && x is F and E && x is E.
+                Result a = eval(o.arg1, name, where, needed);
+                long[] rest = new long[needed.length];
+                for (int w = 0; w < rest.length; w++) {
+                    rest[w] = needed[w] & (a.u[w] | a.t[w]);
+                }
+                Result b = eval(o.arg2, name, where, rest);
+                Result r = new Result(needed.length);
+                for (int w = 0; w < rest.length; w++) {
+                    r.t[w] = a.t[w] & b.t[w];
+                    r.f[w] = a.f[w] | ((a.u[w] | a.t[w]) & b.f[w]);
+                    r.u[w] = (a.u[w] & (b.u[w] | b.t[w])) | (a.t[w] & b.u[w]);
+                }
+                return r;
+            }
+            case Expr.OR: {
+                // The second operand is needed only where the first is F or
+                // U:  T || x is T and E || x is E.
+                Result a = eval(o.arg1, name, where, needed);
+                long[] rest = new long[needed.length];
+                for (int w = 0; w < rest.length; w++) {
+                    rest[w] = needed[w] & (a.f[w] | a.u[w]);
+                }
+                Result b = eval(o.arg2, name, where, rest);
+                Result r = new Result(needed.length);
+                for (int w = 0; w < rest.length; w++) {
+                    long bfe = ~(b.t[w] | b.u[w]);
+                    r.t[w] = a.t[w] | ((a.f[w] | a.u[w]) & b.t[w]);
+                    r.f[w] = a.f[w] & bfe;
+                    r.u[w] = (a.f[w] & b.u[w])
+                            | (a.u[w] & (b.f[w] | b.u[w]));
+                }
+                return r;
+            }
+            case Expr.NOT: {
+                Result a = eval(o.arg1, name, where, needed);
+                Result r = new Result(needed.length);
+                System.arraycopy(a.f, 0, r.t, 0, needed.length);
+                System.arraycopy(a.t, 0, r.f, 0, needed.length);
+                System.arraycopy(a.u, 0, r.u, 0, needed.length);
+                return r;
+            }
+            case Expr.EQUAL:
+            case Expr.NOT_EQUAL:
+            case Expr.LESS:
+            case Expr.GREATER:
+            case Expr.LESS_EQ:
+            case Expr.GREATER_EQ: {
+                Result r = compare(o, name);
+                if (r != null) {
+                    return r;
+                }
+                break;
+            }
+            }
+        }
+        return evalRows(e, name, where, needed);
+    } // eval(Expr,AttrName,Expr,long[])
+
+    /** Classify the values of a comparison of an attribute with a constant,
+     * using the column of the attribute.
+     * @param o the comparison.
+     * @param name the name of the attribute as which the condition is
+     * evaluated.
+     * @return the classification of the values, or null if the comparison
+     * is not of that form or the attribute is not kept in an array.
+     */
+    private Result compare(Op o, AttrName name) {
+        AttrRef ref;
+        Constant k;
+        boolean constFirst;
+        if (o.arg1.type == Expr.ATTRIBUTE && o.arg2 instanceof Constant) {
+            ref = (AttrRef) o.arg1;
+            k = (Constant) o.arg2;
+            constFirst = false;
+        } else if (o.arg2.type == Expr.ATTRIBUTE
+                    && o.arg1 instanceof Constant)
+        {
+            ref = (AttrRef) o.arg2;
+            k = (Constant) o.arg1;
+            constFirst = true;
+        } else {
+            return null;
+        }
+        if (ref.name.equals(name) || ref.name.equals(AttrName.PARENT)) {
+            return null;
+        }
+        Column c = (Column) columns.get(ref.name);
+        if (c != null && c.kind == OTHER) {
+            return null;
+        }
+        int words = (count + 63) >> 6;
+        Result r = new Result(words);
+
+        // Where the attribute is missing, its value is UNDEFINED.
+        int absent = classify(constFirst
+                                ? Op.apply(o.op, k, Constant.Undef)
+                                : Op.apply(o.op, Constant.Undef, k));
+        long[] present = c == null ? new long[words] : c.present;
+        for (int w = 0; w < words; w++) {
+            long a = ~present[w];
+            switch (absent) {
+            case T: r.t[w] = a; break;
+            case F: r.f[w] = a; break;
+            case U: r.u[w] = a; break;
+            }
+        }
+        if (c == null) {
+            return r;
+        }
+
+        boolean numeric = k.type == Expr.INTEGER || k.type == Expr.REAL;
+        if ((c.kind == STRING && k.type != Expr.STRING)
+            || (c.kind != STRING && !numeric))
+        {
+            // The result does not depend on the value of the attribute, so
+            // evaluate it on a sample value.
+            Constant sample = c.kind == STRING
+                ? Constant.getInstance("")
+                : Constant.getInstance(0);
+            int cls = classify(constFirst
+                                ? Op.apply(o.op, k, sample)
+                                : Op.apply(o.op, sample, k));
+            for (int w = 0; w < words; w++) {
+                switch (cls) {
+                case T: r.t[w] |= present[w]; break;
+                case F: r.f[w] |= present[w]; break;
+                case U: r.u[w] |= present[w]; break;
+                }
+            }
+            return r;
+        }
+
+        // ok[cmp + 1] is the result of the comparison when comparing the
+        // left operand to the right one gives cmp, as in Op.apply.
+        boolean[] ok = new boolean[3];
+        for (int cmp = -1; cmp <= 1; cmp++) {
+            switch (o.op) {
+            case Expr.EQUAL: ok[cmp + 1] = cmp == 0; break;
+            case Expr.NOT_EQUAL: ok[cmp + 1] = cmp != 0; break;
+            case Expr.LESS: ok[cmp + 1] = cmp < 0; break;
+            case Expr.GREATER: ok[cmp + 1] = cmp > 0; break;
+            case Expr.LESS_EQ: ok[cmp + 1] = cmp <= 0; break;
+            case Expr.GREATER_EQ: ok[cmp + 1] = cmp >= 0; break;
+            }
+        }
+        if (c.kind == STRING) {
+            String s = k.stringValue();
+            boolean[] match = new boolean[c.dict.size()];
+            for (int i = 0; i < match.length; i++) {
+                String v = (String) c.dict.get(i);
+                int cmp = constFirst
+                    ? s.compareToIgnoreCase(v)
+                    : v.compareToIgnoreCase(s);
+                match[i] = ok[Integer.signum(cmp) + 1];
+            }
+            int[] codes = c.codes;
+            for (int w = 0; w < words; w++) {
+                long bits = 0;
+                int end = Math.min(count, (w + 1) << 6);
+                for (int i = w << 6; i < end; i++) {
+                    if (match[codes[i]]) {
+                        bits |= 1L << i;
+                    }
+                }
+                r.t[w] |= bits & present[w];
+                r.f[w] |= ~bits & present[w];
+            }
+            return r;
+        }
+        double x = k.realValue();
+        boolean lt = ok[0];
+        boolean eq = ok[1];
+        boolean gt = ok[2];
+        int[] ints = c.ints;
+        double[] reals = c.reals;
+        for (int w = 0; w < words; w++) {
+            long bits = 0;
+            int end = Math.min(count, (w + 1) << 6);
+            for (int i = w << 6; i < end; i++) {
+                double v = ints != null ? ints[i] : reals[i];
+                boolean b = constFirst
+                    ? (x < v ? lt : x == v ? eq : gt)
+                    : (v < x ? lt : v == x ? eq : gt);
+                if (b) {
+                    bits |= 1L << i;
+                }
+            }
+            r.t[w] |= bits & present[w];
+            r.f[w] |= ~bits & present[w];
+        }
+        return r;
+    } // compare(Op,AttrName)
+
+    /** Classify the values of part of a condition by evaluating it in each
+     * ad where it is needed.
+     * @param e the part of the condition.
+     * @param name the name of the attribute as which the condition is
+     * evaluated.
+     * @param where the whole condition.
+     * @param needed the ads in which the value is needed.
+     * @return the classification of the values.
+     */
+    private Result evalRows(Expr e, AttrName name, Expr where, long[] needed)
+    {
+        Result r = new Result(needed.length);
+        Env env = new Env();
+        for (int w = 0; w < needed.length; w++) {
+            for (long bits = needed[w]; bits != 0; bits &= bits - 1) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                env.clear();
+                env.push(rows[i], name, where);
+                long bit = 1L << i;
+                switch (classify(e.eval(env))) {
+                case T: r.t[w] |= bit; break;
+                case F: r.f[w] |= bit; break;
+                case U: r.u[w] |= bit; break;
+                }
+            }
+        }
+        return r;
+    } // evalRows(Expr,AttrName,Expr,long[])
+
+    /** Classify a value for the purposes of &amp;&amp;, || and !.
+     * @param v the value.
+     * @return T or F for a boolean, U for UNDEFINED, and E for anything
+     * else.
+     */
+    private static int classify(Expr v) {
+        switch (v.type) {
+        case Expr.BOOLEAN: return v.isTrue() ? T : F;
+        case Expr.UNDEFINED: return U;
+        default: return E;
+        }
+    } // classify(Expr)
+} // ColumnStore
@@ -0,0 +1,80 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad;
+
+/**
+ * An expression that has been translated into a form that can be evaluated
+ * more quickly than by walking the expression tree.
+ * Evaluating a CompiledExpr in a given environment always gives the same
+ * result as evaluating the original expression with
+ * {@link Expr#eval(Env)}.
+ * @see ExprCompiler
+ * @see ClosureCompiler
+ * @see Expr#compile()
+ * @version 2.2
+ */
+public abstract class CompiledExpr {
+    private static String VERSION = "$Id$";
+
+    /** The expression from which this CompiledExpr was created. */
+    public final Expr expr;
+
+    /** Sub-expressions referred to by generated code. */
+    /*package*/ final Expr[] nodes;
+
+    /** Create a CompiledExpr.
+     * @param expr the original expression.
+     * @param nodes sub-expressions referred to by the compiled form.
+     */
+    /*package*/ CompiledExpr(Expr expr, Expr[] nodes) {
+        this.expr = expr;
+        this.nodes = nodes;
+    } // CompiledExpr(Expr,Expr[])
+
+    /** Evaluate this expression in a given environment.
+     * <p><b>Warning</b>: Like {@link Expr#eval(Env)}, this method may
+     * update the env parameter in place.
+     * @param env an environment consisting of a list of RecordExprs (innermost
+     * first) used to resolve AttrRefs.
+     * @return a Constant, ListExpr, or RecordExpr representing the value.
+     */
+    public abstract Expr eval(Env env);
+
+    /** Evaluate this expression in the scope of a given RecordExpr, as if it
+     * were the value of an attribute of the record.
+     * @param ad the record.
+     * @return a Constant, ListExpr, or RecordExpr representing the value.
+     */
+    public Expr eval(RecordExpr ad) {
+        Env env = new Env();
+        env.push(ad);
+        return eval(env);
+    } // eval(RecordExpr)
+
+    /** Evaluate this expression in a "top-level" (empty) environment.
+     * @return a Constant, ListExpr, or RecordExpr representing the value.
+     */
+    public Expr eval() {
+        return eval(new Env());
+    } // eval()
+
+    /** Convert this CompiledExpr to a string.
+     * @return the string representation of the original expression.
+     */
+    public String toString() {
+        return expr.toString();
+    } // toString()
+} // CompiledExpr
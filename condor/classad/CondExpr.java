@@ -91,21 +91,31 @@ public class CondExpr extends Expr {
      * @return a Constant representing the value.
      */
     protected Expr eval1(Env env) {
-        Env env1 = new Env(env);
-        Expr ecv = ec.eval(env1);
+        Env mark = env.mark();
+        Expr ecv = ec.eval(env);
+        env.reset(mark);
 
-        switch (ecv.type) {
-        case BOOLEAN:
+        if (ecv.type == BOOLEAN) {
             return ecv.isTrue() ? et.eval(env) : ef.eval(env);
+        }
+        env.clear();
+        return nonBoolean(ecv);
+    } // eval1(Env)
+
+    /** The value of a conditional expression whose condition evaluates to
+     * something other than a boolean.
+     * @param ecv the value of the condition.
+     * @return ecv if it is undefined or error, otherwise an error Constant.
+     */
+    /*package*/ static Expr nonBoolean(Expr ecv) {
+        switch (ecv.type) {
         case UNDEFINED:
         case ERROR:
-            env.clear();
             return ecv;
         default:
-            env.clear();
             return Constant.error("type " + ecv.typeName()
                                 + " found where boolean expected"
                                 + " in conditional expression");
         }
-    } // eval1(Env)
+    } // nonBoolean(Expr)
 } // CondExpr
@@ -16,7 +16,6 @@
 package condor.classad;
 
 import java.text.Format;
-import java.text.SimpleDateFormat;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.*;
@@ -25,20 +24,45 @@ import java.util.regex.Matcher;
 
 /**
  * A constant (Integer, Real, etc.).  The constant is wrapped so that it
- * may be used as a node in an expression tree.  To conserve space, there
- * is at most one Constant instance with any given value.
+ * may be used as a node in an expression tree.  To conserve space, the
+ * factory methods return shared instances for common values:  booleans,
+ * small integers, and short strings (the last through a fixed-size cache,
+ * so two calls with the same string usually, but not always, return the
+ * same instance).  Other values are not shared, since most of them (times,
+ * job ids, and the like) are seldom seen twice, and remembering them all
+ * would require unbounded space.  See {@link #uniqueInstances} for the
+ * older behavior, in which there is at most one Constant with any given
+ * value.
  * @see Expr
  * @author <a href="mailto:solomon@cs.wisc.edu">Marvin Solomon</a>
  * @version 2.2
  */
 public class Constant extends Expr {
     // ------------ Public static (class) variables -----------------------
+    /** If true, the factory methods guarantee that there is at most one
+     * Constant with any given value (other than ERROR and UNDEFINED), so that
+     * Constants with the same value are identical.  This is done by
+     * remembering every value ever created, so the space used grows without
+     * bound.  The default is false.
+     */
+    public static boolean uniqueInstances = false;
+
+    /** If true (the default), ERROR and UNDEFINED results of evaluation carry
+     * a message explaining their cause, as shown by
+     * {@link ClassAdWriter#SHOW_ERROR_DETAIL}.  If false, the evaluator
+     * returns the shared constants {@link #Error} and {@link #Undef}, with
+     * empty messages, for the most common causes (such as a reference to a
+     * missing attribute), which saves building the messages at all.
+     * Setting it to false does not change any other result of evaluation.
+     */
+    public static boolean errorDetail = true;
+
     // ------------ Private static (class) variables ----------------------
     private static String VERSION = "$Id: Constant.java,v 1.31 2005/05/07 13:11:34 solomon Exp $";
 
-    /** The set of all extant instances of Constant, indexed by value.
-     * This Map is used to save storage overhead by ensuring that there
-     * is at most one Constant with the same value.
+    /** The set of all instances of Constant created while
+     * {@link #uniqueInstances} is true, indexed by value.
+     * All access must be synchronized on the Map.
      */
     private static Map instanceMap = new HashMap();
 
@@ -62,8 +86,8 @@ public class Constant extends Expr {
     // ------------ Public instance variables -----------------------------
     /** The actual value of this Constant.  Usage depends on type:
      * <dl>
-     * <dt>UNDEFINED     <dd>A String error message.
-     * <dt>ERROR         <dd>A String error message.
+     * <dt>UNDEFINED     <dd>An error message:  A String or a Message.
+     * <dt>ERROR         <dd>An error message:  A String or a Message.
      * <dt>BOOLEAN       <dd>null (there are only two Boolean Constants).
      * <dt>INTEGER       <dd>An Integer value.
      * <dt>REAL          <dd>A Double value.
@@ -80,17 +104,6 @@ public class Constant extends Expr {
      * an offset from GMT) where it was created.
      */
     private static class Timestamp {
-        /** Format for converting a Date (interpreted as GMT) to ISO 8601
-         * format.
-         */
-        private static final SimpleDateFormat dateAndTimeFormat;
-
-        /** Initialize dateAndTimeFormat. */
-        static {
-            dateAndTimeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-            dateAndTimeFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-        }
-
         /** The instant in time, in milliseconds from the epoch, UTC. */
         public long ms;
 
@@ -132,8 +145,7 @@ public class Constant extends Expr {
         public String toString() {
             char[] zone = new char[6];
             int off = offset;
-            String dt
-                = dateAndTimeFormat.format(new Date(ms + 1000 * off));
+            String dt = TimeFormat.dateAndTime(ms + 1000 * off);
             if (off < 0) {
                 off = -off;
                 zone[0] = '-';
@@ -154,6 +166,77 @@ public class Constant extends Expr {
         } // Timestamp.toString()
     } // Timestamp
 
+    /** The message of an ERROR or UNDEFINED constant, built only when it is
+     * first needed.  It is represented by a sequence of parts, which are
+     * converted to strings and concatenated by {@link #toString()}; the
+     * result is remembered and the parts are discarded.
+     * Records and lists among the parts are replaced, when the Message is
+     * created, by a short description such as "a record of size 80", so
+     * that an ERROR or UNDEFINED value (which may be kept in an
+     * {@link EvalCache} or a list) does not keep an entire ad alive, and
+     * so that the text does not change if the ad does.  The other parts
+     * (strings, names, and scalar constants) are immutable.
+     * Messages are equal if their texts are equal.
+     */
+    /*package*/ static final class Message {
+        /** The parts of the message, or null if text has been computed. */
+        private Object[] parts;
+
+        /** The text of the message, or null if it has not been computed. */
+        private String text;
+
+        /** Creates a Message.
+         * @param parts the parts of the message.
+         */
+        Message(Object[] parts) {
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] instanceof RecordExpr) {
+                    parts[i] = "a record of size "
+                        + ((RecordExpr) parts[i]).size();
+                } else if (parts[i] instanceof ListExpr) {
+                    parts[i] = "a list of size "
+                        + ((ListExpr) parts[i]).size();
+                }
+            }
+            this.parts = parts;
+        } // Message.Message(Object[])
+
+        /** Returns the text of this Message, computing it if necessary.
+         * @return the concatenation of the string forms of the parts.
+         */
+        public synchronized String toString() {
+            if (text == null) {
+                StringBuffer sb = new StringBuffer();
+                for (int i = 0; i < parts.length; i++) {
+                    sb.append(parts[i]);
+                }
+                text = sb.toString();
+                parts = null;
+            }
+            return text;
+        } // Message.toString()
+
+        /** Compares this Message to o.
+         * @return true if o is a Message with the same text.
+         */
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (! (o instanceof Message)) {
+                return false;
+            }
+            return toString().equals(o.toString());
+        } // Message.equals(Object)
+
+        /** Returns a hash code for this Message.
+         * @return the hash code of its text.
+         */
+        public int hashCode() {
+            return toString().hashCode();
+        } // Message.hashCode()
+    } // Message
+
     /** Compare this Expr to another expression to check for "deep structural
      * equality".  For constants, this is just like "is" except that
      * numeric constants are compared like "==".
@@ -161,18 +244,16 @@ public class Constant extends Expr {
      * @return true of this and the other expression are isomorphic.
      */
     public boolean sameAs(Expr other) {
-        try {
-            if (other == null) {
-                return false;
-            }
-            if (type == REAL || type == INTEGER) {
-                return this.realValue() == other.realValue();
-            } else {
-                return this.is(other);
-            }
-        } catch (ArithmeticException e) {
+        if (other == null) {
             return false;
         }
+        if (type == REAL || type == INTEGER) {
+            return other instanceof Constant
+                && ((Constant) other).isNumber()
+                && this.realValue() == other.realValue();
+        } else {
+            return this.is(other);
+        }
     } // sameAs(Expr)
 
     // ------------ Private constants  ------------------------------------
@@ -199,6 +280,39 @@ public class Constant extends Expr {
     /** A STRING Constant with the value "", to expedite common cases. */
     private static final Constant EMPTY_STRING = new Constant("", STRING);
 
+    /** The smallest integer in smallInts. */
+    private static final int MIN_SMALL_INT = -128;
+
+    /** The largest integer in smallInts. */
+    private static final int MAX_SMALL_INT = 1023;
+
+    /** The unique INTEGER Constants with values in the range MIN_SMALL_INT
+     * to MAX_SMALL_INT, indexed by value - MIN_SMALL_INT.
+     */
+    private static final Constant[] smallInts =
+        new Constant[MAX_SMALL_INT - MIN_SMALL_INT + 1];
+    static {
+        for (int i = MIN_SMALL_INT; i <= MAX_SMALL_INT; i++) {
+            smallInts[i - MIN_SMALL_INT] =
+                i == 0 ? INT_ZERO
+                : i == 1 ? INT_ONE
+                : new Constant(Integer.valueOf(i), INTEGER);
+        }
+    }
+
+    /** The longest string that is entered in stringCache.  Longer strings
+     * are unlikely to recur.
+     */
+    private static final int MAX_CACHED_STRING = 64;
+
+    /** A cache of recently created STRING Constants, indexed by a hash of
+     * the value.  A new entry simply replaces any previous entry with the
+     * same index, so the cache never grows.  Since a Constant is immutable,
+     * the cache may be read and updated by several threads without locking:
+     * the worst a race can do is lose an entry.
+     */
+    private static final Constant[] stringCache = new Constant[4096];
+
     /** Helper table for relTimeToString and stringToRelTime.  */
     private static final int[] threshold = {
         24*60*60*1000,
@@ -275,39 +389,41 @@ public class Constant extends Expr {
     // --- Factory methods
 
     /** Common implementation of factory methods.
-     * Returns the unique constant of type "type" and value "val", creating
-     * one if necessary.  This is the internal method used to implement most of
-     * the other getInstance methods
+     * Returns a constant of type "type" and value "val".  If
+     * {@link #uniqueInstances} is true, it is the unique such constant,
+     * created if necessary; otherwise, it is a new one.  This is the internal
+     * method used to implement most of the other getInstance methods
      * @param val the value.
      * @param type the type.
      * @return a new constant.
      */
     private static final Constant getInstance(Object val, int type) {
-        Constant result = (Constant) instanceMap.get(val);
-        if (result == null) {
-            result = new Constant(val, type);
-            instanceMap.put(val, result);
+        if (!uniqueInstances) {
+            return new Constant(val, type);
+        }
+        synchronized (instanceMap) {
+            Constant result = (Constant) instanceMap.get(val);
+            if (result == null) {
+                result = new Constant(val, type);
+                instanceMap.put(val, result);
+            }
+            return result;
         }
-        return result;
     } // getInstance(Object, int)
 
-    /** Returns the unique integer constant with value "value", creating one if
-     * necessary.
+    /** Returns an integer constant with value "value".  Small values (at
+     * least those from -128 to 1023) have unique, preallocated instances.
      * @param value the value of the Constant.
      * @return a new INTEGER constant.
      */
     public static final Constant getInstance(int value) {
-        if (value == 0) {
-            return INT_ZERO;
-        }
-        if (value == 1) {
-            return INT_ONE;
+        if (value >= MIN_SMALL_INT && value <= MAX_SMALL_INT) {
+            return smallInts[value - MIN_SMALL_INT];
         }
         return getInstance(new Integer(value), INTEGER);
     } // getInstance(int)
 
-    /** Returns the unique real constant with value "value", creating one if
-     * necessary.
+    /** Returns a real constant with value "value".
      * @param value the value of the Constant.
      * @return a new REAL constant.
      */
@@ -333,8 +449,9 @@ public class Constant extends Expr {
         return value ? TRUE : FALSE;
     } // getInstance(boolean)
 
-    /** Returns the unique String constant with value "value", creating one if
-     * necessary.
+    /** Returns a String constant with value "value".  If the string is
+     * short and has been seen recently, the result may be the instance
+     * returned by a previous call.
      * @param value the value of the Constant, not including any surrounding
      *              quotes.
      * @return a new STRING constant.
@@ -346,7 +463,17 @@ public class Constant extends Expr {
         if (value.length() == 0) {
             return EMPTY_STRING;
         }
-        return getInstance(value, STRING);
+        if (uniqueInstances || value.length() > MAX_CACHED_STRING) {
+            return getInstance(value, STRING);
+        }
+        int h = value.hashCode();
+        int i = (h ^ (h >>> 16)) & (stringCache.length - 1);
+        Constant result = stringCache[i];
+        if (result == null || !value.equals(result.value)) {
+            result = new Constant(value, STRING);
+            stringCache[i] = result;
+        }
+        return result;
     } // getInstance(String)
 
     /** Creates a String Constant from a character array, processing backslash
@@ -360,8 +487,8 @@ public class Constant extends Expr {
         return getInstance(unquoteString(buf, start, stop));
     } // getInstance(char[],int,int)
 
-    /** Returns the unique absolute time constant corresponding to date "date",
-     * in the local timezone, creating one if necessary.
+    /** Returns an absolute time constant corresponding to date "date",
+     * in the local timezone.
      * @param date the date.
      * @return a new ABSTIME constant.
      */
@@ -371,8 +498,8 @@ public class Constant extends Expr {
                            ABSOLUTE_TIME);
     } // getInstance(Date)
 
-    /** Returns the unique absolute time constant corresponding to date "date",
-     * in the indicated timezone, creating one if necessary.
+    /** Returns an absolute time constant corresponding to date "date",
+     * in the indicated timezone.
      * @param date the date.
      * @param tz the timezone, as a number of seconds <em>east</em> of
      * Greenwich.
@@ -382,8 +509,7 @@ public class Constant extends Expr {
         return getInstance(new Timestamp(date.getTime(), tz), ABSOLUTE_TIME);
     } // getInstance(Date,int)
 
-    /** Returns the unique absolute time constant with time "t" and offset "z",
-     * creating one if necessary.
+    /** Returns an absolute time constant with time "t" and offset "z".
      * @param t offset from the epoch, in milliseconds.
      * @param z seconds east of Greenwich, in seconds.
      * @return a new ABSTIME constant.
@@ -392,8 +518,7 @@ public class Constant extends Expr {
         return getInstance(new Timestamp(t, z), ABSOLUTE_TIME);
     } // getInstance(long, int)
 
-    /** Returns the unique relative time constant with value "value",
-     * creating one if necessary.
+    /** Returns a relative time constant with value "value".
      * @param value the length of the time interval in milliseconds
      * @return a new RELTIME constant.
      */
@@ -425,6 +550,33 @@ public class Constant extends Expr {
         return new Constant(msg, UNDEFINED);
     } // undefined(String)
 
+    /** Creates an ERROR constant whose message is the concatenation of the
+     * string forms of some parts, computed only if the message is needed.
+     * If {@link #errorDetail} is false, the result is {@link #Error}.
+     * @param parts the parts of the message.
+     * @return the Constant.
+     */
+    /*package*/ static Constant error(Object[] parts) {
+        if (!errorDetail) {
+            return Error;
+        }
+        return new Constant(new Message(parts), ERROR);
+    } // error(Object[])
+
+    /** Creates an UNDEFINED constant whose message is the concatenation of
+     * the string forms of some parts, computed only if the message is
+     * needed.  If {@link #errorDetail} is false, the result is
+     * {@link #Undef}.
+     * @param parts the parts of the message.
+     * @return the Constant.
+     */
+    /*package*/ static Constant undefined(Object[] parts) {
+        if (!errorDetail) {
+            return Undef;
+        }
+        return new Constant(new Message(parts), UNDEFINED);
+    } // undefined(Object[])
+
     /** Convenience function that converts a boolean to Constant.TRUE or
      * Constant.FALSE.  Equivalent to getInstance(b).
      * @param b the boolean value.
@@ -588,6 +740,90 @@ public class Constant extends Expr {
             + " in integer context");
     } // milliseconds()
 
+    // The following accessors never throw exceptions.  Each converts the
+    // value to the indicated type if possible, and otherwise returns its
+    // argument, so that callers that test the type of a Constant only to
+    // avoid an exception need not do so.
+
+    /** Gets the integer value of this Constant, or a default value.
+     * @param otherwise the value to return if type != INTEGER.
+     * @return the integer value of this Constant, or otherwise.
+     * @see #intValue()
+     */
+    public int intValue(int otherwise) {
+        if (type != INTEGER) {
+            return otherwise;
+        }
+        return ((Integer)value).intValue();
+    } // intValue(int)
+
+    /** Gets the double floating point value of this Constant, or a default
+     * value.
+     * @param otherwise the value to return if type != INTEGER and
+     *                  type != REAL.
+     * @return the real value of this Constant converted to double, or
+     *         otherwise.
+     * @see #realValue()
+     */
+    public double realValue(double otherwise) {
+        switch (type) {
+            case REAL:
+                return ((Double)value).doubleValue();
+            case INTEGER:
+                return ((Integer)value).doubleValue();
+        }
+        return otherwise;
+    } // realValue(double)
+
+    /** Gets the string value of this Constant, or a default value.
+     * @param otherwise the value to return if type != STRING.
+     * @return the String value of this Constant, or otherwise.
+     * @see #stringValue()
+     */
+    public String stringValue(String otherwise) {
+        if (type != STRING) {
+            return otherwise;
+        }
+        return (String)value;
+    } // stringValue(String)
+
+    /** Converts a time value to milliseconds, or returns a default value.
+     * @param otherwise the value to return if this Constant is not a time
+     *                  value.
+     * @return the number of milliseconds (RELATIVE_TIME), the number of
+     *         milliseconds since 1970-01-01 UTC (ABSOLUTE_TIME), or
+     *         otherwise.
+     * @see #milliseconds()
+     */
+    public long milliseconds(long otherwise) {
+        if (type == ABSOLUTE_TIME) {
+            return ((Timestamp) value).ms;
+        }
+        if (type == RELATIVE_TIME ) {
+            return ((Long) value).longValue();
+        }
+        return otherwise;
+    } // milliseconds(long)
+
+    /** Tests whether this Constant is a number.
+     * @return true if type == INTEGER or type == REAL.
+     */
+    public boolean isNumber() {
+        return type == INTEGER || type == REAL;
+    } // isNumber()
+
+    /** Creates the ERROR value for a use of this Constant in the wrong
+     * context.  Its message is that of the exception thrown by the
+     * corresponding accessor, such as "string "3" in real context", but it
+     * is only built if it is needed.
+     * @param context the type required, such as "integer" or "real".
+     * @return an ERROR constant.
+     */
+    /*package*/ Constant contextError(String context) {
+        return error(new Object[] {
+            typeName(), " ", this, " in ", context, " context" });
+    } // contextError(String)
+
     /** Returns the time zone of an absolute time value.
      * @exception ArithmeticException if type != ABSOLUTE_TIME.
      * @return the zone, in seconds <em>east</em> of Greenwich
@@ -607,7 +843,7 @@ public class Constant extends Expr {
         if (type != ERROR && type != UNDEFINED) {
             throw new ArithmeticException("annotation(" + typeName() + ")");
         }
-        return (String) value;
+        return value.toString();
     } // annotation()
 
     // --- Misc static methods for string processing.   These methods
@@ -1059,7 +1295,7 @@ public class Constant extends Expr {
             return error("Null abstime");
         }
         Matcher m = timeZonePattern.matcher(s);
-        Calendar cal;
+        GregorianCalendar cal;
 
         // Check for a trailing time zone:  Z or z or dddd or dd:dd,
         // and allocate an appropriate "calendar" object.
@@ -1077,6 +1313,8 @@ public class Constant extends Expr {
         } else {
             cal = new GregorianCalendar();
         }
+        // Use the proleptic Gregorian calendar, as TimeFormat does.
+        cal.setGregorianChange(new Date(Long.MIN_VALUE));
 
         // Fill in the calendar values
         cal.clear();
@@ -0,0 +1,215 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.util.*;
+
+/**
+ * The dependencies among the attributes of a RecordExpr.
+ * Attribute A depends directly on attribute B if the definition of A
+ * contains a reference to B:  an AttrRef with name B, a selection
+ * <code>r.B</code>, or a subscript <code>r["B"]</code>, whatever r is,
+ * since r may turn out to be this record (as in <code>self.B</code> or
+ * <code>parent.B</code>).  The graph is conservative:  A reference inside
+ * a nested record is counted even if the nested record defines the name
+ * itself, and a subscript whose selector is not a constant, or a call to a
+ * library function that is passed the Env (see
+ * {@link FuncCall#mayUseEnv()}), makes the attribute depend on every other
+ * attribute.  Names need not be attributes of the RecordExpr; a reference to
+ * an attribute of an enclosing record is recorded so that defining the
+ * attribute later is noticed.
+ * <p>
+ * The graph is kept up to date by {@link RecordExpr#insertAttribute(AttrName,
+ * Expr)} and {@link RecordExpr#removeAttribute(AttrName)}.
+ * @see RecordExpr#dependents(AttrName)
+ * @version 2.2
+ */
+/*package*/ final class DependencyGraph {
+    private static String VERSION = "$Id$";
+
+    /** For each attribute, the set of names it refers to. */
+    private final Map uses = new HashMap();
+
+    /** For each name, the set of attributes that refer to it directly. */
+    private final Map usedBy = new HashMap();
+
+    /** The attributes that may depend on any attribute. */
+    private final Set opaque = new HashSet();
+
+    /** Results of dependents(), indexed by name.  Cleared whenever the graph
+     * changes.
+     */
+    private final Map closures = new HashMap();
+
+    /** Create the dependency graph of a RecordExpr.
+     * @param rec the RecordExpr.
+     */
+    /*package*/ DependencyGraph(RecordExpr rec) {
+        for (Iterator i = rec.attributes(); i.hasNext(); ) {
+            AttrName name = (AttrName) i.next();
+            define(name, rec.lookup(name));
+        }
+    } // DependencyGraph(RecordExpr)
+
+    /** Record a new definition of an attribute, replacing the old one.
+     * @param name the name of the attribute.
+     * @param def its definition, or null if the attribute has been removed.
+     */
+    /*package*/ void define(AttrName name, Expr def) {
+        Set old = (Set) uses.get(name);
+        if (def != null && def.type >= Expr.UNDEFINED && old != null
+                && old.isEmpty() && !opaque.contains(name))
+        {
+            // A constant replacing a constant:  nothing changes.  This is
+            // the common case of updating an attribute such as LoadAvg.
+            return;
+        }
+        closures.clear();
+        uses.remove(name);
+        if (old != null) {
+            for (Iterator i = old.iterator(); i.hasNext(); ) {
+                Set users = (Set) usedBy.get(i.next());
+                users.remove(name);
+            }
+        }
+        opaque.remove(name);
+        if (def == null) {
+            return;
+        }
+        Set refs = new HashSet();
+        if (collect(def, refs)) {
+            opaque.add(name);
+        }
+        uses.put(name, refs);
+        for (Iterator i = refs.iterator(); i.hasNext(); ) {
+            Object ref = i.next();
+            Set users = (Set) usedBy.get(ref);
+            if (users == null) {
+                usedBy.put(ref, users = new HashSet());
+            }
+            users.add(name);
+        }
+    } // define(AttrName,Expr)
+
+    /** Find all the attributes that depend, directly or indirectly, on a
+     * given name.
+     * @param name the name.
+     * @return the set of AttrNames of attributes depending on name.  It
+     * includes name itself only if name is part of a cycle.  The set must
+     * not be modified.
+     */
+    /*package*/ Set dependents(AttrName name) {
+        Set result = (Set) closures.get(name);
+        if (result != null) {
+            return result;
+        }
+        result = new HashSet();
+        closures.put(name, result);
+        LinkedList work = new LinkedList();
+        work.add(name);
+        for (Iterator i = opaque.iterator(); i.hasNext(); ) {
+            Object a = i.next();
+            if (!a.equals(name) && result.add(a)) {
+                work.add(a);
+            }
+        }
+        while (!work.isEmpty()) {
+            Set users = (Set) usedBy.get(work.removeFirst());
+            if (users == null) {
+                continue;
+            }
+            for (Iterator i = users.iterator(); i.hasNext(); ) {
+                Object a = i.next();
+                if (result.add(a)) {
+                    work.add(a);
+                }
+            }
+        }
+        return result;
+    } // dependents(AttrName)
+
+    /** Add the names referred to by an expression to a set.
+     * @param e the expression.
+     * @param refs the set of AttrNames.
+     * @return true if e may also refer to names not added to refs.
+     */
+    private static boolean collect(Expr e, Set refs) {
+        switch (e.type) {
+        case Expr.ATTRIBUTE: {
+            AttrName name = ((AttrRef) e).name;
+            if (!name.equals(AttrName.PARENT)) {
+                refs.add(name);
+            }
+            return false;
+        }
+        case Expr.SELECTION:
+            // The base may be this record, as in self.b or parent.b, so
+            // the selector counts as a reference to a name.
+            refs.add(((SelectExpr) e).selector);
+            return collect(((SelectExpr) e).base, refs);
+        case Expr.SUBSCRIPT: {
+            // Likewise, r["b"] is r.b.  With any other selector that is
+            // not a constant, the name selected is unknown.
+            SubscriptExpr s = (SubscriptExpr) e;
+            boolean result = collect(s.base, refs);
+            if (s.selector.type == Expr.STRING) {
+                refs.add(AttrName.fromString(s.selector.stringValue()));
+            } else if (s.selector.type < Expr.UNDEFINED) {
+                result = true;
+            }
+            return collect(s.selector, refs) || result;
+        }
+        case Expr.OP: {
+            Op op = (Op) e;
+            boolean result = collect(op.arg1, refs);
+            return op.arg2 != null && collect(op.arg2, refs) || result;
+        }
+        case Expr.COND: {
+            CondExpr c = (CondExpr) e;
+            boolean result = collect(c.ec, refs);
+            result = collect(c.et, refs) || result;
+            return collect(c.ef, refs) || result;
+        }
+        case Expr.CALL: {
+            FuncCall f = (FuncCall) e;
+            boolean result = f.mayUseEnv();
+            for (Iterator i = f.args.iterator(); i.hasNext(); ) {
+                result = collect((Expr) i.next(), refs) || result;
+            }
+            return result;
+        }
+        case Expr.LIST: {
+            boolean result = false;
+            for (Iterator i = ((ListExpr) e).iterator(); i.hasNext(); ) {
+                result = collect((Expr) i.next(), refs) || result;
+            }
+            return result;
+        }
+        case Expr.RECORD: {
+            RecordExpr r = (RecordExpr) e;
+            boolean result = false;
+            for (Iterator i = r.attributes(); i.hasNext(); ) {
+                result = collect(r.lookup((AttrName) i.next()), refs)
+                    || result;
+            }
+            return result;
+        }
+        default:
+            return false;
+        }
+    } // collect(Expr,Set)
+} // DependencyGraph
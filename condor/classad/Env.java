@@ -21,6 +21,12 @@ package condor.classad;
  * way that it can be updated "in place".  When passed as an argument e to
  * eval, e.next.recEx is treated as a pointer to the top of the stack and
  * the e.recEx is ignored.  If e.next == null, e represents an empty stack.
+ * <p>
+ * An element of the stack may also define one extra attribute, which
+ * hides any attribute of the same name in its RecordExpr (see
+ * {@link #push(RecordExpr,AttrName,Expr)}).  This makes it possible to
+ * evaluate an expression as if it were an attribute of a RecordExpr without
+ * modifying the RecordExpr.
  * @author <a href="mailto:solomon@cs.wisc.edu">Marvin Solomon</a>
  * @version 2.2
  */
@@ -31,6 +37,14 @@ public class Env {
     /** Pointer to the rest of the stack.  */
     private Env next;
 
+    /** The name of an extra attribute defined by this element of the
+     * stack, or null if there is none.
+     */
+    private AttrName name;
+
+    /** The value of the extra attribute. */
+    private Expr value;
+
     /** Construct a new Env from its components.
      * @param recEx the top (innermost) RecordExpr.
      * @param next the rest of the stack.
@@ -58,6 +72,54 @@ public class Env {
         next = null;
     } // Env.clear()
 
+    /** Record the current state of this Env, so that it can later be
+     * restored by {@link #reset(Env)}.
+     * The nodes of the stack below the top are never modified in place, so
+     * the state is completely captured by the pointer to the stack.
+     * This is cheaper than making a copy with
+     * {@link #Env(condor.classad.Env) new Env(env)}, since it allocates
+     * nothing.
+     * @return a token representing the current state.
+     */
+    /*package*/ Env mark() {
+        return next;
+    } // Env.mark()
+
+    /** Restore this Env to a state previously recorded by {@link #mark()}.
+     * @param mark the value returned by a previous call to mark() on this
+     * Env.
+     */
+    /*package*/ void reset(Env mark) {
+        next = mark;
+    } // Env.reset(Env)
+
+    /** Get the RecordExpr on top of the stack.
+     * @return the innermost RecordExpr, or null if the stack is empty.
+     */
+    /*package*/ RecordExpr top() {
+        return next == null ? null : next.recEx;
+    } // Env.top()
+
+    /** Check whether two states of Envs (as returned by {@link #mark()})
+     * represent the same stack of RecordExprs, with the same additional
+     * attributes.
+     * @param a one state.
+     * @param b the other state.
+     * @return true if they contain the same RecordExprs in the same order.
+     */
+    /*package*/ static boolean sameScopes(Env a, Env b) {
+        while (a != b) {
+            if (a == null || b == null || a.recEx != b.recEx
+                    || a.name != b.name || a.value != b.value)
+            {
+                return false;
+            }
+            a = a.next;
+            b = b.next;
+        }
+        return true;
+    } // Env.sameScopes(Env,Env)
+
     /** Push a new RecordExpr onto the stack.
      * @param recEx the RecordExpr to be pushed.
      */
@@ -65,6 +127,21 @@ public class Env {
         next = new Env(recEx, next);
     } // Env.push(RecordExpr)
 
+    /** Push a new RecordExpr onto the stack, with an additional attribute.
+     * For the purposes of searching this Env, the new top of the stack
+     * behaves like a copy of recEx with the attribute <code>name</code>
+     * added (or replaced), but recEx itself is not modified.
+     * @param recEx the RecordExpr to be pushed.
+     * @param name the name of the additional attribute.
+     * @param value the value of the additional attribute.
+     */
+    public void push(RecordExpr recEx, AttrName name, Expr value) {
+        Env top = new Env(recEx, next);
+        top.name = name;
+        top.value = value;
+        next = top;
+    } // Env.push(RecordExpr,AttrName,Expr)
+
     /** Pops "n" records off the stack.
      * @param n the number of records to pop.
      * @return the last record popped, or null if the stack had fewer than
@@ -92,6 +169,9 @@ public class Env {
      */
     public Expr search(AttrName name) {
         while (next != null) {
+            if (next.name != null && next.name.equals(name)) {
+                return next.value;
+            }
             Expr result = next.recEx.lookup(name);
             if (result != null) {
                 return result;
@@ -101,6 +181,27 @@ public class Env {
         return null;
     } // Env.search(AttrName)
 
+    /** Search for the name of an AttrRef, as by {@link #search(AttrName)},
+     * using the slot remembered by the AttrRef to speed up the lookup in
+     * each RecordExpr.
+     * @param ref the reference.
+     * @return the corresponding value, or null.
+     */
+    /*package*/ Expr search(AttrRef ref) {
+        AttrName name = ref.name;
+        while (next != null) {
+            if (next.name != null && next.name.equals(name)) {
+                return next.value;
+            }
+            Expr result = next.recEx.lookup(ref);
+            if (result != null) {
+                return result;
+            }
+            next = next.next;
+        }
+        return null;
+    } // Env.search(AttrRef)
+
     /** String representation, for debugging.
      * @return a String representation of the Env.
      */
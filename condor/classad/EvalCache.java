@@ -0,0 +1,204 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A memo of the values of the attributes of one RecordExpr.
+ * When a RecordExpr has an EvalCache (see
+ * {@link RecordExpr#setEvalCache(EvalCache)}), the value of each of its
+ * attributes is remembered the first time the attribute is evaluated, and
+ * later references to the same attribute in the same evaluation session
+ * use the remembered value instead of evaluating the definition again.
+ * This is worthwhile when expressions such as Rank or Requirements
+ * refer to the same non-constant attribute several times.
+ * <p>
+ * The value of an attribute may depend on the environment in which the
+ * RecordExpr is found (for example, on the ad to which <code>other</code>
+ * refers), so a remembered value is used only when the RecordExpr is found
+ * in an environment consisting of the same RecordExprs as when the value was
+ * computed.
+ * An evaluation session consists of all evaluations that use the same
+ * {@link Env} object.  For example, {@link ClassAd#match(Expr,Expr)} uses a
+ * single Env to evaluate both Requirements and both Rank expressions.
+ * A cache created with {@link #EvalCache(boolean) EvalCache(true)} also
+ * remembers values from one session to the next.  In that case, calls to
+ * functions such as <code>time()</code> and <code>random()</code> are
+ * effectively evaluated only once.
+ * <p>
+ * Only values that are Constants are remembered.
+ * When an attribute is inserted into or removed from the RecordExpr, the
+ * remembered values of that attribute and of all attributes that depend on
+ * it (see {@link RecordExpr#dependents(AttrName)}) are discarded.  Changes
+ * to other RecordExprs are not noticed, so an
+ * EvalCache that spans sessions should only be used on ads whose values do
+ * not depend on other ads that may change.
+ * An EvalCache may be used by several threads at once, but it should
+ * belong to only one RecordExpr.
+ * @see RecordExpr#setEvalCache(EvalCache)
+ * @version 2.2
+ */
+public final class EvalCache {
+    private static String VERSION = "$Id$";
+
+    /** An undefined constant that represents the result a attempting to
+     * resolve an attribute whose value depends on itself, as in
+     * <code>[a=b+1;b=a]</code>.
+     */
+    private static final Constant CYCLIC_REF
+                    = Constant.undefined("Cyclic attribute definition");
+
+    /** A remembered value.  Entries are immutable, so that they may be shared
+     * between threads.
+     */
+    private static class Entry {
+        /** The Env used by the session in which the value was computed. */
+        final Env session;
+
+        /** The environment in which the value was computed, with the
+         * RecordExpr owning this cache on top.
+         */
+        final Env scope;
+
+        /** The value, or null if it is currently being computed. */
+        final Expr value;
+
+        /** Create an entry.
+         * @param session the Env used by the current session.
+         * @param scope the environment in which the value was computed.
+         * @param value the value, or null if it is being computed.
+         */
+        Entry(Env session, Env scope, Expr value) {
+            this.session = session;
+            this.scope = scope;
+            this.value = value;
+        } // Entry(Env,Env,Expr)
+    } // Entry
+
+    /** If true, values are remembered from one session to the next. */
+    private final boolean acrossSessions;
+
+    /** The remembered values, indexed by AttrName. */
+    private final Map entries = new ConcurrentHashMap();
+
+    /** The number of times a remembered value was used. */
+    private long hits;
+
+    /** The number of times a value had to be computed. */
+    private long misses;
+
+    /** Create a cache whose values are only used within one session. */
+    public EvalCache() {
+        this(false);
+    } // EvalCache()
+
+    /** Create a cache.
+     * @param acrossSessions if true, values are remembered from one session
+     * to the next.
+     */
+    public EvalCache(boolean acrossSessions) {
+        this.acrossSessions = acrossSessions;
+    } // EvalCache(boolean)
+
+    /** Get the number of times a remembered value was used.
+     * If several threads use this cache at once, the count is approximate.
+     * @return the number of cache hits.
+     */
+    public long getHits() {
+        return hits;
+    } // getHits()
+
+    /** Get the number of times a value was not found in the cache.
+     * If several threads use this cache at once, the count is approximate.
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses;
+    } // getMisses()
+
+    /** Forget all remembered values.  The hit and miss counts are not
+     * affected.
+     */
+    public void clear() {
+        entries.clear();
+    } // clear()
+
+    /** Forget the remembered value of an attribute.
+     * @param name the name of the attribute.
+     */
+    /*package*/ void remove(AttrName name) {
+        entries.remove(name);
+    } // remove(AttrName)
+
+    /** Forget the remembered values of some attributes.
+     * @param names the AttrNames of the attributes.
+     */
+    /*package*/ void removeAll(Collection names) {
+        for (Iterator i = names.iterator(); i.hasNext(); ) {
+            entries.remove(i.next());
+        }
+    } // removeAll(Collection)
+
+    /** Reset the hit and miss counts to zero. */
+    public void resetCounts() {
+        hits = 0;
+        misses = 0;
+    } // resetCounts()
+
+    /** Evaluate an attribute of the RecordExpr that owns this cache, using
+     * the remembered value if possible.
+     * The RecordExpr must be on top of env, as it is just after the
+     * attribute has been found by {@link Env#search(AttrName)}.  On return,
+     * env has the same state as it would have after evaluating def
+     * directly.
+     * @param name the name of the attribute.
+     * @param def the definition of the attribute.
+     * @param env the environment.
+     * @return the value of the attribute.
+     */
+    /*package*/ Expr eval(AttrName name, Expr def, Env env) {
+        Env scope = env.mark();
+        Entry e = (Entry) entries.get(name);
+        if (e != null && (acrossSessions || e.session == env)
+                && Env.sameScopes(e.scope, scope))
+        {
+            if (e.value == null) {
+                if (e.session == env) {
+                    return CYCLIC_REF;
+                }
+            } else {
+                hits++;
+                return e.value;
+            }
+        }
+        misses++;
+        entries.put(name, new Entry(env, scope, null));
+        Expr value = null;
+        try {
+            value = def.eval(env);
+        } finally {
+            if (value != null && value.type >= Expr.UNDEFINED) {
+                entries.put(name, new Entry(env, scope, value));
+            } else {
+                entries.remove(name);
+            }
+        }
+        return value;
+    } // eval(AttrName,Expr,Env)
+} // EvalCache
@@ -92,6 +92,12 @@ public abstract class Expr {
      */
     public static int dblevel = 0;
 
+    /** A cached compiled form of this expression, created on demand by
+     * compile().
+     * @see #compile()
+     */
+    private CompiledExpr compiled;
+
     // ---------------------------------- CONSTANTS --------------------------
 
     /** A type flag indicating that this is a conditional expression. */
@@ -168,6 +174,13 @@ public abstract class Expr {
     private static final Constant CYCLIC_REF
                     = Constant.undefined("Cyclic attribute definition");
 
+    /** The number of steps eval(Env) takes before it starts checking for
+     * cycles.  Most chains of attribute references are much shorter than
+     * this, so cycle detection costs nothing in the common case.
+     * @see #eval(Env)
+     */
+    private static final int CYCLE_CHECK_THRESHOLD = 32;
+
     /** A table mapping operator codes to character-string names.  For example,
      * <code>opName[NOT_EQUAL] = "!="</code>.
      */
@@ -428,18 +441,54 @@ public abstract class Expr {
             return this;
         }
         Expr e = this;
-        // Keep a set of AttrRef nodes that have already been seen.
-        Set seen = new HashSet();
+        // Once we have taken more than CYCLE_CHECK_THRESHOLD steps, keep a
+        // record of the nodes that have already been seen, and the scopes in
+        // which they were seen.  Any cycle is detected the second time
+        // around, after at most CYCLE_CHECK_THRESHOLD extra steps.
+        int steps = 0;
+        Map seen = null;
         while (e.type < LIST) {
-            if (seen.contains(e)) {
-                return CYCLIC_REF;
+            if (++steps > CYCLE_CHECK_THRESHOLD) {
+                if (seen == null) {
+                    seen = new IdentityHashMap();
+                }
+                if (repeated(seen, e, env.mark())) {
+                    return CYCLIC_REF;
+                }
             }
-            seen.add(e);
             e = e.eval1(env);
         }
         return e;
     } // eval(Env)
 
+    /** Record that {@link #eval(Env)} has reached a node in a given scope,
+     * and check whether it has been there before.
+     * A node alone is not enough:  with hash-consing (see
+     * {@link ClassAdParser#setHashConsing(boolean)}), one AttrRef may stand
+     * for references in several different records, so reaching it again in
+     * a different scope is progress, not a cycle.
+     * @param seen a map from each node seen so far to the list of scopes
+     * (as returned by {@link Env#mark()}) in which it was seen.
+     * @param e the node.
+     * @param scope the current scope.
+     * @return true if e has already been seen in the same scope.
+     */
+    private static boolean repeated(Map seen, Expr e, Env scope) {
+        List scopes = (List) seen.get(e);
+        if (scopes == null) {
+            scopes = new ArrayList(1);
+            seen.put(e, scopes);
+        } else {
+            for (Iterator i = scopes.iterator(); i.hasNext(); ) {
+                if (Env.sameScopes((Env) i.next(), scope)) {
+                    return true;
+                }
+            }
+        }
+        scopes.add(scope);
+        return false;
+    } // repeated(Map,Expr,Env)
+
     /** Evaluate this Expr in a "top-level" (empty) environment.
      * Lists, records, and constants evaluate to themselves.  Function calls
      * and operators evaluate to the result of applying the operartor or
@@ -450,7 +499,8 @@ public abstract class Expr {
     public Expr eval() {
         // Special cases, for efficiency.
         if (type == ATTRIBUTE) {
-            return Constant.undefined("attribute " + this + " not found");
+            return Constant.undefined(new Object[] {
+                "attribute ", this, " not found" });
         }
         if (isConstant()) {
             return this;
@@ -458,6 +508,23 @@ public abstract class Expr {
         return eval(new Env());
     } // eval()
 
+    /** Get a compiled form of this Expr.  The compiled form is created the
+     * first time this method is called and cached for subsequent calls.
+     * Evaluating the result gives the same value as evaluating this Expr, but
+     * usually faster, so it is worth doing for expressions that are
+     * evaluated many times.
+     * @return a compiled form of this Expr.
+     * @see ClosureCompiler
+     * @see ExprCompiler
+     */
+    public CompiledExpr compile() {
+        CompiledExpr result = compiled;
+        if (result == null) {
+            result = compiled = ClosureCompiler.compile(this);
+        }
+        return result;
+    } // compile()
+
     // ---------------------------------- DEBUGGING --------------------------
 
     /** Convert this Expr to a string.
@@ -0,0 +1,585 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * A compiler that translates expressions into Java bytecode.
+ * Expressions such as Requirements and Rank are evaluated over and over
+ * again, once for each candidate match.  For such expressions, it may be
+ * worthwhile to translate the expression tree into a Java class, which the
+ * JVM can then compile to native code.
+ * <p>
+ * The compiler handles trees of operators and conditional expressions.
+ * The arithmetic and comparison operators are specialized for integer and
+ * real operands, with constant operands inlined into the generated code.
+ * All other cases, and all other kinds of expression nodes (attribute
+ * references, selections, subscripts, and function calls), are handed
+ * back to the interpreter ({@link Expr#eval(Env)} and
+ * {@link Op#apply(int,Expr,Expr)}), so the result of evaluating a
+ * compiled expression is always the same as the result of evaluating the
+ * original expression.  If the expression is not an operator or
+ * conditional expression, or if for some reason the generated class cannot
+ * be loaded, the result of {@link #compile(Expr)} simply evaluates the
+ * expression with the interpreter.
+ * <p>
+ * The generated classes are hidden classes (see
+ * <code>MethodHandles.Lookup.defineHiddenClass</code>), so that they can
+ * be unloaded once the CompiledExpr is no longer used.  Hidden classes
+ * were added in Java 15; on older JVMs, {@link #compile(Expr)} uses
+ * {@link ClosureCompiler} instead.
+ * <p>
+ * Compilation is relatively expensive, so it is only worthwhile for
+ * expressions that will be evaluated many times.
+ * @see CompiledExpr
+ * @version 2.2
+ */
+public final class ExprCompiler {
+    private static String VERSION = "$Id$";
+
+    // Internal names and descriptors of classes used by generated code.
+
+    private static final String EXPR = "condor/classad/Expr";
+    private static final String ENV = "condor/classad/Env";
+    private static final String CONSTANT = "condor/classad/Constant";
+    private static final String COMPILED = "condor/classad/CompiledExpr";
+    private static final String EXPR_D = "L" + EXPR + ";";
+    private static final String ENV_D = "L" + ENV + ";";
+    private static final String CONSTANT_D = "L" + CONSTANT + ";";
+
+    /** Local variable slots used by the generated eval method.  Slots 0 and
+     * 1 hold "this" and the env parameter, and slot 2 holds the initial
+     * state of the env (see {@link Env#mark()}).  The following slots are
+     * scratch space for the fast paths, and the rest are allocated as
+     * needed to hold intermediate values.
+     */
+    private static final int ENV_SLOT = 1, MARK_SLOT = 2;
+    private static final int INT1 = 3, INT2 = 4, REAL1 = 5, REAL2 = 7;
+    private static final int FIRST_TEMP = 9;
+
+    /** Used to define generated classes in this package. */
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /** A handle on <code>lookup.defineHiddenClass(bytes, true)</code>,
+     * taking the bytes and returning the Lookup of the new class, or null
+     * if the JVM is older than Java 15 and does not have hidden classes.
+     */
+    private static final MethodHandle defineHidden = findDefineHidden();
+
+    /** A CompiledExpr that simply calls the interpreter. */
+    private static final class Interpreted extends CompiledExpr {
+        /** Create an Interpreted wrapper.
+         * @param expr the expression.
+         */
+        Interpreted(Expr expr) {
+            super(expr, null);
+        } // Interpreted(Expr)
+
+        /** Evaluate the expression using the interpreter.
+         * @param env the environment.
+         * @return the result of expr.eval(env).
+         */
+        public Expr eval(Env env) {
+            return expr.eval(env);
+        } // eval(Env)
+    } // Interpreted
+
+    /** The class being generated. */
+    private final ClassFileWriter cf = new ClassFileWriter();
+
+    /** Sub-expressions referred to by the generated code, in order. */
+    private final List nodes = new ArrayList();
+
+    /** Mapping from sub-expressions to their indices in nodes. */
+    private final Map nodeIndex = new IdentityHashMap();
+
+    /** The next free local variable slot. */
+    private int nextLocal = FIRST_TEMP;
+
+    /** The largest number of local variable slots used. */
+    private int maxLocals = FIRST_TEMP;
+
+    /** This class is not meant to be instantiated except by compile. */
+    private ExprCompiler() {
+    } // ExprCompiler()
+
+    /** Find Lookup.defineHiddenClass, which was added in Java 15.  It is
+     * found reflectively so that the rest of the library still runs on
+     * older JVMs.
+     * @return a handle taking the bytes of a class and returning the Lookup
+     * of the class defined from them, or null if there is no such method.
+     */
+    private static MethodHandle findDefineHidden() {
+        try {
+            Class option = Class.forName(
+                "java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Object noOptions = Array.newInstance(option, 0);
+            MethodHandle mh = lookup.findVirtual(MethodHandles.Lookup.class,
+                "defineHiddenClass",
+                MethodType.methodType(MethodHandles.Lookup.class,
+                    byte[].class, boolean.class, noOptions.getClass()));
+            return MethodHandles.insertArguments(mh.bindTo(lookup), 1,
+                new Object[] { Boolean.TRUE, noOptions });
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    } // findDefineHidden()
+
+    /** Compile an expression.
+     * On JVMs older than Java 15, which cannot define the generated class as
+     * a hidden class, the result is that of
+     * {@link ClosureCompiler#compile(Expr)} instead.
+     * @param expr the expression to compile.
+     * @return a CompiledExpr equivalent to expr.
+     */
+    public static CompiledExpr compile(Expr expr) {
+        if (expr.type != Expr.OP && expr.type != Expr.COND) {
+            return new Interpreted(expr);
+        }
+        if (defineHidden == null) {
+            return ClosureCompiler.compile(expr);
+        }
+        try {
+            ExprCompiler c = new ExprCompiler();
+            byte[] bytes = c.generate(expr);
+            Class cls = ((MethodHandles.Lookup) defineHidden.invoke(bytes))
+                .lookupClass();
+            MethodHandle ctor = lookup.findConstructor(cls,
+                MethodType.methodType(void.class, Expr.class, Expr[].class));
+            Expr[] nodes = (Expr[]) c.nodes.toArray(new Expr[0]);
+            return (CompiledExpr) ctor.invoke(expr, nodes);
+        } catch (Throwable t) {
+            Expr.db("compile failed for " + expr + ": " + t);
+            return new Interpreted(expr);
+        }
+    } // compile(Expr)
+
+    /** Generate a subclass of CompiledExpr that evaluates an expression.
+     * @param expr the expression.
+     * @return the bytes of the class file.
+     */
+    private byte[] generate(Expr expr) {
+        // The constructor just passes its arguments to the superclass.
+        String ctorDesc = "(" + EXPR_D + "[" + EXPR_D + ")V";
+        cf.beginMethod(ClassFileWriter.ACC_PUBLIC, "<init>", ctorDesc);
+        cf.local(ClassFileWriter.ALOAD, 0);
+        cf.local(ClassFileWriter.ALOAD, 1);
+        cf.local(ClassFileWriter.ALOAD, 2);
+        cf.invoke(ClassFileWriter.INVOKESPECIAL, COMPILED, "<init>", ctorDesc);
+        cf.op(ClassFileWriter.RETURN, 0);
+        cf.endMethod(3);
+
+        // public Expr eval(Env env)
+        cf.beginMethod(ClassFileWriter.ACC_PUBLIC, "eval",
+            "(" + ENV_D + ")" + EXPR_D);
+        cf.local(ClassFileWriter.ALOAD, ENV_SLOT);
+        cf.invoke(ClassFileWriter.INVOKEVIRTUAL, ENV, "mark", "()" + ENV_D);
+        cf.local(ClassFileWriter.ASTORE, MARK_SLOT);
+        gen(expr, true);
+        cf.op(ClassFileWriter.ARETURN, -1);
+        cf.endMethod(maxLocals);
+
+        return cf.toByteArray(COMPILED + "$Generated", COMPILED);
+    } // generate(Expr)
+
+    /** Allocate a local variable slot.
+     * @return the slot number.
+     */
+    private int newLocal() {
+        int result = nextLocal++;
+        if (nextLocal > maxLocals) {
+            maxLocals = nextLocal;
+        }
+        return result;
+    } // newLocal()
+
+    /** Generate code to push a reference to a sub-expression.
+     * @param e the sub-expression.
+     */
+    private void loadNode(Expr e) {
+        Integer index = (Integer) nodeIndex.get(e);
+        if (index == null) {
+            index = Integer.valueOf(nodes.size());
+            nodes.add(e);
+            nodeIndex.put(e, index);
+        }
+        cf.local(ClassFileWriter.ALOAD, 0);
+        cf.field(ClassFileWriter.GETFIELD, COMPILED, "nodes", "[" + EXPR_D);
+        cf.pushInt(index.intValue());
+        cf.op(ClassFileWriter.AALOAD, -1);
+    } // loadNode(Expr)
+
+    /** Generate code to push the environment for evaluating a
+     * sub-expression.
+     * The interpreter evaluates every operand in the initial environment,
+     * so the environment is first reset to the state recorded on entry.
+     */
+    private void loadEnv() {
+        cf.local(ClassFileWriter.ALOAD, ENV_SLOT);
+        cf.local(ClassFileWriter.ALOAD, MARK_SLOT);
+        cf.invoke(ClassFileWriter.INVOKEVIRTUAL, ENV, "reset",
+            "(" + ENV_D + ")V");
+        cf.local(ClassFileWriter.ALOAD, ENV_SLOT);
+    } // loadEnv()
+
+    /** Generate code to clear the environment. */
+    private void clearEnv() {
+        cf.local(ClassFileWriter.ALOAD, ENV_SLOT);
+        cf.invoke(ClassFileWriter.INVOKEVIRTUAL, ENV, "clear", "()V");
+    } // clearEnv()
+
+    /** Generate code to evaluate an expression and push its value.
+     * @param e the expression.
+     * @param tail true if e is in tail position, that is, if the
+     * environment is not needed after e is evaluated.
+     */
+    private void gen(Expr e, boolean tail) {
+        switch (e.type) {
+        case Expr.OP:
+            genOp((Op) e, tail);
+            break;
+        case Expr.COND:
+            genCond((CondExpr) e, tail);
+            break;
+        default:
+            loadNode(e);
+            if (!e.isConstant()) {
+                loadEnv();
+                cf.invoke(ClassFileWriter.INVOKEVIRTUAL, EXPR, "eval",
+                    "(" + ENV_D + ")" + EXPR_D);
+            }
+            break;
+        }
+    } // gen(Expr,boolean)
+
+    /** Generate code for a conditional expression.
+     * @param e the expression.
+     * @param tail true if e is in tail position.
+     */
+    private void genCond(CondExpr e, boolean tail) {
+        int saved = nextLocal;
+        gen(e.ec, false);
+        int cond = newLocal();
+        int result = newLocal();
+        cf.local(ClassFileWriter.ASTORE, cond);
+
+        ClassFileWriter.Label notBool = new ClassFileWriter.Label();
+        ClassFileWriter.Label isFalse = new ClassFileWriter.Label();
+        ClassFileWriter.Label done = new ClassFileWriter.Label();
+
+        cf.local(ClassFileWriter.ALOAD, cond);
+        cf.field(ClassFileWriter.GETFIELD, EXPR, "type", "I");
+        cf.pushInt(Expr.BOOLEAN);
+        cf.jump(ClassFileWriter.IF_ICMPNE, notBool);
+        cf.local(ClassFileWriter.ALOAD, cond);
+        cf.field(ClassFileWriter.GETSTATIC, CONSTANT, "TRUE", CONSTANT_D);
+        cf.jump(ClassFileWriter.IF_ACMPNE, isFalse);
+        gen(e.et, tail);
+        cf.local(ClassFileWriter.ASTORE, result);
+        cf.jump(ClassFileWriter.GOTO, done);
+
+        cf.place(isFalse);
+        gen(e.ef, tail);
+        cf.local(ClassFileWriter.ASTORE, result);
+        cf.jump(ClassFileWriter.GOTO, done);
+
+        cf.place(notBool);
+        if (tail) {
+            clearEnv();
+        }
+        cf.local(ClassFileWriter.ALOAD, cond);
+        cf.invoke(ClassFileWriter.INVOKESTATIC, "condor/classad/CondExpr",
+            "nonBoolean", "(" + EXPR_D + ")" + EXPR_D);
+        cf.local(ClassFileWriter.ASTORE, result);
+
+        cf.place(done);
+        cf.local(ClassFileWriter.ALOAD, result);
+        nextLocal = saved;
+    } // genCond(CondExpr,boolean)
+
+    /** Generate code for an operator.
+     * @param e the expression.
+     * @param tail true if e is in tail position.
+     */
+    private void genOp(Op e, boolean tail) {
+        int saved = nextLocal;
+        int result = newLocal();
+        ClassFileWriter.Label done = new ClassFileWriter.Label();
+        int arg1, arg2;
+        if (e.arg2 == null) {
+            gen(e.arg1, tail);
+            arg1 = newLocal();
+            arg2 = -1;
+            cf.local(ClassFileWriter.ASTORE, arg1);
+        } else {
+            gen(e.arg1, false);
+            arg1 = newLocal();
+            cf.local(ClassFileWriter.ASTORE, arg1);
+            if (e.op == Expr.AND || e.op == Expr.OR) {
+                genShortCircuit(e.op, arg1, result, tail, done);
+            }
+            gen(e.arg2, tail);
+            arg2 = newLocal();
+            cf.local(ClassFileWriter.ASTORE, arg2);
+        }
+        if (tail) {
+            clearEnv();
+        }
+
+        if (arg2 >= 0) {
+            if (mayHaveType(e.arg1, Expr.INTEGER)
+                    && mayHaveType(e.arg2, Expr.INTEGER))
+            {
+                genIntOp(e, arg1, arg2, result, done);
+            }
+            if (mayHaveType(e.arg1, Expr.REAL)
+                    && mayHaveType(e.arg2, Expr.REAL))
+            {
+                genRealOp(e, arg1, arg2, result, done);
+            }
+        }
+
+        // The general case.
+        cf.pushInt(e.op);
+        cf.local(ClassFileWriter.ALOAD, arg1);
+        if (arg2 >= 0) {
+            cf.local(ClassFileWriter.ALOAD, arg2);
+        } else {
+            cf.op(ClassFileWriter.ACONST_NULL, 1);
+        }
+        cf.invoke(ClassFileWriter.INVOKESTATIC, "condor/classad/Op", "apply",
+            "(I" + EXPR_D + EXPR_D + ")" + EXPR_D);
+        cf.local(ClassFileWriter.ASTORE, result);
+
+        cf.place(done);
+        cf.local(ClassFileWriter.ALOAD, result);
+        nextLocal = saved;
+    } // genOp(Op,boolean)
+
+    /** Generate code to skip the second operand of &amp;&amp; or || if the
+     * value of the first determines the result.
+     * @param op the operator.
+     * @param arg1 the local variable holding the value of the first operand.
+     * @param result the local variable to hold the result.
+     * @param tail true if the expression is in tail position.
+     * @param done the label to jump to if the result is determined.
+     * @see Op#shortCircuit
+     */
+    private void genShortCircuit(int op, int arg1, int result, boolean tail,
+                                    ClassFileWriter.Label done)
+    {
+        ClassFileWriter.Label evalArg2 = new ClassFileWriter.Label();
+        cf.pushInt(op);
+        cf.local(ClassFileWriter.ALOAD, arg1);
+        cf.invoke(ClassFileWriter.INVOKESTATIC, "condor/classad/Op",
+            "shortCircuitValue", "(I" + EXPR_D + ")" + EXPR_D);
+        cf.op(ClassFileWriter.DUP, 1);
+        cf.local(ClassFileWriter.ASTORE, result);
+        cf.op(ClassFileWriter.ACONST_NULL, 1);
+        cf.jump(ClassFileWriter.IF_ACMPEQ, evalArg2);
+        if (tail) {
+            clearEnv();
+        }
+        cf.jump(ClassFileWriter.GOTO, done);
+        cf.place(evalArg2);
+    } // genShortCircuit(int,int,int,boolean,ClassFileWriter.Label)
+
+    /** Check whether the value of an operand could be of a given type.
+     * @param e the operand.
+     * @param type the type.
+     * @return false if e is a constant of some other type.
+     */
+    private static boolean mayHaveType(Expr e, int type) {
+        return !e.isConstant() || e.type == type;
+    } // mayHaveType(Expr,int)
+
+    /** Generate code to branch if the value of an operand is not of a
+     * given type.  No code is generated if the operand is a constant, since
+     * in that case {@link #mayHaveType(Expr,int)} has already checked the
+     * type.
+     * @param e the operand.
+     * @param slot the local variable holding the value of e.
+     * @param type the desired type.
+     * @param fail where to go if the value is of a different type.
+     */
+    private void checkType(Expr e, int slot, int type,
+                            ClassFileWriter.Label fail)
+    {
+        if (!e.isConstant()) {
+            cf.local(ClassFileWriter.ALOAD, slot);
+            cf.field(ClassFileWriter.GETFIELD, EXPR, "type", "I");
+            cf.pushInt(type);
+            cf.jump(ClassFileWriter.IF_ICMPNE, fail);
+        }
+    } // checkType(Expr,int,int,Label)
+
+    /** Generate code for an arithmetic operator or comparison with two
+     * integer operands.  Other operators are ignored.
+     * @param e the expression.
+     * @param arg1 the local variable holding the first operand.
+     * @param arg2 the local variable holding the second operand.
+     * @param result the local variable to receive the result.
+     * @param done where to go after computing the result.
+     */
+    private void genIntOp(Op e, int arg1, int arg2, int result,
+                            ClassFileWriter.Label done)
+    {
+        int opcode = 0, branch = 0;
+        switch (e.op) {
+        case Expr.PLUS: opcode = ClassFileWriter.IADD; break;
+        case Expr.MINUS: opcode = ClassFileWriter.ISUB; break;
+        case Expr.TIMES: opcode = ClassFileWriter.IMUL; break;
+        case Expr.DIV: opcode = ClassFileWriter.IDIV; break;
+        case Expr.MOD: opcode = ClassFileWriter.IREM; break;
+        case Expr.EQUAL: branch = ClassFileWriter.IF_ICMPEQ; break;
+        case Expr.NOT_EQUAL: branch = ClassFileWriter.IF_ICMPNE; break;
+        case Expr.LESS: branch = ClassFileWriter.IF_ICMPLT; break;
+        case Expr.GREATER: branch = ClassFileWriter.IF_ICMPGT; break;
+        case Expr.LESS_EQ: branch = ClassFileWriter.IF_ICMPLE; break;
+        case Expr.GREATER_EQ: branch = ClassFileWriter.IF_ICMPGE; break;
+        default: return;
+        }
+        ClassFileWriter.Label fail = new ClassFileWriter.Label();
+        checkType(e.arg1, arg1, Expr.INTEGER, fail);
+        checkType(e.arg2, arg2, Expr.INTEGER, fail);
+        loadInt(e.arg1, arg1);
+        cf.local(ClassFileWriter.ISTORE, INT1);
+        loadInt(e.arg2, arg2);
+        cf.local(ClassFileWriter.ISTORE, INT2);
+        if (opcode == ClassFileWriter.IDIV || opcode == ClassFileWriter.IREM) {
+            // Let the interpreter deal with division by zero.
+            cf.local(ClassFileWriter.ILOAD, INT2);
+            cf.jump(ClassFileWriter.IFEQ, fail);
+        }
+        cf.local(ClassFileWriter.ILOAD, INT1);
+        cf.local(ClassFileWriter.ILOAD, INT2);
+        if (opcode != 0) {
+            cf.op(opcode, -1);
+            cf.invoke(ClassFileWriter.INVOKESTATIC, CONSTANT, "getInstance",
+                "(I)" + CONSTANT_D);
+            cf.local(ClassFileWriter.ASTORE, result);
+            cf.jump(ClassFileWriter.GOTO, done);
+        } else {
+            genBoolean(branch, result, done);
+        }
+        cf.place(fail);
+    } // genIntOp(Op,int,int,int,Label)
+
+    /** Generate code for an arithmetic operator or comparison with two
+     * real operands.  Other operators are ignored.
+     * @param e the expression.
+     * @param arg1 the local variable holding the first operand.
+     * @param arg2 the local variable holding the second operand.
+     * @param result the local variable to receive the result.
+     * @param done where to go after computing the result.
+     */
+    private void genRealOp(Op e, int arg1, int arg2, int result,
+                            ClassFileWriter.Label done)
+    {
+        // The interpreter compares reals by computing
+        //      cmp = v1 < v2 ? -1 : v1 == v2 ? 0 : 1
+        // so a comparison involving NaN behaves as if v1 > v2.  Using dcmpg
+        // (which yields 1 for NaN) followed by a test of the result gives
+        // the same answer.
+        int opcode = 0, branch = 0;
+        switch (e.op) {
+        case Expr.PLUS: opcode = ClassFileWriter.DADD; break;
+        case Expr.MINUS: opcode = ClassFileWriter.DSUB; break;
+        case Expr.TIMES: opcode = ClassFileWriter.DMUL; break;
+        case Expr.DIV: opcode = ClassFileWriter.DDIV; break;
+        case Expr.MOD: opcode = ClassFileWriter.DREM; break;
+        case Expr.EQUAL: branch = ClassFileWriter.IFEQ; break;
+        case Expr.NOT_EQUAL: branch = ClassFileWriter.IFNE; break;
+        case Expr.LESS: branch = ClassFileWriter.IFLT; break;
+        case Expr.GREATER: branch = ClassFileWriter.IFGT; break;
+        case Expr.LESS_EQ: branch = ClassFileWriter.IFLE; break;
+        case Expr.GREATER_EQ: branch = ClassFileWriter.IFGE; break;
+        default: return;
+        }
+        ClassFileWriter.Label fail = new ClassFileWriter.Label();
+        checkType(e.arg1, arg1, Expr.REAL, fail);
+        checkType(e.arg2, arg2, Expr.REAL, fail);
+        loadReal(e.arg1, arg1);
+        cf.local(ClassFileWriter.DSTORE, REAL1);
+        loadReal(e.arg2, arg2);
+        cf.local(ClassFileWriter.DSTORE, REAL2);
+        cf.local(ClassFileWriter.DLOAD, REAL1);
+        cf.local(ClassFileWriter.DLOAD, REAL2);
+        if (opcode != 0) {
+            cf.op(opcode, -2);
+            cf.invoke(ClassFileWriter.INVOKESTATIC, CONSTANT, "getInstance",
+                "(D)" + CONSTANT_D);
+            cf.local(ClassFileWriter.ASTORE, result);
+            cf.jump(ClassFileWriter.GOTO, done);
+        } else {
+            cf.op(ClassFileWriter.DCMPG, -3);
+            genBoolean(branch, result, done);
+        }
+        cf.place(fail);
+    } // genRealOp(Op,int,int,int,Label)
+
+    /** Generate code to store TRUE or FALSE in a local variable depending on
+     * the outcome of a test.
+     * @param branch a conditional branch instruction that is taken if the
+     * result should be TRUE.
+     * @param result the local variable to receive the result.
+     * @param done where to go next.
+     */
+    private void genBoolean(int branch, int result,
+                            ClassFileWriter.Label done)
+    {
+        ClassFileWriter.Label isTrue = new ClassFileWriter.Label();
+        cf.jump(branch, isTrue);
+        cf.field(ClassFileWriter.GETSTATIC, CONSTANT, "FALSE", CONSTANT_D);
+        cf.local(ClassFileWriter.ASTORE, result);
+        cf.jump(ClassFileWriter.GOTO, done);
+        cf.place(isTrue);
+        cf.field(ClassFileWriter.GETSTATIC, CONSTANT, "TRUE", CONSTANT_D);
+        cf.local(ClassFileWriter.ASTORE, result);
+        cf.jump(ClassFileWriter.GOTO, done);
+    } // genBoolean(int,int,Label)
+
+    /** Generate code to push the integer value of an operand.
+     * @param e the operand.
+     * @param slot the local variable holding the value of e.
+     */
+    private void loadInt(Expr e, int slot) {
+        if (e.isConstant()) {
+            cf.pushInt(e.intValue());
+        } else {
+            cf.local(ClassFileWriter.ALOAD, slot);
+            cf.invoke(ClassFileWriter.INVOKEVIRTUAL, EXPR, "intValue", "()I");
+        }
+    } // loadInt(Expr,int)
+
+    /** Generate code to push the real value of an operand.
+     * @param e the operand.
+     * @param slot the local variable holding the value of e.
+     */
+    private void loadReal(Expr e, int slot) {
+        if (e.isConstant()) {
+            cf.pushDouble(e.realValue());
+        } else {
+            cf.local(ClassFileWriter.ALOAD, slot);
+            cf.invoke(ClassFileWriter.INVOKEVIRTUAL, EXPR, "realValue", "()D");
+        }
+    } // loadReal(Expr,int)
+} // ExprCompiler
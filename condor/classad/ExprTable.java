@@ -0,0 +1,397 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * A table of canonical expressions, used to "hash-cons" parsed expressions
+ * so that structurally identical sub-expressions are represented by a single
+ * shared object.
+ * Only immutable sub-expressions are shared:  constants, attribute
+ * references, operators, conditional expressions, function calls,
+ * selections, and subscripts, none of which contains a list or record.
+ * Lists and records are mutable, and the "is" operator compares them for
+ * identity, so they are never shared, although their components may be.
+ * <p>
+ * Two sub-expressions are replaced by the same object only if they print
+ * identically:  they must have the same structure, the same attribute and
+ * function names (including case), and constants of the same type and
+ * value.  This is stricter than {@link Expr#sameAs(Expr)}, but the hash
+ * code used to find candidates is consistent with sameAs:  expressions that
+ * are sameAs each other have the same hash code.
+ * <p>
+ * The table holds its entries with weak references, so an expression is
+ * removed from the table once it is no longer part of any ad.  The table is
+ * shared by all threads.
+ * @see ClassAdParser#setHashConsing(boolean)
+ * @version 2.2
+ */
+/*package*/ final class ExprTable {
+    private static String VERSION = "$Id$";
+
+    /** An entry in the table:  a weak reference to a canonical expression,
+     * together with its hash code.
+     */
+    private static final class Entry extends WeakReference {
+        /** The hash code of the expression. */
+        final int hash;
+
+        /** The next entry in the same bucket. */
+        Entry next;
+
+        /** Create an entry.
+         * @param e the expression.
+         * @param hash its hash code.
+         * @param next the next entry in the bucket.
+         */
+        Entry(Expr e, int hash, Entry next) {
+            super(e, queue);
+            this.hash = hash;
+            this.next = next;
+        } // Entry(Expr,int,Entry)
+    } // Entry
+
+    /** The hash table.  Its length is always a power of two. */
+    private static Entry[] table = new Entry[1024];
+
+    /** The number of entries in the table (including cleared ones that have
+     * not yet been removed).
+     */
+    private static int count = 0;
+
+    /** Queue of entries whose expressions have been reclaimed. */
+    private static final ReferenceQueue queue = new ReferenceQueue();
+
+    /** The hash code of the expression most recently returned by
+     * {@link #intern(Expr)}.
+     */
+    private int hash;
+
+    /** This class is only instantiated by canonicalize. */
+    private ExprTable() {
+    } // ExprTable()
+
+    /** Replace the sub-expressions of a newly parsed expression by canonical
+     * copies.  Records in the expression are updated in place; other nodes
+     * are replaced as needed.
+     * @param e the expression, which must not yet be shared with any other
+     * expression.
+     * @return an equivalent expression, in which every sharable
+     * sub-expression is the canonical one.
+     */
+    /*package*/ static Expr canonicalize(Expr e) {
+        return new ExprTable().intern(e);
+    } // canonicalize(Expr)
+
+    /** Get the number of canonical expressions currently in the table.
+     * @return the number of entries.
+     */
+    /*package*/ static synchronized int size() {
+        purge();
+        return count;
+    } // size()
+
+    /** Canonicalize an expression.  On return, {@link #hash} is its hash
+     * code if the result is sharable and 0 otherwise.
+     * @param e the expression.
+     * @return the canonical version of the expression.
+     */
+    private Expr intern(Expr e) {
+        switch (e.type) {
+        case Expr.COND: {
+            CondExpr c = (CondExpr) e;
+            Expr ec = intern(c.ec);
+            int h1 = hash;
+            Expr et = intern(c.et);
+            int h2 = hash;
+            Expr ef = intern(c.ef);
+            int h3 = hash;
+            Expr result = ec == c.ec && et == c.et && ef == c.ef
+                            ? e : new CondExpr(ec, et, ef);
+            if (h1 == 0 || h2 == 0 || h3 == 0) {
+                return unshared(result);
+            }
+            return lookup(result,
+                            combine(combine(combine(Expr.COND, h1), h2), h3));
+        }
+        case Expr.OP: {
+            Op o = (Op) e;
+            Expr arg1 = intern(o.arg1);
+            int h1 = hash;
+            if (o.arg2 == null) {
+                Expr result = arg1 == o.arg1 ? e : new Op(o.op, arg1);
+                if (h1 == 0) {
+                    return unshared(result);
+                }
+                return lookup(result, combine(combine(Expr.OP, o.op), h1));
+            }
+            Expr arg2 = intern(o.arg2);
+            int h2 = hash;
+            Expr result = arg1 == o.arg1 && arg2 == o.arg2
+                            ? e : new Op(o.op, arg1, arg2);
+            if (h1 == 0 || h2 == 0) {
+                return unshared(result);
+            }
+            return lookup(result,
+                            combine(combine(combine(Expr.OP, o.op), h1), h2));
+        }
+        case Expr.CALL: {
+            FuncCall f = (FuncCall) e;
+            List args = new ArrayList(f.args.size());
+            boolean changed = false;
+            boolean sharable = true;
+            int h = combine(Expr.CALL, f.func.hashCode());
+            for (Iterator i = f.args.iterator(); i.hasNext(); ) {
+                Expr arg = (Expr) i.next();
+                Expr canon = intern(arg);
+                changed |= canon != arg;
+                sharable &= hash != 0;
+                h = combine(h, hash);
+                args.add(canon);
+            }
+            Expr result = changed ? FuncCall.getInstance(f.func, args) : e;
+            if (!sharable || result.type != Expr.CALL) {
+                return unshared(result);
+            }
+            return lookup(result, h);
+        }
+        case Expr.SELECTION: {
+            SelectExpr s = (SelectExpr) e;
+            Expr base = intern(s.base);
+            Expr result = base == s.base ? e : new SelectExpr(base, s.selector);
+            if (hash == 0) {
+                return unshared(result);
+            }
+            return lookup(result,
+                combine(combine(Expr.SELECTION, hash), s.selector.hashCode()));
+        }
+        case Expr.SUBSCRIPT: {
+            SubscriptExpr s = (SubscriptExpr) e;
+            Expr base = intern(s.base);
+            int h1 = hash;
+            Expr selector = intern(s.selector);
+            int h2 = hash;
+            Expr result = base == s.base && selector == s.selector
+                            ? e : new SubscriptExpr(base, selector);
+            if (h1 == 0 || h2 == 0) {
+                return unshared(result);
+            }
+            return lookup(result, combine(combine(Expr.SUBSCRIPT, h1), h2));
+        }
+        case Expr.ATTRIBUTE:
+            return lookup(e,
+                combine(Expr.ATTRIBUTE, ((AttrRef) e).name.hashCode()));
+        case Expr.LIST: {
+            ListExpr l = (ListExpr) e;
+            if (l.isPacked()) {
+                // The members are values, not shared Constants.
+                return unshared(e);
+            }
+            List elements = new ArrayList(l.size());
+            boolean changed = false;
+            for (Iterator i = l.iterator(); i.hasNext(); ) {
+                Expr element = (Expr) i.next();
+                Expr canon = intern(element);
+                changed |= canon != element;
+                elements.add(canon);
+            }
+            return unshared(changed ? new ListExpr(elements) : e);
+        }
+        case Expr.RECORD: {
+            RecordExpr r = (RecordExpr) e;
+            for (Iterator i = r.attributes(); i.hasNext(); ) {
+                AttrName name = (AttrName) i.next();
+                Expr value = r.lookup(name);
+                Expr canon = intern(value);
+                if (canon != value) {
+                    r.insertAttribute(name, canon);
+                }
+            }
+            return unshared(e);
+        }
+        default:
+            return lookup(e, constantHash((Constant) e));
+        }
+    } // intern(Expr)
+
+    /** Return an expression that cannot be shared, recording the fact in
+     * {@link #hash}.
+     * @param e the expression.
+     * @return e.
+     */
+    private Expr unshared(Expr e) {
+        hash = 0;
+        return e;
+    } // unshared(Expr)
+
+    /** Combine two hash codes.
+     * @param h1 the first hash code.
+     * @param h2 the second hash code.
+     * @return the combined hash code.
+     */
+    private static int combine(int h1, int h2) {
+        return 31 * h1 + h2;
+    } // combine(int,int)
+
+    /** Compute the hash code of a constant.  Constants that are sameAs each
+     * other have the same hash code.  In particular, integers and reals are
+     * hashed by their real values, and all values of the types UNDEFINED,
+     * ERROR, ABSOLUTE_TIME, and RELATIVE_TIME hash according to type alone,
+     * since {@link Expr#is(Expr)} treats them as identical.
+     * @param c the constant.
+     * @return its hash code.
+     */
+    private static int constantHash(Constant c) {
+        switch (c.type) {
+        case Expr.INTEGER:
+        case Expr.REAL:
+            // Adding 0.0 converts -0.0 to 0.0.
+            long bits = Double.doubleToLongBits(c.realValue() + 0.0);
+            return (int) (bits ^ (bits >>> 32));
+        case Expr.STRING:
+            return c.stringValue().hashCode();
+        case Expr.BOOLEAN:
+            return c.isTrue() ? 1231 : 1237;
+        default:
+            return c.type;
+        }
+    } // constantHash(Constant)
+
+    /** Check whether two sharable expressions are interchangeable:
+     * whether they are nodes of the same kind, with the same names or
+     * values, and identical (canonical) children.
+     * @param a an expression.
+     * @param b another expression with the same type.
+     * @return true if they are interchangeable.
+     */
+    private static boolean same(Expr a, Expr b) {
+        switch (a.type) {
+        case Expr.COND: {
+            CondExpr x = (CondExpr) a, y = (CondExpr) b;
+            return x.ec == y.ec && x.et == y.et && x.ef == y.ef;
+        }
+        case Expr.OP: {
+            Op x = (Op) a, y = (Op) b;
+            return x.op == y.op && x.arg1 == y.arg1 && x.arg2 == y.arg2;
+        }
+        case Expr.CALL: {
+            FuncCall x = (FuncCall) a, y = (FuncCall) b;
+            if (x.func != y.func || x.args.size() != y.args.size()) {
+                return false;
+            }
+            for (int i = 0; i < x.args.size(); i++) {
+                if (x.args.get(i) != y.args.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        case Expr.SELECTION: {
+            SelectExpr x = (SelectExpr) a, y = (SelectExpr) b;
+            return x.base == y.base && x.selector == y.selector;
+        }
+        case Expr.SUBSCRIPT: {
+            SubscriptExpr x = (SubscriptExpr) a, y = (SubscriptExpr) b;
+            return x.base == y.base && x.selector == y.selector;
+        }
+        case Expr.ATTRIBUTE:
+            // AttrNames are unique for each spelling.
+            return ((AttrRef) a).name == ((AttrRef) b).name;
+        case Expr.BOOLEAN:
+            return a == b;
+        default: {
+            // Other constants are distinguished by their values.
+            Object x = ((Constant) a).value, y = ((Constant) b).value;
+            return x == null ? y == null : x.equals(y);
+        }
+        }
+    } // same(Expr,Expr)
+
+    /** Find the canonical expression interchangeable with a given one,
+     * adding it to the table if there is none.
+     * @param e the expression, whose children are already canonical.
+     * @param h its hash code.
+     * @return the canonical expression.
+     */
+    private Expr lookup(Expr e, int h) {
+        // Zero means "not sharable", so avoid it as a real hash code.
+        if (h == 0) {
+            h = 1;
+        }
+        hash = h;
+        synchronized (ExprTable.class) {
+            purge();
+            int i = h & (table.length - 1);
+            for (Entry p = table[i]; p != null; p = p.next) {
+                if (p.hash == h) {
+                    Expr canon = (Expr) p.get();
+                    if (canon != null && canon.type == e.type
+                            && canon.getClass() == e.getClass()
+                            && same(canon, e))
+                    {
+                        return canon;
+                    }
+                }
+            }
+            table[i] = new Entry(e, h, table[i]);
+            if (++count > table.length) {
+                resize();
+            }
+        }
+        return e;
+    } // lookup(Expr,int)
+
+    /** Remove entries whose expressions have been reclaimed.
+     * The caller must hold the lock on ExprTable.class.
+     */
+    private static void purge() {
+        for (Entry e; (e = (Entry) queue.poll()) != null; ) {
+            int i = e.hash & (table.length - 1);
+            Entry prev = null;
+            for (Entry p = table[i]; p != null; prev = p, p = p.next) {
+                if (p == e) {
+                    if (prev == null) {
+                        table[i] = p.next;
+                    } else {
+                        prev.next = p.next;
+                    }
+                    count--;
+                    break;
+                }
+            }
+        }
+    } // purge()
+
+    /** Double the size of the table.
+     * The caller must hold the lock on ExprTable.class.
+     */
+    private static void resize() {
+        Entry[] old = table;
+        table = new Entry[old.length * 2];
+        for (int i = 0; i < old.length; i++) {
+            for (Entry p = old[i]; p != null; ) {
+                Entry next = p.next;
+                int j = p.hash & (table.length - 1);
+                p.next = table[j];
+                table[j] = p;
+                p = next;
+            }
+        }
+    } // resize()
+} // ExprTable
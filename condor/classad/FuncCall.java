@@ -16,7 +16,12 @@
 package condor.classad;
 
 import java.util.*;
+import java.util.regex.Pattern;
 import java.text.SimpleDateFormat;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
@@ -50,16 +55,26 @@ public class FuncCall extends Expr {
          */
         public final boolean strict;
 
+        /** An object that calls the method.  It implements whichever of
+         * the CallN or LazyCallN interfaces is appropriate to the number of
+         * arguments and strictness of the function.
+         */
+        public final Object invoker;
+
         /** Creates a FunctionInfo object.
          * @param method the method
          * @param argc the argc
          * @param strict true if arguments to the function should be evaluated
+         * @param invoker an object that calls the method
          */
-        public FunctionInfo(Method method, int argc, boolean strict) {
+        public FunctionInfo(Method method, int argc, boolean strict,
+                            Object invoker)
+        {
             this.method = method;
             this.argc = argc;
             this.strict = strict;
-        } // FunctionInfo(Method, int, boolean)
+            this.invoker = invoker;
+        } // FunctionInfo(Method, int, boolean, Object)
 
         /** For debugging.
          * @return a string version of this info.
@@ -69,6 +84,60 @@ public class FuncCall extends Expr {
         } // toString()
     } // FunctionInfo
 
+    // Interfaces for calling library functions.  Each function is "linked"
+    // when its library is loaded, creating an object that implements one of
+    // these interfaces, so that a call does not need reflection or an array
+    // of arguments.  Strict functions with zero to four arguments use
+    // Call0 through Call4 and non-strict ones use LazyCall0 through
+    // LazyCall4.  Varargs functions, and functions with more than four
+    // arguments, use CallN or LazyCallN, which take an array of arguments.
+
+    /** A strict function of no arguments. */
+    /*package*/ interface Call0 { Expr call(); }
+    /** A strict function of one argument. */
+    /*package*/ interface Call1 { Expr call(Expr a); }
+    /** A strict function of two arguments. */
+    /*package*/ interface Call2 { Expr call(Expr a, Expr b); }
+    /** A strict function of three arguments. */
+    /*package*/ interface Call3 { Expr call(Expr a, Expr b, Expr c); }
+    /** A strict function of four arguments. */
+    /*package*/ interface Call4 { Expr call(Expr a, Expr b, Expr c, Expr d); }
+    /** A strict function of any number of arguments. */
+    /*package*/ interface CallN { Expr call(Expr[] args); }
+    /** A non-strict function of no arguments. */
+    /*package*/ interface LazyCall0 { Expr call(Env env); }
+    /** A non-strict function of one argument. */
+    /*package*/ interface LazyCall1 { Expr call(Env env, Expr a); }
+    /** A non-strict function of two arguments. */
+    /*package*/ interface LazyCall2 { Expr call(Env env, Expr a, Expr b); }
+    /** A non-strict function of three arguments. */
+    /*package*/ interface LazyCall3 {
+        Expr call(Env env, Expr a, Expr b, Expr c);
+    }
+    /** A non-strict function of four arguments. */
+    /*package*/ interface LazyCall4 {
+        Expr call(Env env, Expr a, Expr b, Expr c, Expr d);
+    }
+    /** A non-strict function of any number of arguments. */
+    /*package*/ interface LazyCallN { Expr call(Env env, Expr[] args); }
+
+    /** The interfaces for strict functions, indexed by number of arguments.
+     */
+    private static final Class[] STRICT_CALLS = {
+        Call0.class, Call1.class, Call2.class, Call3.class, Call4.class
+    };
+
+    /** The interfaces for non-strict functions, indexed by number of
+     * arguments.
+     */
+    private static final Class[] LAZY_CALLS = {
+        LazyCall0.class, LazyCall1.class, LazyCall2.class, LazyCall3.class,
+        LazyCall4.class
+    };
+
+    /** Used to link library functions. */
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
     /** The name of the function as supplied in the original source.  */
     public final AttrName func;
 
@@ -78,11 +147,27 @@ public class FuncCall extends Expr {
     /** If true, arguments should be evaluated before calling the function. */
     private boolean strict;
 
-    /** The method that implements this function.  */
-    private Method method;
+    /** An object that calls the method that implements this function.
+     * @see FunctionInfo#invoker
+     */
+    private Object invoker;
+
+    /** If true, this is a call to a function defined in {@link Builtin}. */
+    private boolean builtin;
+
+    /** If true, this is a call to a built-in function whose result depends
+     * only on the values of its arguments.
+     * @see #isPure()
+     */
+    private boolean pure;
+
+    /** For a call to regexp() or regexpMember() whose pattern (and options,
+     * if any) are constants, the compiled pattern; otherwise null.
+     */
+    private Pattern pattern;
 
     /** A pre-allocated error constant to return for unknown functions.
-     * Non-null iff method is null.
+     * Non-null iff invoker is null.
      */
     private Constant unknownFunction = null;
 
@@ -110,9 +195,17 @@ public class FuncCall extends Expr {
         // Look up the function in those loaded from libraries.
         FunctionInfo info = (FunctionInfo) functions.get(func);
         if (info != null) {
-            this.method = info.method;
+            this.invoker = info.invoker;
             this.argc = info.argc;
             this.strict = info.strict;
+            this.builtin = info.method.getDeclaringClass() == Builtin.class;
+            this.pure = builtin
+                && !IMPURE.contains(func)
+                && (params != null && params.size() > 0
+                    || !func.equals(ABS_TIME));
+            if (builtin) {
+                pattern = constantPattern(func, params);
+            }
             return;
         }
 
@@ -121,6 +214,15 @@ public class FuncCall extends Expr {
         unknownFunction = Constant.error("unknown function " + func);
     } // FuncCall(AttrName,List)
 
+    /** Built-in functions whose results may differ from one call to the
+     * next, even with the same arguments.  (Also, absTime with no
+     * arguments.)
+     */
+    private static final Set IMPURE = new HashSet(Arrays.asList(new Object[] {
+        AttrName.fromString("random"),
+        AttrName.fromString("time"),
+    }));
+
     /** "relTime" for constant folding. */
     private static final AttrName REL_TIME = AttrName.fromString("relTime");
 
@@ -130,6 +232,50 @@ public class FuncCall extends Expr {
     /** "real" for constant folding. */
     private static final AttrName REAL = AttrName.fromString("real");
 
+    /** "regexp" for pre-compiling constant patterns. */
+    private static final AttrName REGEXP = AttrName.fromString("regexp");
+
+    /** "regexpMember" for pre-compiling constant patterns. */
+    private static final AttrName REGEXP_MEMBER
+        = AttrName.fromString("regexpMember");
+
+    /** Compile the pattern of a call to regexp() or regexpMember(), if it is
+     * a constant.
+     * @param func the name of the function.
+     * @param params the parameters.
+     * @return the compiled pattern, or null if the function is not one of
+     * those, the wrong number of parameters is supplied, the pattern or
+     * options are not string constants, or the pattern is not valid.
+     */
+    private static Pattern constantPattern(AttrName func, List params) {
+        int n = params == null ? 0 : params.size();
+        String opts = null;
+        if (func.equals(REGEXP)) {
+            if (n < 2 || n > 3) {
+                return null;
+            }
+            if (n == 3) {
+                Expr o = (Expr) params.get(2);
+                if (!(o instanceof Constant) || o.type != STRING) {
+                    return null;
+                }
+                opts = o.stringValue();
+            }
+        } else if (!func.equals(REGEXP_MEMBER) || n != 2) {
+            return null;
+        }
+        Expr pat = (Expr) params.get(0);
+        if (!(pat instanceof Constant) || pat.type != STRING) {
+            return null;
+        }
+        try {
+            return Builtin.compilePattern(pat.stringValue(), opts);
+        } catch (IllegalArgumentException e) {
+            // Report the error each time the call is evaluated.
+            return null;
+        }
+    } // constantPattern(AttrName,List)
+
     /** Create a function node from a name and a list of paramters.
      * This method has a special hack for "constant folding" of certain
      * calls.  If the function name is absTime or relTime (ignoring
@@ -155,6 +301,29 @@ public class FuncCall extends Expr {
         return new FuncCall(func, params);
     } // getInstance(AttrName,List)
 
+    /** Check whether this is a call to a "pure" function, one whose result
+     * depends only on the values of its arguments.  Only the functions in
+     * {@link Builtin} other than random(), time(), and absTime() with no
+     * arguments are considered pure; functions loaded by
+     * {@link ClassAd#loadJavaLibrary(String)} never are.  (The non-strict
+     * functions in Builtin use their Env parameter only to evaluate their
+     * arguments.)
+     * @return true if the function is pure.
+     */
+    /*package*/ boolean isPure() {
+        return pure;
+    } // isPure()
+
+    /** Check whether this call may refer to attributes other than those
+     * mentioned in its arguments.  That is possible only for non-strict
+     * functions loaded by {@link ClassAd#loadJavaLibrary(String)}, which are
+     * passed the Env and may search it for any attribute they like.
+     * @return true if the function may refer to arbitrary attributes.
+     */
+    /*package*/ boolean mayUseEnv() {
+        return invoker != null && !strict && !builtin;
+    } // mayUseEnv()
+
     /** Convert this Expr to a string, appending the result to the end of "sb".
      * The representation is the "canonical native format":
      * <code>name '(' [ arg [ ',' arg ]* ')'</code> with no extra spaces.
@@ -217,51 +386,62 @@ public class FuncCall extends Expr {
      * @return a Constant representing the value.
      */
     protected Expr eval1(Env env) {
-        if (method == null) {
+        if (invoker == null) {
             return unknownFunction;
         }
-        //////////////////////////////////////////////////////
-
-        // Non-strict functions expect an extra initial argument of type Env.
-        // The paramter passed to method.invoke is
-        //  strict varags
-        //     N     N     { true, arg1, arg1 }
-        //     N     Y     { true, { arg1, arg1 } }
-        //     Y     N     { arg1, arg1 }
-        //     Y     Y     { { arg1, arg1 } }
-        // The value of argc does not include this extra argument.
+        if (pattern != null) {
+            // regexp(pat, str [, opts]) or regexpMember(pat, list), with
+            // pat (and opts) constant.
+            Expr a1 = arg(1).eval(env);
+            if (func.equals(REGEXP)) {
+                if (a1.type == ERROR || a1.type == UNDEFINED) {
+                    return a1;
+                }
+                return Builtin.regexp(pattern, a1);
+            }
+            if (a1.type != LIST) {
+                return Constant.error(
+                    "regexpMember: arg 2 must be a list, not "
+                    + a1.typeName());
+            }
+            return Builtin.regExpMember(env, pattern, a1);
+        }
 
         int nargs = args.size();
         if (argc >= 0 && argc != nargs) {
-            return Constant.error("wrong number of args to " + func);
+            return Constant.error(new Object[] {
+                "wrong number of args to ", func });
         }
-
-        Object[] outer, inner;
-        int argp;
+        boolean spread = argc < 0 || invoker instanceof HandleCall;
 
         if (!strict) {
-            // Inhibit evaluation of arguments.  Just construct an array of
-            // pointers and pass it to method.invoke.
+            // Inhibit evaluation of arguments.  Just pass them to the
+            // function, along with the environment.
             try {
-                if (argc < 0) {
-                    // { true, { arg1, arg1 } }
-                    outer = new Object[2];
-                    inner = new Object[args.size()];
-                    outer[1] = inner;
-                    argp = 0;
-                } else {
-                    // { true, arg1, arg1 }
-                    outer = new Object[args.size() + 1];
-                    inner = outer;
-                    argp = 1;
+                if (spread) {
+                    return ((LazyCallN) invoker).call(env,
+                        (Expr[]) args.toArray(new Expr[nargs]));
                 }
-                outer[0] = env;
-                for (Iterator itr = args.iterator(); itr.hasNext(); ) {
-                    inner[argp++] = (Expr) itr.next();
+                switch (nargs) {
+                case 0:
+                    return ((LazyCall0) invoker).call(env);
+                case 1:
+                    return ((LazyCall1) invoker).call(env, arg(0));
+                case 2:
+                    return ((LazyCall2) invoker).call(env, arg(0), arg(1));
+                case 3:
+                    return ((LazyCall3) invoker).call(env, arg(0), arg(1),
+                                                        arg(2));
+                default:
+                    return ((LazyCall4) invoker).call(env, arg(0), arg(1),
+                                                        arg(2), arg(3));
                 }
-                return (Expr) method.invoke(null, outer);
-            } catch (Exception e) {
-                return Constant.error(func + ": " + e.getMessage());
+            } catch (VirtualMachineError e) {
+                throw e;
+            } catch (Throwable t) {
+                // The invokers do not wrap what the function throws, so
+                // this may be a checked exception or an Error.
+                return Constant.error(func + ": " + t.getMessage());
             }
         }
 
@@ -269,30 +449,32 @@ public class FuncCall extends Expr {
 
         Expr errVal = null;
         Expr undefVal = null;
-        Iterator itr = args.iterator();
-        inner = new Expr[nargs];
-        if (argc < 0) {
-            // { { arg1, arg1 } }
-            outer = new Object[] { inner };
-        } else {
-            // { arg1, arg1 }
-            outer = inner;
-        }
-        // Evaluate all the args in the original environment
-        // This rather complex way of doing it avoids the overhead of
-        // cloning the environment if there is exactly one argument.
+        Expr[] argv = spread ? new Expr[nargs] : null;
+        Expr a0 = null, a1 = null, a2 = null, a3 = null;
+
+        // Evaluate all the args in the original environment, restoring
+        // env to its original state before each one.
+        Env mark = env.mark();
         for (int i = 0; i < nargs; i++) {
-            Expr arg = (Expr) itr.next();
-            // Avoid the overhead of cloning the environement for the last
-            // (or only) argument
-            Expr argval = arg.eval((i < nargs - 1) ? new Env(env) : env);
+            Expr arg = arg(i);
+            env.reset(mark);
+            Expr argval = arg.eval(env);
             if (argval.type == ERROR && errVal == null) {
                 errVal = argval;
             }
             if (argval.type == UNDEFINED && undefVal == null) {
                 undefVal = argval;
             }
-            inner[i] = argval;
+            if (spread) {
+                argv[i] = argval;
+            } else {
+                switch (i) {
+                case 0: a0 = argval; break;
+                case 1: a1 = argval; break;
+                case 2: a2 = argval; break;
+                default: a3 = argval; break;
+                }
+            }
         }
         if (errVal != null) {
             return errVal;
@@ -302,12 +484,31 @@ public class FuncCall extends Expr {
         }
 
         try {
-            return (Expr) method.invoke(null, outer);
-        } catch (Exception e) {
-            return Constant.error(e.getMessage());
+            if (spread) {
+                return ((CallN) invoker).call(argv);
+            }
+            switch (nargs) {
+            case 0: return ((Call0) invoker).call();
+            case 1: return ((Call1) invoker).call(a0);
+            case 2: return ((Call2) invoker).call(a0, a1);
+            case 3: return ((Call3) invoker).call(a0, a1, a2);
+            default: return ((Call4) invoker).call(a0, a1, a2, a3);
+            }
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable t) {
+            return Constant.error(t.getMessage());
         }
     } // eval1(Env)
 
+    /** Get one of the arguments of this call.
+     * @param i the index of the argument.
+     * @return the unevaluated argument.
+     */
+    private Expr arg(int i) {
+        return (Expr) args.get(i);
+    } // arg(int)
+
     /** The precedence of the operator in this expression node.
      * Used to print expressions without superfluous parentheses.
      * Function calls have maximal precedence (higher than any operator).
@@ -368,7 +569,13 @@ public class FuncCall extends Expr {
                     db("warning: ignoring duplicate function " + name);
                     continue;
                 }
-                functions.put(name, new FunctionInfo(m, argc, strict));
+                Object invoker = link(m, argc, strict);
+                if (invoker == null) {
+                    db("warning: cannot link function " + name);
+                    continue;
+                }
+                functions.put(name,
+                    new FunctionInfo(m, argc, strict, invoker));
             }
             return true;
         } catch (ExceptionInInitializerError e) {
@@ -379,4 +586,97 @@ public class FuncCall extends Expr {
             return false;
         }
     } // loadJavaLibrary(String)
+
+    /** Create an object to call a library function.
+     * Where possible, the object is generated with LambdaMetafactory, so that
+     * calling it is as fast as a direct call to the method.  It implements
+     * one of Call0 - Call4 or LazyCall0 - LazyCall4 if the function takes a
+     * fixed number of arguments (up to four), or CallN or LazyCallN if the
+     * function is varargs.  In other cases, the result is a HandleCall, which
+     * implements CallN and LazyCallN by passing the elements of the
+     * argument array to the method.
+     * @param m the method implementing the function.
+     * @param argc the number of arguments (not counting the Env parameter of
+     * a non-strict function) or -1 for varargs.
+     * @param strict false if the method takes an Env parameter.
+     * @return the new object, or null if the method is not accessible.
+     */
+    private static Object link(Method m, int argc, boolean strict) {
+        MethodHandle mh;
+        try {
+            mh = lookup.unreflect(m);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        if (argc <= 4) {
+            Class iface;
+            if (argc < 0) {
+                iface = strict ? CallN.class : LazyCallN.class;
+            } else {
+                iface = strict ? STRICT_CALLS[argc] : LAZY_CALLS[argc];
+            }
+            try {
+                MethodType type = mh.type();
+                return LambdaMetafactory.metafactory(lookup, "call",
+                        MethodType.methodType(iface), type, mh, type)
+                    .getTarget().invoke();
+            } catch (Throwable t) {
+                // Fall through to the more general (but slower) mechanism.
+            }
+        }
+        if (argc >= 0) {
+            // The Env parameter of a non-strict function comes first, so in
+            // either case the arguments to be spread are the trailing ones.
+            mh = mh.asSpreader(Expr[].class, argc);
+        }
+        return new HandleCall(mh);
+    } // link(Method,int,boolean)
+
+    /** An object to call a library function through a MethodHandle, for the
+     * cases not handled by LambdaMetafactory.
+     */
+    private static final class HandleCall implements CallN, LazyCallN {
+        /** A handle taking an Expr[] (and an Env first, if non-strict). */
+        private final MethodHandle mh;
+
+        /** Create a HandleCall.
+         * @param mh a handle taking an array of arguments.
+         */
+        HandleCall(MethodHandle mh) {
+            this.mh = mh;
+        } // HandleCall(MethodHandle)
+
+        /** Call a strict function.
+         * @param args the argument values.
+         * @return the result of the function.
+         */
+        public Expr call(Expr[] args) {
+            try {
+                return (Expr) mh.invoke(args);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t.getMessage(), t);
+            }
+        } // call(Expr[])
+
+        /** Call a non-strict function.
+         * @param env the environment.
+         * @param args the unevaluated arguments.
+         * @return the result of the function.
+         */
+        public Expr call(Env env, Expr[] args) {
+            try {
+                return (Expr) mh.invoke(env, args);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException(t.getMessage(), t);
+            }
+        } // call(Env,Expr[])
+    } // HandleCall
 } // FuncCall
@@ -28,14 +28,101 @@ import java.util.*;
 public class ListExpr extends Expr {
     private static String VERSION = "$Id: ListExpr.java,v 1.21 2005/05/06 20:54:07 solomon Exp $";
 
-    /** The component expressions of the list */
-    private final List contents;
+    /** Lists with fewer elements than this are always searched linearly by
+     * {@link #contains(Constant,boolean)}.  Setting it to
+     * Integer.MAX_VALUE turns off indexing, which is useful only for
+     * measuring its effect.
+     */
+    public static int minIndexSize = 8;
+
+    /** Lists of at least this many INTEGER, REAL, or STRING constants, all
+     * of the same type, are packed:  they are stored as arrays of values
+     * rather than as lists of Constants (see {@link #ListExpr(List)}).
+     * Setting it to Integer.MAX_VALUE turns off packing, which is useful
+     * only for measuring its effect.
+     */
+    public static int minPackedSize = 16;
+
+    /** The component expressions of the list, or null if it is packed. */
+    private List contents;
+
+    /** The values of a packed list of INTEGER constants, or null. */
+    private int[] ints;
+
+    /** The values of a packed list of REAL constants, or null. */
+    private double[] reals;
+
+    /** The values of a packed list of STRING constants, or null. */
+    private String[] strings;
+
+    /** The index of the elements, or null if it has not been built since
+     * the list last changed.
+     */
+    private volatile Index index;
+
+    // ------------ Private inner class -----------------------------------
+    /** An index of the values of a list whose elements are all INTEGER,
+     * REAL, or STRING constants.
+     */
+    private static final class Index {
+        /** The number of elements indexed. */
+        final int size;
+
+        /** Keys for comparison with "==" (see equalKey), or null if the list
+         * cannot be indexed.
+         */
+        final Set equal;
+
+        /** Keys for comparison with "is" (see identicalKey), or null if the
+         * list cannot be indexed.
+         */
+        final Set identical;
+
+        /** Build an index.
+         * @param l the list.
+         */
+        Index(ListExpr l) {
+            size = l.size();
+            Set eq = new HashSet(2 * size);
+            Set id = new HashSet(2 * size);
+            for (Iterator i = l.iterator(); i.hasNext(); ) {
+                Expr e = (Expr) i.next();
+                if (!(e instanceof Constant)) {
+                    eq = id = null;
+                    break;
+                }
+                Object k = equalKey((Constant) e);
+                if (k == null) {
+                    eq = id = null;
+                    break;
+                }
+                if (k != NO_KEY) {
+                    eq.add(k);
+                    id.add(identicalKey((Constant) e));
+                }
+            }
+            equal = eq;
+            identical = id;
+        } // Index.Index(ListExpr)
+    } // Index
+
+    /** The key of a value that equals nothing, not even itself (NaN). */
+    private static final Object NO_KEY = new Object();
 
     /** Get the length of this list.
      * @return the number of elements in this list
      */
     public int size() {
-        return contents.size();
+        if (contents != null) {
+            return contents.size();
+        }
+        if (ints != null) {
+            return ints.length;
+        }
+        if (reals != null) {
+            return reals.length;
+        }
+        return strings.length;
     } // size()
 
     /** Construct an empty list. */
@@ -45,40 +132,279 @@ public class ListExpr extends Expr {
     } // ListExpr()
 
     /** Construct a list from a list of expressions.
+     * If there are at least {@link #minPackedSize} expressions and they
+     * are all INTEGER constants, all REAL constants, or all STRING
+     * constants, the list is packed.
      * @param l the array of expressions.
      */
     public ListExpr(List l) {
         super(LIST);
         contents = l == null ? new ArrayList(0) : new ArrayList(l);
+        if (contents.size() > 0 && contents.size() >= minPackedSize) {
+            pack();
+        }
     } // ListExpr(List)
 
-    /** Get a member of this list.
+    /** Create a packed list of INTEGER constants.
+     * @param values the values of the constants, which are copied.
+     * @return a new ListExpr.
+     */
+    public static ListExpr getInstance(int[] values) {
+        ListExpr l = new ListExpr(null);
+        l.contents = null;
+        l.ints = values.clone();
+        return l;
+    } // getInstance(int[])
+
+    /** Create a packed list of REAL constants.
+     * @param values the values of the constants, which are copied.
+     * @return a new ListExpr.
+     */
+    public static ListExpr getInstance(double[] values) {
+        ListExpr l = new ListExpr(null);
+        l.contents = null;
+        l.reals = values.clone();
+        return l;
+    } // getInstance(double[])
+
+    /** Create a packed list of STRING constants.
+     * @param values the values of the constants, which are copied.
+     * @return a new ListExpr.
+     * @throws IllegalArgumentException if any of the values is null.
+     */
+    public static ListExpr getInstance(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("null list element");
+            }
+        }
+        ListExpr l = new ListExpr(null);
+        l.contents = null;
+        l.strings = values.clone();
+        return l;
+    } // getInstance(String[])
+
+    /** Pack this list, if its members are all INTEGER constants, all REAL
+     * constants, or all STRING constants.  The list must not be empty.
+     */
+    private void pack() {
+        int n = contents.size();
+        int t = ((Expr) contents.get(0)).type;
+        for (int i = 0; i < n; i++) {
+            Expr e = (Expr) contents.get(i);
+            if (!(e instanceof Constant) || e.type != t) {
+                return;
+            }
+        }
+        switch (t) {
+        case INTEGER:
+            ints = new int[n];
+            for (int i = 0; i < n; i++) {
+                ints[i] = ((Expr) contents.get(i)).intValue();
+            }
+            break;
+        case REAL:
+            reals = new double[n];
+            for (int i = 0; i < n; i++) {
+                reals[i] = ((Expr) contents.get(i)).realValue();
+            }
+            break;
+        case STRING:
+            strings = new String[n];
+            for (int i = 0; i < n; i++) {
+                strings[i] = ((Expr) contents.get(i)).stringValue();
+            }
+            break;
+        default:
+            return;
+        }
+        contents = null;
+    } // pack()
+
+    /** Convert a packed list back to a list of Constants. */
+    private void unpack() {
+        int n = size();
+        List l = new ArrayList(n + 1);
+        for (int i = 0; i < n; i++) {
+            l.add(sub(i));
+        }
+        contents = l;
+        ints = null;
+        reals = null;
+        strings = null;
+    } // unpack()
+
+    /** Get a member of this list.  The members of a packed list are
+     * created as they are needed, so two calls with the same i may return
+     * different (but equal) Constants.
      * @param i the member to be retrieved.
      * @return the ith member of this list, or an error Constant if i is out of
      * bounds.
      */
     public Expr sub(int i) {
         try {
-            return (Expr) contents.get(i);
+            if (contents != null) {
+                return (Expr) contents.get(i);
+            }
+            if (ints != null) {
+                return Constant.getInstance(ints[i]);
+            }
+            if (reals != null) {
+                return Constant.getInstance(reals[i]);
+            }
+            return Constant.getInstance(strings[i]);
         } catch (IndexOutOfBoundsException e) {
             return Constant.error("subscript " + i + " is out of bounds");
         }
     } // sub(int)
 
     /** Appends the specified Expr to the end of this list.
+     * A packed list is unpacked first.
      * @param e the Expr to add.
      * @return this ListExpr.
      */
     public Expr add(Expr e) {
+        if (contents == null) {
+            unpack();
+        }
         contents.add(e);
+        index = null;
         return this;
     } // add(Expr)
 
+    /** Check whether this list is packed.
+     * @return true if the members are stored as an array of values.
+     */
+    /*package*/ boolean isPacked() {
+        return contents == null;
+    } // isPacked()
+
+    /** Get the values of a packed list of INTEGER constants.
+     * @return the values, which must not be modified, or null if this list
+     * is not a packed list of integers.
+     */
+    /*package*/ int[] intValues() {
+        return ints;
+    } // intValues()
+
+    /** Get the values of a packed list of REAL constants.
+     * @return the values, which must not be modified, or null if this list
+     * is not a packed list of reals.
+     */
+    /*package*/ double[] realValues() {
+        return reals;
+    } // realValues()
+
+    /** Check whether this list has a member equal to a constant, in the
+     * sense of "==" or "is", using an index of the values of the members.
+     * The index is built the first time it is needed, and only if every
+     * member is an INTEGER, REAL, or STRING constant; it is discarded
+     * when the list changes.
+     * @param c the value to look for.
+     * @param identical if true, compare with "is", otherwise with "==".
+     * @return TRUE or FALSE, or null if the list is not indexed, in which
+     * case the caller must search it member by member.
+     * @see Builtin#member(Env,Expr,Expr)
+     * @see Builtin#identicalMember(Env,Expr,Expr)
+     * @see Builtin#anycompare(Env,Expr,Expr,Expr)
+     */
+    /*package*/ Constant contains(Constant c, boolean identical) {
+        int n = size();
+        if (n < minIndexSize) {
+            return null;
+        }
+        Index ix = index;
+        if (ix == null || ix.size != n) {
+            index = ix = new Index(this);
+        }
+        if (ix.equal == null) {
+            return null;
+        }
+        Object k = equalKey(c);
+        if (k == null || k == NO_KEY) {
+            // Values of other types are not equal to any member.
+            return Constant.FALSE;
+        }
+        if (identical) {
+            return Constant.bool(ix.identical.contains(identicalKey(c)));
+        }
+        return Constant.bool(ix.equal.contains(k));
+    } // contains(Constant,boolean)
+
+    /** Get the key of a constant for comparison with "==".  Integers and
+     * reals are compared by numeric value and strings ignoring case.
+     * @param c the constant.
+     * @return the key, NO_KEY for NaN, or null if c is not an INTEGER,
+     * REAL, or STRING constant.
+     */
+    private static Object equalKey(Constant c) {
+        switch (c.type) {
+        case INTEGER:
+        case REAL:
+            double d = c.realValue();
+            if (d != d) {
+                return NO_KEY;
+            }
+            // -0.0 == 0.0
+            return Double.valueOf(d == 0.0 ? 0.0 : d);
+        case STRING:
+            // Fold case the same way as String.equalsIgnoreCase.
+            String s = c.stringValue();
+            StringBuffer sb = new StringBuffer(s.length());
+            for (int i = 0; i < s.length(); ) {
+                int ch = s.codePointAt(i);
+                sb.appendCodePoint(
+                    Character.toLowerCase(Character.toUpperCase(ch)));
+                i += Character.charCount(ch);
+            }
+            return sb.toString();
+        default:
+            return null;
+        }
+    } // equalKey(Constant)
+
+    /** Get the key of an INTEGER, REAL, or STRING constant other than NaN
+     * for comparison with "is".  Integers and reals are never identical to
+     * each other, and strings are compared including case.
+     * @param c the constant.
+     * @return the key.
+     */
+    private static Object identicalKey(Constant c) {
+        switch (c.type) {
+        case REAL:
+            double d = c.realValue();
+            return Double.valueOf(d == 0.0 ? 0.0 : d);
+        default:
+            return c.value;
+        }
+    } // identicalKey(Constant)
+
     /** Get an iterator for iterating throught the members of this list.
      * @return an iterator for enumerating the Expr members of this list.
      */
     public Iterator iterator() {
-        return contents.iterator();
+        if (contents != null) {
+            return contents.iterator();
+        }
+        return new Iterator() {
+            /** The index of the next member. */
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            public Object next() {
+                if (next >= size()) {
+                    throw new NoSuchElementException();
+                }
+                return sub(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     } // iterator
 
     /** Get the type of the expression.
@@ -107,7 +433,7 @@ public class ListExpr extends Expr {
      */
     public StringBuffer toString(StringBuffer sb) {
         char sep = '{';
-        for (Iterator exprs = contents.iterator(); exprs.hasNext();) {
+        for (Iterator exprs = iterator(); exprs.hasNext();) {
             Expr expr = (Expr) exprs.next();
             expr.toString(sb.append(sep));
             sep = ',';
@@ -128,10 +454,10 @@ public class ListExpr extends Expr {
             return false;
         }
         ListExpr o = (ListExpr) other;
-        if (contents.size() != o.contents.size()) {
+        if (size() != o.size()) {
             return false;
         }
-        for (Iterator i = contents.iterator(), j = o.contents.iterator();
+        for (Iterator i = iterator(), j = o.iterator();
             i.hasNext(); )
         {
             Expr e1 = (Expr) i.next();
@@ -0,0 +1,897 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A collection of ads kept outside the Java heap, in a memory-mapped file.
+ * {@link #write(File,Iterator)} encodes the ads in a compact binary form of
+ * their expression trees, and {@link #MappedStore(File)} maps the file
+ * into memory.  Since the file is all there is, a snapshot of a pool
+ * written by one process can be reopened by another, or after a restart,
+ * without parsing the ads again, and the operating system, not the garbage
+ * collector, decides which parts are in memory.
+ * <p>
+ * {@link #get(int)} returns an ad as a RecordExpr, which may be used
+ * wherever a RecordExpr may, but whose attribute values are decoded from
+ * the file only when they are first looked up.  {@link #lookup(int,AttrName)}
+ * decodes a single attribute, and {@link #intValue(int,AttrName,int)} and
+ * its relatives read a constant directly from the file, without creating
+ * any Expr at all.  For example, a query such as "the ads with more than
+ * 4096 Memory" need only read one integer from each ad.
+ * <p>
+ * The file consists of
+ * <ul>
+ * <li>a header:  a magic number and the version of the format,
+ * <li>the ads, each consisting of the index of its list of names, the
+ *     offsets of the values of its attributes, and the values, each
+ *     encoded as its {@link Expr#type type} followed by its parts,
+ * <li>the distinct lists of attribute names, each kept only once however
+ *     many ads have it,
+ * <li>the offsets of the ads, and
+ * <li>a trailer giving the offsets of the last two parts, and the magic
+ *     number again.
+ * </ul>
+ * Numbers are big-endian, and strings are encoded as a byte per character
+ * if they are ASCII and as UTF-16 otherwise.  A file is replaced only once
+ * it has been completely written, and a file that has no trailer is
+ * rejected.  Since
+ * offsets are 32-bit integers, the file is limited to 2 GB.
+ * <p>
+ * A MappedStore cannot be changed once it has been written.  It may be
+ * used by several threads at once.
+ * @see ColumnStore
+ * @version 2.2
+ */
+public final class MappedStore {
+    private static String VERSION = "$Id$";
+
+    /** The first and last four bytes of the file ("CAD\0"). */
+    private static final int MAGIC = 0x43414400;
+
+    /** The version of the format of the file. */
+    private static final int FORMAT = 1;
+
+    /** The size of the header:  MAGIC and FORMAT. */
+    private static final int HEADER = 8;
+
+    /** The size of the trailer:  the offsets of the names and the index, and
+     * MAGIC.
+     */
+    private static final int TRAILER = 12;
+
+    /** The contents of the file. */
+    private final ByteBuffer buf;
+
+    /** The lists of attribute names, indexed as in the file. */
+    private final Shape[] shapes;
+
+    /** The offset of the table of offsets of the ads. */
+    private final int index;
+
+    /** The number of ads. */
+    private final int count;
+
+    // --- Writing
+
+    /** Writes ads to a file, which may then be opened with
+     * {@link #MappedStore(File)}.  The file is replaced atomically if it
+     * exists, as by {@link #write(File,Iterator)}.
+     * @param file the file.
+     * @param ads the ads.
+     * @throws IOException if the file cannot be written or would be larger
+     *                     than 2 GB.
+     */
+    public static void write(File file, RecordExpr[] ads) throws IOException {
+        write(file, Arrays.asList(ads).iterator());
+    } // write(File,RecordExpr[])
+
+    /** Writes ads to a file, which may then be opened with
+     * {@link #MappedStore(File)}.  Each ad is encoded as soon as it is
+     * returned by the iterator, so the ads need not all be in memory at
+     * once.  The ads are written to a temporary file in the same directory,
+     * which is synced to disk and then renamed to replace the file
+     * atomically.  If writing fails, or the system crashes, the file is
+     * left as it was.  A MappedStore already open on the old file keeps
+     * reading the old ads.
+     * @param file the file.
+     * @param ads an iterator of the RecordExprs to be written.
+     * @throws IOException if the file cannot be written or would be larger
+     *                     than 2 GB.
+     */
+    public static void write(File file, Iterator ads) throws IOException {
+        // Write a temporary file in the same directory and rename it, so
+        // that a failure part way through leaves any previous snapshot
+        // intact.
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        boolean done = false;
+        try {
+            FileOutputStream f = new FileOutputStream(tmp);
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(f));
+            try {
+                new StoreWriter(out).write(ads);
+                out.flush();
+                f.getFD().sync();
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            done = true;
+        } finally {
+            if (!done) {
+                tmp.delete();
+            }
+        }
+    } // write(File,Iterator)
+
+    /** The state of a call of {@link MappedStore#write(File,Iterator)}. */
+    private static final class StoreWriter {
+        /** The file. */
+        private final DataOutputStream out;
+
+        /** The values of the ad being encoded. */
+        private final ByteArrayOutputStream values
+            = new ByteArrayOutputStream();
+
+        /** A stream writing to values. */
+        private final DataOutputStream valueOut = new DataOutputStream(values);
+
+        /** The distinct lists of attribute names of the ads, as Lists of
+         * Strings spelled as in the ads, in order of first appearance.
+         */
+        private final List shapes = new ArrayList();
+
+        /** The indices in shapes, indexed by list of names. */
+        private final Map shapeIndex = new HashMap();
+
+        /** The offsets of the ads. */
+        private int[] offsets = new int[16];
+
+        /** The number of ads written. */
+        private int count = 0;
+
+        /** Creates a StoreWriter.
+         * @param out the file.
+         */
+        StoreWriter(DataOutputStream out) {
+            this.out = out;
+        } // StoreWriter(DataOutputStream)
+
+        /** Writes the whole file.
+         * @param ads an iterator of the RecordExprs to be written.
+         * @throws IOException if an I/O error occurs.
+         */
+        void write(Iterator ads) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            while (ads.hasNext()) {
+                writeAd((RecordExpr) ads.next());
+            }
+            int namesOffset = position();
+            out.writeInt(shapes.size());
+            for (Iterator i = shapes.iterator(); i.hasNext(); ) {
+                List names = (List) i.next();
+                out.writeInt(names.size());
+                for (Iterator j = names.iterator(); j.hasNext(); ) {
+                    writeString(out, (String) j.next());
+                }
+            }
+            int index = position();
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(offsets[i]);
+            }
+            out.writeInt(namesOffset);
+            out.writeInt(index);
+            out.writeInt(MAGIC);
+            position();
+        } // write(Iterator)
+
+        /** Writes one ad.
+         * @param ad the ad.
+         * @throws IOException if an I/O error occurs.
+         */
+        private void writeAd(RecordExpr ad) throws IOException {
+            // Attributes removed from a PersistentRecord leave vacant
+            // positions, which are not written.
+            List names = new ArrayList(ad.size());
+            int n = 0;
+            int[] starts = new int[ad.positions()];
+            values.reset();
+            for (int i = 0; i < starts.length; i++) {
+                Expr value = ad.valueAt(i);
+                if (value != null) {
+                    names.add(ad.nameAt(i).rawString());
+                    starts[n++] = values.size();
+                    writeExpr(valueOut, value);
+                }
+            }
+            Integer s = (Integer) shapeIndex.get(names);
+            if (s == null) {
+                s = Integer.valueOf(shapes.size());
+                shapes.add(names);
+                shapeIndex.put(names, s);
+            }
+            int start = position();
+            int base = start + 4 + 4 * n;
+            out.writeInt(s.intValue());
+            for (int i = 0; i < n; i++) {
+                out.writeInt(base + starts[i]);
+            }
+            values.writeTo(out);
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            }
+            offsets[count++] = start;
+        } // writeAd(RecordExpr)
+
+        /** Gets the number of bytes written to the file so far.
+         * @return the number of bytes.
+         * @throws IOException if the file is too large.
+         */
+        private int position() throws IOException {
+            int result = out.size();
+            if (result == Integer.MAX_VALUE) {
+                // DataOutputStream stops counting at Integer.MAX_VALUE.
+                throw new IOException("ad store larger than 2 GB");
+            }
+            return result;
+        } // position()
+    } // StoreWriter
+
+    /** Encodes an expression.
+     * @param out where to write the encoding.
+     * @param e the expression.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeExpr(DataOutputStream out, Expr e)
+        throws IOException
+    {
+        out.writeByte(e.type);
+        switch (e.type) {
+        case Expr.UNDEFINED:
+        case Expr.ERROR:
+            writeString(out, ((Constant) e).annotation());
+            break;
+        case Expr.BOOLEAN:
+            out.writeBoolean(((Constant) e).isTrue());
+            break;
+        case Expr.INTEGER:
+            out.writeInt(((Constant) e).intValue(0));
+            break;
+        case Expr.REAL:
+            out.writeDouble(((Constant) e).realValue(0));
+            break;
+        case Expr.STRING:
+            writeString(out, ((Constant) e).stringValue(""));
+            break;
+        case Expr.ABSOLUTE_TIME:
+            out.writeLong(((Constant) e).milliseconds(0));
+            out.writeInt(((Constant) e).zone());
+            break;
+        case Expr.RELATIVE_TIME:
+            out.writeLong(((Constant) e).milliseconds(0));
+            break;
+        case Expr.ATTRIBUTE:
+            writeString(out, ((AttrRef) e).name.rawString());
+            break;
+        case Expr.SELECTION:
+            writeExpr(out, ((SelectExpr) e).base);
+            writeString(out, ((SelectExpr) e).selector.rawString());
+            break;
+        case Expr.SUBSCRIPT:
+            writeExpr(out, ((SubscriptExpr) e).base);
+            writeExpr(out, ((SubscriptExpr) e).selector);
+            break;
+        case Expr.OP:
+            Op op = (Op) e;
+            out.writeByte(op.op);
+            out.writeBoolean(op.arg2 != null);
+            writeExpr(out, op.arg1);
+            if (op.arg2 != null) {
+                writeExpr(out, op.arg2);
+            }
+            break;
+        case Expr.COND:
+            writeExpr(out, ((CondExpr) e).ec);
+            writeExpr(out, ((CondExpr) e).et);
+            writeExpr(out, ((CondExpr) e).ef);
+            break;
+        case Expr.CALL:
+            FuncCall call = (FuncCall) e;
+            writeString(out, call.func.rawString());
+            writeList(out, call.args == null
+                                ? Collections.EMPTY_LIST.iterator()
+                                : call.args.iterator(),
+                      call.args == null ? 0 : call.args.size());
+            break;
+        case Expr.LIST:
+            writeList(out, ((ListExpr) e).iterator(), ((ListExpr) e).size());
+            break;
+        case Expr.RECORD:
+            RecordExpr r = (RecordExpr) e;
+            out.writeInt(r.size());
+            for (int i = 0, n = r.positions(); i < n; i++) {
+                Expr value = r.valueAt(i);
+                if (value != null) {
+                    writeString(out, r.nameAt(i).rawString());
+                    writeExpr(out, value);
+                }
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("unknown expression type "
+                + e.type);
+        }
+    } // writeExpr(DataOutputStream,Expr)
+
+    /** Encodes a list of expressions.
+     * @param out where to write the encoding.
+     * @param i an iterator of the expressions.
+     * @param n the number of expressions.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeList(DataOutputStream out, Iterator i, int n)
+        throws IOException
+    {
+        out.writeInt(n);
+        while (i.hasNext()) {
+            writeExpr(out, (Expr) i.next());
+        }
+    } // writeList(DataOutputStream,Iterator,int)
+
+    /** Encodes a string:  If it is all ASCII, its length followed by a byte
+     * per character; otherwise, minus its length followed by two bytes per
+     * character.
+     * @param out where to write the encoding.
+     * @param s the string.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException
+    {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(i) >= 0x80) {
+                out.writeInt(-n);
+                out.writeChars(s);
+                return;
+            }
+        }
+        out.writeInt(n);
+        out.writeBytes(s);
+    } // writeString(DataOutputStream,String)
+
+    // --- Reading
+
+    /** Opens a file written by {@link #write(File,Iterator)}.  The file is
+     * mapped into memory; it should not be changed while the MappedStore is
+     * in use.
+     * @param file the file.
+     * @throws IOException if the file cannot be read or was not written by
+     *                     {@link #write(File,Iterator)}.
+     */
+    public MappedStore(File file) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = f.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + ": larger than 2 GB");
+            }
+            if (size < HEADER + TRAILER) {
+                throw new IOException(file + ": not an ad store");
+            }
+            // The mapping remains valid after the file is closed.
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            f.close();
+        }
+        int end = buf.limit();
+        if (buf.getInt(0) != MAGIC || buf.getInt(end - 4) != MAGIC) {
+            throw new IOException(file + ": not an ad store");
+        }
+        if (buf.getInt(4) != FORMAT) {
+            throw new IOException(file + ": unknown ad store format "
+                + buf.getInt(4));
+        }
+        int names = buf.getInt(end - TRAILER);
+        index = buf.getInt(end - TRAILER + 4);
+        if (names < HEADER || index < names || index > end - TRAILER - 4) {
+            throw new IOException(file + ": corrupt ad store");
+        }
+        count = buf.getInt(index);
+        Cursor c = new Cursor(names);
+        shapes = new Shape[c.getInt()];
+        for (int i = 0; i < shapes.length; i++) {
+            Shape s = Shape.EMPTY;
+            for (int n = c.getInt(); n > 0; n--) {
+                s = s.with(AttrName.fromString(c.getString()));
+            }
+            shapes[i] = s;
+        }
+    } // MappedStore(File)
+
+    /** Get the number of ads.
+     * @return the number of ads.
+     */
+    public int size() {
+        return count;
+    } // size()
+
+    /** Get an ad.  The result is a new RecordExpr each time, whose attribute
+     * values are decoded when they are first looked up, so callers that
+     * use the same ad repeatedly should keep it.  It cannot be modified:
+     * insertAttribute and removeAttribute throw
+     * UnsupportedOperationException.
+     * @param row the index of the ad.
+     * @return the ad.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     */
+    public RecordExpr get(int row) {
+        int ad = offset(row);
+        return new MappedRecord(this, shapes[buf.getInt(ad)], ad);
+    } // get(int)
+
+    /** Decode the value of an attribute of an ad.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @return the value of the attribute (null if not present).
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     */
+    public Expr lookup(int row, String name) {
+        return lookup(row, AttrName.fromString(name));
+    } // lookup(int,String)
+
+    /** Decode the value of an attribute of an ad.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @return the value of the attribute (null if not present).
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     */
+    public Expr lookup(int row, AttrName name) {
+        int p = valueOffset(row, name);
+        return p < 0 ? null : new Cursor(p).getExpr();
+    } // lookup(int,AttrName)
+
+    /** Get the type of the value of an attribute of an ad, without decoding
+     * it.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @return the type of the value, as {@link Expr#type}, or
+     *         {@link Expr#UNDEFINED} if the ad has no such attribute.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     */
+    public int type(int row, AttrName name) {
+        int p = valueOffset(row, name);
+        return p < 0 ? Expr.UNDEFINED : buf.get(p);
+    } // type(int,AttrName)
+
+    /** Read the value of an integer attribute of an ad, without decoding
+     * it.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @param otherwise the value to return if the attribute is not an
+     *                  INTEGER constant.
+     * @return the integer value of the attribute, or otherwise.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     * @see Constant#intValue(int)
+     */
+    public int intValue(int row, AttrName name, int otherwise) {
+        int p = valueOffset(row, name);
+        if (p < 0 || buf.get(p) != Expr.INTEGER) {
+            return otherwise;
+        }
+        return buf.getInt(p + 1);
+    } // intValue(int,AttrName,int)
+
+    /** Read the value of a numeric attribute of an ad, without decoding it.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @param otherwise the value to return if the attribute is not an
+     *                  INTEGER or REAL constant.
+     * @return the value of the attribute converted to double, or otherwise.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     * @see Constant#realValue(double)
+     */
+    public double realValue(int row, AttrName name, double otherwise) {
+        int p = valueOffset(row, name);
+        if (p < 0) {
+            return otherwise;
+        }
+        switch (buf.get(p)) {
+        case Expr.REAL:
+            return buf.getDouble(p + 1);
+        case Expr.INTEGER:
+            return buf.getInt(p + 1);
+        }
+        return otherwise;
+    } // realValue(int,AttrName,double)
+
+    /** Read the value of a string attribute of an ad, without decoding any
+     * other part of the ad.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @param otherwise the value to return if the attribute is not a STRING
+     *                  constant.
+     * @return the string value of the attribute, or otherwise.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     * @see Constant#stringValue(String)
+     */
+    public String stringValue(int row, AttrName name, String otherwise) {
+        int p = valueOffset(row, name);
+        if (p < 0 || buf.get(p) != Expr.STRING) {
+            return otherwise;
+        }
+        return new Cursor(p + 1).getString();
+    } // stringValue(int,AttrName,String)
+
+    /** Read the value of a time attribute of an ad, without decoding it.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @param otherwise the value to return if the attribute is not a
+     *                  RELATIVE_TIME or ABSOLUTE_TIME constant.
+     * @return the number of milliseconds (RELATIVE_TIME), the number of
+     *         milliseconds since 1970-01-01 UTC (ABSOLUTE_TIME), or
+     *         otherwise.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     * @see Constant#milliseconds(long)
+     */
+    public long milliseconds(int row, AttrName name, long otherwise) {
+        int p = valueOffset(row, name);
+        if (p < 0) {
+            return otherwise;
+        }
+        switch (buf.get(p)) {
+        case Expr.ABSOLUTE_TIME:
+        case Expr.RELATIVE_TIME:
+            return buf.getLong(p + 1);
+        }
+        return otherwise;
+    } // milliseconds(int,AttrName,long)
+
+    /** Find an ad in the file.
+     * @param row the index of the ad.
+     * @return the offset of the ad.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     */
+    private int offset(int row) {
+        if (row < 0 || row >= count) {
+            throw new IndexOutOfBoundsException("row " + row);
+        }
+        return buf.getInt(index + 4 + 4 * row);
+    } // offset(int)
+
+    /** Find the value of an attribute of an ad in the file.
+     * @param row the index of the ad.
+     * @param name the name of the attribute.
+     * @return the offset of the value, or -1 if the ad has no such
+     *         attribute.
+     * @throws IndexOutOfBoundsException if there is no such ad.
+     */
+    private int valueOffset(int row, AttrName name) {
+        int ad = offset(row);
+        int i = shapes[buf.getInt(ad)].indexOf(name);
+        return i < 0 ? -1 : buf.getInt(ad + 4 + 4 * i);
+    } // valueOffset(int,AttrName)
+
+    /** A position in the file, from which values are decoded in order.
+     * The buffer is only read at absolute positions, so Cursors in
+     * different threads do not interfere.
+     */
+    private final class Cursor {
+        /** The offset of the next byte to be read. */
+        private int pos;
+
+        /** Creates a Cursor.
+         * @param pos the offset of the first byte to be read.
+         */
+        Cursor(int pos) {
+            this.pos = pos;
+        } // Cursor(int)
+
+        /** Reads a four-byte integer.
+         * @return the integer.
+         */
+        int getInt() {
+            int result = buf.getInt(pos);
+            pos += 4;
+            return result;
+        } // getInt()
+
+        /** Reads a string written by writeString.
+         * @return the string.
+         */
+        String getString() {
+            int n = getInt();
+            if (n >= 0) {
+                byte[] b = new byte[n];
+                for (int i = 0; i < n; i++) {
+                    b[i] = buf.get(pos++);
+                }
+                return new String(b, StandardCharsets.ISO_8859_1);
+            }
+            char[] c = new char[-n];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = buf.getChar(pos);
+                pos += 2;
+            }
+            return new String(c);
+        } // getString()
+
+        /** Reads an attribute name.
+         * @return the name.
+         */
+        AttrName getName() {
+            return AttrName.fromString(getString());
+        } // getName()
+
+        /** Decodes an expression written by writeExpr.
+         * @return the expression.
+         */
+        Expr getExpr() {
+            int type = buf.get(pos++);
+            Expr result;
+            switch (type) {
+            case Expr.UNDEFINED:
+                String msg = getString();
+                return msg.length() == 0
+                    ? Constant.Undef
+                    : Constant.undefined(msg);
+            case Expr.ERROR:
+                msg = getString();
+                return msg.length() == 0
+                    ? Constant.Error
+                    : Constant.error(msg);
+            case Expr.BOOLEAN:
+                return Constant.bool(buf.get(pos++) != 0);
+            case Expr.INTEGER:
+                return Constant.getInstance(getInt());
+            case Expr.REAL:
+                result = Constant.getInstance(buf.getDouble(pos));
+                pos += 8;
+                return result;
+            case Expr.STRING:
+                return Constant.getInstance(getString());
+            case Expr.ABSOLUTE_TIME:
+                long ms = buf.getLong(pos);
+                pos += 8;
+                return Constant.getInstance(ms, getInt());
+            case Expr.RELATIVE_TIME:
+                ms = buf.getLong(pos);
+                pos += 8;
+                return Constant.getInstance(ms);
+            case Expr.ATTRIBUTE:
+                return new AttrRef(getName());
+            case Expr.SELECTION:
+                result = getExpr();
+                return new SelectExpr(result, getName());
+            case Expr.SUBSCRIPT:
+                result = getExpr();
+                return new SubscriptExpr(result, getExpr());
+            case Expr.OP:
+                int op = buf.get(pos++);
+                boolean binary = buf.get(pos++) != 0;
+                result = getExpr();
+                return binary
+                    ? new Op(op, result, getExpr())
+                    : new Op(op, result);
+            case Expr.COND:
+                Expr ec = getExpr();
+                Expr et = getExpr();
+                return new CondExpr(ec, et, getExpr());
+            case Expr.CALL:
+                AttrName func = getName();
+                return FuncCall.getInstance(func, getList());
+            case Expr.LIST:
+                return new ListExpr(getList());
+            case Expr.RECORD:
+                int n = getInt();
+                RecordExpr r = new RecordExpr(n);
+                for (int i = 0; i < n; i++) {
+                    AttrName name = getName();
+                    r.insertAttribute(name, getExpr());
+                }
+                return r;
+            default:
+                throw new IllegalStateException(
+                    "corrupt ad store:  expression type " + type
+                    + " at offset " + (pos - 1));
+            }
+        } // getExpr()
+
+        /** Decodes a list of expressions written by writeList.
+         * @return the expressions.
+         */
+        List getList() {
+            int n = getInt();
+            List result = new ArrayList(n);
+            for (int i = 0; i < n; i++) {
+                result.add(getExpr());
+            }
+            return result;
+        } // getList()
+    } // Cursor
+
+    /** An ad in a MappedStore.  The names of its attributes are kept in a
+     * {@link Shape} shared with all the other ads in the store (and with
+     * RecordExprs) that have the same names, and each value is decoded
+     * from the file the first time it is looked up.
+     */
+    private static final class MappedRecord extends RecordExpr {
+        /** The store. */
+        private final MappedStore store;
+
+        /** The names of the attributes. */
+        private final Shape shape;
+
+        /** The offset of the ad in the file. */
+        private final int ad;
+
+        /** The values that have been decoded, indexed by slot. */
+        private final AtomicReferenceArray values;
+
+        /** Creates a MappedRecord.
+         * @param store the store.
+         * @param shape the names of the attributes.
+         * @param ad the offset of the ad in the file.
+         */
+        MappedRecord(MappedStore store, Shape shape, int ad) {
+            this.store = store;
+            this.shape = shape;
+            this.ad = ad;
+            this.values = new AtomicReferenceArray(shape.size());
+        } // MappedRecord(MappedStore,Shape,int)
+
+        /** Gets the value in a slot, decoding it if necessary.  If two
+         * threads decode the same value at once, both use the first one
+         * stored.
+         * @param i the slot.
+         * @return the value.
+         */
+        private Expr get(int i) {
+            Expr result = (Expr) values.get(i);
+            if (result == null) {
+                int p = store.buf.getInt(ad + 4 + 4 * i);
+                values.compareAndSet(i, null, store.new Cursor(p).getExpr());
+                result = (Expr) values.get(i);
+            }
+            return result;
+        } // get(int)
+
+        /** Find the attribute with the given name.
+         * @param name the attribute name to look for.
+         * @return the value of the attribute (null if not present).
+         */
+        public Expr lookup(AttrName name) {
+            int i = shape.indexOf(name);
+            return i < 0 ? null : get(i);
+        } // lookup(AttrName)
+
+        /** Find the attribute named by an AttrRef, using and updating the
+         * slot remembered by the AttrRef.
+         * @param ref the reference.
+         * @return the value of the attribute (null if not present).
+         */
+        /*package*/ Expr lookup(AttrRef ref) {
+            Shape.Slot s = ref.slot;
+            if (s != null && s.shape == shape) {
+                return get(s.index);
+            }
+            int i = shape.indexOf(ref.name);
+            if (i < 0) {
+                return null;
+            }
+            if (inlineCaches) {
+                ref.slot = Shape.Slot.update(s, shape, i);
+            }
+            return get(i);
+        } // lookup(AttrRef)
+
+        /** Find the attribute named by a SelectExpr, using and updating the
+         * slot remembered by the SelectExpr.
+         * @param sel the selection.
+         * @return the value of the attribute (null if not present).
+         */
+        /*package*/ Expr lookup(SelectExpr sel) {
+            Shape.Slot s = sel.slot;
+            if (s != null && s.shape == shape) {
+                return get(s.index);
+            }
+            int i = shape.indexOf(sel.selector);
+            if (i < 0) {
+                return null;
+            }
+            if (inlineCaches) {
+                sel.slot = Shape.Slot.update(s, shape, i);
+            }
+            return get(i);
+        } // lookup(SelectExpr)
+
+        /** Unsupported:  An ad in a MappedStore cannot be modified.
+         * @param key the name of the attribute to be added.
+         * @param expr the value of the attribute.
+         * @return never.
+         * @throws UnsupportedOperationException always.
+         */
+        public RecordExpr insertAttribute(AttrName key, Expr expr) {
+            throw new UnsupportedOperationException(
+                        "insertAttribute on an ad in a MappedStore");
+        } // insertAttribute(AttrName,Expr)
+
+        /** Unsupported:  An ad in a MappedStore cannot be modified.
+         * @param attr the attribute to be removed.
+         * @return never.
+         * @throws UnsupportedOperationException always.
+         */
+        public Expr removeAttribute(AttrName attr) {
+            throw new UnsupportedOperationException(
+                        "removeAttribute on an ad in a MappedStore");
+        } // removeAttribute(AttrName)
+
+        /** Count how many attributes.
+         * @return the number of distinct attributes in this ad.
+         */
+        public int size() {
+            return shape.size();
+        } // size()
+
+        /** Enumerate the attribute names.
+         * @return an iterator of objects of type AttrName, representing the
+         *    the attribute names, in the order they were inserted.  The
+         *    iterator does not support remove().
+         */
+        public Iterator attributes() {
+            return Collections.unmodifiableList(Arrays.asList(shape.names))
+                .iterator();
+        } // attributes()
+
+        /** Get the number of positions of attributes.
+         * @return the number of positions.
+         */
+        /*package*/ int positions() {
+            return shape.size();
+        } // positions()
+
+        /** Get the name of an attribute by position.
+         * @param i the position, from 0 to positions() - 1.
+         * @return the name of the i'th attribute.
+         */
+        /*package*/ AttrName nameAt(int i) {
+            return shape.names[i];
+        } // nameAt(int)
+
+        /** Get the value of an attribute by position.
+         * @param i the position, from 0 to positions() - 1.
+         * @return the value of the i'th attribute.
+         */
+        /*package*/ Expr valueAt(int i) {
+            return get(i);
+        } // valueAt(int)
+    } // MappedRecord
+} // MappedStore
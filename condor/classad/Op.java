@@ -27,6 +27,16 @@ import java.util.Date;
 public class Op extends Expr {
     private static String VERSION = "$Id: Op.java,v 1.24 2005/05/06 20:54:07 solomon Exp $";
 
+    /** If true (the default), the second operand of &amp;&amp; or || is
+     * not evaluated when the value of the first operand determines the
+     * result:  when it is <b>false</b> (for &amp;&amp;), <b>true</b> (for
+     * ||), or anything other than a boolean or UNDEFINED (for either).
+     * The truth tables make the result the same either way, so the only
+     * reason to set this flag to false is to compare the cost of evaluating
+     * both operands, as earlier versions did.
+     */
+    public static boolean shortCircuit = true;
+
     /** The top-level operator.
      * @see Expr#opName
      */
@@ -184,6 +194,9 @@ public class Op extends Expr {
         }
     } //classify(Expr)
 
+    /** The message of the ERROR value of integer division by zero. */
+    private static final String DIVIDE_BY_ZERO = "/ by zero";
+
     /** An error constant for type errors. */
     private static final Constant notError =
         Constant.error("!: argument must be boolean");
@@ -244,10 +257,51 @@ public class Op extends Expr {
         Constant.TRUE,  Constant.Undef, Constant.FALSE, notError
     }; // notTable
 
+    /** The value of a &amp;&amp; or || expression, if it is determined by
+     * the value of the first operand alone and {@link #shortCircuit} is true.
+     * @param op the operator (AND or OR).
+     * @param val1 the value of the first operand.
+     * @return the value of the expression, or null if it depends on the
+     * second operand or short-circuiting is disabled.
+     * @see #determinedValue(int,Expr)
+     */
+    /*package*/ static Expr shortCircuitValue(int op, Expr val1) {
+        return shortCircuit ? determinedValue(op, val1) : null;
+    } // shortCircuitValue(int,Expr)
+
+    /** The value of a &amp;&amp; or || expression, if it is determined by
+     * the value of the first operand alone.
+     * Every entry in the row of the truth table for that value is the same,
+     * so the second operand need not be evaluated.
+     * @param op the operator (AND or OR).
+     * @param val1 the value of the first operand.
+     * @return the value of the expression, or null if it depends on the
+     * second operand.
+     */
+    /*package*/ static Expr determinedValue(int op, Expr val1) {
+        int c = classify(val1);
+        if (c == 3) {
+            // All operators are strict wrt ERROR for the first operand.
+            if (val1.type == ERROR) {
+                return val1;
+            }
+            return op == AND ? andError : orError;
+        }
+        if (op == AND && c == 0) {
+            return Constant.FALSE;
+        }
+        if (op == OR && c == 2) {
+            return Constant.TRUE;
+        }
+        return null;
+    } // determinedValue(int,Expr)
+
     /** Evaluate this Expr.  This is the internal method used to implement
      * {@link Expr#eval()}.
      * The operands are recursively evaluated and the operator is applied to
      * the values.
+     * The second operand of &amp;&amp; or || is skipped if the first
+     * determines the result (see {@link #shortCircuit}).
      * @param env an environment used to evaluate the operands.  It is cleared
      * to the null environment before return.
      * @return a Constant representing the value.
@@ -260,11 +314,34 @@ public class Op extends Expr {
             val1 = arg1.eval(env);
             val2 = null;
         } else {
-            val1 = arg1.eval(new Env(env));
+            // Rather than evaluating arg1 in a copy of env, evaluate it in
+            // env itself and then put env back the way it was.
+            Env mark = env.mark();
+            val1 = arg1.eval(env);
+            if (op == AND || op == OR) {
+                Expr result = shortCircuitValue(op, val1);
+                if (result != null) {
+                    env.clear();
+                    return result;
+                }
+            }
+            env.reset(mark);
             val2 = arg2.eval(env);
         }
         env.clear();
+        return apply(op, val1, val2);
+    } // eval1(Env)
 
+    /** Apply an operator to the values of its operands.
+     * This is the second half of {@link #eval1(Env)}, separated out so that
+     * other evaluators (such as {@link ExprCompiler}) can share the
+     * semantics of each operator.
+     * @param op the operator.
+     * @param val1 the value of the first (or only) operand.
+     * @param val2 the value of the second operand, or null if op is unary.
+     * @return a Constant representing the value.
+     */
+    /*package*/ static Expr apply(int op, Expr val1, Expr val2) {
         try {  // catch(ArithmeticException)
             // Special cases for SAME or DIFFERENT:
             // Simply evaluate both operands and see if they are identical.
@@ -364,12 +441,30 @@ public class Op extends Expr {
                 return const2;
             }
 
+            // Fast paths for the commonest cases:  two integers or two reals.
+            if (const1.type == const2.type) {
+                Expr result = null;
+                if (const1.type == INTEGER) {
+                    result = applyInts(op,
+                                const1.intValue(0), const2.intValue(0));
+                } else if (const1.type == REAL) {
+                    result = applyReals(op,
+                                const1.realValue(0), const2.realValue(0));
+                }
+                if (result != null) {
+                    return result;
+                }
+            }
+
             switch (opType[op]) {
             case 'b': {
                 // Bit (integer or boolean)
                 if (const1.type == INTEGER) {
+                    if (const2.type != INTEGER) {
+                        return const2.contextError("integer");
+                    }
                     int liv = const1.intValue();
-                    int riv = const2.intValue(); // may throw exception
+                    int riv = const2.intValue();
                     switch (op) {
                     case BITOR: return Constant.getInstance(liv | riv);
                     case BITXOR: return Constant.getInstance(liv ^ riv);
@@ -377,9 +472,9 @@ public class Op extends Expr {
                     }
                 } else {
                     if (const1.type != BOOLEAN || const1.type != BOOLEAN) {
-                        return Constant.error("type error: "
-                            + const1.typeName() + opName[op]
-                            + const2.typeName());
+                        return Constant.error(new Object[] {
+                            "type error: ", const1.typeName(), opName[op],
+                            const2.typeName() });
                     }
                     boolean liv = const1.isTrue();
                     boolean riv = const2.isTrue();
@@ -392,6 +487,12 @@ public class Op extends Expr {
             }
             case 'i': {
                 // Integer-only operations
+                if (const1.type != INTEGER) {
+                    return const1.contextError("integer");
+                }
+                if (const2.type != INTEGER) {
+                    return const2.contextError("integer");
+                }
                 int liv = const1.intValue(), riv = const2.intValue();
                 switch (op) {
                 case BITOR: return Constant.getInstance(liv | riv);
@@ -415,13 +516,18 @@ public class Op extends Expr {
                     //   abs - abs -> rel
                     //   abs + rel -> abs
                     //   abs - rel -> abs
+                    if (const2.type != ABSOLUTE_TIME
+                        && const2.type != RELATIVE_TIME)
+                    {
+                        return const2.contextError("integer");
+                    }
                     long ms1 = const1.milliseconds();
-                    long ms2 = const2.milliseconds(); // may throw exception
+                    long ms2 = const2.milliseconds();
                     if (const2.type == ABSOLUTE_TIME) {
                         if (op != MINUS) {
-                            return Constant.error("type error: "
-                                + const1.typeName() + opName[op]
-                                + const2.typeName());
+                            return Constant.error(new Object[] {
+                                "type error: ", const1.typeName(), opName[op],
+                                const2.typeName() });
                         }
                         return Constant.getInstance(ms1 - ms2);
                     }
@@ -431,22 +537,27 @@ public class Op extends Expr {
                     case PLUS:
                         return Constant.getInstance(new Date(ms1 + ms2));
                     default:
-                        return Constant.error("type error: "
-                            + const1.typeName() + opName[op]
-                            + const2.typeName());
+                        return Constant.error(new Object[] {
+                            "type error: ", const1.typeName(), opName[op],
+                            const2.typeName() });
                     }
                 } else if (const1.type == RELATIVE_TIME) {
                     // The only cases supported are
                     //   rel + abs -> abs
                     //   rel + rel -> rel
                     //   rel - rel -> rel
+                    if (const2.type != ABSOLUTE_TIME
+                        && const2.type != RELATIVE_TIME)
+                    {
+                        return const2.contextError("integer");
+                    }
                     long ms1 = const1.milliseconds();
-                    long ms2 = const2.milliseconds(); // may throw exception
+                    long ms2 = const2.milliseconds();
                     if (const2.type == ABSOLUTE_TIME) {
                         if (op != PLUS) {
-                            return Constant.error("type error: "
-                                + const1.typeName() + opName[op]
-                                + const2.typeName());
+                            return Constant.error(new Object[] {
+                                "type error: ", const1.typeName(), opName[op],
+                                const2.typeName() });
                         }
                         return Constant.getInstance(ms1 + ms2);
                     }
@@ -456,9 +567,9 @@ public class Op extends Expr {
                     case PLUS:
                         return Constant.getInstance(ms1 + ms2);
                     default:
-                        return Constant.error("type error: "
-                            + const1.typeName() + opName[op]
-                            + const2.typeName());
+                        return Constant.error(new Object[] {
+                            "type error: ", const1.typeName(), opName[op],
+                            const2.typeName() });
                     }
                 } else if (const1.type == INTEGER && const2.type == INTEGER) {
                     int liv = const1.intValue(), riv = const2.intValue();
@@ -473,6 +584,12 @@ public class Op extends Expr {
                             "unknown numeric operator " + opName[op]);
                     }
                 } else {
+                    if (!const1.isNumber()) {
+                        return const1.contextError("real");
+                    }
+                    if (!const2.isNumber()) {
+                        return const2.contextError("real");
+                    }
                     double lrv = const1.realValue();
                     double rrv = const2.realValue();
                     switch (op) {
@@ -497,15 +614,20 @@ public class Op extends Expr {
                         int v2 = const2.intValue();
                         cmp = v1 < v2 ? -1 : v1 == v2 ? 0 : 1;
                     } else {
+                        if (!const2.isNumber()) {
+                            return const2.contextError("real");
+                        }
                         double v2 = const2.realValue();
-                            // may throw exception
                         cmp = v1 < v2 ? -1 : v1 == v2 ? 0 : 1;
                     }
                     break;
                 }
                 case REAL: {
+                    if (!const2.isNumber()) {
+                        return const2.contextError("real");
+                    }
                     double v1 = const1.realValue();
-                    double v2 = const2.realValue(); // may throw exception
+                    double v2 = const2.realValue();
                     cmp = v1 < v2 ? -1 : v1 == v2 ? 0 : 1;
                     break;
                 }
@@ -513,26 +635,26 @@ public class Op extends Expr {
                     if (const2.type != BOOLEAN
                         || (op != EQUAL && op != NOT_EQUAL))
                     {
-                        throw new ArithmeticException(
-                                    "attempt to compare " + const1.typeName()
-                                    + " " + opName[op]
-                                    + " " + const2.typeName());
+                        return compareError(op, const1, const2);
                     }
                     cmp = const1 == const2 ? 0 : 1;
                     break;
                 }
                 case STRING: {
+                    if (const2.type != STRING) {
+                        return const2.contextError("string");
+                    }
                     String v1 = const1.stringValue();
-                    String v2 = const2.stringValue(); // may throw exception
+                    String v2 = const2.stringValue();
                     cmp = v1.compareToIgnoreCase(v2);
                     break;
                 }
                 case ABSOLUTE_TIME:
                 case RELATIVE_TIME: {
                     if (const1.type != const2.type) {
-                        return Constant.error("type error: "
-                            + const1.typeName() + opName[op]
-                            + const2.typeName());
+                        return Constant.error(new Object[] {
+                            "type error: ", const1.typeName(), opName[op],
+                            const2.typeName() });
                     }
                     long v1 = const1.milliseconds();
                     long v2 = const2.milliseconds();
@@ -540,10 +662,7 @@ public class Op extends Expr {
                     break;
                 }
                 default:
-                    throw new ArithmeticException(
-                                    "attempt to compare " + const1.typeName()
-                                    + " " + opName[op]
-                                    + " " + const2.typeName());
+                    return compareError(op, const1, const2);
                 } // switch (const1.type)
                 switch(op) {
                 case EQUAL: return Constant.bool(cmp == 0);
@@ -565,5 +684,87 @@ public class Op extends Expr {
         } catch (ArithmeticException ex) {
             return Constant.error(ex.getMessage());
         }
-    } // eval()
+    } // apply(int,Expr,Expr)
+
+    /** Apply a binary operator to two integers.  This is the fast path of
+     * {@link #apply(int,Expr,Expr)} for INTEGER operands, which neither
+     * throws nor catches exceptions.
+     * @param op the operator.
+     * @param liv the value of the first operand.
+     * @param riv the value of the second operand.
+     * @return a Constant representing the value, or null if op is not an
+     * arithmetic, bitwise, or comparison operator.
+     */
+    private static Expr applyInts(int op, int liv, int riv) {
+        switch (op) {
+        case PLUS: return Constant.getInstance(liv + riv);
+        case MINUS: return Constant.getInstance(liv - riv);
+        case TIMES: return Constant.getInstance(liv * riv);
+        case DIV:
+            return riv == 0
+                ? Constant.error(DIVIDE_BY_ZERO)
+                : Constant.getInstance(liv / riv);
+        case MOD:
+            return riv == 0
+                ? Constant.error(DIVIDE_BY_ZERO)
+                : Constant.getInstance(liv % riv);
+        case BITOR: return Constant.getInstance(liv | riv);
+        case BITXOR: return Constant.getInstance(liv ^ riv);
+        case BITAND: return Constant.getInstance(liv & riv);
+        case LEFT_SHIFT: return Constant.getInstance(liv << riv);
+        case RIGHT_SHIFT: return Constant.getInstance(liv >> riv);
+        case URIGHT_SHIFT: return Constant.getInstance(liv >>> riv);
+        case EQUAL: return Constant.bool(liv == riv);
+        case NOT_EQUAL: return Constant.bool(liv != riv);
+        case LESS: return Constant.bool(liv < riv);
+        case GREATER: return Constant.bool(liv > riv);
+        case LESS_EQ: return Constant.bool(liv <= riv);
+        case GREATER_EQ: return Constant.bool(liv >= riv);
+        default: return null;
+        }
+    } // applyInts(int,int,int)
+
+    /** Apply a binary operator to two reals.  This is the fast path of
+     * {@link #apply(int,Expr,Expr)} for REAL operands, which neither
+     * throws nor catches exceptions.
+     * @param op the operator.
+     * @param lrv the value of the first operand.
+     * @param rrv the value of the second operand.
+     * @return a Constant representing the value, or null if op is not an
+     * arithmetic or comparison operator.
+     */
+    private static Expr applyReals(int op, double lrv, double rrv) {
+        switch (op) {
+        case PLUS: return Constant.getInstance(lrv + rrv);
+        case MINUS: return Constant.getInstance(lrv - rrv);
+        case TIMES: return Constant.getInstance(lrv * rrv);
+        case DIV: return Constant.getInstance(lrv / rrv);
+        case MOD: return Constant.getInstance(lrv % rrv);
+        }
+        // As in the general case, NaN compares greater than everything.
+        int cmp = lrv < rrv ? -1 : lrv == rrv ? 0 : 1;
+        switch (op) {
+        case EQUAL: return Constant.bool(cmp == 0);
+        case NOT_EQUAL: return Constant.bool(cmp != 0);
+        case LESS: return Constant.bool(cmp < 0);
+        case GREATER: return Constant.bool(cmp > 0);
+        case LESS_EQ: return Constant.bool(cmp <= 0);
+        case GREATER_EQ: return Constant.bool(cmp >= 0);
+        default: return null;
+        }
+    } // applyReals(int,double,double)
+
+    /** Creates the ERROR value for a comparison of incomparable values.
+     * @param op the operator.
+     * @param const1 the first operand.
+     * @param const2 the second operand.
+     * @return an ERROR constant.
+     */
+    private static Constant compareError(int op,
+                                         Constant const1, Constant const2)
+    {
+        return Constant.error(new Object[] {
+            "attempt to compare ", const1.typeName(), " ", opName[op], " ",
+            const2.typeName() });
+    } // compareError(int,Constant,Constant)
 } // Op
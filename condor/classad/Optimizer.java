@@ -0,0 +1,279 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad;
+
+import java.util.*;
+
+/**
+ * A constant-folding and partial-evaluation pass over expressions.
+ * The result of {@link #optimize(Expr)} is an expression that evaluates to
+ * the same value as the original in every environment, but in which
+ * sub-expressions that do not depend on the environment have been replaced
+ * by their values.  For example, <code>Memory &gt;= 1024*1024*2</code>
+ * becomes <code>Memory &gt;= 2097152</code>.  The following are folded:
+ * <ul>
+ * <li>Operators whose operands are all constant (and &amp;&amp; or || whose
+ *     first operand alone determines the result).
+ * <li>Conditional expressions whose condition is constant.
+ * <li>Calls to "pure" built-in functions (see {@link FuncCall#isPure()})
+ *     whose arguments are constants or lists of constants.
+ * </ul>
+ * Elements of list literals are optimized, but record literals are left
+ * untouched, since they introduce a new scope.
+ * <p>
+ * {@link #optimize(Expr,RecordExpr)} also replaces references of the form
+ * <code>other.X</code> by the value of attribute X of a given ad, provided
+ * that value is a constant or an expression that folds to a constant using
+ * other attributes of the same ad.
+ * The original expression is never modified; unchanged sub-expressions
+ * are shared between the original and the result.
+ * @see Expr#sameAs(Expr)
+ * @version 2.2
+ */
+public final class Optimizer {
+    private static String VERSION = "$Id$";
+
+    /** The name "other". */
+    private static final AttrName OTHER = AttrName.fromString("other");
+
+    /** The ad to which <code>other</code> refers, or null if unknown. */
+    private final RecordExpr other;
+
+    /** The ad in which unqualified attribute references are resolved, or
+     * null if unknown.
+     */
+    private final RecordExpr scope;
+
+    /** Names of attributes of scope currently being resolved, used to avoid
+     * infinite recursion on cyclic definitions.
+     */
+    private final Set active = new HashSet();
+
+    /** Create an Optimizer.
+     * @param other the ad to which <code>other</code> refers, or null.
+     * @param scope the ad in which unqualified attribute references are
+     * resolved, or null.
+     */
+    private Optimizer(RecordExpr other, RecordExpr scope) {
+        this.other = other;
+        this.scope = scope;
+    } // Optimizer(RecordExpr,RecordExpr)
+
+    /** Fold the constant sub-expressions of an expression.
+     * @param expr the expression.
+     * @return an equivalent expression, possibly expr itself.
+     */
+    public static Expr optimize(Expr expr) {
+        return new Optimizer(null, null).fold(expr);
+    } // optimize(Expr)
+
+    /** Fold the constant sub-expressions of an expression, treating
+     * references to attributes of <code>other</code> as constants.
+     * The result is only equivalent to the original in environments in which
+     * <code>other</code> refers to the given ad, as it does when
+     * the expression is an attribute of one of the ads passed to
+     * {@link ClassAd#match(Expr,Expr)} and the given ad is the other one.
+     * @param expr the expression.
+     * @param other the ad to which <code>other</code> refers.
+     * @return an equivalent expression, possibly expr itself.
+     */
+    public static Expr optimize(Expr expr, RecordExpr other) {
+        return new Optimizer(other, null).fold(expr);
+    } // optimize(Expr,RecordExpr)
+
+    /** Fold an expression.
+     * @param e the expression.
+     * @return the folded expression.
+     */
+    private Expr fold(Expr e) {
+        switch (e.type) {
+        case Expr.OP:
+            return foldOp((Op) e);
+        case Expr.COND:
+            return foldCond((CondExpr) e);
+        case Expr.CALL:
+            return foldCall((FuncCall) e);
+        case Expr.SELECTION:
+            return foldSelect((SelectExpr) e);
+        case Expr.SUBSCRIPT: {
+            SubscriptExpr s = (SubscriptExpr) e;
+            Expr base = fold(s.base);
+            Expr selector = fold(s.selector);
+            if (base == s.base && selector == s.selector) {
+                return e;
+            }
+            return new SubscriptExpr(base, selector);
+        }
+        case Expr.ATTRIBUTE: {
+            AttrRef ref = (AttrRef) e;
+            Expr value = resolve(ref.name);
+            return value == null ? e : value;
+        }
+        case Expr.LIST:
+            return foldList((ListExpr) e);
+        default:
+            // Records and constants.
+            return e;
+        }
+    } // fold(Expr)
+
+    /** Fold an operator expression.
+     * @param e the expression.
+     * @return the folded expression.
+     */
+    private Expr foldOp(Op e) {
+        Expr arg1 = fold(e.arg1);
+        if (e.arg2 == null) {
+            if (arg1.isConstant()) {
+                return Op.apply(e.op, arg1, null);
+            }
+            return arg1 == e.arg1 ? e : new Op(e.op, arg1);
+        }
+        if ((e.op == Expr.AND || e.op == Expr.OR) && arg1.isConstant()) {
+            Expr result = Op.determinedValue(e.op, arg1);
+            if (result != null) {
+                return result;
+            }
+        }
+        Expr arg2 = fold(e.arg2);
+        if (arg1.isConstant() && arg2.isConstant()) {
+            return Op.apply(e.op, arg1, arg2);
+        }
+        if (arg1 == e.arg1 && arg2 == e.arg2) {
+            return e;
+        }
+        return new Op(e.op, arg1, arg2);
+    } // foldOp(Op)
+
+    /** Fold a conditional expression.
+     * @param e the expression.
+     * @return the folded expression.
+     */
+    private Expr foldCond(CondExpr e) {
+        Expr ec = fold(e.ec);
+        if (ec.isConstant()) {
+            if (ec.type == Expr.BOOLEAN) {
+                return fold(ec.isTrue() ? e.et : e.ef);
+            }
+            return CondExpr.nonBoolean(ec);
+        }
+        Expr et = fold(e.et);
+        Expr ef = fold(e.ef);
+        if (ec == e.ec && et == e.et && ef == e.ef) {
+            return e;
+        }
+        return new CondExpr(ec, et, ef);
+    } // foldCond(CondExpr)
+
+    /** Fold a function call.
+     * @param e the expression.
+     * @return the folded expression.
+     */
+    private Expr foldCall(FuncCall e) {
+        List args = new ArrayList(e.args.size());
+        boolean changed = false;
+        boolean closed = true;
+        for (Iterator i = e.args.iterator(); i.hasNext(); ) {
+            Expr arg = (Expr) i.next();
+            Expr folded = fold(arg);
+            changed |= folded != arg;
+            closed &= isClosed(folded);
+            args.add(folded);
+        }
+        if (closed && e.isPure()) {
+            Expr value = FuncCall.getInstance(e.func, args).eval();
+            if (value.type >= Expr.UNDEFINED) {
+                return value;
+            }
+        }
+        return changed ? FuncCall.getInstance(e.func, args) : e;
+    } // foldCall(FuncCall)
+
+    /** Fold a selection.  If it has the form <code>other.X</code>, try to
+     * replace it by the value of X in the other ad.
+     * @param e the expression.
+     * @return the folded expression.
+     */
+    private Expr foldSelect(SelectExpr e) {
+        if (other != null && e.base.type == Expr.ATTRIBUTE
+                && ((AttrRef) e.base).name.equals(OTHER))
+        {
+            Expr value = new Optimizer(null, other).resolve(e.selector);
+            if (value != null) {
+                return value;
+            }
+        }
+        Expr base = fold(e.base);
+        return base == e.base ? e : new SelectExpr(base, e.selector);
+    } // foldSelect(SelectExpr)
+
+    /** Fold the elements of a list.
+     * @param e the list.
+     * @return the list, or a new list if any element changed.
+     */
+    private Expr foldList(ListExpr e) {
+        List elements = new ArrayList(e.size());
+        boolean changed = false;
+        for (Iterator i = e.iterator(); i.hasNext(); ) {
+            Expr element = (Expr) i.next();
+            Expr folded = fold(element);
+            changed |= folded != element;
+            elements.add(folded);
+        }
+        return changed ? new ListExpr(elements) : e;
+    } // foldList(ListExpr)
+
+    /** Find the constant value of an unqualified attribute reference, if it
+     * refers to an attribute of scope whose value folds to a Constant.
+     * @param name the name of the attribute.
+     * @return the value, or null if it is not known to be constant.
+     */
+    private Expr resolve(AttrName name) {
+        if (scope == null || name.equals(AttrName.PARENT)
+                || active.contains(name))
+        {
+            return null;
+        }
+        Expr def = scope.lookup(name);
+        if (def == null) {
+            return null;
+        }
+        active.add(name);
+        Expr value = fold(def);
+        active.remove(name);
+        return value.type >= Expr.UNDEFINED ? value : null;
+    } // resolve(AttrName)
+
+    /** Check whether a value is the same in every environment:  a Constant
+     * or a list whose elements are all such values.
+     * @param e the value.
+     * @return true if e is closed.
+     */
+    private static boolean isClosed(Expr e) {
+        if (e.type >= Expr.UNDEFINED) {
+            return true;
+        }
+        if (e.type != Expr.LIST) {
+            return false;
+        }
+        for (Iterator i = ((ListExpr) e).iterator(); i.hasNext(); ) {
+            if (!isClosed((Expr) i.next())) {
+                return false;
+            }
+        }
+        return true;
+    } // isClosed(Expr)
+} // Optimizer
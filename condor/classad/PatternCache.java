@@ -0,0 +1,262 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * A cache of compiled regular expressions, used by the regexp() and
+ * regexpMember() functions of {@link Builtin}, so that a pattern used over
+ * and over is compiled only once.
+ * Patterns are looked up by the text of the pattern and the flags with
+ * which it is compiled.
+ * <p>
+ * The cache holds at most a fixed number of patterns (see
+ * {@link #setCapacity(int)}).  When it is full, a pattern that has not been
+ * used recently is discarded, chosen by the "second chance" approximation
+ * of least recently used:  Each pattern is marked when it is used, and the
+ * patterns are kept in a queue in the order they were added.  To make room,
+ * the pattern at the head of the queue is discarded if it is not marked;
+ * if it is, the mark is cleared and it goes to the tail.  Each eviction
+ * takes constant time on average.
+ * The cache may be used by several threads at once.  Looking up a pattern
+ * that is already in the cache does not lock anything.  Adding a pattern
+ * and discarding patterns are done under a single lock, so the cache never
+ * holds more than its capacity.
+ * <p>
+ * Calls whose pattern argument is a constant, such as
+ * <code>regexp("^vm1@", Name)</code>, do not use the cache at all; the
+ * pattern is compiled once, when the call is created.
+ * @see Builtin#regexp(Expr[])
+ * @version 2.2
+ */
+public final class PatternCache {
+    private static String VERSION = "$Id$";
+
+    /** The default maximum number of patterns. */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /** The maximum number of patterns. */
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    /** The cached patterns:  a mapping from Key to Entry.  Entries are
+     * only added or removed while holding the lock on queue.
+     */
+    private static final Map entries = new ConcurrentHashMap();
+
+    /** The Entries in entries, in the order in which they were added or
+     * given a second chance.  All access must be synchronized on the queue.
+     */
+    private static final ArrayDeque queue = new ArrayDeque();
+
+    /** The number of lookups that found the pattern in the cache. */
+    private static final LongAdder hits = new LongAdder();
+
+    /** The number of lookups that compiled the pattern. */
+    private static final LongAdder misses = new LongAdder();
+
+    /** The number of patterns discarded to make room for others. */
+    private static final LongAdder evictions = new LongAdder();
+
+    /** The key of a cached pattern. */
+    private static final class Key {
+        /** The text of the pattern. */
+        final String pattern;
+
+        /** The flags. */
+        final int flags;
+
+        /** Create a key.
+         * @param pattern the text of the pattern.
+         * @param flags the flags.
+         */
+        Key(String pattern, int flags) {
+            this.pattern = pattern;
+            this.flags = flags;
+        } // Key(String,int)
+
+        /** Compare keys.
+         * @param o the other key.
+         * @return true if the keys have the same pattern and flags.
+         */
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return flags == k.flags && pattern.equals(k.pattern);
+        } // equals(Object)
+
+        /** Hash code consistent with equals.
+         * @return the hash code.
+         */
+        public int hashCode() {
+            return pattern.hashCode() * 31 + flags;
+        } // hashCode()
+    } // Key
+
+    /** A cached pattern. */
+    private static final class Entry {
+        /** The key of the pattern. */
+        final Key key;
+
+        /** The compiled pattern. */
+        final Pattern pattern;
+
+        /** True if the pattern has been used since it was added or last
+         * given a second chance.
+         */
+        volatile boolean used;
+
+        /** Create an entry.
+         * @param key the key of the pattern.
+         * @param pattern the compiled pattern.
+         */
+        Entry(Key key, Pattern pattern) {
+            this.key = key;
+            this.pattern = pattern;
+        } // Entry(Key,Pattern)
+    } // Entry
+
+    /** The constructor is private to prevent anybody from trying to create an
+     * instance of this class.
+     */
+    private PatternCache() {
+        throw new RuntimeException();
+    } // PatternCache()
+
+    /** Get a compiled pattern, compiling it if it is not in the cache.
+     * @param pattern the text of the pattern.
+     * @param flags the flags, as for {@link Pattern#compile(String,int)}.
+     * @return the compiled pattern.
+     * @throws java.util.regex.PatternSyntaxException if the pattern is not
+     * valid.
+     */
+    /*package*/ static Pattern get(String pattern, int flags) {
+        Key key = new Key(pattern, flags);
+        Entry e = (Entry) entries.get(key);
+        if (e != null) {
+            hits.increment();
+            if (!e.used) {
+                e.used = true;
+            }
+            return e.pattern;
+        }
+        misses.increment();
+        Pattern p = Pattern.compile(pattern, flags);
+        synchronized (queue) {
+            int max = capacity;
+            if (max > 0) {
+                e = (Entry) entries.get(key);
+                if (e != null) {
+                    // Another thread added it while this one compiled it.
+                    return e.pattern;
+                }
+                evict(max - 1);
+                e = new Entry(key, p);
+                queue.addLast(e);
+                entries.put(key, e);
+            }
+        }
+        return p;
+    } // get(String,int)
+
+    /** Discard patterns that have not been used recently.  The caller must
+     * hold the lock on queue.
+     * @param size the number of patterns to leave in the cache.
+     */
+    private static void evict(int size) {
+        while (queue.size() > size) {
+            Entry e = (Entry) queue.removeFirst();
+            if (e.used && size > 0) {
+                e.used = false;
+                queue.addLast(e);
+            } else {
+                entries.remove(e.key);
+                evictions.increment();
+            }
+        }
+    } // evict(int)
+
+    /** Set the maximum number of patterns.  Patterns are discarded if there
+     * are already more than that.
+     * @param n the maximum number of patterns.  Zero turns off caching.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public static void setCapacity(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("bad capacity " + n);
+        }
+        synchronized (queue) {
+            capacity = n;
+            evict(n);
+        }
+    } // setCapacity(int)
+
+    /** Get the maximum number of patterns.
+     * @return the maximum number of patterns.
+     */
+    public static int getCapacity() {
+        return capacity;
+    } // getCapacity()
+
+    /** Get the number of patterns in the cache.
+     * @return the number of patterns.
+     */
+    public static int size() {
+        return entries.size();
+    } // size()
+
+    /** Get the number of lookups that found the pattern in the cache.
+     * @return the number of hits since the counts were last reset.
+     */
+    public static long getHits() {
+        return hits.sum();
+    } // getHits()
+
+    /** Get the number of lookups that had to compile the pattern.
+     * @return the number of misses since the counts were last reset.
+     */
+    public static long getMisses() {
+        return misses.sum();
+    } // getMisses()
+
+    /** Get the number of patterns discarded to make room for others.
+     * @return the number of evictions since the counts were last reset.
+     */
+    public static long getEvictions() {
+        return evictions.sum();
+    } // getEvictions()
+
+    /** Discard all cached patterns. */
+    public static void clear() {
+        synchronized (queue) {
+            queue.clear();
+            entries.clear();
+        }
+    } // clear()
+
+    /** Reset the counts of hits, misses, and evictions to zero. */
+    public static void resetCounts() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    } // resetCounts()
+} // PatternCache
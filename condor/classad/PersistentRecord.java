@@ -0,0 +1,415 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.util.*;
+
+/**
+ * An immutable RecordExpr.  Instead of being modified in place, a
+ * PersistentRecord yields new versions of itself:
+ * {@link #with(AttrName,Expr)} returns a version with an attribute added or
+ * replaced, and {@link #without(AttrName)} returns one with an attribute
+ * removed.  Each takes time proportional to the logarithm of the number of
+ * attributes, and the new version shares all but a few small arrays with
+ * the old one, so keeping many versions of an ad (for example, the ad
+ * before and after each update, or a snapshot for each negotiation cycle)
+ * costs little more than keeping one.  A reader may evaluate expressions
+ * against one version while a writer makes new ones, without copying and
+ * without locking.
+ * <p>
+ * Since a PersistentRecord is a RecordExpr, it may be used wherever a
+ * RecordExpr may:  in an {@link Env}, as the base of a selection, as the
+ * argument of {@link ClassAd#match(Expr,Expr)}, or with a
+ * {@link ClassAdWriter}.  Only the methods that modify a RecordExpr in place
+ * throw UnsupportedOperationException.  The attributes are listed in the
+ * order in which they were first added, just as for a RecordExpr built by
+ * the same sequence of insertions and removals.
+ * <p>
+ * The names are kept in a {@link Shape}, shared with RecordExprs built the
+ * same way, so AttrRefs and SelectExprs remember where they last found
+ * their names in a PersistentRecord just as in a RecordExpr.  The values
+ * are kept in a 16-way trie indexed by slot.  A removed attribute leaves
+ * its slot vacant (null) until more than half the slots are vacant, when
+ * the live attributes are copied into a new, compact version.
+ * @see RecordExpr
+ * @version 2.2
+ */
+public final class PersistentRecord extends RecordExpr {
+    private static String VERSION = "$Id$";
+
+    /** The number of bits of a slot number used at each level of the
+     * trie.
+     */
+    private static final int BITS = 4;
+
+    /** The number of children of each node of the trie. */
+    private static final int WIDTH = 1 << BITS;
+
+    /** The names of the attributes, including those whose slots are
+     * vacant.
+     */
+    private final Shape shape;
+
+    /** The root of the trie of values.  Interior nodes are arrays of
+     * WIDTH nodes, and leaves are arrays of WIDTH values, indexed by
+     * slot.  A missing node or a null value is a vacant slot.  The arrays
+     * are never modified once the PersistentRecord has been created, so
+     * they may be shared among versions.
+     */
+    private final Object[] root;
+
+    /** The number of bits of the slot used to index the root.  The depth
+     * of the trie is shift / BITS + 1.
+     */
+    private final int shift;
+
+    /** The number of attributes (occupied slots). */
+    private final int count;
+
+    /** Creates a PersistentRecord with no attributes. */
+    public PersistentRecord() {
+        this(Shape.EMPTY, new Object[WIDTH], 0, 0);
+    } // PersistentRecord()
+
+    /** Creates a PersistentRecord with the same attributes as a
+     * RecordExpr, in the same order.  Later changes to the RecordExpr do
+     * not affect the PersistentRecord.
+     * @param r the RecordExpr.
+     */
+    public PersistentRecord(RecordExpr r) {
+        this(compact(r));
+    } // PersistentRecord(RecordExpr)
+
+    /** Copy constructor, used to build a PersistentRecord in another and
+     * then return it from a constructor.
+     * @param r the PersistentRecord.
+     */
+    private PersistentRecord(PersistentRecord r) {
+        this(r.shape, r.root, r.shift, r.count);
+    } // PersistentRecord(PersistentRecord)
+
+    /** Creates a PersistentRecord from its parts.
+     * @param shape the names.
+     * @param root the trie of values.
+     * @param shift the number of bits used to index the root.
+     * @param count the number of attributes.
+     */
+    private PersistentRecord(Shape shape, Object[] root, int shift,
+                             int count)
+    {
+        this.shape = shape;
+        this.root = root;
+        this.shift = shift;
+        this.count = count;
+    } // PersistentRecord(Shape,Object[],int,int)
+
+    /** Builds a compact PersistentRecord with the attributes of a
+     * RecordExpr.
+     * @param r the RecordExpr.
+     * @return the new PersistentRecord, with no vacant slots.
+     */
+    private static PersistentRecord compact(RecordExpr r) {
+        PersistentRecord result = new PersistentRecord();
+        for (int i = 0, n = r.positions(); i < n; i++) {
+            Expr value = r.valueAt(i);
+            if (value != null) {
+                result = result.append(r.nameAt(i), value);
+            }
+        }
+        return result;
+    } // compact(RecordExpr)
+
+    // --- Versions
+
+    /** Returns a version of this PersistentRecord with an attribute added
+     * or replaced.  This PersistentRecord is not changed.
+     * @param name the name of the attribute.
+     * @param expr the value of the attribute.
+     * @return the new version.
+     * @throws IllegalArgumentException if name or expr is null or name is a
+     *                                  reserved word.
+     * @see RecordExpr#insertAttribute(String,Expr)
+     */
+    public PersistentRecord with(String name, Expr expr) {
+        return with(AttrName.fromString(name), expr);
+    } // with(String,Expr)
+
+    /** Returns a version of this PersistentRecord with an attribute added
+     * or replaced.  This PersistentRecord is not changed.
+     * @param name the name of the attribute.
+     * @param expr the value of the attribute.
+     * @return the new version.
+     * @throws IllegalArgumentException if name or expr is null or name is a
+     *                                  reserved word.
+     * @see RecordExpr#insertAttribute(AttrName,Expr)
+     */
+    public PersistentRecord with(AttrName name, Expr expr) {
+        if (name == null) {
+            throw new IllegalArgumentException(
+                        "null attribute name " + name);
+        }
+        if (name.equals(AttrName.PARENT)) {
+            throw new IllegalArgumentException(
+                "attribute name \"parent\" is reserved");
+        }
+        if (expr == null) {
+            throw new IllegalArgumentException(
+                        "null value for attribute " + name);
+        }
+        int i = shape.indexOf(name);
+        if (i < 0) {
+            return append(name, expr);
+        }
+        if (get(i) == null) {
+            // The attribute was removed.  Adding it again puts it last,
+            // as for a RecordExpr.
+            return compact(this).append(name, expr);
+        }
+        return new PersistentRecord(shape, set(root, shift, i, expr),
+                                    shift, count);
+    } // with(AttrName,Expr)
+
+    /** Returns a version of this PersistentRecord with an attribute
+     * removed.  This PersistentRecord is not changed.
+     * @param name the name of the attribute.
+     * @return the new version, or this PersistentRecord if it has no such
+     * attribute.
+     * @see RecordExpr#removeAttribute(AttrName)
+     */
+    public PersistentRecord without(String name) {
+        return without(AttrName.fromString(name));
+    } // without(String)
+
+    /** Returns a version of this PersistentRecord with an attribute
+     * removed.  This PersistentRecord is not changed.
+     * @param name the name of the attribute.
+     * @return the new version, or this PersistentRecord if it has no such
+     * attribute.
+     * @see RecordExpr#removeAttribute(AttrName)
+     */
+    public PersistentRecord without(AttrName name) {
+        int i = shape.indexOf(name);
+        if (i < 0 || get(i) == null) {
+            return this;
+        }
+        PersistentRecord result = new PersistentRecord(shape,
+                                    set(root, shift, i, null),
+                                    shift, count - 1);
+        if (2 * result.count < shape.size()) {
+            result = compact(result);
+        }
+        return result;
+    } // without(AttrName)
+
+    /** Creates a RecordExpr with the same attributes as this
+     * PersistentRecord, in the same order, which may then be modified in
+     * place.
+     * @return the new RecordExpr.
+     */
+    public RecordExpr toRecordExpr() {
+        RecordExpr result = new RecordExpr(count);
+        for (int i = 0, n = shape.size(); i < n; i++) {
+            Expr value = get(i);
+            if (value != null) {
+                result.insertAttribute(shape.names[i], value);
+            }
+        }
+        return result;
+    } // toRecordExpr()
+
+    /** Returns a version of this PersistentRecord with a new attribute
+     * added in a new slot after all the others.
+     * @param name the name of the attribute, which is not in shape.
+     * @param expr the value of the attribute.
+     * @return the new version.
+     */
+    private PersistentRecord append(AttrName name, Expr expr) {
+        int i = shape.size();
+        Object[] r = root;
+        int s = shift;
+        if (i == WIDTH << s) {
+            // The trie is full.  Add a level.
+            r = new Object[WIDTH];
+            r[0] = root;
+            s += BITS;
+        }
+        return new PersistentRecord(shape.with(name), set(r, s, i, expr), s,
+                                    count + 1);
+    } // append(AttrName,Expr)
+
+    // --- The trie
+
+    /** Gets the value in a slot.
+     * @param i the slot, less than shape.size().
+     * @return the value, or null if the slot is vacant.
+     */
+    private Expr get(int i) {
+        Object[] node = root;
+        for (int s = shift; s > 0; s -= BITS) {
+            node = (Object[]) node[(i >>> s) & (WIDTH - 1)];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (Expr) node[i & (WIDTH - 1)];
+    } // get(int)
+
+    /** Returns a copy of a trie with the value in one slot replaced.  Only
+     * the nodes on the path to the slot are copied.
+     * @param node the root of the trie, or null if it is empty.
+     * @param shift the number of bits of the slot used to index node.
+     * @param i the slot.
+     * @param value the new value, or null to make the slot vacant.
+     * @return the root of the new trie.
+     */
+    private static Object[] set(Object[] node, int shift, int i,
+                                Object value)
+    {
+        Object[] result = node == null
+            ? new Object[WIDTH]
+            : node.clone();
+        int j = (i >>> shift) & (WIDTH - 1);
+        if (shift == 0) {
+            result[j] = value;
+        } else {
+            result[j] = set((Object[]) result[j], shift - BITS, i, value);
+        }
+        return result;
+    } // set(Object[],int,int,Object)
+
+    // --- RecordExpr methods
+
+    /** Find the attribute with the given name.
+     * @param name the attribute name to look for.
+     * @return the value of the attribute (null if not present).
+     */
+    public Expr lookup(AttrName name) {
+        int i = shape.indexOf(name);
+        return i < 0 ? null : get(i);
+    } // lookup(AttrName)
+
+    /** Find the attribute named by an AttrRef, using and updating the slot
+     * remembered by the AttrRef.
+     * @param ref the reference.
+     * @return the value of the attribute (null if not present).
+     */
+    /*package*/ Expr lookup(AttrRef ref) {
+        Shape.Slot s = ref.slot;
+        Shape sh = shape;
+        if (s != null && s.shape == sh) {
+            return get(s.index);
+        }
+        int i = sh.indexOf(ref.name);
+        if (i < 0) {
+            return null;
+        }
+        if (inlineCaches) {
+            ref.slot = Shape.Slot.update(s, sh, i);
+        }
+        return get(i);
+    } // lookup(AttrRef)
+
+    /** Find the attribute named by a SelectExpr, using and updating the slot
+     * remembered by the SelectExpr.
+     * @param sel the selection.
+     * @return the value of the attribute (null if not present).
+     */
+    /*package*/ Expr lookup(SelectExpr sel) {
+        Shape.Slot s = sel.slot;
+        Shape sh = shape;
+        if (s != null && s.shape == sh) {
+            return get(s.index);
+        }
+        int i = sh.indexOf(sel.selector);
+        if (i < 0) {
+            return null;
+        }
+        if (inlineCaches) {
+            sel.slot = Shape.Slot.update(s, sh, i);
+        }
+        return get(i);
+    } // lookup(SelectExpr)
+
+    /** Unsupported:  A PersistentRecord cannot be modified in place.
+     * @param key the name of the attribute to be added.
+     * @param expr the value of the attribute.
+     * @return never.
+     * @throws UnsupportedOperationException always.
+     * @see #with(AttrName,Expr)
+     */
+    public RecordExpr insertAttribute(AttrName key, Expr expr) {
+        throw new UnsupportedOperationException(
+                    "insertAttribute on a PersistentRecord");
+    } // insertAttribute(AttrName,Expr)
+
+    /** Unsupported:  A PersistentRecord cannot be modified in place.
+     * @param attr the attribute to be removed.
+     * @return never.
+     * @throws UnsupportedOperationException always.
+     * @see #without(AttrName)
+     */
+    public Expr removeAttribute(AttrName attr) {
+        throw new UnsupportedOperationException(
+                    "removeAttribute on a PersistentRecord");
+    } // removeAttribute(AttrName)
+
+    /** Count how many attributes.
+     * @return the number of distinct attributes in this PersistentRecord.
+     */
+    public int size() {
+        return count;
+    } // size()
+
+    /** Enumerate the attribute names.
+     * @return an iterator of objects of type AttrName, representing the
+     *    the attribute names, in the order they were first inserted.  The
+     *    iterator does not support remove().
+     */
+    public Iterator attributes() {
+        List result = new ArrayList(count);
+        for (int i = 0, n = shape.size(); i < n; i++) {
+            if (get(i) != null) {
+                result.add(shape.names[i]);
+            }
+        }
+        return Collections.unmodifiableList(result).iterator();
+    } // attributes()
+
+    /** Get the number of positions of attributes, including those left
+     * vacant by removed attributes.
+     * @return the number of positions.
+     */
+    /*package*/ int positions() {
+        return shape.size();
+    } // positions()
+
+    /** Get the name of an attribute by position.
+     * @param i the position, from 0 to positions() - 1.
+     * @return the name of the i'th attribute.
+     */
+    /*package*/ AttrName nameAt(int i) {
+        return shape.names[i];
+    } // nameAt(int)
+
+    /** Get the value of an attribute by position.
+     * @param i the position, from 0 to positions() - 1.
+     * @return the value of the i'th attribute, or null if it was removed.
+     */
+    /*package*/ Expr valueAt(int i) {
+        return get(i);
+    } // valueAt(int)
+} // PersistentRecord
@@ -25,6 +25,14 @@ import java.io.*;
  * to expressions (Exprs).  It keeps track of the original strings (with case
  * preserved) and the order in which they were added so that the "original"
  * record can be printed.
+ * <p>
+ * The names are kept in a {@link Shape}, which maps each name to a slot in
+ * an array of values.  Records built the same way share a Shape, which lets
+ * an {@link AttrRef} remember where it last found its name.
+ * <p>
+ * A RecordExpr may be modified in place.  See {@link PersistentRecord} for
+ * an immutable variant, each of whose versions shares most of its
+ * structure with the version from which it was made.
  * @see Expr
  * @author <a href="mailto:solomon@cs.wisc.edu">Marvin Solomon</a>
  * @version 2.2
@@ -32,21 +40,42 @@ import java.io.*;
 public class RecordExpr extends Expr {
     private static String VERSION = "$Id: RecordExpr.java,v 1.29 2005/05/06 20:54:07 solomon Exp $";
 
-    /** A mapping from AttrName attribute names to Expr values.  */
-    private Map map;
+    /** Array with no elements, used for new records. */
+    private static final Expr[] NO_VALUES = new Expr[0];
 
-    /** A list of all the attribute names.  These are the keys of the map
-     * (objects of class AttrName) in the order they were first inserted.  For
+    /** If true, AttrRefs and SelectExprs remember the slot in which they
+     * last found their names (see {@link Shape.Slot}).  Turning this off is
+     * useful only for measuring its effect.
+     */
+    public static boolean inlineCaches = true;
+
+    /** The attribute names (objects of class AttrName), in the order they
+     * were first inserted, and the slot of each name in values.  For
      * the purposes of evaluation, a RecordExpression is treated as an
      * unordered set of (name, value) mappings, but for purposes of display,
      * the attributes should be shown in the order they were inserted.
      */
-    private List attrNames = new LinkedList();
+    private Shape shape = Shape.EMPTY;
+
+    /** The values of the attributes, indexed by slot.  Only the first
+     * shape.size() elements are used.
+     */
+    private Expr[] values;
+
+    /** A memo of the values of the attributes, or null if values are not
+     * remembered.
+     */
+    private EvalCache cache;
+
+    /** The dependencies among the attributes, or null if they have not
+     * been needed yet.
+     */
+    private DependencyGraph deps;
 
     /** Default constructor: a record with no fields. */
     public RecordExpr() {
         super(RECORD);
-        map = new HashMap();
+        values = NO_VALUES;
     } // RecordExpr()
 
     /** Creates a RecordExpr with a specified capacity.
@@ -55,7 +84,7 @@ public class RecordExpr extends Expr {
      */
     public RecordExpr(int n) {
         super(RECORD);
-        map = new HashMap(n,1);
+        values = n > 0 ? new Expr[n] : NO_VALUES;
     } // RecordExpr(List)
 
     /** The type of the expression.
@@ -70,7 +99,7 @@ public class RecordExpr extends Expr {
      * @return the definition of "name", or null if there is none.
      */
     public Expr lookup(String name) {
-        return (Expr) map.get(AttrName.fromString(name));
+        return lookup(AttrName.fromString(name));
     } // lookup(String)
 
     /** Find the attribute with the given name in this RecordExpr or
@@ -85,7 +114,7 @@ public class RecordExpr extends Expr {
      * @return the definition of "name", or null if there is none.
      */
     public Expr lookup(AttrName name, Env env) {
-        Expr res = (Expr) map.get(name);
+        Expr res = lookup(name);
         if (res == null) {
             res = env.search(name);
         }
@@ -97,9 +126,52 @@ public class RecordExpr extends Expr {
      * @return the value of the attribute (null if not present).
      */
     public Expr lookup(AttrName name) {
-        return (Expr) map.get(name);
+        int i = shape.indexOf(name);
+        return i < 0 ? null : values[i];
     } // lookup(AttrName)
 
+    /** Find the attribute named by an AttrRef, using and updating the slot
+     * remembered by the AttrRef.
+     * @param ref the reference.
+     * @return the value of the attribute (null if not present).
+     */
+    /*package*/ Expr lookup(AttrRef ref) {
+        Shape.Slot s = ref.slot;
+        Shape sh = shape;
+        if (s != null && s.shape == sh) {
+            return values[s.index];
+        }
+        int i = sh.indexOf(ref.name);
+        if (i < 0) {
+            return null;
+        }
+        if (inlineCaches) {
+            ref.slot = Shape.Slot.update(s, sh, i);
+        }
+        return values[i];
+    } // lookup(AttrRef)
+
+    /** Find the attribute named by a SelectExpr, using and updating the slot
+     * remembered by the SelectExpr.
+     * @param sel the selection.
+     * @return the value of the attribute (null if not present).
+     */
+    /*package*/ Expr lookup(SelectExpr sel) {
+        Shape.Slot s = sel.slot;
+        Shape sh = shape;
+        if (s != null && s.shape == sh) {
+            return values[s.index];
+        }
+        int i = sh.indexOf(sel.selector);
+        if (i < 0) {
+            return null;
+        }
+        if (inlineCaches) {
+            sel.slot = Shape.Slot.update(s, sh, i);
+        }
+        return values[i];
+    } // lookup(SelectExpr)
+
     /** Add an attribute (replacing previous value if any).
      * @param name the name of the attribute to be added.
      * @param expr the value of the attribute.
@@ -130,10 +202,20 @@ public class RecordExpr extends Expr {
             throw new IllegalArgumentException(
                         "null value for attribute " + key);
         }
-        if (!map.containsKey(key)) {
-            attrNames.add(key);
+        int i = shape.indexOf(key);
+        if (i < 0) {
+            i = shape.size();
+            if (i == values.length) {
+                Expr[] v = new Expr[Math.max(4, 2 * i)];
+                System.arraycopy(values, 0, v, 0, i);
+                values = v;
+            }
+            values[i] = expr;
+            shape = shape.with(key);
+        } else {
+            values[i] = expr;
         }
-        map.put(key, expr);
+        changed(key);
         return this;
     } // insertAttribute(AttrName,Expr)
 
@@ -144,23 +226,182 @@ public class RecordExpr extends Expr {
      * attribute was in the ad.
      */
     public Expr removeAttribute(AttrName attr) {
-        attrNames.remove(attr);
-        return (Expr) map.remove(attr);
+        int i = shape.indexOf(attr);
+        if (i < 0) {
+            changed(attr);
+            return null;
+        }
+        Expr result = values[i];
+        int n = shape.size();
+        System.arraycopy(values, i + 1, values, i, n - i - 1);
+        values[n - 1] = null;
+        shape = shape.without(attr);
+        changed(attr);
+        return result;
     } // removeAttribute(AttrName)
 
+    /** Update the dependency graph and the EvalCache, if any, after an
+     * attribute has been inserted, replaced, or removed.
+     * Only the remembered values of the attribute and those that depend on
+     * it are discarded.
+     * @param name the name of the attribute.
+     */
+    private void changed(AttrName name) {
+        if (deps == null) {
+            if (cache == null) {
+                return;
+            }
+            deps = new DependencyGraph(this);
+        } else {
+            deps.define(name, lookup(name));
+        }
+        if (cache != null) {
+            cache.remove(name);
+            cache.removeAll(deps.dependents(name));
+        }
+    } // changed(AttrName)
+
+    /** Find the attributes of this RecordExpr whose values may depend,
+     * directly or indirectly, on the value of a given name.
+     * For example, in <code>[ a = b + 1; b = c; c = 3; d = 4 ]</code>, both
+     * a and b depend on c.  The analysis is conservative:  The result may
+     * include attributes that do not actually depend on name.
+     * @param name the name.
+     * @return the names of the dependent attributes, in the order in which
+     * they were first inserted.
+     * @see #updateAttribute(AttrName,Expr)
+     */
+    public List dependents(AttrName name) {
+        if (deps == null) {
+            deps = new DependencyGraph(this);
+        }
+        Set found = deps.dependents(name);
+        List result = new ArrayList(found.size());
+        for (Iterator i = attributes(); i.hasNext(); ) {
+            AttrName a = (AttrName) i.next();
+            if (found.contains(a)) {
+                result.add(a);
+            }
+        }
+        return result;
+    } // dependents(AttrName)
+
+    /** Add or replace an attribute, and find which other attributes changed
+     * value as a result.
+     * The attributes that depend on <code>name</code> (see
+     * {@link #dependents(AttrName)}) are evaluated, as by
+     * <code>this.attr</code>, before and after the change; no other
+     * attributes are evaluated.  With an {@link EvalCache} that spans
+     * sessions, the values before the change usually come from the cache,
+     * and after the change only the dependent attributes are recomputed.
+     * @param name the name of the attribute to be added.
+     * @param expr the value of the attribute.
+     * @return the names of the other attributes whose values changed, in the
+     * order in which they were first inserted.  A value that is a list or
+     * record is always considered to have changed.
+     * @throws IllegalArgumentException if name or expr is null or name is a
+     *                                  reserved word.
+     */
+    public List updateAttribute(AttrName name, Expr expr) {
+        List affected = dependents(name);
+        affected.remove(name);
+        Expr[] before = new Expr[affected.size()];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = new SelectExpr(this, (AttrName) affected.get(i)).eval();
+        }
+        insertAttribute(name, expr);
+        List result = new ArrayList();
+        for (int i = 0; i < before.length; i++) {
+            AttrName a = (AttrName) affected.get(i);
+            Expr after = new SelectExpr(this, a).eval();
+            if (after.type < UNDEFINED || !after.is(before[i])) {
+                result.add(a);
+            }
+        }
+        return result;
+    } // updateAttribute(AttrName,Expr)
+
+    /** Turn on or off memoization of the values of the attributes of this
+     * RecordExpr.
+     * @param cache a new, empty EvalCache to hold the values, or null to turn
+     * off memoization.
+     * @see EvalCache
+     */
+    public void setEvalCache(EvalCache cache) {
+        this.cache = cache;
+    } // setEvalCache(EvalCache)
+
+    /** Get the memo of the values of the attributes of this RecordExpr.
+     * @return the cache, or null if values are not remembered.
+     */
+    public EvalCache getEvalCache() {
+        return cache;
+    } // getEvalCache()
+
+    /** Evaluate an attribute of this RecordExpr, which is on top of env,
+     * using the remembered value if possible.
+     * @param name the name of the attribute.
+     * @param def its definition.
+     * @param env the environment.
+     * @return the value of the attribute, or def itself if values of this
+     * RecordExpr are not remembered.
+     */
+    /*package*/ Expr cachedValue(AttrName name, Expr def, Env env) {
+        EvalCache c = cache;
+        if (c == null || def.isConstant()) {
+            return def;
+        }
+        return c.eval(name, def, env);
+    } // cachedValue(AttrName,Expr,Env)
+
     /** Count how many attributes.
      * @return the number of distinct attributes in this ClassAd.
      */
     public int size() {
-        return map.size();
+        return shape.size();
     } // size()
 
+    /** Get the number of positions of attributes.  For a RecordExpr, it is
+     * the same as size(), but a {@link PersistentRecord} may have positions
+     * left vacant by removed attributes.
+     * @return the number of positions.
+     * @see #valueAt(int)
+     */
+    /*package*/ int positions() {
+        return shape.size();
+    } // positions()
+
+    /** Get the name of an attribute by position.
+     * @param i the position, from 0 to positions() - 1, in the order in
+     * which the attributes were first inserted.
+     * @return the name of the i'th attribute.
+     * @see #attributes()
+     */
+    /*package*/ AttrName nameAt(int i) {
+        return shape.names[i];
+    } // nameAt(int)
+
+    /** Get the value of an attribute by position.  Iterating over the
+     * positions avoids looking up each name returned by
+     * {@link #attributes()}.
+     * @param i the position, from 0 to positions() - 1, in the order in
+     * which the attributes were first inserted.
+     * @return the value of the i'th attribute, or null if the position is
+     * vacant.
+     */
+    /*package*/ Expr valueAt(int i) {
+        return values[i];
+    } // valueAt(int)
+
     /** Enumerate the attribute names.
      * @return an iterator of objects of type AttrName, representing the
-     *    the attribute names.
+     *    the attribute names, in the order they were first inserted.  The
+     *    iterator does not support remove() and is not affected by later
+     *    changes to this RecordExpr.
      */
     public Iterator attributes() {
-        return attrNames.iterator();
+        return Collections.unmodifiableList(Arrays.asList(shape.names))
+            .iterator();
     } // attributes()
 
     /** Evaluate this Expr.  This is the internal method used to implement
@@ -184,12 +425,15 @@ public class RecordExpr extends Expr {
      */
     public StringBuffer toString(StringBuffer sb) {
         char sep = '[';
-        for (Iterator keys = attrNames.iterator(); keys.hasNext();) {
-            AttrName name = (AttrName) keys.next();
+        for (int i = 0, n = positions(); i < n; i++) {
+            Expr value = valueAt(i);
+            if (value == null) {
+                continue;
+            }
             sb.append(sep)
-                .append(name)
+                .append(nameAt(i))
                 .append('=');
-            lookup(name).toString(sb);
+            value.toString(sb);
             sep = ';';
         }
         if (sep == '[') {
@@ -208,23 +452,16 @@ public class RecordExpr extends Expr {
             return false;
         }
         RecordExpr o = (RecordExpr) other;
-        if (attrNames.size() != o.attrNames.size()) {
+        if (size() != o.size()) {
             return false;
         }
-        Object[] keys1 = map.keySet().toArray();
-        Object[] keys2 = o.map.keySet().toArray();
-        if (keys1.length != keys2.length) {
-            return false;
-        }
-        for (int i = 0; i < keys1.length; i++) {
-            Object k1 = keys1[i];
-            Object k2 = keys2[i];
-            if (!k1.equals(k2)) {
-                return false;
+        for (int i = 0, n = positions(); i < n; i++) {
+            Expr value = valueAt(i);
+            if (value == null) {
+                continue;
             }
-            Expr e1 = (Expr) map.get(k1);
-            Expr e2 = (Expr) o.map.get(k2);
-            if (!e1.sameAs(e2)) {
+            Expr e2 = o.lookup(nameAt(i));
+            if (e2 == null || !value.sameAs(e2)) {
                 return false;
             }
         }
@@ -279,13 +516,15 @@ public class RecordExpr extends Expr {
         } catch (Exception e) {
             throw new InvalidObjectException("bad TargetType attribute: " + e);
         }
-        out.writeInt(map.size() - 2);
-        for (Iterator keys = attrNames.iterator(); keys.hasNext(); ) {
-            String name = keys.next().toString();
-            if (name.equals("MyType") || name.equals("TargetType")) {
+        out.writeInt(size() - 2);
+        AttrName skip1 = AttrName.fromString("MyType");
+        AttrName skip2 = AttrName.fromString("TargetType");
+        for (int i = 0, n = positions(); i < n; i++) {
+            Expr value = valueAt(i);
+            AttrName name = nameAt(i);
+            if (value == null || name.equals(skip1) || name.equals(skip2)) {
                 continue;
             }
-            Expr value = lookup(name);
             out.writeUTF(name + "=" + value.toString());
         }
         out.writeUTF(myType);
@@ -36,6 +36,11 @@ public class SelectExpr extends Expr {
     /** The right argument (identifier) of the selection operator. */
     public final AttrName selector;
 
+    /** The slot in which selector was last found, or null.
+     * @see RecordExpr#lookup(SelectExpr)
+     */
+    /*package*/ Shape.Slot slot;
+
     /** Create a new SelectExpr corresponding to <code>base.selector</code>.
      * @param base the left argument (base expression).
      * @param selector the right argument (identifier).
@@ -131,31 +136,36 @@ public class SelectExpr extends Expr {
             // If base evaluates to b in the environment
             //   E = [ ... [ ... [ ... b ... ] ... ]; ... x = e;  ... ], 
             // then b.x evaluates to e in environment E.
-            result = ((RecordExpr) b).lookup(selector, env);
+            result = ((RecordExpr) b).lookup(this);
+            if (result == null) {
+                result = env.search(selector);
+            }
             if (result == null) {
-                result = Constant.undefined("attribute " + selector
-                                        + " not found in expression " + b);
+                result = Constant.undefined(new Object[] {
+                    "attribute ", selector, " not found in ", b });
                 env.clear();
             } else {
                 env.push((RecordExpr) b);
+                result = ((RecordExpr) b).cachedValue(selector, result, env);
             }
         } else if (b.type == LIST) {
             // { a, b, c }.x ==> { eval(a.x), eval(b.x), eval(c.x)}
             // Evaluation is "eager" and the result is in the empty
             // environment.
 	    ListExpr l = new ListExpr();
+	    Env mark = env.mark();
 	    for(Iterator i = ((ListExpr) b).iterator(); i.hasNext();) {
 		Expr e = (Expr)i.next();
-                l.add((new SelectExpr(e,selector)).eval(new Env(env)));
+		env.reset(mark);
+                l.add((new SelectExpr(e,selector)).eval(env));
 	    }
 	    result = l;
             env.clear();
 	} else {
             // something_else.x 
             env.clear();
-            result = Constant.error(
-                        b + "." + selector
-                        + ": argument is not a record or list");
+            result = Constant.error(new Object[] {
+                b, ".", selector, ": argument is not a record or list" });
         }
         return result;
     } // eval1(Env)
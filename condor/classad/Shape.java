@@ -0,0 +1,282 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The "shape" of a RecordExpr:  its attribute names, in the order they were
+ * inserted, together with an index mapping each name to its position
+ * (slot).  RecordExprs that have the same attributes, inserted in the same
+ * order with the same spelling, share a single Shape, so each RecordExpr
+ * needs only an array of values, indexed by slot.
+ * <p>
+ * Shapes are immutable.  A new Shape is obtained from an existing one by
+ * adding a name ({@link #with(AttrName)}) or removing one
+ * ({@link #without(AttrName)}).  Each Shape remembers the Shapes obtained
+ * from it by adding names, so that ads built the same way end up with the
+ * same Shape.  Likewise, it remembers the Shapes obtained from it by
+ * removing names, so that removing the same attribute from many ads of the
+ * same Shape costs a single table lookup after the first time.
+ * <p>
+ * A Shape refers to the Shapes obtained from it only through weak
+ * references, but holds its parent (the Shape it was obtained from by
+ * adding its last name) strongly.  Thus the tree of Shapes rooted at
+ * {@link #EMPTY} contains just the Shapes of live RecordExprs and their
+ * prefixes, rather than every Shape ever built.  A Shape that is reclaimed
+ * and later needed again is simply created afresh; since Shapes are
+ * compared by identity, RecordExprs that still have the old one merely stop
+ * sharing it with the new ones.
+ * <p>
+ * Since Shapes are shared, an AttrRef or SelectExpr can remember the slot in
+ * which its name was last found, together with the Shape of the RecordExpr
+ * in which it was found (see {@link Slot}).  The next time it is evaluated
+ * in a RecordExpr of the same Shape, the value is found by a single array
+ * access, without searching the index.
+ * @see RecordExpr
+ * @version 2.2
+ */
+/*package*/ final class Shape {
+    private static String VERSION = "$Id$";
+
+    /** The Shape of a RecordExpr with no attributes. */
+    /*package*/ static final Shape EMPTY = new Shape(null, new AttrName[0]);
+
+    /** The maximum number of Shapes remembered as successors of one Shape.
+     * Beyond this, new Shapes are created afresh each time, so that a
+     * lookup never searches a long list of successors.
+     */
+    private static final int MAX_TRANSITIONS = 64;
+
+    /** The Shape from which this one was obtained by adding its last name,
+     * or null for EMPTY.  It keeps the Shapes leading to this one in the
+     * tree for as long as this one is in use.
+     */
+    private final Shape parent;
+
+    /** The attribute names, in slot order.  Must not be modified. */
+    /*package*/ final AttrName[] names;
+
+    /** Open hash table mapping names to slots.  keys[h] is a name (or null)
+     * and slots[h] is its slot.  The length is a power of two at least twice
+     * the number of names, so there is always an empty entry.
+     */
+    private final AttrName[] keys;
+
+    /** The slots corresponding to keys. */
+    private final int[] slots;
+
+    /** Weak references to the Shapes obtained from this one by adding a
+     * name, indexed by the raw string of the name.
+     */
+    private final ConcurrentMap transitions = new ConcurrentHashMap();
+
+    /** Weak references to the Shapes obtained from this one by removing a
+     * name, indexed by the raw string of the name.
+     */
+    private final ConcurrentMap removals = new ConcurrentHashMap();
+
+    /** A remembered result of looking up a name in a Shape.  Slots are
+     * immutable, so they may be shared by several threads.
+     */
+    /*package*/ static final class Slot {
+        /** The Shape in which the name was found. */
+        final Shape shape;
+
+        /** The slot of the name in that Shape. */
+        final int index;
+
+        /** The number of times this site has been re-bound to a different
+         * Shape.
+         */
+        final int changes;
+
+        /** Create a Slot.
+         * @param shape the Shape.
+         * @param index the slot in that Shape.
+         * @param changes the number of previous Slots at the same site.
+         */
+        private Slot(Shape shape, int index, int changes) {
+            this.shape = shape;
+            this.index = index;
+            this.changes = changes;
+        } // Slot(Shape,int,int)
+
+        /** The maximum number of times a site is re-bound.  After that, the
+         * site is considered "megamorphic" and is left alone, so that a
+         * reference evaluated in ads of many shapes does not allocate a new
+         * Slot each time.
+         */
+        private static final int MAX_CHANGES = 8;
+
+        /** Compute the new value of a site after a lookup that did not match
+         * the remembered Shape.
+         * @param old the Slot currently remembered at the site, or null.
+         * @param shape the Shape in which the name was found.
+         * @param index the slot of the name in that Shape.
+         * @return the Slot to remember.
+         */
+        static Slot update(Slot old, Shape shape, int index) {
+            if (old == null) {
+                return new Slot(shape, index, 0);
+            }
+            if (old.changes >= MAX_CHANGES) {
+                return old;
+            }
+            return new Slot(shape, index, old.changes + 1);
+        } // update(Slot,Shape,int)
+    } // Slot
+
+    /** Create a Shape.
+     * @param parent the Shape with all but the last of the names, or null.
+     * @param names the attribute names, in slot order.
+     */
+    private Shape(Shape parent, AttrName[] names) {
+        this.parent = parent;
+        this.names = names;
+        int n = 2;
+        while (n < 2 * names.length) {
+            n <<= 1;
+        }
+        keys = new AttrName[n];
+        slots = new int[n];
+        for (int i = 0; i < names.length; i++) {
+            int h = names[i].hashCode() & (n - 1);
+            while (keys[h] != null) {
+                h = (h + 1) & (n - 1);
+            }
+            keys[h] = names[i];
+            slots[h] = i;
+        }
+    } // Shape(Shape,AttrName[])
+
+    /** Get the number of attributes.
+     * @return the number of names in this Shape.
+     */
+    /*package*/ int size() {
+        return names.length;
+    } // size()
+
+    /** Find the slot of a name.
+     * @param name the name.
+     * @return its slot, or -1 if it is not in this Shape.
+     */
+    /*package*/ int indexOf(AttrName name) {
+        int mask = keys.length - 1;
+        for (int h = name.hashCode() & mask; ; h = (h + 1) & mask) {
+            AttrName k = keys[h];
+            if (k == null) {
+                return -1;
+            }
+            if (k.equals(name)) {
+                return slots[h];
+            }
+        }
+    } // indexOf(AttrName)
+
+    /** Get the Shape with one more attribute.
+     * @param name the name of the new attribute, which must not already be
+     * in this Shape.
+     * @return a Shape whose names are those of this Shape followed by name.
+     */
+    /*package*/ Shape with(AttrName name) {
+        String key = name.rawString();
+        Shape result = get(transitions, key);
+        if (result == null) {
+            AttrName[] n = new AttrName[names.length + 1];
+            System.arraycopy(names, 0, n, 0, names.length);
+            n[names.length] = name;
+            result = remember(transitions, key, new Shape(this, n));
+        }
+        return result;
+    } // with(AttrName)
+
+    /** Get the Shape with one attribute removed.
+     * @param name the name of the attribute to remove, which must be in this
+     * Shape.
+     * @return a Shape whose names are those of this Shape, in the same order,
+     * except for name.
+     */
+    /*package*/ Shape without(AttrName name) {
+        String key = name.rawString();
+        Shape result = get(removals, key);
+        if (result == null) {
+            // Build the result from EMPTY, so that it is the same Shape as
+            // that of a RecordExpr built without name in the first place.
+            result = EMPTY;
+            for (int i = 0; i < names.length; i++) {
+                if (!names[i].equals(name)) {
+                    result = result.with(names[i]);
+                }
+            }
+            result = remember(removals, key, result);
+        }
+        return result;
+    } // without(AttrName)
+
+    /** Look up a remembered Shape.
+     * @param map transitions or removals.
+     * @param key the raw string of a name.
+     * @return the Shape, or null if there is none or it has been reclaimed.
+     */
+    private static Shape get(Map map, String key) {
+        Reference ref = (Reference) map.get(key);
+        return ref == null ? null : (Shape) ref.get();
+    } // get(Map,String)
+
+    /** Remember a Shape, unless another thread has already remembered one
+     * for the same key, or the map is full.
+     * @param map transitions or removals.
+     * @param key the raw string of a name.
+     * @param shape the Shape.
+     * @return the remembered Shape, which is shape unless another thread got
+     * there first.
+     */
+    private static Shape remember(ConcurrentMap map, String key,
+                                    Shape shape)
+    {
+        if (map.size() >= MAX_TRANSITIONS) {
+            // Make room by dropping the entries of reclaimed Shapes.
+            for (Iterator i = map.values().iterator(); i.hasNext(); ) {
+                if (((Reference) i.next()).get() == null) {
+                    i.remove();
+                }
+            }
+            if (map.size() >= MAX_TRANSITIONS) {
+                return shape;
+            }
+        }
+        Reference ref = new WeakReference(shape);
+        for (;;) {
+            Reference old = (Reference) map.putIfAbsent(key, ref);
+            if (old == null) {
+                return shape;
+            }
+            Shape s = (Shape) old.get();
+            if (s != null) {
+                return s;
+            }
+            if (map.replace(key, old, ref)) {
+                return shape;
+            }
+        }
+    } // remember(ConcurrentMap,String,Shape)
+} // Shape
@@ -102,7 +102,9 @@ public class SubscriptExpr extends Expr {
      * @return the result of the subscripting operation.
      */
     protected Expr eval1(Env env) {
-        Expr i = selector.eval(new Env(env));
+        Env mark = env.mark();
+        Expr i = selector.eval(env);
+        env.reset(mark);
         Expr b = base.eval(env);
         Expr result;
         switch (b.type) {
@@ -124,11 +126,11 @@ public class SubscriptExpr extends Expr {
                             "List[" + i.typeName() + "]: type mismatch");
             }
             if (result == null) {
-                result = Constant.undefined("attribute " + selector
-                                        + " not found in expression " + b);
+                result = Constant.undefined(new Object[] {
+                    "attribute ", selector, " not found in ", b });
                 env.clear();
             } else {
-                env.push((RecordExpr) base);
+                env.push(r);
             }
             return result;
         default:
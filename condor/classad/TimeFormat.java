@@ -0,0 +1,335 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoField;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conversion of absolute times to strings, used by the formatTime(),
+ * gmtTimeString(), and localTimeString() functions of {@link Builtin} and
+ * to print absolute-time constants.
+ * All conversions use java.time formatters, which are immutable, so one
+ * formatter may be used by any number of threads at once.
+ * <p>
+ * The strftime-style format strings given to formatTime() are compiled to
+ * formatters, and the formatter for each format string is kept in a cache,
+ * so that a format used over and over is compiled only once.  The cache
+ * holds at most a fixed number of formats (see {@link #setCapacity(int)});
+ * when it is full, it is emptied and starts over.
+ * <p>
+ * Dates are in the proleptic Gregorian calendar (as in ISO 8601), even
+ * before the Gregorian calendar was adopted in 1582.
+ * @see Builtin#formatTime(Expr,Expr)
+ * @version 2.2
+ */
+public final class TimeFormat {
+    private static String VERSION = "$Id$";
+
+    /** The default maximum number of cached formats. */
+    private static final int DEFAULT_CAPACITY = 128;
+
+    /** The maximum number of cached formats. */
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    /** The cached formats:  a mapping from format string to
+     * DateTimeFormatter.
+     */
+    private static final Map formats = new ConcurrentHashMap();
+
+    /** Format of absolute-time constants, without the time zone:
+     * yyyy-mm-ddThh:mm:ss.
+     */
+    private static final DateTimeFormatter DATE_AND_TIME =
+        time(year(new DateTimeFormatterBuilder())
+                .appendLiteral('-')
+                .appendValue(ChronoField.MONTH_OF_YEAR, 2)
+                .appendLiteral('-')
+                .appendValue(ChronoField.DAY_OF_MONTH, 2)
+                .appendLiteral('T'))
+            .toFormatter(Locale.ROOT)
+            .withZone(ZoneOffset.UTC);
+
+    /** Unix "ctime" format in GMT, as used by gmtTimeString(). */
+    private static final DateTimeFormatter GMT_CTIME =
+        year(ctime(new DateTimeFormatterBuilder()).appendLiteral(" UTC "))
+            .toFormatter();
+
+    /** Unix "ctime" format with the name of the time zone, as used by
+     * localTimeString().
+     */
+    private static final DateTimeFormatter LOCAL_CTIME =
+        year(ctime(new DateTimeFormatterBuilder())
+                .appendLiteral(' ')
+                .appendZoneText(TextStyle.SHORT)
+                .appendLiteral(' '))
+            .toFormatter();
+
+    /** The constructor is private to prevent anybody from trying to create an
+     * instance of this class.
+     */
+    private TimeFormat() {
+        throw new RuntimeException();
+    } // TimeFormat()
+
+    /** Format a time with a strftime-style format in the default time zone.
+     * The format may contain the escapes %x, where x is any of the
+     * characters aAbBcdHIjmMpSwxXyYZ%.  Other characters, including %
+     * followed by any other character, are copied unchanged.
+     * @param ms the time, in milliseconds since the epoch.
+     * @param fmt the format.
+     * @return the formatted time.
+     */
+    public static String format(long ms, String fmt) {
+        return localize(get(fmt))
+            .format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(ms),
+                                            ZoneId.systemDefault()));
+    } // format(long,String)
+
+    /** Format a time in Unix "ctime" format in GMT, for example
+     * "Fri Apr  4 12:00:00 UTC 1997".
+     * @param ms the time, in milliseconds since the epoch.
+     * @return the formatted time.
+     */
+    public static String gmtTimeString(long ms) {
+        return localize(GMT_CTIME)
+            .format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(ms),
+                                            ZoneOffset.UTC));
+    } // gmtTimeString(long)
+
+    /** Format a time in Unix "ctime" format in the default time zone,
+     * for example "Fri Apr  4 12:00:00 CST 1997".
+     * @param ms the time, in milliseconds since the epoch.
+     * @return the formatted time.
+     */
+    public static String localTimeString(long ms) {
+        return localize(LOCAL_CTIME)
+            .format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(ms),
+                                            ZoneId.systemDefault()));
+    } // localTimeString(long)
+
+    /** Format a time as a date and time of day in GMT, in the form
+     * yyyy-mm-ddThh:mm:ss.
+     * @param ms the time, in milliseconds since the epoch.
+     * @return the formatted time.
+     */
+    /*package*/ static String dateAndTime(long ms) {
+        return DATE_AND_TIME.format(Instant.ofEpochMilli(ms));
+    } // dateAndTime(long)
+
+    /** Get the formatter for a strftime-style format, compiling it if it
+     * is not in the cache.
+     * @param fmt the format.
+     * @return the formatter.
+     */
+    private static DateTimeFormatter get(String fmt) {
+        DateTimeFormatter f = (DateTimeFormatter) formats.get(fmt);
+        if (f == null) {
+            f = compile(fmt);
+            int max = capacity;
+            if (max > 0) {
+                if (formats.size() >= max) {
+                    formats.clear();
+                }
+                formats.put(fmt, f);
+            }
+        }
+        return f;
+    } // get(String)
+
+    /** Make a formatter use the current default locale for formatting.
+     * Names of days and months depend on the locale, which may have changed
+     * since the formatter was created.
+     * @param f the formatter.
+     * @return f, or a copy of f with the default locale.
+     */
+    private static DateTimeFormatter localize(DateTimeFormatter f) {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        return f.getLocale().equals(locale) ? f : f.withLocale(locale);
+    } // localize(DateTimeFormatter)
+
+    /** Compile a strftime-style format.
+     * @param fmt the format.
+     * @return the corresponding formatter.
+     */
+    private static DateTimeFormatter compile(String fmt) {
+        DateTimeFormatterBuilder b = new DateTimeFormatterBuilder();
+        for (int i = 0; i < fmt.length(); i++) {
+            char c = fmt.charAt(i);
+            if (c != '%' || i == fmt.length() - 1) {
+                b.appendLiteral(c);
+                continue;
+            }
+            c = fmt.charAt(++i);
+            switch (c) {
+            case 'a': // abbreviated weekday name
+            case 'w': // weekday (should be 0-6, but has always been the name)
+                b.appendText(ChronoField.DAY_OF_WEEK, TextStyle.SHORT);
+                break;
+            case 'A': // full weekday name
+                b.appendText(ChronoField.DAY_OF_WEEK, TextStyle.FULL);
+                break;
+            case 'b': // abbreviated month name
+                b.appendText(ChronoField.MONTH_OF_YEAR, TextStyle.SHORT);
+                break;
+            case 'B': // full month name
+                b.appendText(ChronoField.MONTH_OF_YEAR, TextStyle.FULL);
+                break;
+            case 'c': // local date and time representation
+                b.appendText(ChronoField.DAY_OF_WEEK, TextStyle.SHORT)
+                    .appendLiteral(' ')
+                    .appendText(ChronoField.MONTH_OF_YEAR, TextStyle.SHORT)
+                    .appendLiteral(' ')
+                    .appendValue(ChronoField.DAY_OF_MONTH, 2)
+                    .appendLiteral(' ');
+                year(time(b).appendLiteral(' '));
+                break;
+            case 'd': // day of the month (01-31)
+                b.appendValue(ChronoField.DAY_OF_MONTH, 2);
+                break;
+            case 'H': // hour in the 24-hour clock (00-23)
+                b.appendValue(ChronoField.HOUR_OF_DAY, 2);
+                break;
+            case 'I': // hour in the 12-hour clock (01-12)
+                b.appendValue(ChronoField.CLOCK_HOUR_OF_AMPM, 2);
+                break;
+            case 'j': // day of the year (1-366)
+                b.appendValue(ChronoField.DAY_OF_YEAR);
+                break;
+            case 'm': // month (01-12)
+                b.appendValue(ChronoField.MONTH_OF_YEAR, 2);
+                break;
+            case 'M': // minute (00-59)
+                b.appendValue(ChronoField.MINUTE_OF_HOUR, 2);
+                break;
+            case 'p': // local equivalent of AM or PM
+                b.appendText(ChronoField.AMPM_OF_DAY, TextStyle.SHORT);
+                break;
+            case 'S': // second (00-59)
+                b.appendValue(ChronoField.SECOND_OF_MINUTE, 2);
+                break;
+            case 'x': // local date representation
+                b.appendValue(ChronoField.MONTH_OF_YEAR, 2)
+                    .appendLiteral('/')
+                    .appendValue(ChronoField.DAY_OF_MONTH, 2)
+                    .appendLiteral('/')
+                    .appendValueReduced(ChronoField.YEAR_OF_ERA, 2, 2, 2000);
+                break;
+            case 'X': // local time representation
+                time(b);
+                break;
+            case 'y': // year without century (00-99)
+                b.appendValueReduced(ChronoField.YEAR_OF_ERA, 2, 2, 2000);
+                break;
+            case 'Y': // year with century
+                year(b);
+                break;
+            case 'Z': // time zone name, if any
+                b.appendZoneText(TextStyle.SHORT);
+                break;
+            case '%': // %% => %
+                b.appendLiteral('%');
+                break;
+            default: // unknown escape: %? => %?
+                b.appendLiteral('%').appendLiteral(c);
+                break;
+            }
+        }
+        return b.toFormatter();
+    } // compile(String)
+
+    /** Append the year, with at least four digits, to a formatter.
+     * @param b the formatter being built.
+     * @return b.
+     */
+    private static DateTimeFormatterBuilder year(DateTimeFormatterBuilder b) {
+        return b.appendValue(ChronoField.YEAR_OF_ERA, 4, 19, SignStyle.NORMAL);
+    } // year(DateTimeFormatterBuilder)
+
+    /** Append the time of day, hh:mm:ss, to a formatter.
+     * @param b the formatter being built.
+     * @return b.
+     */
+    private static DateTimeFormatterBuilder time(DateTimeFormatterBuilder b) {
+        return b.appendValue(ChronoField.HOUR_OF_DAY, 2)
+            .appendLiteral(':')
+            .appendValue(ChronoField.MINUTE_OF_HOUR, 2)
+            .appendLiteral(':')
+            .appendValue(ChronoField.SECOND_OF_MINUTE, 2);
+    } // time(DateTimeFormatterBuilder)
+
+    /** Append the start of the Unix "ctime" format, up to the time of day,
+     * to a formatter.  The day of the month is padded with a space, not a
+     * zero.
+     * @param b the formatter being built.
+     * @return b.
+     */
+    private static DateTimeFormatterBuilder ctime(DateTimeFormatterBuilder b)
+    {
+        b.appendText(ChronoField.DAY_OF_WEEK, TextStyle.SHORT)
+            .appendLiteral(' ')
+            .appendText(ChronoField.MONTH_OF_YEAR, TextStyle.SHORT)
+            .appendLiteral(' ')
+            .padNext(2)
+            .appendValue(ChronoField.DAY_OF_MONTH)
+            .appendLiteral(' ');
+        return time(b);
+    } // ctime(DateTimeFormatterBuilder)
+
+    /** Set the maximum number of cached formats.  The cache is emptied if
+     * it already holds more than that.
+     * @param n the maximum number of formats.  Zero turns off caching.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public static void setCapacity(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("bad capacity " + n);
+        }
+        capacity = n;
+        if (formats.size() > n) {
+            formats.clear();
+        }
+    } // setCapacity(int)
+
+    /** Get the maximum number of cached formats.
+     * @return the maximum number of formats.
+     */
+    public static int getCapacity() {
+        return capacity;
+    } // getCapacity()
+
+    /** Get the number of cached formats.
+     * @return the number of formats.
+     */
+    public static int size() {
+        return formats.size();
+    } // size()
+
+    /** Discard all cached formats. */
+    public static void clear() {
+        formats.clear();
+    } // clear()
+} // TimeFormat
@@ -0,0 +1,216 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.lang.management.ManagementFactory;
+
+/** Main program to check the amount of memory allocated by evaluation.
+ * It evaluates a number of expressions many times and checks that the
+ * evaluation allocates no memory.  It also checks that cyclic attribute
+ * definitions are still detected.
+ * The exit status is non-zero if any check fails.
+ * <p>
+ * This test relies on com.sun.management.ThreadMXBean to measure
+ * allocation, so it only works on JVMs that support that interface.
+ */
+public class AllocTest {
+    /** Number of evaluations to measure. */
+    private int reps = 100000;
+
+    /** Number of checks that failed. */
+    private int failures = 0;
+
+    /** Used to measure allocation. */
+    private com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-n<em>nn</em><dd>Measure <em>nn</em> evaluations of each
+     *           expression.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new AllocTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName() + " [-n reps]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if there were no failures).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'n':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        // Acyclic chains of attribute references allocate nothing.
+        RecordExpr ad = parse("[ a = b; b = c; c = d; d = 42 ]");
+        checkAlloc("attribute chain", new AttrRef("a"), ad);
+        checkValue("attribute chain", new AttrRef("a"), ad, "42");
+
+        // Neither do operators and conditional expressions whose results
+        // are not new values.
+        ad = parse("[ a = 3; b = 4; c = \"x\"; "
+            + "v = a < b && (b > 2 || c == \"y\") && !(a == b) "
+            + "? (a >= 1 ? a : b) : c ]");
+        checkAlloc("boolean operators", new AttrRef("v"), ad);
+        checkValue("boolean operators", new AttrRef("v"), ad, "3");
+
+        // Nor does arithmetic on small integers, whose Constants are
+        // preallocated.
+        ad = parse("[ a = 3; b = 4; v = a * b + 2 * (b - a) - a % 2 ]");
+        checkAlloc("small integer arithmetic", new AttrRef("v"), ad);
+        checkValue("small integer arithmetic", new AttrRef("v"), ad, "13");
+
+        // A long chain is not mistaken for a cycle.
+        checkValue("long chain", new AttrRef("a0"), chain(100, false), "100");
+
+        // Cycles are detected, whether short or long.
+        RecordExpr cycle = parse("[ a = b; b = a ]");
+        checkValue("short cycle", new AttrRef("a"), cycle,
+            "UNDEFINED(Cyclic attribute definition)");
+        checkValue("long cycle", new AttrRef("a0"), chain(100, true),
+            "UNDEFINED(Cyclic attribute definition)");
+
+        System.out.println(failures == 0 ? "OK" : failures + " failures");
+        return failures == 0 ? 0 : 1;
+    } // run(String[])
+
+    /** Parse an ad.
+     * @param s the text of the ad.
+     * @return the ad.
+     */
+    private static RecordExpr parse(String s) {
+        return (RecordExpr) new ClassAdParser(s).parse();
+    } // parse(String)
+
+    /** Create an ad with a chain of references
+     * <code>a0 = a1; a1 = a2; ... </code>.
+     * @param n the length of the chain.
+     * @param cyclic if true, the last element refers back to a0; otherwise,
+     * its value is n.
+     * @return the ad.
+     */
+    private static RecordExpr chain(int n, boolean cyclic) {
+        RecordExpr ad = new RecordExpr();
+        for (int i = 0; i < n; i++) {
+            ad.insertAttribute("a" + i, new AttrRef("a" + (i + 1)));
+        }
+        ad.insertAttribute("a" + n,
+            cyclic ? (Expr) new AttrRef("a0") : ClassAd.constant(n));
+        return ad;
+    } // chain(int,boolean)
+
+    /** Create an environment for evaluating an expression in an ad.
+     * @param ad the ad.
+     * @return the environment.
+     */
+    private static Env env(RecordExpr ad) {
+        Env env = new Env();
+        env.push(ad);
+        return env;
+    } // env(RecordExpr)
+
+    /** Check the value of an expression.
+     * @param what a description of the test.
+     * @param e the expression.
+     * @param ad the ad in which to evaluate it.
+     * @param expected the string representation of the expected value.
+     */
+    private void checkValue(String what, Expr e, RecordExpr ad,
+                            String expected)
+    {
+        Expr value = e.eval(env(ad));
+        String actual = value.toString();
+        if (value.type == Expr.UNDEFINED) {
+            actual = "UNDEFINED(" + ((Constant) value).annotation() + ")";
+        }
+        if (!actual.equals(expected)) {
+            System.out.println(what + ": expected " + expected
+                + ", got " + actual);
+            failures++;
+        }
+    } // checkValue(String,Expr,RecordExpr,String)
+
+    /** Check that evaluating an expression allocates no memory.
+     * Evaluation may change the env, so it is reset before each evaluation.
+     * Resetting the env allocates memory, so the amount allocated by
+     * resetting it (and evaluating a constant) is subtracted.
+     * @param what a description of the test.
+     * @param e the expression.
+     * @param ad the ad in which to evaluate it.
+     */
+    private void checkAlloc(String what, Expr e, RecordExpr ad) {
+        long bytes = measure(e, ad) - measure(Constant.TRUE, ad);
+        System.out.println(what + ": " + bytes + " bytes allocated in "
+            + reps + " evaluations");
+        if (bytes > 0) {
+            failures++;
+        }
+    } // checkAlloc(String,Expr,RecordExpr)
+
+    /** Measure the amount of memory allocated by evaluating an expression
+     * repeatedly.
+     * @param e the expression.
+     * @param ad the ad in which to evaluate it.
+     * @return the number of bytes allocated.
+     */
+    private long measure(Expr e, RecordExpr ad) {
+        Env env = new Env();
+        // Warm up, so that we measure compiled code.
+        for (int i = 0; i < reps; i++) {
+            env.clear();
+            env.push(ad);
+            e.eval(env);
+        }
+        // Take the best of a few trials, to filter out noise such as
+        // allocation by the JIT compiler.
+        long tid = Thread.currentThread().getId();
+        long bytes = Long.MAX_VALUE;
+        for (int trial = 0; trial < 3; trial++) {
+            long start = bean.getThreadAllocatedBytes(tid);
+            long overhead = bean.getThreadAllocatedBytes(tid) - start;
+            start = bean.getThreadAllocatedBytes(tid);
+            for (int i = 0; i < reps; i++) {
+                env.clear();
+                env.push(ad);
+                e.eval(env);
+            }
+            long n = bean.getThreadAllocatedBytes(tid) - start - overhead;
+            bytes = Math.min(bytes, n);
+        }
+        return bytes;
+    } // measure(Expr,RecordExpr)
+} // AllocTest
@@ -0,0 +1,216 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/** Main program to check evaluation of one expression over many ads.
+ * It generates a synthetic pool of machine ads and job ads (see
+ * {@link SyntheticPool}) and evaluates a number of expressions over all the
+ * machine ads with a {@link BatchEvaluator}, both in the calling thread and
+ * in parallel.  The expressions are evaluated both in each machine ad (as a
+ * query would) and in a job ad with <code>other</code> referring to each
+ * machine ad (as a matchmaker would).  It checks that every result agrees
+ * with evaluating the expression one ad at a time with
+ * {@link ClassAd#eval(AttrName,Expr,RecordExpr)} or
+ * {@link ClassAd#eval(AttrName,Expr,RecordExpr,RecordExpr)}, and reports
+ * the time taken by each method.
+ * The exit status is non-zero if there are any differences.
+ */
+public class BatchTest {
+    /** Number of machine ads. */
+    private int machines = 20000;
+
+    /** Number of test rounds.  Only the last round is timed. */
+    private int rounds = 3;
+
+    /** Number of differences found. */
+    private int failures = 0;
+
+    /** Expressions evaluated in each machine ad. */
+    private static final String[] QUERIES = {
+        "Memory > 1024 && Arch == \"X86_64\"",
+        "Requirements",
+        "Rank",
+        "LoadAvg * 2",
+        "Name",
+        "other.Memory",
+    };
+
+    /** The name as which the expressions are evaluated. */
+    private static final AttrName NAME = AttrName.fromString("Requirements");
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-m<em>nn</em><dd>Generate <em>nn</em> machine ads.
+     * <dt>-r<em>nn</em><dd>Run <em>nn</em> rounds.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new BatchTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-m machines] [-r rounds]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if there were no differences).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "m:r:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'm':
+                machines = Integer.parseInt(opts.optarg);
+                break;
+            case 'r':
+                rounds = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        SyntheticPool pool = new SyntheticPool(42);
+        RecordExpr[] ads = new RecordExpr[machines];
+        for (int i = 0; i < machines; i++) {
+            ads[i] = parse(pool.machine(i));
+        }
+        RecordExpr job = parse(pool.job(0));
+        List exprs = new ArrayList();
+        for (int i = 0; i < QUERIES.length; i++) {
+            exprs.add(new ClassAdParser(QUERIES[i]).parse());
+        }
+        exprs.add(job.lookup("Requirements"));
+        exprs.add(job.lookup("Rank"));
+
+        long[] times = new long[3];
+        for (int r = 0; r < rounds; r++) {
+            Arrays.fill(times, 0);
+            for (Iterator it = exprs.iterator(); it.hasNext(); ) {
+                Expr e = (Expr) it.next();
+                check(e, null, ads, times);
+                check(e, job, ads, times);
+            }
+        }
+        long evals = 2L * exprs.size() * machines;
+        System.out.println("one at a time: " + times[0] / evals + " ns/eval");
+        System.out.println("batch:         " + times[1] / evals + " ns/eval");
+        System.out.println("parallel:      " + times[2] / evals + " ns/eval ("
+            + ForkJoinPool.commonPool().getParallelism() + " threads)");
+        if (failures > 0) {
+            System.out.println(failures + " differences");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Parse an ad.
+     * @param s the text of the ad.
+     * @return the ad.
+     */
+    private static RecordExpr parse(String s) {
+        return (RecordExpr) new ClassAdParser(s).parse();
+    } // parse(String)
+
+    /** Evaluate an expression over all the ads, one at a time, as a batch,
+     * and as a batch in parallel, and compare the results.
+     * @param expr the expression.
+     * @param context the ad in which to evaluate the expression, or null to
+     * evaluate it in each ad.
+     * @param ads the ads.
+     * @param times the times taken by the three methods, which are
+     * incremented.
+     */
+    private void check(Expr expr, RecordExpr context, RecordExpr[] ads,
+                       long[] times)
+    {
+        long start = System.nanoTime();
+        Expr[] expected = new Expr[ads.length];
+        for (int i = 0; i < ads.length; i++) {
+            expected[i] = context == null
+                ? ClassAd.eval(NAME, expr, ads[i])
+                : ClassAd.eval(NAME, expr, context, ads[i]);
+        }
+        times[0] += System.nanoTime() - start;
+
+        BatchEvaluator b = new BatchEvaluator(NAME, expr);
+        b.setContext(context);
+        start = System.nanoTime();
+        Expr[] batch = b.values(ads);
+        times[1] += System.nanoTime() - start;
+        compare(expr, context, expected, batch, b, ads);
+
+        b.setPool(ForkJoinPool.commonPool());
+        b.setGrain(256);
+        start = System.nanoTime();
+        Expr[] parallel = b.values(ads);
+        times[2] += System.nanoTime() - start;
+        compare(expr, context, expected, parallel, b, ads);
+    } // check(Expr,RecordExpr,RecordExpr[],long[])
+
+    /** Compare the results of a batch to the expected results, and check
+     * the other forms of result of the same batch against them.
+     * @param expr the expression.
+     * @param context the context, or null.
+     * @param expected the expected values.
+     * @param actual the values computed by the batch.
+     * @param b the evaluator.
+     * @param ads the ads.
+     */
+    private void compare(Expr expr, RecordExpr context, Expr[] expected,
+                         Expr[] actual, BatchEvaluator b, RecordExpr[] ads)
+    {
+        BitSet bits = b.isTrue(Arrays.asList(ads));
+        int[] ints = b.intValues(ads, -1);
+        double[] reals = b.realValues(ads, Double.NaN);
+        for (int i = 0; i < expected.length; i++) {
+            Expr e = expected[i];
+            boolean ok = e.toString().equals(actual[i].toString())
+                && bits.get(i) == e.isTrue()
+                && ints[i] == (e.type == Expr.INTEGER
+                                ? ((Constant) e).intValue() : -1);
+            if (e.type == Expr.INTEGER || e.type == Expr.REAL) {
+                ok = ok && reals[i] == ((Constant) e).realValue();
+            } else {
+                ok = ok && Double.isNaN(reals[i]);
+            }
+            if (!ok) {
+                failures++;
+                if (failures <= 10) {
+                    System.out.println("expression " + expr
+                        + (context == null ? "" : " in " + context)
+                        + ", ad " + i + ": expected " + e + ", got "
+                        + actual[i]);
+                }
+            }
+        }
+    } // compare(Expr,RecordExpr,Expr[],Expr[],BatchEvaluator,RecordExpr[])
+} // BatchTest
@@ -0,0 +1,207 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+
+/** Main program to check and time selection of ads from a
+ * {@link ColumnStore}.
+ * It generates a synthetic pool of machine ads (see {@link SyntheticPool})
+ * and adds them to a ColumnStore.  Unless the -u flag is given, some of the
+ * ads are altered so that not all ads have the same attributes, or the
+ * same types of values.  For each of a number of queries, it compares the
+ * ads selected by {@link ColumnStore#select(AttrName,Expr)} to those
+ * selected by evaluating the query in each ad with a
+ * {@link BatchEvaluator}, and reports the time taken by each.
+ * The exit status is non-zero if there are any differences.
+ * <p>
+ * With a large number of ads (such as <code>-n 1000000</code>), it serves as
+ * a benchmark of fleet-wide scans.  The ads are parsed with hash-consing
+ * (see {@link ClassAdParser#setHashConsing(boolean)}) so that a million of
+ * them fit in a moderate heap.
+ */
+public class ColumnTest {
+    /** Number of ads. */
+    private int count = 10000;
+
+    /** If true, leave the ads unaltered. */
+    private boolean uniform = false;
+
+    /** Number of timed repetitions of each query. */
+    private int reps = 3;
+
+    /** The queries. */
+    private static final String[] QUERIES = {
+        "Memory > 1024 && Arch == \"X86_64\"",
+        "Memory >= 1024 || OpSys == \"linux\"",
+        "!(LoadAvg < 0.3) && KeyboardIdle > 900",
+        "4096 < Memory && \"INTEL\" != Arch",
+        "Memory == undefined || Memory <= 512",
+        "Memory > \"abc\" || Arch < 3",
+        "Missing > 3 || State == \"Unclaimed\"",
+        "Tag == \"a\" && Disk < 5000000",
+        "Memory > 1024 && regexp(\"^vm1@\", Name)",
+        "IsIdle && Memory > 512",
+        "Memory * 2 > 4096 || Rank > 5",
+        "Disk > 5000000 && Memory > 2048 || !(Department == \"CS\")",
+        "Memory > error || KeyboardIdle == 100",
+    };
+
+    /** The name as which the queries are evaluated. */
+    private static final AttrName NAME = AttrName.fromString("Requirements");
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-n<em>nn</em><dd>Generate <em>nn</em> ads.
+     * <dt>-r<em>nn</em><dd>Time <em>nn</em> repetitions of each query.
+     * <dt>-u<dd>Do not alter any of the ads.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new ColumnTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-n ads] [-r reps] [-u]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if there were no differences).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "n:r:u");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'n':
+                count = Integer.parseInt(opts.optarg);
+                break;
+            case 'r':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case 'u':
+                uniform = true;
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        SyntheticPool pool = new SyntheticPool(42);
+        ClassAdParser parser = new ClassAdParser();
+        parser.setHashConsing(true);
+        RecordExpr[] ads = new RecordExpr[count];
+        for (int i = 0; i < count; i++) {
+            parser.reset(pool.machine(i));
+            ads[i] = (RecordExpr) parser.parse();
+            if (!uniform) {
+                alter(ads[i], i);
+            }
+        }
+        long start = System.nanoTime();
+        ColumnStore store = new ColumnStore();
+        for (int i = 0; i < count; i++) {
+            store.add(ads[i]);
+        }
+        System.out.println(count + " ads, "
+            + (System.nanoTime() - start) / 1000000 + " ms to load");
+
+        int failures = 0;
+        long rowTime = 0;
+        long columnTime = 0;
+        for (int q = 0; q < QUERIES.length; q++) {
+            Expr where = new ClassAdParser(QUERIES[q]).parse();
+            BatchEvaluator b = new BatchEvaluator(NAME, where);
+            BitSet expected = b.isTrue(ads);
+            BitSet actual = store.select(NAME, where);
+            if (!actual.equals(expected)) {
+                failures++;
+                BitSet diff = (BitSet) actual.clone();
+                diff.xor(expected);
+                int i = diff.nextSetBit(0);
+                System.out.println(QUERIES[q] + ": " + diff.cardinality()
+                    + " differences, first in ad " + i + ": expected "
+                    + expected.get(i) + " in " + ads[i]);
+                continue;
+            }
+            start = System.nanoTime();
+            for (int r = 0; r < reps; r++) {
+                b.isTrue(ads);
+            }
+            long row = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < reps; r++) {
+                store.select(NAME, where);
+            }
+            long column = System.nanoTime() - start;
+            rowTime += row;
+            columnTime += column;
+            System.out.println(QUERIES[q] + ": " + expected.cardinality()
+                + " selected, row " + perAd(row) + " ns/ad, column "
+                + perAd(column) + " ns/ad");
+        }
+        System.out.println("total: row " + perAd(rowTime)
+            + " ns/ad, column " + perAd(columnTime) + " ns/ad");
+        if (failures > 0) {
+            System.out.println(failures + " queries differ");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Alter some of the ads, so that attributes are sometimes missing or
+     * have values of unexpected types.  Every ad is given a Tag attribute,
+     * which is a string in all but one of them.
+     * @param ad the ad.
+     * @param i the index of the ad.
+     */
+    private static void alter(RecordExpr ad, int i) {
+        if (i % 100 == 7) {
+            ad.removeAttribute(AttrName.fromString("Memory"));
+        } else if (i % 101 == 8) {
+            ad.insertAttribute("Memory", ClassAd.constant(1024.5));
+        }
+        if (i % 53 == 9) {
+            ad.removeAttribute(AttrName.fromString("Arch"));
+        }
+        if (i % 37 == 3) {
+            ad.insertAttribute("Missing", ClassAd.constant(i % 7));
+        }
+        ad.insertAttribute("Tag", i == 12
+                            ? (Expr) ClassAd.constant(12)
+                            : ClassAd.constant(i % 3 == 0 ? "A" : "b"));
+    } // alter(RecordExpr,int)
+
+    /** Convert a time for all repetitions to a time per ad.
+     * @param nanos the time in nanoseconds.
+     * @return the time per ad per repetition.
+     */
+    private long perAd(long nanos) {
+        long n = (long) reps * count;
+        return n == 0 ? 0 : nanos / n;
+    } // perAd(long)
+} // ColumnTest
@@ -0,0 +1,404 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.io.*;
+import java.util.*;
+
+/** Main program to check that compiled expressions give the same results
+ * as the interpreter.
+ * It reads test cases in the same format as ExprTest (see
+ * scripts/expr.*.test).  For each test case, it compiles the expression to be
+ * evaluated, both to bytecode and to a tree of evaluators, and compares the
+ * result of evaluating each compiled form to the result of evaluating the
+ * original expression, printing any differences.  The same check is
+ * applied to the expression as rewritten by {@link Optimizer} (and, for
+ * test cases consisting of a pair of ads, as specialized to the other ad).
+ * It also checks that
+ * the interpreter gives the same result whether or not &amp;&amp; and ||
+ * are evaluated with short-circuiting (see {@link Op#shortCircuit}), and
+ * whether or not the values of attributes are memoized (see
+ * {@link EvalCache}).  When the test cases are parsed with hash-consing,
+ * it also checks that they give the same results as when they are parsed
+ * without it.
+ * Test cases whose results vary from one evaluation to the next (such as
+ * calls to random()) are skipped.
+ * Optionally, it also times the interpreter and the compiled forms on each
+ * test case whose expression is an operator or conditional expression.
+ * @see ExprCompiler
+ * @see ClosureCompiler
+ */
+public class CompileTest {
+    /** Output stream for printing results. */
+    private ClassAdWriter out = new ClassAdWriter(System.out, true);
+
+    /** Amount of debugging output. */
+    private int verbosity = 0;
+
+    /** If true, parse test cases with hash-consing. */
+    private boolean hashConsing = false;
+
+    /** Number of evaluations per test case for timing (0 means no timing). */
+    private int reps = 0;
+
+    /** Number of test cases checked. */
+    private int count = 0;
+
+    /** Number of test cases skipped because they are nondeterministic. */
+    private int skipped = 0;
+
+    /** Number of test cases giving different results. */
+    private int failures = 0;
+
+    /** Number of test cases timed. */
+    private int timed = 0;
+
+    /** Total time (in nanoseconds) spent in the interpreter. */
+    private long interpTime = 0;
+
+    /** Total time (in nanoseconds) spent in bytecode-compiled code. */
+    private long compiledTime = 0;
+
+    /** Total time (in nanoseconds) spent in closure-compiled code. */
+    private long closureTime = 0;
+
+    /** A test case:  an expression to be evaluated in a particular
+     * environment.
+     */
+    private static class Case {
+        /** The expression. */
+        Expr expr;
+
+        /** The scopes of the environment, outermost first. */
+        RecordExpr[] scopes;
+
+        /** The ad to which "other" refers, or null. */
+        RecordExpr other;
+
+        /** The same test case parsed without hash-consing, or null if this
+         * one was, too.
+         */
+        Case unshared;
+
+        /** Create a test case.
+         * @param expr the expression.
+         * @param scopes the scopes of the environment, outermost first.
+         * @param other the ad to which "other" refers, or null.
+         */
+        Case(Expr expr, RecordExpr[] scopes, RecordExpr other) {
+            this.expr = expr;
+            this.scopes = scopes;
+            this.other = other;
+        } // Case(Expr,RecordExpr[],RecordExpr)
+
+        /** Create a fresh environment for evaluating the expression.
+         * @return the environment.
+         */
+        Env env() {
+            Env env = new Env();
+            for (int i = 0; i < scopes.length; i++) {
+                env.push(scopes[i]);
+            }
+            return env;
+        } // env()
+    } // Case
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-v<dd>Request more verbose output (may be repeated).
+     * <dt>-b<em>nn</em><dd>Time <em>nn</em> evaluations of each test case.
+     * <dt>-H<dd>Parse the test cases with hash-consing.
+     * </dl>
+     * The remaining arguments are names of files containing test cases.  If
+     * there are none, test cases are read from stdin.
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new CompileTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-v] [-b reps] [-H] [file ...]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if there were no failures).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "vb:H");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'v':
+                verbosity++;
+                break;
+            case 'b':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case 'H':
+                hashConsing = true;
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        out.setFormatFlags(ClassAdWriter.MINIMAL_PARENTHESES);
+        try {
+            if (opts.optind >= args.length) {
+                runFile(read(new InputStreamReader(System.in)));
+            }
+            for (int i = opts.optind; i < args.length; i++) {
+                runFile(read(new FileReader(args[i])));
+            }
+        } catch (IOException e) {
+            System.err.println(e);
+            return 1;
+        }
+        out.println(count + " cases, " + skipped + " skipped, "
+            + failures + " failures");
+        if (timed > 0) {
+            out.println(timed + " cases timed");
+            out.println("interpreted: " + interpTime / (timed * reps)
+                + " ns/eval");
+            out.println("bytecode:    " + compiledTime / (timed * reps)
+                + " ns/eval");
+            out.println("closure:     " + closureTime / (timed * reps)
+                + " ns/eval");
+        }
+        out.flush();
+        return failures == 0 ? 0 : 1;
+    } // run(String[])
+
+    /** Read the whole of a file of test cases.
+     * @param in the source of test cases.
+     * @return its contents.
+     * @throws IOException if the source cannot be read.
+     */
+    private static String read(Reader in) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        char[] buf = new char[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            sb.append(buf, 0, n);
+        }
+        in.close();
+        return sb.toString();
+    } // read(Reader)
+
+    /** Run all the test cases in a file.
+     * If hash-consing is requested, the text is also parsed without it, so
+     * that each test case can be compared with its unshared version.
+     * @param text the contents of the file.
+     */
+    private void runFile(String text) {
+        ClassAdParser parser = new ClassAdParser(text);
+        parser.setVerbosity(0);
+        parser.setHashConsing(hashConsing);
+        ClassAdParser plain = null;
+        if (hashConsing) {
+            plain = new ClassAdParser(text);
+            plain.setVerbosity(0);
+        }
+        for (;;) {
+            Expr e = parser.parse();
+            if (e == null) {
+                break;
+            }
+            Case c = toCase(e);
+            if (plain != null) {
+                c.unshared = toCase(plain.parse());
+                plain.getNextToken();
+            }
+            check(c);
+            if (parser.getNextToken() != ';') {
+                break;
+            }
+        }
+    } // runFile(String)
+
+    /** Convert a parsed test input to a test case, following the
+     * conventions of ExprTest.
+     * @param e the parsed input.
+     * @return the corresponding test case.
+     */
+    private Case toCase(Expr e) {
+        if (e.type == Expr.LIST) {
+            // A pair of ads:  evaluate the first ad's value attribute in the
+            // environment set up by ClassAd.bind.
+            ListExpr l = (ListExpr) e;
+            RecordExpr env = ClassAd.bind((RecordExpr) l.sub(0),
+                                            (RecordExpr) l.sub(1));
+            RecordExpr ad1 = (RecordExpr) env.lookup("Ad1");
+            RecordExpr self = (RecordExpr) ad1.lookup("self");
+            return new Case(self.lookup("value"),
+                            new RecordExpr[] { env, ad1, self },
+                            (RecordExpr) l.sub(1));
+        }
+        if (e.type == Expr.RECORD) {
+            RecordExpr ad = (RecordExpr) e;
+            Expr value = ad.lookup("value");
+            if (value != null) {
+                return new Case(value, new RecordExpr[] { ad }, null);
+            }
+        }
+        return new Case(e, new RecordExpr[0], null);
+    } // toCase(Expr)
+
+    /** Check one test case.
+     * @param c the test case.
+     */
+    private void check(Case c) {
+        count++;
+        CompiledExpr bytecode = ExprCompiler.compile(c.expr);
+        CompiledExpr closure = c.expr.compile();
+        String expected = show(c.expr.eval(c.env()));
+        if (!expected.equals(show(c.expr.eval(c.env())))) {
+            skipped++;
+            if (verbosity > 0) {
+                out.println("skipped " + c.expr);
+            }
+            return;
+        }
+        boolean ok = compare(c, "bytecode",
+                        show(bytecode.eval(c.env())), expected);
+        if (c.unshared != null) {
+            ok = compare(c, "without hash-consing",
+                    show(c.unshared.expr.eval(c.unshared.env())), expected)
+                && ok;
+        }
+        ok = compare(c, "closure", show(closure.eval(c.env())), expected)
+            && ok;
+        Expr optimized = Optimizer.optimize(c.expr);
+        ok = compare(c, "optimized " + optimized,
+                        show(optimized.eval(c.env())), expected) && ok;
+        if (c.other != null) {
+            Expr specialized = Optimizer.optimize(c.expr, c.other);
+            ok = compare(c, "specialized " + specialized,
+                            show(specialized.eval(c.env())), expected) && ok;
+        }
+        Op.shortCircuit = false;
+        String full = show(c.expr.eval(c.env()));
+        Op.shortCircuit = true;
+        if (!full.equals(expected)) {
+            out.println("expression: " + c.expr);
+            out.println("  short-circuit: " + expected);
+            out.println("  full: " + full);
+            ok = false;
+        }
+        // Evaluate twice with memoization, so that the second evaluation
+        // uses remembered values.
+        setEvalCaches(c, true);
+        String memoized = show(c.expr.eval(c.env()));
+        String remembered = show(c.expr.eval(c.env()));
+        setEvalCaches(c, false);
+        ok = compare(c, "memoized", memoized, expected) && ok;
+        ok = compare(c, "remembered", remembered, expected) && ok;
+        if (!ok) {
+            failures++;
+        } else if (verbosity > 0) {
+            out.println(c.expr + " => " + expected);
+        }
+        if (reps > 0 && (c.expr.type == Expr.OP || c.expr.type == Expr.COND)) {
+            // Only operators and conditional expressions are compiled, so
+            // only they are worth timing.  Warm up, then time each form.
+            timed++;
+            time(c, null);
+            time(c, bytecode);
+            time(c, closure);
+            interpTime += time(c, null);
+            compiledTime += time(c, bytecode);
+            closureTime += time(c, closure);
+        }
+    } // check(Case)
+
+    /** Turn memoization of attribute values on or off for all the ads of a
+     * test case.
+     * @param c the test case.
+     * @param on if true, give each ad a new EvalCache that remembers values
+     * across sessions; otherwise, remove the caches.
+     */
+    private static void setEvalCaches(Case c, boolean on) {
+        for (int i = 0; i < c.scopes.length; i++) {
+            c.scopes[i].setEvalCache(on ? new EvalCache(true) : null);
+        }
+        if (c.other != null) {
+            c.other.setEvalCache(on ? new EvalCache(true) : null);
+        }
+    } // setEvalCaches(Case,boolean)
+
+    /** Compare the result of evaluating another form of an expression to
+     * the expected result, printing a message if they differ.
+     * @param c the test case.
+     * @param form a description of the other form.
+     * @param actual the string representation of its value.
+     * @param expected the string representation of the expected value.
+     * @return true if the results match.
+     */
+    private boolean compare(Case c, String form, String actual,
+                            String expected)
+    {
+        if (actual.equals(expected)) {
+            return true;
+        }
+        out.println("expression: " + c.expr);
+        out.println("  interpreted: " + expected);
+        out.println("  " + form + ": " + actual);
+        return false;
+    } // compare(Case,String,String,String)
+
+    /** Time repeated evaluations of a test case.
+     * @param c the test case.
+     * @param compiled a compiled form of the expression, or null to use
+     * the interpreter.
+     * @return the elapsed time in nanoseconds.
+     */
+    private long time(Case c, CompiledExpr compiled) {
+        long start = System.nanoTime();
+        if (compiled == null) {
+            for (int i = 0; i < reps; i++) {
+                c.expr.eval(c.env());
+            }
+        } else {
+            for (int i = 0; i < reps; i++) {
+                compiled.eval(c.env());
+            }
+        }
+        return System.nanoTime() - start;
+    } // time(Case,CompiledExpr)
+
+    /** Convert a value to a string, including the details of any error or
+     * undefined values.
+     * @param value the value.
+     * @return its string representation.
+     */
+    private String show(Expr value) {
+        StringWriter sw = new StringWriter();
+        ClassAdWriter w = new ClassAdWriter(sw);
+        w.setFormatFlags(ClassAdWriter.MINIMAL_PARENTHESES
+                            | ClassAdWriter.SHOW_ERROR_DETAIL);
+        w.print(value);
+        w.flush();
+        return sw.toString();
+    } // show(Expr)
+} // CompileTest
@@ -0,0 +1,244 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.io.StringWriter;
+
+/** Main program to check and time the messages of ERROR and UNDEFINED
+ * values (see {@link Constant#errorDetail}).
+ * It evaluates expressions that yield ERROR or UNDEFINED for a variety of
+ * reasons and checks that the messages shown with
+ * {@link ClassAdWriter#SHOW_ERROR_DETAIL}, in both native and XML form,
+ * are the ones expected, that a message describes a record as it was
+ * rather than keeping it, and that without error detail the values are
+ * the shared constants and print the same as before.  It then times the
+ * selection of a missing attribute from a large ad with the message
+ * built, with the message left unbuilt, and without a message.
+ * The exit status is non-zero if any check fails.
+ */
+public class ErrorDetailTest {
+    /** Number of attributes of the timed ad. */
+    private int size = 80;
+
+    /** Number of timed selections. */
+    private int reps = 100000;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Expressions and their values, printed with error detail. */
+    private static final String[][] CASES = {
+        { "[a = 1].b",
+            "UNDEFINED(attribute b not found in a record of size 1)" },
+        { "[a = 1][\"b\"]",
+            "UNDEFINED(attribute \"b\" not found in a record of size 1)" },
+        { "x", "UNDEFINED(attribute x not found)" },
+        { "[a = b].a", "UNDEFINED(attribute b not found)" },
+        { "{ [a = 1], [b = 2] }.a",
+            "{1,UNDEFINED(attribute a not found in a record of size 1)}" },
+        { "(3).x", "ERROR(3.x: argument is not a record or list)" },
+        { "absTime(0) < relTime(1)",
+            "ERROR(type error: timestamp<time interval)" },
+        { "size(1, 2)", "ERROR(wrong number of args to size)" },
+        { "1 + \"a\"", "ERROR(string \"a\" in real context)" },
+    };
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-s<em>nn</em><dd>Time an ad with <em>nn</em> attributes.
+     * <dt>-n<em>nn</em><dd>Time <em>nn</em> selections of each form.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new ErrorDetailTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-s size] [-n reps]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "s:n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 's':
+                size = Integer.parseInt(opts.optarg);
+                break;
+            case 'n':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        boolean errorDetail = Constant.errorDetail;
+        try {
+            for (int i = 0; i < CASES.length; i++) {
+                check(CASES[i][0], CASES[i][1]);
+            }
+            checkSnapshot();
+            time();
+        } finally {
+            Constant.errorDetail = errorDetail;
+        }
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Check the value of an expression with and without error detail.
+     * @param expr the expression.
+     * @param expected its value, printed with error detail.
+     */
+    private void check(String expr, String expected) {
+        Expr e = new ClassAdParser(expr).parse();
+
+        Constant.errorDetail = true;
+        Expr value = e.eval();
+        String plain = print(value, 0);
+        check(expr, print(value, ClassAdWriter.SHOW_ERROR_DETAIL), expected);
+        if (value instanceof Constant) {
+            // The XML form shows the annotation as an attribute.
+            String a = ((Constant) value).annotation();
+            check(expr + " annotation", expected,
+                value.toString() + "(" + a + ")");
+            String xml = print(value, -1);
+            if (a.length() == 0 || xml.indexOf(" a=\"") < 0) {
+                failures++;
+                System.out.println(expr + ": no annotation in " + xml);
+            }
+        }
+
+        Constant.errorDetail = false;
+        value = e.eval();
+        check(expr + " without detail", print(value, 0), plain);
+        if (value instanceof Constant
+            && value != Constant.Error && value != Constant.Undef
+            && ((Constant) value).annotation().indexOf("attribute") >= 0)
+        {
+            failures++;
+            System.out.println(expr + ": unexpected detail without detail: "
+                + print(value, ClassAdWriter.SHOW_ERROR_DETAIL));
+        }
+    } // check(String,String)
+
+    /** Check that a message describes a record as it was when the value was
+     * created, rather than keeping the record.
+     */
+    private void checkSnapshot() {
+        Constant.errorDetail = true;
+        RecordExpr ad = (RecordExpr) new ClassAdParser("[a = 1]").parse();
+        Expr value = new SelectExpr(ad, "b").eval();
+        ad.insertAttribute("c", Constant.TRUE);
+        check("message after the ad changed",
+              ((Constant) value).annotation(),
+              "attribute b not found in a record of size 1");
+    } // checkSnapshot()
+
+    /** Compare a result with its expected value.
+     * @param what a description of the check.
+     * @param actual the result.
+     * @param expected the expected result.
+     */
+    private void check(String what, String actual, String expected) {
+        if (!actual.equals(expected)) {
+            failures++;
+            System.out.println(what + ": expected " + expected
+                + ", got " + actual);
+        }
+    } // check(String,String,String)
+
+    /** Print an expression.
+     * @param e the expression.
+     * @param flags the format flags for native output, or -1 for XML.
+     * @return the printed form.
+     */
+    private static String print(Expr e, int flags) {
+        StringWriter sw = new StringWriter();
+        ClassAdWriter w;
+        if (flags < 0) {
+            w = new ClassAdWriter(sw, ClassAdWriter.XML);
+        } else {
+            w = new ClassAdWriter(sw);
+            w.setFormatFlags(flags);
+        }
+        w.print(e);
+        w.flush();
+        return sw.toString();
+    } // print(Expr,int)
+
+    /** Time the selection of a missing attribute from a large ad with the
+     * message built, with the message left unbuilt, and without a message.
+     */
+    private void time() {
+        StringBuffer sb = new StringBuffer("[");
+        for (int i = 0; i < size; i++) {
+            sb.append("Attr").append(i).append(" = \"value").append(i)
+                .append("\"; ");
+        }
+        sb.append("Requirements = other.Memory > 1024 ]");
+        Expr e = new SelectExpr(new ClassAdParser(sb.toString()).parse(),
+                                "Missing");
+        for (int round = 0; round < 2; round++) {
+            Constant.errorDetail = true;
+            long eager = time(e, true);
+            long lazy = time(e, false);
+            Constant.errorDetail = false;
+            long none = time(e, false);
+            if (round == 1) {
+                System.out.println(size + " attributes");
+                System.out.println("eager message: " + eager + " ns/eval");
+                System.out.println("lazy message:  " + lazy + " ns/eval");
+                System.out.println("no message:    " + none + " ns/eval");
+            }
+        }
+    } // time()
+
+    /** Time repeated evaluation of an expression whose value is UNDEFINED.
+     * @param e the expression.
+     * @param build if true, build the message of each value.
+     * @return the time per evaluation in nanoseconds.
+     */
+    private long time(Expr e, boolean build) {
+        long start = System.nanoTime();
+        for (int i = 0; i < reps; i++) {
+            Expr value = e.eval();
+            if (value.type != Expr.UNDEFINED) {
+                failures++;
+            } else if (build) {
+                ((Constant) value).annotation();
+            }
+        }
+        return reps == 0 ? 0 : (System.nanoTime() - start) / reps;
+    } // time(Expr,boolean)
+} // ErrorDetailTest
@@ -0,0 +1,146 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+
+/** Main program to measure the speed of {@link AttrName#fromString(String)}
+ * when it is called by several threads at once.
+ * Each thread repeatedly looks up the names in a fixed working set, as a
+ * parser does when reading many ads with the same attributes.  The test is
+ * repeated with 1, 2, 4, ... threads, up to the number of available
+ * processors (or the number given by -t), and the average time per call
+ * and the total throughput are reported for each.
+ */
+public class InternBench {
+    /** Maximum number of threads. */
+    private int maxThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Number of distinct names in the working set. */
+    private int names = 500;
+
+    /** Number of calls per thread. */
+    private int calls = 5000000;
+
+    /** Used to keep the JIT compiler from discarding the calls. */
+    private static volatile Object sink;
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-t<em>nn</em><dd>Use at most <em>nn</em> threads.
+     * <dt>-n<em>nn</em><dd>Use <em>nn</em> distinct names.
+     * <dt>-c<em>nn</em><dd>Make <em>nn</em> calls in each thread.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new InternBench().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-t threads] [-n names] [-c calls]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status.
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "t:n:c:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 't':
+                maxThreads = Integer.parseInt(opts.optarg);
+                break;
+            case 'n':
+                names = Integer.parseInt(opts.optarg);
+                break;
+            case 'c':
+                calls = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        // Each thread gets its own copies of the strings, as it would if
+        // it were parsing its own input.
+        String[][] workingSets = new String[maxThreads][names];
+        for (int t = 0; t < maxThreads; t++) {
+            for (int i = 0; i < names; i++) {
+                workingSets[t][i] = new String("Attribute" + i);
+            }
+        }
+
+        // Warm up.
+        time(1, workingSets);
+        for (int n = 1; ; n *= 2) {
+            if (n > maxThreads) {
+                n = maxThreads;
+            }
+            long elapsed = time(n, workingSets);
+            long total = (long) n * calls;
+            System.out.println(n + " threads: "
+                + (double) elapsed * n / total + " ns/call, "
+                + total * 1000L / elapsed + " calls/us");
+            if (n == maxThreads) {
+                break;
+            }
+        }
+        return 0;
+    } // run(String[])
+
+    /** Run a number of threads, each calling AttrName.fromString repeatedly.
+     * @param n the number of threads.
+     * @param workingSets the names to be looked up by each thread.
+     * @return the elapsed time, in nanoseconds.
+     */
+    private long time(int n, final String[][] workingSets) {
+        Thread[] workers = new Thread[n];
+        for (int t = 0; t < n; t++) {
+            final String[] names = workingSets[t];
+            workers[t] = new Thread() {
+                public void run() {
+                    AttrName last = null;
+                    for (int i = 0; i < calls; i++) {
+                        last = AttrName.fromString(names[i % names.length]);
+                    }
+                    sink = last;
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (int t = 0; t < n; t++) {
+            workers[t].start();
+        }
+        for (int t = 0; t < n; t++) {
+            try {
+                workers[t].join();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return System.nanoTime() - start;
+    } // time(int,String[][])
+} // InternBench
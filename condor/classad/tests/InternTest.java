@@ -0,0 +1,186 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+
+/** Main program to check that the factory methods that share instances
+ * work correctly when called by several threads at once.
+ * Several threads concurrently call {@link AttrName#fromString(String)} on
+ * the same set of names, spelled with various combinations of upper and
+ * lower case, and {@link Constant#getInstance(String)} on the same set of
+ * strings.  When all threads are done, it checks that
+ * <ul>
+ * <li>every thread got the same AttrName instance for each spelling,
+ * <li>AttrNames that differ only in case are equal and have the same hash
+ *     code, and other AttrNames are not equal, and
+ * <li>every Constant has the requested value.
+ * </ul>
+ * The exit status is non-zero if any check fails.
+ */
+public class InternTest {
+    /** Number of threads. */
+    private int threads = 8;
+
+    /** Number of distinct names (ignoring case). */
+    private int names = 2000;
+
+    /** Number of different spellings of each name. */
+    private static final int SPELLINGS = 4;
+
+    /** Number of checks that failed. */
+    private int failures = 0;
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-t<em>nn</em><dd>Use <em>nn</em> threads.
+     * <dt>-n<em>nn</em><dd>Use <em>nn</em> distinct names.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new InternTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-t threads] [-n names]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if there were no failures).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "t:n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 't':
+                threads = Integer.parseInt(opts.optarg);
+                break;
+            case 'n':
+                names = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        // Use names that have not been seen before, so that the threads
+        // race to create them.
+        String prefix = "InternTest" + System.nanoTime() + "_";
+        final String[] spellings = new String[names * SPELLINGS];
+        for (int i = 0; i < names; i++) {
+            for (int j = 0; j < SPELLINGS; j++) {
+                spellings[i * SPELLINGS + j] = spell(prefix + i, j);
+            }
+        }
+
+        final AttrName[][] results = new AttrName[threads][];
+        final Constant[][] constants = new Constant[threads][];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    AttrName[] r = new AttrName[spellings.length];
+                    Constant[] c = new Constant[spellings.length];
+                    // Each thread visits the names in a different order.
+                    for (int k = 0; k < spellings.length; k++) {
+                        int i = (k * 7 + id * 13) % spellings.length;
+                        r[i] = AttrName.fromString(spellings[i]);
+                        c[i] = Constant.getInstance(spellings[i]);
+                    }
+                    results[id] = r;
+                    constants[id] = c;
+                }
+            };
+        }
+        for (int t = 0; t < threads; t++) {
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t++) {
+            try {
+                workers[t].join();
+            } catch (InterruptedException e) {
+                System.out.println("interrupted");
+                return 1;
+            }
+        }
+
+        for (int i = 0; i < spellings.length; i++) {
+            AttrName first = results[0][i];
+            for (int t = 0; t < threads; t++) {
+                if (results[t][i] != first) {
+                    fail("thread " + t + " got a different instance for "
+                        + spellings[i]);
+                }
+                if (!constants[t][i].stringValue().equals(spellings[i])) {
+                    fail("thread " + t + " got " + constants[t][i]
+                        + " for \"" + spellings[i] + "\"");
+                }
+            }
+            if (!first.rawString().equals(spellings[i])) {
+                fail("got " + first + " for " + spellings[i]);
+            }
+            AttrName base = results[0][i - i % SPELLINGS];
+            if (!first.equals(base) || first.hashCode() != base.hashCode()) {
+                fail(first + " does not equal " + base);
+            }
+            if (i >= SPELLINGS && first.equals(results[0][i - SPELLINGS])) {
+                fail(first + " equals " + results[0][i - SPELLINGS]);
+            }
+        }
+
+        System.out.println(failures == 0 ? "OK" : failures + " failures");
+        return failures == 0 ? 0 : 1;
+    } // run(String[])
+
+    /** Spell a name with a particular combination of upper and lower case.
+     * @param name the name.
+     * @param variant which spelling to use (0 to SPELLINGS - 1).
+     * @return the name, spelled as requested.
+     */
+    private static String spell(String name, int variant) {
+        switch (variant) {
+        case 0:
+            return name;
+        case 1:
+            return name.toLowerCase();
+        case 2:
+            return name.toUpperCase();
+        default:
+            return Character.toLowerCase(name.charAt(0))
+                + name.substring(1).toUpperCase();
+        }
+    } // spell(String,int)
+
+    /** Report a failed check.  Only the first few failures are printed.
+     * @param msg a description of the failure.
+     */
+    private void fail(String msg) {
+        if (failures++ < 10) {
+            System.out.println(msg);
+        }
+    } // fail(String)
+} // InternTest
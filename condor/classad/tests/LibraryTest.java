@@ -0,0 +1,254 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.io.IOException;
+
+/** Main program to check that whatever a function loaded with
+ * {@link ClassAd#loadJavaLibrary(String)} throws becomes an ERROR value
+ * rather than escaping from {@link Expr#eval()}.
+ * The library is this class itself:  its public static methods returning
+ * Expr are the functions.  Each is called with one, four, and five
+ * arguments, strictly and not, so that every kind of invoker is used.
+ * Functions of five arguments, which are called through a
+ * MethodHandle, are also checked to receive their arguments in order.
+ * The exit status is non-zero if any check fails.
+ */
+public class LibraryTest {
+    /** The message of the exceptions thrown by the functions. */
+    private static final String MESSAGE = "disk on fire";
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Main program.
+     * @param args the command-line arguments (ignored).
+     */
+    public static void main(String[] args) {
+        System.exit(new LibraryTest().run());
+    } // main(String[])
+
+    /** The main body of the program.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run() {
+        if (!ClassAd.loadJavaLibrary(LibraryTest.class.getName())) {
+            System.out.println("cannot load " + LibraryTest.class.getName());
+            return 1;
+        }
+        check("libOkay(7)", "7");
+        checkError("libChecked(1)", MESSAGE);
+        checkError("libAssert(1)", MESSAGE);
+        checkError("libUnchecked(1)", MESSAGE);
+        checkError("libChecked4(1, 2, 3, 4)", MESSAGE);
+        checkError("libChecked5(1, 2, 3, 4, 5)", MESSAGE);
+        checkError("libLazy(1)", MESSAGE);
+        checkError("libLazyAssert(1)", MESSAGE);
+        checkError("libLazy5(1, 2, 3, 4, 5)", MESSAGE);
+        check("libLast5(1, 2, 3, 4, 5)", "5");
+        check("libLazyLast5(1, 2, 3, 4, 5)", "5");
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run()
+
+    /** Check the value of an expression.
+     * @param expr the expression.
+     * @param expected the expected value, printed.
+     */
+    private void check(String expr, String expected) {
+        String actual;
+        try {
+            actual = eval(expr).toString();
+        } catch (Throwable t) {
+            actual = "exception " + t;
+        }
+        if (!actual.equals(expected)) {
+            failures++;
+            System.out.println(expr + ": expected " + expected + ", got "
+                + actual);
+        }
+    } // check(String,String)
+
+    /** Check that an expression evaluates to ERROR, with a message
+     * mentioning what the function threw.
+     * @param expr the expression.
+     * @param message part of the expected message.
+     */
+    private void checkError(String expr, String message) {
+        Expr value;
+        try {
+            value = eval(expr);
+        } catch (Throwable t) {
+            failures++;
+            System.out.println(expr + ": threw " + t);
+            return;
+        }
+        if (value.type != Expr.ERROR) {
+            failures++;
+            System.out.println(expr + ": expected error, got " + value);
+        } else if (((Constant) value).annotation().indexOf(message) < 0) {
+            failures++;
+            System.out.println(expr + ": expected a message containing \""
+                + message + "\", got \"" + ((Constant) value).annotation()
+                + "\"");
+        }
+    } // checkError(String,String)
+
+    /** Parse and evaluate an expression.
+     * @param expr the expression.
+     * @return its value.
+     */
+    private static Expr eval(String expr) {
+        return new ClassAdParser(expr).parse().eval();
+    } // eval(String)
+
+    // The functions of the library.
+
+    /** A function that works.
+     * @param a any value.
+     * @return a.
+     */
+    public static Expr libOkay(Expr a) {
+        return a;
+    } // libOkay(Expr)
+
+    /** A function that throws a checked exception.
+     * @param a ignored.
+     * @return never.
+     * @throws IOException always.
+     */
+    public static Expr libChecked(Expr a) throws IOException {
+        throw new IOException(MESSAGE);
+    } // libChecked(Expr)
+
+    /** A function that throws an Error.
+     * @param a ignored.
+     * @return never.
+     * @throws AssertionError always.
+     */
+    public static Expr libAssert(Expr a) {
+        throw new AssertionError(MESSAGE);
+    } // libAssert(Expr)
+
+    /** A function that throws an unchecked exception.
+     * @param a ignored.
+     * @return never.
+     * @throws IllegalStateException always.
+     */
+    public static Expr libUnchecked(Expr a) {
+        throw new IllegalStateException(MESSAGE);
+    } // libUnchecked(Expr)
+
+    /** A function of four arguments that throws a checked exception.
+     * @param a ignored.
+     * @param b ignored.
+     * @param c ignored.
+     * @param d ignored.
+     * @return never.
+     * @throws IOException always.
+     */
+    public static Expr libChecked4(Expr a, Expr b, Expr c, Expr d)
+        throws IOException
+    {
+        throw new IOException(MESSAGE);
+    } // libChecked4(Expr,Expr,Expr,Expr)
+
+    /** A function of five arguments (called through a MethodHandle) that
+     * throws a checked exception.
+     * @param a ignored.
+     * @param b ignored.
+     * @param c ignored.
+     * @param d ignored.
+     * @param e ignored.
+     * @return never.
+     * @throws IOException always.
+     */
+    public static Expr libChecked5(Expr a, Expr b, Expr c, Expr d, Expr e)
+        throws IOException
+    {
+        throw new IOException(MESSAGE);
+    } // libChecked5(Expr,Expr,Expr,Expr,Expr)
+
+    /** A non-strict function that throws a checked exception.
+     * @param env the environment.
+     * @param a ignored.
+     * @return never.
+     * @throws IOException always.
+     */
+    public static Expr libLazy(Env env, Expr a) throws IOException {
+        throw new IOException(MESSAGE);
+    } // libLazy(Env,Expr)
+
+    /** A non-strict function that throws an Error.
+     * @param env the environment.
+     * @param a ignored.
+     * @return never.
+     * @throws AssertionError always.
+     */
+    public static Expr libLazyAssert(Env env, Expr a) {
+        throw new AssertionError(MESSAGE);
+    } // libLazyAssert(Env,Expr)
+
+    /** A non-strict function of five arguments that throws a checked
+     * exception.
+     * @param env the environment.
+     * @param a ignored.
+     * @param b ignored.
+     * @param c ignored.
+     * @param d ignored.
+     * @param e ignored.
+     * @return never.
+     * @throws IOException always.
+     */
+    public static Expr libLazy5(Env env, Expr a, Expr b, Expr c, Expr d,
+                                Expr e)
+        throws IOException
+    {
+        throw new IOException(MESSAGE);
+    } // libLazy5(Env,Expr,Expr,Expr,Expr,Expr)
+
+    /** A function of five arguments that works.
+     * @param a ignored.
+     * @param b ignored.
+     * @param c ignored.
+     * @param d ignored.
+     * @param e any value.
+     * @return e.
+     */
+    public static Expr libLast5(Expr a, Expr b, Expr c, Expr d, Expr e) {
+        return e;
+    } // libLast5(Expr,Expr,Expr,Expr,Expr)
+
+    /** A non-strict function of five arguments that works.
+     * @param env the environment.
+     * @param a ignored.
+     * @param b ignored.
+     * @param c ignored.
+     * @param d ignored.
+     * @param e any expression.
+     * @return the value of e.
+     */
+    public static Expr libLazyLast5(Env env, Expr a, Expr b, Expr c, Expr d,
+                                    Expr e)
+    {
+        return e.eval(env);
+    } // libLazyLast5(Env,Expr,Expr,Expr,Expr,Expr)
+} // LibraryTest
@@ -0,0 +1,329 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.io.StringWriter;
+import java.util.*;
+
+/** Main program to check and measure packed lists (see
+ * {@link ListExpr#minPackedSize}).
+ * It parses random lists of integers, reals, and strings, with and
+ * without packing, and checks that the two forms print the same (in both
+ * native and XML form), have the same members, and give the same results
+ * for the list functions of {@link Builtin}.  It checks that adding to a
+ * packed list works, and that the results of min() and max() are right
+ * for lists of mixed integers and reals.
+ * Finally, it reports the memory used by a long list of integers, packed
+ * and unpacked, and the time taken by sum() on it.
+ * The exit status is non-zero if any check fails.
+ */
+public class ListTest {
+    /** Number of random lists checked. */
+    private int lists = 1000;
+
+    /** Number of elements of the measured list. */
+    private int size = 10000;
+
+    /** Number of timed calls. */
+    private int reps = 10000;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Values from which list elements are chosen, by type. */
+    private static final String[][] VALUES = {
+        { "0", "1", "7", "1023", "1024", "2147483647", "-2147483648",
+            "123456" },
+        { "0.0", "-0.0", "1.0", "7.5", "1e300", "-2.5e-10", "real(\"NaN\")",
+            "real(\"INF\")", "real(\"-INF\")" },
+        { "\"abc\"", "\"ABC\"", "\"\"", "\"a\\\"b\"", "\"tab\\there\"",
+            "\"<&>\"", "\"\u00e9t\u00e9\"" },
+    };
+
+    /** Functions of a list compared in the two forms. */
+    private static final String[] FUNCS = {
+        "size(l)", "sum(l)", "avg(l)", "min(l)", "max(l)", "l[0]", "l[5]",
+        "l[-1]", "l[100000]", "member(7, l)", "member(\"abc\", l)",
+        "identicalMember(7.5, l)", "anycompare(\"<\", l, 2)",
+        "anycompare(\"==\", l, \"ABC\")", "allcompare(\">=\", l, 0)",
+        "regexpMember(\"b\", l)", "isList(l)", "l == l", "l is l",
+    };
+
+    /** Expected results of min() and max() of lists of mixed types. */
+    private static final String[][] MIXED = {
+        { "min({ 1.5, 2.5 })", "1.500000000000000E+00" },
+        { "max({ -1.5, -2.5 })", "-1.500000000000000E+00" },
+        { "min({ 3, 1.5 })", "1.500000000000000E+00" },
+        { "max({ 3, 1.5 })", "3.000000000000000E+00" },
+        { "min({ 3e10, 4e10 })", "3.000000000000000E+10" },
+        { "max({ 1, 2 })", "2" },
+        { "min({ })", "UNDEFINED" },
+    };
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-l<em>nn</em><dd>Check <em>nn</em> random lists.
+     * <dt>-s<em>nn</em><dd>Measure a list of <em>nn</em> elements.
+     * <dt>-n<em>nn</em><dd>Time <em>nn</em> calls of each form.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new ListTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-l lists] [-s size] [-n reps]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "l:s:n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'l':
+                lists = Integer.parseInt(opts.optarg);
+                break;
+            case 's':
+                size = Integer.parseInt(opts.optarg);
+                break;
+            case 'n':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        int minPackedSize = ListExpr.minPackedSize;
+        try {
+            checkLists();
+            checkAdd();
+            checkMixed();
+            measure();
+        } finally {
+            ListExpr.minPackedSize = minPackedSize;
+        }
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Check random lists in packed and unpacked form. */
+    private void checkLists() {
+        Random random = new Random(42);
+        for (int n = 0; n < lists; n++) {
+            String[] values = VALUES[random.nextInt(VALUES.length)];
+            StringBuffer sb = new StringBuffer("{ ");
+            int len = random.nextInt(40);
+            for (int i = 0; i < len; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(values[random.nextInt(values.length)]);
+            }
+            String text = sb.append(" }").toString();
+            ListExpr.minPackedSize = Integer.MAX_VALUE;
+            RecordExpr plain = ad(text);
+            ListExpr.minPackedSize = 1;
+            RecordExpr packed = ad(text);
+            compare(text, "native", show(plain, false), show(packed, false));
+            compare(text, "XML", show(plain, true), show(packed, true));
+            Expr l1 = plain.lookup("l");
+            Expr l2 = packed.lookup("l");
+            if (!l1.sameAs(l2) || !l2.sameAs(l1)) {
+                failures++;
+                System.out.println(text + ": packed form is not sameAs");
+            }
+            for (int i = 0; i < FUNCS.length; i++) {
+                compare(text, FUNCS[i],
+                    show(eval(plain, FUNCS[i]), false),
+                    show(eval(packed, FUNCS[i]), false));
+            }
+        }
+    } // checkLists()
+
+    /** Check that adding to a packed list unpacks it, and that the factory
+     * methods give the same lists as the parser.
+     */
+    private void checkAdd() {
+        int[] ints = new int[100];
+        String[] strings = new String[100];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = i * i;
+            strings[i] = "user" + i;
+        }
+        ListExpr l = ListExpr.getInstance(ints);
+        ListExpr.minPackedSize = Integer.MAX_VALUE;
+        Expr parsed = new ClassAdParser(l.toString()).parse();
+        if (!l.sameAs(parsed)) {
+            failures++;
+            System.out.println("getInstance(int[]) gives " + l);
+        }
+        String before = Builtin.member(new Env(), ClassAd.constant(-1), l)
+                            .toString();
+        l.add(ClassAd.constant(-1));
+        l.add(ClassAd.constant("x"));
+        String after = Builtin.member(new Env(), ClassAd.constant(-1), l)
+                            .toString();
+        if (l.size() != 102 || !before.equals("false")
+            || !after.equals("true") || !l.sub(101).sameAs(
+                                            ClassAd.constant("x")))
+        {
+            failures++;
+            System.out.println("add to packed list gives " + l);
+        }
+        ListExpr s = ListExpr.getInstance(strings);
+        if (!Builtin.member(new Env(), ClassAd.constant("USER99"), s)
+                .isTrue())
+        {
+            failures++;
+            System.out.println("member of getInstance(String[]) failed");
+        }
+        try {
+            ListExpr.getInstance(new String[] { "a", null });
+            failures++;
+            System.out.println("getInstance(String[]) accepted null");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    } // checkAdd()
+
+    /** Check min() and max() of lists of mixed integers and reals. */
+    private void checkMixed() {
+        for (int i = 0; i < MIXED.length; i++) {
+            String v = new ClassAdParser(MIXED[i][0]).parse().eval()
+                            .toString();
+            compare(MIXED[i][0], "value", MIXED[i][1], v);
+        }
+    } // checkMixed()
+
+    /** Report the memory used by a long list of integers, packed and
+     * unpacked, and time sum() on each.
+     */
+    private void measure() {
+        StringBuffer sb = new StringBuffer("{ ");
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "" : ", ").append(1000 + i);
+        }
+        String text = sb.append(" }").toString();
+        String[] what = { "unpacked", "packed" };
+        int[] min = { Integer.MAX_VALUE, 1 };
+        for (int k = 0; k < what.length; k++) {
+            ListExpr.minPackedSize = min[k];
+            long before = used();
+            Expr l = new ClassAdParser(text).parse();
+            long bytes = used() - before;
+            Expr sum = FuncCall.getInstance(AttrName.fromString("sum"),
+                                            Collections.singletonList(l));
+            long elapsed = 0;
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < reps; i++) {
+                    sum.eval();
+                }
+                elapsed = System.nanoTime() - start;
+            }
+            System.out.println(what[k] + ": " + size + " integers, "
+                + bytes / size + " bytes/element, sum "
+                + (reps == 0 ? 0 : elapsed / reps) + " ns/call");
+            if (!l.toString().equals(text.replace(" ", ""))) {
+                failures++;
+                System.out.println(what[k] + " list prints wrong");
+            }
+        }
+    } // measure()
+
+    /** Parse an ad with attribute l bound to a list.
+     * @param list the text of the list.
+     * @return the ad.
+     */
+    private static RecordExpr ad(String list) {
+        return (RecordExpr) new ClassAdParser("[ l = " + list + " ]").parse();
+    } // ad(String)
+
+    /** Evaluate an expression in an ad.
+     * @param ad the ad.
+     * @param expr the text of the expression.
+     * @return its value.
+     */
+    private static Expr eval(RecordExpr ad, String expr) {
+        return ClassAd.eval("value", new ClassAdParser(expr).parse(), ad);
+    } // eval(RecordExpr,String)
+
+    /** Compare the results of the two forms of a list, printing a message
+     * if they differ.
+     * @param list the text of the list.
+     * @param what what was compared.
+     * @param expected the result for the unpacked form.
+     * @param actual the result for the packed form.
+     */
+    private void compare(String list, String what, String expected,
+                         String actual)
+    {
+        if (!actual.equals(expected)) {
+            failures++;
+            System.out.println(list + ": " + what + " => " + actual
+                + ", expected " + expected);
+        }
+    } // compare(String,String,String,String)
+
+    /** Convert an expression to a string, including the details of any
+     * error or undefined values.
+     * @param e the expression.
+     * @param xml if true, print it in XML form, otherwise in native form.
+     * @return its string representation.
+     */
+    private static String show(Expr e, boolean xml) {
+        StringWriter sw = new StringWriter();
+        ClassAdWriter w = new ClassAdWriter(sw,
+                xml ? ClassAdWriter.XML : ClassAdWriter.NATIVE);
+        w.setFormatFlags(ClassAdWriter.SHOW_ERROR_DETAIL);
+        w.print(e);
+        w.flush();
+        return sw.toString();
+    } // show(Expr,boolean)
+
+    /** Estimate the amount of heap in use by reachable objects.
+     * @return the number of bytes in use after garbage collection.
+     */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // used()
+} // ListTest
@@ -0,0 +1,223 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+
+/** Main program to measure the speed of attribute lookup.
+ * It generates a synthetic pool of machine ads (see {@link SyntheticPool}),
+ * padded with extra attributes to a total of 50 attributes each, and times
+ * the evaluation in each ad of an expression that refers to several of its
+ * attributes, both directly and through <code>other</code>.
+ * <p>
+ * Evaluation is timed with and without the slots remembered by attribute
+ * references (see {@link RecordExpr#inlineCaches}).  It also times
+ * {@link RecordExpr#lookup(AttrName)} on every attribute of every ad,
+ * against looking up the same names in a {@link HashMap} holding the
+ * attributes of each ad (which is how a RecordExpr used to hold them).
+ * The exit status is non-zero if the configurations give different
+ * results.
+ */
+public class LookupBench {
+    /** Number of attributes per ad. */
+    private static final int ATTRIBUTES = 50;
+
+    /** The expression evaluated in each ad. */
+    private static final String EXPR = "Memory + Disk + KeyboardIdle"
+        + " + Extra15 + Extra20 + Extra35 + other.Memory + other.Extra30";
+
+    /** Number of machine ads. */
+    private int machines = 1000;
+
+    /** Number of timed rounds (each round evaluates the expression once in
+     * every ad).
+     */
+    private int rounds = 200;
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-m<em>nn</em><dd>Generate <em>nn</em> machine ads.
+     * <dt>-r<em>nn</em><dd>Time <em>nn</em> rounds of evaluation.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new LookupBench().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-m machines] [-r rounds]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all configurations agree).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "m:r:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'm':
+                machines = Integer.parseInt(opts.optarg);
+                break;
+            case 'r':
+                rounds = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        SyntheticPool pool = new SyntheticPool(42);
+        RecordExpr[] ads = new RecordExpr[machines];
+        Map[] maps = new Map[machines];
+        for (int i = 0; i < machines; i++) {
+            ads[i] = (RecordExpr) new ClassAdParser(pool.machine(i)).parse();
+            for (int j = ads[i].size(); j < ATTRIBUTES; j++) {
+                String name = "Extra" + (j < 10 ? "0" : "") + j;
+                ads[i].insertAttribute(name, Constant.getInstance(i + j));
+            }
+            maps[i] = new HashMap();
+            for (Iterator it = ads[i].attributes(); it.hasNext(); ) {
+                AttrName name = (AttrName) it.next();
+                maps[i].put(name, ads[i].lookup(name));
+            }
+        }
+        System.out.println(machines + " machines, " + ATTRIBUTES
+            + " attributes, " + rounds + " rounds");
+
+        long mapFound = timeLookups("HashMap.get", ads, maps);
+        long shapeFound = timeLookups("RecordExpr.lookup", ads, null);
+        RecordExpr.inlineCaches = false;
+        long plainSum = time("evaluation without inline caches", ads);
+        RecordExpr.inlineCaches = true;
+        long cachedSum = time("evaluation with inline caches", ads);
+
+        if (mapFound != shapeFound || plainSum != cachedSum) {
+            System.out.println("configurations disagree");
+            return 1;
+        }
+        return 0;
+    } // run(String[])
+
+    /** Time evaluating EXPR in every ad and print the results.  Each ad is
+     * evaluated with the next one as <code>other</code>.  A fresh copy of
+     * the expression is used, so that no slots are remembered from an
+     * earlier configuration.  One untimed round is run first, to warm up
+     * the JVM.
+     * @param what a description of the configuration being timed.
+     * @param ads the ads.
+     * @return the sum of the values in one round.
+     */
+    private long time(String what, RecordExpr[] ads) {
+        Expr expr = new ClassAdParser(EXPR).parse();
+        long sum = evalAll(expr, ads);
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            evalAll(expr, ads);
+        }
+        report(what, System.nanoTime() - start);
+        return sum;
+    } // time(String,RecordExpr[])
+
+    /** Evaluate an expression in every ad.
+     * @param expr the expression.
+     * @param ads the ads.
+     * @return the sum of the values.
+     */
+    private static long evalAll(Expr expr, RecordExpr[] ads) {
+        long sum = 0;
+        for (int i = 0; i < ads.length; i++) {
+            RecordExpr other = new RecordExpr(1);
+            other.insertAttribute("other", ads[(i + 1) % ads.length]);
+            Env env = new Env();
+            env.push(other);
+            env.push(ads[i]);
+            sum += ((Constant) expr.eval(env)).intValue();
+        }
+        return sum;
+    } // evalAll(Expr,RecordExpr[])
+
+    /** Time looking up every attribute of every ad, either in the ads
+     * themselves or in HashMaps holding the same attributes, and print the
+     * results.  One untimed round is run first, to warm up the JVM.
+     * @param what a description of the configuration being timed.
+     * @param ads the ads.
+     * @param maps the attributes of the ads, or null to look up the names in
+     * the ads themselves.
+     * @return the number of attributes found in one round.
+     */
+    private long timeLookups(String what, RecordExpr[] ads, Map[] maps) {
+        AttrName[] names = new AttrName[ATTRIBUTES];
+        int n = 0;
+        for (Iterator it = ads[0].attributes(); it.hasNext(); ) {
+            names[n++] = (AttrName) it.next();
+        }
+        long found = lookupAll(ads, maps, names);
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            lookupAll(ads, maps, names);
+        }
+        long elapsed = System.nanoTime() - start;
+        long lookups = (long) rounds * machines * ATTRIBUTES;
+        System.out.println(what + ": "
+            + (lookups == 0 ? 0 : Math.round(10.0 * elapsed / lookups) / 10.0)
+            + " ns/lookup");
+        return found;
+    } // timeLookups(String,RecordExpr[],Map[])
+
+    /** Look up names in every ad or map.
+     * @param ads the ads.
+     * @param maps the attributes of the ads, or null.
+     * @param names the names.
+     * @return the number of names found.
+     */
+    private static long lookupAll(RecordExpr[] ads, Map[] maps,
+                                  AttrName[] names)
+    {
+        long found = 0;
+        for (int i = 0; i < ads.length; i++) {
+            for (int j = 0; j < names.length; j++) {
+                Object value = maps == null
+                    ? ads[i].lookup(names[j])
+                    : maps[i].get(names[j]);
+                if (value != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    } // lookupAll(RecordExpr[],Map[],AttrName[])
+
+    /** Print the time per evaluation.
+     * @param what a description of the configuration.
+     * @param elapsed the elapsed time in nanoseconds.
+     */
+    private void report(String what, long elapsed) {
+        long evals = (long) rounds * machines;
+        System.out.println(what + ": "
+            + (evals == 0 ? 0 : elapsed / evals) + " ns/eval");
+    } // report(String,long)
+} // LookupBench
@@ -0,0 +1,463 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.io.*;
+import java.util.*;
+
+/** Main program to check and measure off-heap ad stores (see
+ * {@link MappedStore}).
+ * It writes synthetic ads (see {@link SyntheticPool}), together with an ad
+ * using every kind of expression, to a file, opens it, and checks that
+ * each ad prints the same and has the same attribute values as the
+ * original, that the values read directly from the file agree with the
+ * decoded ones, and that opening the file again gives the same ads.  It
+ * checks that matchmaking gives the same results for stored ads as for
+ * parsed ones, that the stored ads cannot be modified, that files that
+ * are not complete ad stores are rejected, and that a write that fails
+ * part way through leaves the previous store intact.  Finally, it reports
+ * the heap used and the time taken to parse the ads and to open the store.
+ * The exit status is non-zero if any check fails.
+ */
+public class MappedStoreTest {
+    /** Number of machine ads. */
+    private int machines = 1000;
+
+    /** Number of job ads. */
+    private int jobs = 100;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** An ad using every kind of expression. */
+    private static final String ALL_TYPES = "[ "
+        + "Int = 42; Real = 2.5; Str = \"caf\u00e9\"; Empty = \"\"; "
+        + "Bool = true; Undef = undefined; Err = error; "
+        + "Abs = absTime(\"2005-05-06T20:54:07-05:00\"); "
+        + "Rel = relTime(\"1+02:03:04\"); "
+        + "Arith = Int + Real * -Int; Cond = Bool ? Int : Real; "
+        + "Ints = { 1, 2, 3 }; Reals = { 1.5, 2.5 }; Strs = { \"p\", \"q\" }; "
+        + "Mixed = { 1, \"x\", Int, { } }; "
+        + "Rec = [ x = 1; y = x + 1 ]; Sel = Rec.y; Sub = Ints[1]; "
+        + "Call = strcat(\"a\", Str); Nullary = time(); Not = !Bool; "
+        + "'Odd Name' = \"quoted\"; Neg = -2147483648; Big = 1.0e300 ]";
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-m<em>nn</em><dd>Store <em>nn</em> machine ads.
+     * <dt>-j<em>nn</em><dd>Store <em>nn</em> job ads.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new MappedStoreTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-m machines] [-j jobs]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "m:j:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'm':
+                machines = Integer.parseInt(opts.optarg);
+                break;
+            case 'j':
+                jobs = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        File file = null;
+        try {
+            file = File.createTempFile("ads", ".store");
+            file.deleteOnExit();
+            RecordExpr[] ads = ads();
+            MappedStore.write(file, ads);
+            MappedStore store = new MappedStore(file);
+            checkAds(store, ads);
+            checkReopen(store, file);
+            checkMatch(store, ads);
+            checkUnsupported(store);
+            checkBadFiles(file);
+            checkFailedWrite(file);
+            measure(file);
+        } catch (IOException e) {
+            failures++;
+            System.out.println(e);
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Parse the ads to be stored:  the machines, then the jobs, then an ad
+     * using every kind of expression.
+     * @return the ads.
+     */
+    private RecordExpr[] ads() {
+        SyntheticPool pool = new SyntheticPool(42);
+        RecordExpr[] result = new RecordExpr[machines + jobs + 1];
+        for (int i = 0; i < machines; i++) {
+            result[i] = parse(pool.machine(i));
+        }
+        for (int i = 0; i < jobs; i++) {
+            result[machines + i] = parse(pool.job(i));
+        }
+        result[machines + jobs] = parse(ALL_TYPES);
+        return result;
+    } // ads()
+
+    /** Parse an ad.
+     * @param s the text of the ad.
+     * @return the ad.
+     */
+    private static RecordExpr parse(String s) {
+        return (RecordExpr) new ClassAdParser(s).parse();
+    } // parse(String)
+
+    /** Check that the ads in a store are the same as the originals.
+     * @param store the store.
+     * @param ads the original ads.
+     */
+    private void checkAds(MappedStore store, RecordExpr[] ads) {
+        check("size", String.valueOf(store.size()),
+              String.valueOf(ads.length));
+        for (int row = 0; row < ads.length; row++) {
+            RecordExpr ad = store.get(row);
+            String what = "ad " + row;
+            check(what + " toString", ad.toString(), ads[row].toString());
+            check(what + " sameAs", String.valueOf(ad.sameAs(ads[row])),
+                  "true");
+            check(what + " size", String.valueOf(ad.size()),
+                  String.valueOf(ads[row].size()));
+            Iterator i = ads[row].attributes();
+            Iterator j = ad.attributes();
+            while (i.hasNext() && j.hasNext()) {
+                AttrName a = (AttrName) i.next();
+                check(what + " attribute", j.next().toString(), a.toString());
+                checkAttribute(what, store, row, a, ads[row]);
+            }
+            if (i.hasNext() || j.hasNext()) {
+                check(what + " attributes", String.valueOf(j.hasNext()),
+                      String.valueOf(i.hasNext()));
+            }
+            AttrName missing = AttrName.fromString("NoSuchAttribute");
+            check(what + " missing",
+                  String.valueOf(store.lookup(row, missing)), "null");
+            check(what + " missing type",
+                  String.valueOf(store.type(row, missing)),
+                  String.valueOf(Expr.UNDEFINED));
+            check(what + " missing int",
+                  String.valueOf(store.intValue(row, missing, -1)), "-1");
+        }
+        try {
+            store.get(ads.length);
+            failures++;
+            System.out.println("get(" + ads.length + ") succeeded");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    } // checkAds(MappedStore,RecordExpr[])
+
+    /** Check one attribute of a stored ad, as decoded and as read directly
+     * from the file.
+     * @param what a description of the ad.
+     * @param store the store.
+     * @param row the index of the ad.
+     * @param a the name of the attribute.
+     * @param orig the original ad.
+     */
+    private void checkAttribute(String what, MappedStore store, int row,
+                                AttrName a, RecordExpr orig)
+    {
+        what += " " + a;
+        Expr expected = orig.lookup(a);
+        Expr actual = store.lookup(row, a);
+        check(what + " lookup", actual.toString(), expected.toString());
+        check(what + " value",
+              new SelectExpr(store.get(row), a).eval().toString(),
+              new SelectExpr(orig, a).eval().toString());
+        check(what + " type", String.valueOf(store.type(row, a)),
+              String.valueOf(expected.type));
+        Constant c = expected instanceof Constant
+            ? (Constant) expected
+            : Constant.Undef;
+        check(what + " intValue",
+              String.valueOf(store.intValue(row, a, -1)),
+              String.valueOf(c.intValue(-1)));
+        check(what + " realValue",
+              String.valueOf(store.realValue(row, a, -1.0)),
+              String.valueOf(c.realValue(-1.0)));
+        check(what + " stringValue",
+              String.valueOf(store.stringValue(row, a, null)),
+              String.valueOf(c.stringValue(null)));
+        check(what + " milliseconds",
+              String.valueOf(store.milliseconds(row, a, -1L)),
+              String.valueOf(c.milliseconds(-1L)));
+    } // checkAttribute(String,MappedStore,int,AttrName,RecordExpr)
+
+    /** Check that opening a store again gives the same ads.
+     * @param store the store.
+     * @param file the file holding the store.
+     * @throws IOException if the file cannot be opened.
+     */
+    private void checkReopen(MappedStore store, File file)
+        throws IOException
+    {
+        MappedStore again = new MappedStore(file);
+        check("reopened size", String.valueOf(again.size()),
+              String.valueOf(store.size()));
+        for (int row = 0; row < store.size(); row++) {
+            check("reopened ad " + row, again.get(row).toString(),
+                  store.get(row).toString());
+        }
+    } // checkReopen(MappedStore,File)
+
+    /** Check that matching stored ads gives the same results as matching
+     * parsed ones.
+     * @param store the store.
+     * @param ads the original ads.
+     */
+    private void checkMatch(MappedStore store, RecordExpr[] ads) {
+        RecordExpr[] stored = new RecordExpr[machines];
+        for (int i = 0; i < machines; i++) {
+            stored[i] = store.get(i);
+        }
+        for (int j = 0; j < Math.min(jobs, 10); j++) {
+            RecordExpr job = store.get(machines + j);
+            for (int i = 0; i < machines; i++) {
+                check("match job " + j + " machine " + i,
+                      Arrays.toString(ClassAd.match(job, stored[i])),
+                      Arrays.toString(ClassAd.match(ads[machines + j],
+                                                    ads[i])));
+            }
+        }
+    } // checkMatch(MappedStore,RecordExpr[])
+
+    /** Check that a stored ad cannot be modified.
+     * @param store the store.
+     */
+    private void checkUnsupported(MappedStore store) {
+        RecordExpr ad = store.get(0);
+        String before = ad.toString();
+        try {
+            ad.insertAttribute("NewAttribute", Constant.TRUE);
+            failures++;
+            System.out.println("insertAttribute succeeded");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            ad.removeAttribute(AttrName.fromString("Name"));
+            failures++;
+            System.out.println("removeAttribute succeeded");
+        } catch (UnsupportedOperationException expected) {
+        }
+        check("after unsupported", ad.toString(), before);
+    } // checkUnsupported(MappedStore)
+
+    /** Check that files that are not complete stores are rejected.
+     * @param file a complete store.
+     * @throws IOException if a temporary file cannot be written.
+     */
+    private void checkBadFiles(File file) throws IOException {
+        byte[] contents = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(contents);
+        } finally {
+            in.close();
+        }
+        File bad = File.createTempFile("bad", ".store");
+        bad.deleteOnExit();
+        try {
+            checkRejected("truncated", bad,
+                          Arrays.copyOf(contents, contents.length / 2));
+            checkRejected("empty", bad, new byte[0]);
+            checkRejected("text", bad, ALL_TYPES.getBytes("UTF-8"));
+            byte[] newer = contents.clone();
+            newer[7]++;
+            checkRejected("newer format", bad, newer);
+        } finally {
+            bad.delete();
+        }
+    } // checkBadFiles(File)
+
+    /** Check that a file is rejected.
+     * @param what a description of the file.
+     * @param file a file to hold the contents.
+     * @param contents the contents.
+     * @throws IOException if the file cannot be written.
+     */
+    private void checkRejected(String what, File file, byte[] contents)
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        try {
+            new MappedStore(file);
+            failures++;
+            System.out.println(what + " file accepted");
+        } catch (IOException expected) {
+        }
+    } // checkRejected(String,File,byte[])
+
+    /** Check that a write that fails part way through leaves the previous
+     * store intact, and no temporary file behind.
+     * @param file a complete store.
+     * @throws IOException if the store cannot be opened.
+     */
+    private void checkFailedWrite(File file) throws IOException {
+        final RecordExpr ad = parse(ALL_TYPES);
+        Iterator failing = new Iterator() {
+            private int n = 0;
+            public boolean hasNext() {
+                return true;
+            }
+            public Object next() {
+                if (n++ == 10) {
+                    throw new IllegalStateException("source went away");
+                }
+                return ad;
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        MappedStore before = new MappedStore(file);
+        try {
+            MappedStore.write(file, failing);
+            failures++;
+            System.out.println("failing write succeeded");
+        } catch (IllegalStateException expected) {
+        }
+        MappedStore after = new MappedStore(file);
+        check("size after failed write", String.valueOf(after.size()),
+              String.valueOf(before.size()));
+        check("last ad after failed write",
+              after.get(after.size() - 1).toString(),
+              before.get(before.size() - 1).toString());
+        File[] left = file.getAbsoluteFile().getParentFile().listFiles();
+        for (int i = 0; left != null && i < left.length; i++) {
+            String name = left[i].getName();
+            if (name.startsWith(file.getName()) && name.endsWith(".tmp")) {
+                failures++;
+                System.out.println("temporary file left behind: " + name);
+            }
+        }
+    } // checkFailedWrite(File)
+
+    /** Report the heap used and the time taken to parse the ads and to open
+     * the store, and the time to read an integer attribute of every ad
+     * directly from the store.
+     * @param file the file holding the store.
+     * @throws IOException if the file cannot be opened.
+     */
+    private void measure(File file) throws IOException {
+        long before = used();
+        long start = System.nanoTime();
+        RecordExpr[] parsed = ads();
+        long parseTime = System.nanoTime() - start;
+        long parseBytes = used() - before;
+
+        before = used();
+        start = System.nanoTime();
+        MappedStore store = new MappedStore(file);
+        long openTime = System.nanoTime() - start;
+        long openBytes = used() - before;
+
+        AttrName memory = AttrName.fromString("Memory");
+        start = System.nanoTime();
+        long direct = 0;
+        for (int row = 0; row < store.size(); row++) {
+            direct += store.intValue(row, memory, 0);
+        }
+        long scanTime = System.nanoTime() - start;
+        long total = 0;
+        for (int row = 0; row < parsed.length; row++) {
+            Expr e = parsed[row].lookup(memory);
+            if (e != null) {
+                total += ((Constant) e).intValue(0);
+            }
+        }
+        check("total Memory", String.valueOf(direct), String.valueOf(total));
+
+        System.out.println(parsed.length + " ads, " + file.length()
+            + " bytes in the store");
+        System.out.println("parsed: " + parseBytes / 1024 + " KB heap, "
+            + parseTime / 1000000 + " ms");
+        System.out.println("opened: " + openBytes / 1024 + " KB heap, "
+            + openTime / 1000000 + " ms");
+        System.out.println("Memory of every ad read from the store: "
+            + scanTime / 1000 + " us");
+    } // measure(File)
+
+    /** Compare a result with its expected value.
+     * @param what a description of the check.
+     * @param actual the result.
+     * @param expected the expected result.
+     */
+    private void check(String what, String actual, String expected) {
+        if (!actual.equals(expected)) {
+            failures++;
+            if (failures <= 20) {
+                System.out.println(what + ": expected " + expected
+                    + ", got " + actual);
+            }
+        }
+    } // check(String,String,String)
+
+    /** Estimate the amount of heap in use by reachable objects.
+     * @return the number of bytes in use after garbage collection.
+     */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // used()
+} // MappedStoreTest
@@ -0,0 +1,228 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/** Main program to measure the speed of matchmaking.
+ * It generates a synthetic pool of machine ads and a queue of job ads (see
+ * {@link SyntheticPool}) and times {@link ClassAd#match(Expr,Expr)} on
+ * every (job, machine) pair.
+ * The pool is generated from a fixed seed, so the results are repeatable.
+ * <p>
+ * The configurations compared are evaluation with and without
+ * short-circuiting of &amp;&amp; and || (see {@link Op#shortCircuit}), and
+ * with memoization of attribute values (see {@link EvalCache}).  In the
+ * "batch" configurations, each job's Requirements are first evaluated
+ * against all the machines at once with a {@link BatchEvaluator}, in the
+ * calling thread or in parallel, and only the machines that satisfy them
+ * are matched.
+ * Each configuration is timed separately, and the number of
+ * successful matches is reported for each.  The exit status is non-zero if
+ * the configurations disagree on the number of matches.
+ */
+public class MatchBench {
+    /** Number of machine ads. */
+    private int machines = 1000;
+
+    /** Number of job ads. */
+    private int jobs = 100;
+
+    /** Number of timed rounds (each round matches every pair). */
+    private int rounds = 5;
+
+    /** If true, find candidate machines for each job with a BatchEvaluator
+     * before matching.
+     */
+    private boolean batch = false;
+
+    /** The threads used by the BatchEvaluator, or null. */
+    private ForkJoinPool threads = null;
+
+    /** Generator of the ads. */
+    private SyntheticPool pool = new SyntheticPool(42);
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-m<em>nn</em><dd>Generate <em>nn</em> machine ads.
+     * <dt>-j<em>nn</em><dd>Generate <em>nn</em> job ads.
+     * <dt>-r<em>nn</em><dd>Time <em>nn</em> rounds of matching.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new MatchBench().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-m machines] [-j jobs] [-r rounds]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all configurations agree).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "m:j:r:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'm':
+                machines = Integer.parseInt(opts.optarg);
+                break;
+            case 'j':
+                jobs = Integer.parseInt(opts.optarg);
+                break;
+            case 'r':
+                rounds = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        RecordExpr[] machineAds = new RecordExpr[machines];
+        for (int i = 0; i < machines; i++) {
+            machineAds[i] = parse(pool.machine(i));
+        }
+        RecordExpr[] jobAds = new RecordExpr[jobs];
+        for (int i = 0; i < jobs; i++) {
+            jobAds[i] = parse(pool.job(i));
+        }
+        System.out.println(machines + " machines, " + jobs + " jobs, "
+            + rounds + " rounds");
+
+        Op.shortCircuit = true;
+        int shortMatches = time("short-circuit", jobAds, machineAds);
+        Op.shortCircuit = false;
+        int fullMatches = time("full", jobAds, machineAds);
+        Op.shortCircuit = true;
+
+        batch = true;
+        int batchMatches = time("batch", jobAds, machineAds);
+        threads = ForkJoinPool.commonPool();
+        int parallelMatches = time("parallel batch", jobAds, machineAds);
+        batch = false;
+        threads = null;
+
+        EvalCache[] caches = new EvalCache[jobs + machines];
+        for (int i = 0; i < jobs; i++) {
+            jobAds[i].setEvalCache(caches[i] = new EvalCache());
+        }
+        for (int i = 0; i < machines; i++) {
+            machineAds[i].setEvalCache(caches[jobs + i] = new EvalCache());
+        }
+        int memoMatches = time("memoized", jobAds, machineAds);
+        long hits = 0;
+        long misses = 0;
+        for (int i = 0; i < caches.length; i++) {
+            hits += caches[i].getHits();
+            misses += caches[i].getMisses();
+        }
+        System.out.println("memoized: " + hits + " hits, " + misses
+            + " misses");
+
+        if (shortMatches != fullMatches || shortMatches != memoMatches
+            || shortMatches != batchMatches || shortMatches != parallelMatches)
+        {
+            System.out.println("configurations disagree");
+            return 1;
+        }
+        return 0;
+    } // run(String[])
+
+    /** Parse an ad.
+     * @param s the text of the ad.
+     * @return the ad.
+     */
+    private static RecordExpr parse(String s) {
+        return (RecordExpr) new ClassAdParser(s).parse();
+    } // parse(String)
+
+    /** Time matching every job against every machine and print the results.
+     * One untimed round is run first, to warm up the JVM.
+     * @param what a description of the configuration being timed.
+     * @param jobAds the jobs.
+     * @param machineAds the machines.
+     * @return the number of successful matches in one round.
+     */
+    private int time(String what, RecordExpr[] jobAds, RecordExpr[] machineAds)
+    {
+        int matches = matchAll(jobAds, machineAds);
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            matchAll(jobAds, machineAds);
+        }
+        long elapsed = System.nanoTime() - start;
+        long pairs = (long) rounds * jobAds.length * machineAds.length;
+        System.out.println(what + ": " + matches + " matches, "
+            + (pairs == 0 ? 0 : elapsed / pairs) + " ns/match");
+        return matches;
+    } // time(String,RecordExpr[],RecordExpr[])
+
+    /** Match every job against every machine.
+     * @param jobAds the jobs.
+     * @param machineAds the machines.
+     * @return the number of successful matches.
+     */
+    private int matchAll(RecordExpr[] jobAds, RecordExpr[] machineAds) {
+        if (batch) {
+            return matchBatch(jobAds, machineAds);
+        }
+        int matches = 0;
+        for (int j = 0; j < jobAds.length; j++) {
+            for (int m = 0; m < machineAds.length; m++) {
+                if (ClassAd.match(jobAds[j], machineAds[m]) != null) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    } // matchAll(RecordExpr[],RecordExpr[])
+
+    /** Match every job against every machine, using a BatchEvaluator to find
+     * the machines that satisfy each job's Requirements.
+     * @param jobAds the jobs.
+     * @param machineAds the machines.
+     * @return the number of successful matches.
+     */
+    private int matchBatch(RecordExpr[] jobAds, RecordExpr[] machineAds) {
+        int matches = 0;
+        for (int j = 0; j < jobAds.length; j++) {
+            BatchEvaluator b = new BatchEvaluator("Requirements",
+                                    jobAds[j].lookup("Requirements"));
+            b.setContext(jobAds[j]);
+            b.setPool(threads);
+            BitSet candidates = b.isTrue(machineAds);
+            for (int m = candidates.nextSetBit(0); m >= 0;
+                    m = candidates.nextSetBit(m + 1))
+            {
+                if (ClassAd.match(jobAds[j], machineAds[m]) != null) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    } // matchBatch(RecordExpr[],RecordExpr[])
+} // MatchBench
@@ -0,0 +1,256 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+
+/** Main program to check and time membership tests on indexed lists (see
+ * {@link ListExpr#minIndexSize}).
+ * It builds random lists of integers, reals, and strings (with some
+ * elements that prevent indexing) and checks that member(),
+ * identicalMember(), and anycompare("==", ...) give the same result for
+ * a variety of values whether or not the lists are indexed.  It checks
+ * that adding to a list discards its index, and then times member() on a
+ * long list of user names with and without an index.
+ * The exit status is non-zero if any check fails.
+ */
+public class MemberTest {
+    /** Number of random lists checked. */
+    private int lists = 2000;
+
+    /** Number of elements of the timed list. */
+    private int size = 5000;
+
+    /** Number of timed calls. */
+    private int reps = 10000;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Values from which list elements and the values looked for are
+     * chosen.
+     */
+    private static final String[] VALUES = {
+        "0", "1", "-1", "7", "2147483647", "0.0", "-0.0", "1.0", "7.5",
+        "real(\"NaN\")", "real(\"INF\")", "\"abc\"", "\"ABC\"", "\"aBc \"",
+        "\"1\"", "\"\"", "\"stra\u00dfe\"", "\"STRA\u00dfE\"", "\"i\"",
+        "\"I\"", "\"\u0130\"", "\"\u0131\"",
+    };
+
+    /** Values that prevent a list from being indexed. */
+    private static final String[] UNINDEXABLE = {
+        "true", "undefined", "error", "x", "{ 1 }", "absTime(0)",
+    };
+
+    /** Values looked for that are never list elements. */
+    private static final String[] OTHERS = {
+        "false", "undefined", "error", "absTime(0)", "relTime(1)",
+    };
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-l<em>nn</em><dd>Check <em>nn</em> random lists.
+     * <dt>-s<em>nn</em><dd>Time a list of <em>nn</em> elements.
+     * <dt>-n<em>nn</em><dd>Time <em>nn</em> calls of each form.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new MemberTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-l lists] [-s size] [-n reps]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "l:s:n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'l':
+                lists = Integer.parseInt(opts.optarg);
+                break;
+            case 's':
+                size = Integer.parseInt(opts.optarg);
+                break;
+            case 'n':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        int minIndexSize = ListExpr.minIndexSize;
+        try {
+            checkLists();
+            checkAdd();
+            time();
+        } finally {
+            ListExpr.minIndexSize = minIndexSize;
+        }
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Check membership tests on random lists with and without indexing. */
+    private void checkLists() {
+        Random random = new Random(42);
+        Expr[] values = parse(VALUES);
+        Expr[] unindexable = parse(UNINDEXABLE);
+        Expr[] others = parse(OTHERS);
+        for (int n = 0; n < lists; n++) {
+            ListExpr l = new ListExpr();
+            int len = random.nextInt(n % 10 == 0 ? 200 : 20);
+            for (int i = 0; i < len; i++) {
+                l.add(values[random.nextInt(values.length)]);
+            }
+            if (len > 0 && random.nextInt(8) == 0) {
+                l.add(unindexable[random.nextInt(unindexable.length)]);
+            }
+            for (int i = 0; i < values.length; i++) {
+                check(l, values[i]);
+            }
+            for (int i = 0; i < others.length; i++) {
+                check(l, others[i]);
+            }
+        }
+    } // checkLists()
+
+    /** Check that a value is found in a list whether or not the list is
+     * indexed.
+     * @param l the list.
+     * @param v the value to look for.
+     */
+    private void check(ListExpr l, Expr v) {
+        Expr op = ClassAd.constant("==");
+        ListExpr.minIndexSize = Integer.MAX_VALUE;
+        String[] expected = {
+            Builtin.member(new Env(), v, l).toString(),
+            Builtin.identicalMember(new Env(), v, l).toString(),
+            Builtin.anycompare(new Env(), op, l, v).toString(),
+        };
+        ListExpr.minIndexSize = 0;
+        String[] actual = {
+            Builtin.member(new Env(), v, l).toString(),
+            Builtin.identicalMember(new Env(), v, l).toString(),
+            Builtin.anycompare(new Env(), op, l, v).toString(),
+        };
+        String[] funcs = { "member", "identicalMember", "anycompare" };
+        for (int i = 0; i < funcs.length; i++) {
+            if (!actual[i].equals(expected[i])) {
+                failures++;
+                System.out.println(funcs[i] + "(" + v + ", " + l + ") => "
+                    + actual[i] + ", expected " + expected[i]);
+            }
+        }
+    } // check(ListExpr,Expr)
+
+    /** Check that adding to a list discards its index. */
+    private void checkAdd() {
+        ListExpr.minIndexSize = 0;
+        ListExpr l = new ListExpr();
+        for (int i = 0; i < 100; i++) {
+            l.add(ClassAd.constant("user" + i));
+        }
+        Expr v = ClassAd.constant("USER100");
+        if (Builtin.member(new Env(), v, l).isTrue()) {
+            failures++;
+            System.out.println("found " + v + " before adding it");
+        }
+        l.add(ClassAd.constant("user100"));
+        if (!Builtin.member(new Env(), v, l).isTrue()) {
+            failures++;
+            System.out.println("did not find " + v + " after adding it");
+        }
+        l.add(new AttrRef("x"));
+        if (Builtin.identicalMember(new Env(), v, l).isTrue()) {
+            failures++;
+            System.out.println("found " + v + " with identicalMember");
+        }
+    } // checkAdd()
+
+    /** Time member() on a long list of user names with and without an
+     * index.
+     */
+    private void time() {
+        ListExpr l = new ListExpr();
+        for (int i = 0; i < size; i++) {
+            l.add(ClassAd.constant("user" + i + "@cs.wisc.edu"));
+        }
+        Expr hit = ClassAd.constant("user" + (size - 1) + "@cs.wisc.edu");
+        Expr miss = ClassAd.constant("nobody@cs.wisc.edu");
+        for (int round = 0; round < 2; round++) {
+            ListExpr.minIndexSize = Integer.MAX_VALUE;
+            long linear = time(l, hit, miss);
+            ListExpr.minIndexSize = 0;
+            long indexed = time(l, hit, miss);
+            if (round == 1) {
+                System.out.println(size + " elements");
+                System.out.println("linear:  " + linear + " ns/call");
+                System.out.println("indexed: " + indexed + " ns/call");
+            }
+        }
+    } // time()
+
+    /** Time repeated calls of member(), alternately with a value in the
+     * list and a value not in the list.
+     * @param l the list.
+     * @param hit a value in the list.
+     * @param miss a value not in the list.
+     * @return the time per call in nanoseconds.
+     */
+    private long time(ListExpr l, Expr hit, Expr miss) {
+        Env env = new Env();
+        long start = System.nanoTime();
+        for (int i = 0; i < reps; i++) {
+            boolean in = (i & 1) == 0;
+            if (Builtin.member(env, in ? hit : miss, l).isTrue() != in) {
+                failures++;
+            }
+        }
+        return reps == 0 ? 0 : (System.nanoTime() - start) / reps;
+    } // time(ListExpr,Expr,Expr)
+
+    /** Parse and evaluate an array of expressions.
+     * @param s the expressions.
+     * @return their values.
+     */
+    private static Expr[] parse(String[] s) {
+        Expr[] result = new Expr[s.length];
+        for (int i = 0; i < s.length; i++) {
+            Expr e = new ClassAdParser(s[i]).parse();
+            result[i] = e.type == Expr.ATTRIBUTE ? e : e.eval();
+        }
+        return result;
+    } // parse(String[])
+} // MemberTest
@@ -0,0 +1,237 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+
+/** Main program to measure the memory needed to hold a collection of ads.
+ * It parses a synthetic pool of machine ads (see {@link SyntheticPool}),
+ * padded with extra attributes to a given size,
+ * twice, once normally and once with hash-consing (see
+ * {@link ClassAdParser#setHashConsing(boolean)}), and reports the amount of
+ * heap retained by each copy.  It also checks that the two copies print
+ * identically.  The exit status is non-zero if they do not.
+ * <p>
+ * It then measures the space taken by the attribute maps alone, by copying
+ * the names and values of each ad into a new RecordExpr and into a HashMap
+ * plus a LinkedList of names (the representation RecordExpr used before it
+ * kept its names in a shared Shape).  The values themselves are shared
+ * with the original ads, so they are not counted.
+ * <p>
+ * The measurements are only approximate, since they depend on the garbage
+ * collector actually reclaiming all unreachable objects when asked.
+ */
+public class MemoryBench {
+    /** Number of ads. */
+    private int count = 100000;
+
+    /** Number of attributes per ad. */
+    private int attrs = 80;
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-n<em>nn</em><dd>Generate <em>nn</em> ads.
+     * <dt>-a<em>nn</em><dd>Pad each ad to <em>nn</em> attributes.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new MemoryBench().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-n ads] [-a attrs]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if the two copies agree).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "n:a:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'n':
+                count = Integer.parseInt(opts.optarg);
+                break;
+            case 'a':
+                attrs = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        long before = used();
+        RecordExpr[] plain = load(false);
+        long plainBytes = used() - before;
+        report("plain", plainBytes, plainBytes);
+
+        before = used();
+        RecordExpr[] consed = load(true);
+        long consedBytes = used() - before;
+        report("hash-consed", consedBytes, plainBytes);
+
+        for (int i = 0; i < count; i++) {
+            if (!plain[i].toString().equals(consed[i].toString())) {
+                System.out.println("ad " + i + " differs:");
+                System.out.println("  plain:       " + plain[i]);
+                System.out.println("  hash-consed: " + consed[i]);
+                return 1;
+            }
+        }
+        consed = null;
+
+        long n = 0;
+        for (int i = 0; i < count; i++) {
+            n += plain[i].size();
+        }
+        before = used();
+        Object[] maps = copyToRecords(plain);
+        long recordBytes = used() - before;
+        maps = null;
+        before = used();
+        maps = copyToHashMaps(plain);
+        long hashBytes = used() - before;
+        maps = null;
+        System.out.println("attribute maps: " + count + " ads, " + n
+            + " attributes");
+        System.out.println("  RecordExpr:         " + recordBytes / n
+            + " bytes/attribute");
+        System.out.println("  HashMap+LinkedList: " + hashBytes / n
+            + " bytes/attribute");
+        return 0;
+    } // run(String[])
+
+    /** Copy the attributes of each of a set of ads into a new RecordExpr.
+     * @param ads the ads.
+     * @return the copies.
+     */
+    private static Object[] copyToRecords(RecordExpr[] ads) {
+        Object[] result = new Object[ads.length];
+        for (int i = 0; i < ads.length; i++) {
+            RecordExpr r = new RecordExpr();
+            for (Iterator it = ads[i].attributes(); it.hasNext(); ) {
+                AttrName a = (AttrName) it.next();
+                r.insertAttribute(a, ads[i].lookup(a));
+            }
+            result[i] = r;
+        }
+        return result;
+    } // copyToRecords(RecordExpr[])
+
+    /** Copy the attributes of each of a set of ads into a HashMap from
+     * names to values and a LinkedList of names, in order of insertion.
+     * @param ads the ads.
+     * @return the copies, as pairs of a map and a list.
+     */
+    private static Object[] copyToHashMaps(RecordExpr[] ads) {
+        Object[] result = new Object[ads.length];
+        for (int i = 0; i < ads.length; i++) {
+            Map map = new HashMap();
+            List names = new LinkedList();
+            for (Iterator it = ads[i].attributes(); it.hasNext(); ) {
+                AttrName a = (AttrName) it.next();
+                map.put(a, ads[i].lookup(a));
+                names.add(a);
+            }
+            result[i] = new Object[] { map, names };
+        }
+        return result;
+    } // copyToHashMaps(RecordExpr[])
+
+    /** Parse the synthetic pool.
+     * @param hashConsing if true, turn on hash-consing in the parser.
+     * @return the ads.
+     */
+    private RecordExpr[] load(boolean hashConsing) {
+        SyntheticPool pool = new SyntheticPool(42);
+        Random random = new Random(42);
+        ClassAdParser parser = new ClassAdParser();
+        parser.setHashConsing(hashConsing);
+        RecordExpr[] ads = new RecordExpr[count];
+        for (int i = 0; i < count; i++) {
+            parser.reset(pad(pool.machine(i), random));
+            ads[i] = (RecordExpr) parser.parse();
+        }
+        return ads;
+    } // load(boolean)
+
+    /** Pad the text of an ad with extra attributes.  The values alternate
+     * among integers, reals, strings, and booleans, chosen at random.
+     * @param ad the text of an ad with fewer than attrs attributes.
+     * @param random a source of values.
+     * @return the text of an ad with attrs attributes.
+     */
+    private String pad(String ad, Random random) {
+        StringBuffer sb = new StringBuffer(ad);
+        sb.setLength(ad.lastIndexOf(']'));
+        for (int i = SyntheticPool.MACHINE_ATTRS; i < attrs; i++) {
+            sb.append("; Extra").append(i).append(" = ");
+            switch (i % 4) {
+            case 0:
+                sb.append(random.nextInt(100000));
+                break;
+            case 1:
+                sb.append(random.nextInt(1000) / 10.0);
+                break;
+            case 2:
+                sb.append("\"value").append(random.nextInt(100))
+                    .append('"');
+                break;
+            default:
+                sb.append(random.nextBoolean());
+                break;
+            }
+        }
+        return sb.append(" ]").toString();
+    } // pad(String,Random)
+
+    /** Print the memory used by one copy of the pool.
+     * @param what a description of the copy.
+     * @param bytes the number of bytes it occupies.
+     * @param plainBytes the number of bytes occupied by the plain copy.
+     */
+    private void report(String what, long bytes, long plainBytes) {
+        System.out.println(what + ": " + count + " ads, "
+            + bytes / (1024 * 1024) + " MB, " + bytes / count + " bytes/ad ("
+            + Math.round(100.0 * bytes / plainBytes) + "%)");
+    } // report(String,long,long)
+
+    /** Estimate the amount of heap in use by reachable objects.
+     * @return the number of bytes in use after garbage collection.
+     */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // used()
+} // MemoryBench
@@ -0,0 +1,309 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+
+/** Main program to check and time the evaluation of binary operators on
+ * constants.
+ * It applies every arithmetic, bitwise, shift, and comparison operator to
+ * pairs of integers and pairs of reals, including the edge cases (zero
+ * divisors, overflow, NaN, and infinities), and compares the results with
+ * those of the same operations in Java.  It checks the non-throwing
+ * accessors of {@link Constant} and the ERROR values produced by operands
+ * of the wrong type, and then times comparisons of operands of the same and
+ * of different types.
+ * The exit status is non-zero if any check fails.
+ */
+public class OpTest {
+    /** Number of timed evaluations. */
+    private int reps = 1000000;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** The operators applied to pairs of integers. */
+    private static final int[] INT_OPS = {
+        Expr.PLUS, Expr.MINUS, Expr.TIMES, Expr.DIV, Expr.MOD,
+        Expr.BITOR, Expr.BITXOR, Expr.BITAND,
+        Expr.LEFT_SHIFT, Expr.RIGHT_SHIFT, Expr.URIGHT_SHIFT,
+        Expr.EQUAL, Expr.NOT_EQUAL, Expr.LESS, Expr.GREATER,
+        Expr.LESS_EQ, Expr.GREATER_EQ,
+    };
+
+    /** The operators applied to pairs of reals. */
+    private static final int[] REAL_OPS = {
+        Expr.PLUS, Expr.MINUS, Expr.TIMES, Expr.DIV, Expr.MOD,
+        Expr.EQUAL, Expr.NOT_EQUAL, Expr.LESS, Expr.GREATER,
+        Expr.LESS_EQ, Expr.GREATER_EQ,
+    };
+
+    /** Integer operands. */
+    private static final int[] INTS = {
+        0, 1, -1, 7, -7, 31, 33, 1023, 1024, Integer.MAX_VALUE,
+        Integer.MIN_VALUE,
+    };
+
+    /** Real operands. */
+    private static final double[] REALS = {
+        0.0, -0.0, 1.0, -2.5, 3.75, 1e300, Double.NaN,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+    };
+
+    /** Expressions whose operands have the wrong types, and the messages of
+     * their values.
+     */
+    private static final String[][] MISMATCHES = {
+        { "\"3\" + 1", "string \"3\" in real context" },
+        { "1 < \"3\"", "string \"3\" in real context" },
+        { "\"a\" < 1", "integer 1 in string context" },
+        { "1 << 2.0", "real 2.000000000000000E+00 in integer context" },
+        { "1 | true", "boolean true in integer context" },
+        { "true < false", "attempt to compare boolean < boolean" },
+        { "relTime(1) + 1", "integer 1 in integer context" },
+        { "7 / 0", "/ by zero" },
+        { "7 % 0", "/ by zero" },
+    };
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-n<em>nn</em><dd>Time <em>nn</em> evaluations of each form.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new OpTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-n reps]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'n':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        checkInts();
+        checkReals();
+        checkAccessors();
+        checkMismatches();
+        time();
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Check every integer operator on every pair of integer operands. */
+    private void checkInts() {
+        for (int i = 0; i < INTS.length; i++) {
+            for (int j = 0; j < INTS.length; j++) {
+                for (int k = 0; k < INT_OPS.length; k++) {
+                    int a = INTS[i], b = INTS[j], op = INT_OPS[k];
+                    check(new Op(op, Constant.getInstance(a),
+                                     Constant.getInstance(b)),
+                          expected(op, a, b));
+                }
+            }
+        }
+    } // checkInts()
+
+    /** Check every real operator on every pair of real operands. */
+    private void checkReals() {
+        for (int i = 0; i < REALS.length; i++) {
+            for (int j = 0; j < REALS.length; j++) {
+                for (int k = 0; k < REAL_OPS.length; k++) {
+                    double a = REALS[i], b = REALS[j];
+                    int op = REAL_OPS[k];
+                    check(new Op(op, Constant.getInstance(a),
+                                     Constant.getInstance(b)),
+                          expected(op, a, b));
+                }
+            }
+        }
+    } // checkReals()
+
+    /** Compute the expected value of an operator applied to integers.
+     * @param op the operator.
+     * @param a the first operand.
+     * @param b the second operand.
+     * @return the expected value.
+     */
+    private static Constant expected(int op, int a, int b) {
+        if ((op == Expr.DIV || op == Expr.MOD) && b == 0) {
+            return Constant.error("/ by zero");
+        }
+        switch (op) {
+        case Expr.PLUS: return Constant.getInstance(a + b);
+        case Expr.MINUS: return Constant.getInstance(a - b);
+        case Expr.TIMES: return Constant.getInstance(a * b);
+        case Expr.DIV: return Constant.getInstance(a / b);
+        case Expr.MOD: return Constant.getInstance(a % b);
+        case Expr.BITOR: return Constant.getInstance(a | b);
+        case Expr.BITXOR: return Constant.getInstance(a ^ b);
+        case Expr.BITAND: return Constant.getInstance(a & b);
+        case Expr.LEFT_SHIFT: return Constant.getInstance(a << b);
+        case Expr.RIGHT_SHIFT: return Constant.getInstance(a >> b);
+        case Expr.URIGHT_SHIFT: return Constant.getInstance(a >>> b);
+        case Expr.EQUAL: return Constant.bool(a == b);
+        case Expr.NOT_EQUAL: return Constant.bool(a != b);
+        case Expr.LESS: return Constant.bool(a < b);
+        case Expr.GREATER: return Constant.bool(a > b);
+        case Expr.LESS_EQ: return Constant.bool(a <= b);
+        case Expr.GREATER_EQ: return Constant.bool(a >= b);
+        default: throw new IllegalArgumentException("op " + op);
+        }
+    } // expected(int,int,int)
+
+    /** Compute the expected value of an operator applied to reals.
+     * Note that NaN compares greater than any value, including itself,
+     * and not equal to any value.
+     * @param op the operator.
+     * @param a the first operand.
+     * @param b the second operand.
+     * @return the expected value.
+     */
+    private static Constant expected(int op, double a, double b) {
+        boolean greater = !(a < b) && !(a == b);
+        switch (op) {
+        case Expr.PLUS: return Constant.getInstance(a + b);
+        case Expr.MINUS: return Constant.getInstance(a - b);
+        case Expr.TIMES: return Constant.getInstance(a * b);
+        case Expr.DIV: return Constant.getInstance(a / b);
+        case Expr.MOD: return Constant.getInstance(a % b);
+        case Expr.EQUAL: return Constant.bool(a == b);
+        case Expr.NOT_EQUAL: return Constant.bool(a != b);
+        case Expr.LESS: return Constant.bool(a < b);
+        case Expr.GREATER: return Constant.bool(greater);
+        case Expr.LESS_EQ: return Constant.bool(!greater);
+        case Expr.GREATER_EQ: return Constant.bool(a == b || greater);
+        default: throw new IllegalArgumentException("op " + op);
+        }
+    } // expected(int,double,double)
+
+    /** Check the value of an expression.
+     * @param e the expression.
+     * @param expected its expected value.
+     */
+    private void check(Expr e, Constant expected) {
+        // Compare printed forms, since NaN is not equal to itself.
+        Expr value = e.eval();
+        boolean ok = value.type == expected.type
+            && value.toString().equals(expected.toString());
+        if (ok && value.type == Expr.ERROR) {
+            ok = ((Constant) value).annotation()
+                    .equals(expected.annotation());
+        }
+        if (!ok) {
+            failures++;
+            System.out.println(e + ": expected " + expected + ", got "
+                + value);
+        }
+    } // check(Expr,Constant)
+
+    /** Check the accessors that do not throw exceptions. */
+    private void checkAccessors() {
+        Constant i = Constant.getInstance(7);
+        Constant r = Constant.getInstance(2.5);
+        Constant s = Constant.getInstance("abc");
+        Constant t = Constant.getInstance(60000L);
+        Constant[] all = { i, r, s, t, Constant.TRUE, Constant.Undef };
+        for (int k = 0; k < all.length; k++) {
+            Constant c = all[k];
+            checkAccessor(c + ".intValue", c.intValue(-1),
+                c == i ? 7 : -1);
+            checkAccessor(c + ".realValue", c.realValue(-1),
+                c == i ? 7.0 : c == r ? 2.5 : -1);
+            checkAccessor(c + ".stringValue", c.stringValue(null),
+                c == s ? "abc" : null);
+            checkAccessor(c + ".milliseconds", c.milliseconds(-1),
+                c == t ? 60000L : -1);
+            checkAccessor(c + ".isNumber", c.isNumber(), c == i || c == r);
+        }
+    } // checkAccessors()
+
+    /** Compare the result of an accessor with its expected value.
+     * @param what a description of the check.
+     * @param actual the result.
+     * @param expected the expected result.
+     */
+    private void checkAccessor(String what, Object actual, Object expected) {
+        if (actual == null ? expected != null : !actual.equals(expected)) {
+            failures++;
+            System.out.println(what + ": expected " + expected + ", got "
+                + actual);
+        }
+    } // checkAccessor(String,Object,Object)
+
+    /** Check the messages of the values of expressions whose operands have
+     * the wrong types.
+     */
+    private void checkMismatches() {
+        for (int i = 0; i < MISMATCHES.length; i++) {
+            Expr e = new ClassAdParser(MISMATCHES[i][0]).parse();
+            check(e, Constant.error(MISMATCHES[i][1]));
+        }
+    } // checkMismatches()
+
+    /** Time comparisons of an integer with an integer, a real with a real,
+     * and a string with an integer.
+     */
+    private void time() {
+        Expr[] exprs = {
+            new Op(Expr.LESS, Constant.getInstance(2000),
+                              Constant.getInstance(1024)),
+            new Op(Expr.LESS, Constant.getInstance(2000.5),
+                              Constant.getInstance(1024.5)),
+            new Op(Expr.LESS, Constant.getInstance("2000"),
+                              Constant.getInstance(1024)),
+        };
+        String[] names = { "integers:  ", "reals:     ", "mismatched:" };
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < exprs.length; i++) {
+                long start = System.nanoTime();
+                for (int n = 0; n < reps; n++) {
+                    exprs[i].eval();
+                }
+                long elapsed = System.nanoTime() - start;
+                if (round == 1) {
+                    System.out.println(names[i] + " "
+                        + (reps == 0 ? 0 : elapsed / reps) + " ns/eval");
+                }
+            }
+        }
+    } // time()
+} // OpTest
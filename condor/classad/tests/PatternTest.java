@@ -0,0 +1,251 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+
+/** Main program to check and time the compiled-pattern cache used by
+ * regexp() and regexpMember() (see {@link PatternCache}).
+ * It checks that calls whose pattern is a constant (which are compiled
+ * when the call is created) give the same results as the same calls with
+ * the pattern supplied by an attribute (which use the cache), including
+ * invalid patterns and arguments of the wrong type.  It then evaluates
+ * calls with more distinct patterns than the cache holds from several
+ * threads at once, checking every result and the cache statistics.
+ * Finally, it times a call with a constant pattern, with a pattern from an
+ * attribute, and with caching turned off.
+ * The exit status is non-zero if any check fails.
+ */
+public class PatternTest {
+    /** Number of threads. */
+    private int threads = 4;
+
+    /** Number of timed evaluations. */
+    private int reps = 200000;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Patterns, options and subjects checked. */
+    private static final String[][] CASES = {
+        { "\"^vm[12]@\"", "\"vm1@host3\"" },
+        { "\"^vm[12]@\"", "\"vm3@host3\"" },
+        { "\"CASE\"", "\"case\"", "\"i\"" },
+        { "\"t.c\"", "\"start\\ncontinue\"", "\"s\"" },
+        { "\"(\"", "\"abc\"" },
+        { "\"abc\"", "17" },
+        { "\"abc\"", "undefined" },
+        { "\"abc\"", "error" },
+        { "\"abc\"", "undefined", "\"i\"" },
+        { "\"b\"", "{ \"abc\", \"xyz\" }" },
+        { "\"q\"", "{ \"abc\", \"xyz\" }" },
+        { "\"b\"", "{ \"abc\", 7 }" },
+        { "\"b\"", "\"abc\"" },
+        { "\"[\"", "{ \"abc\" }" },
+    };
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-t<em>nn</em><dd>Use <em>nn</em> threads.
+     * <dt>-n<em>nn</em><dd>Time <em>nn</em> evaluations of each form.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new PatternTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-t threads] [-n reps]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "t:n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 't':
+                threads = Integer.parseInt(opts.optarg);
+                break;
+            case 'n':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        checkConstant();
+        checkConcurrent();
+        time();
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Check calls with constant patterns against the same calls with the
+     * patterns taken from an attribute.
+     */
+    private void checkConstant() {
+        for (int i = 0; i < CASES.length; i++) {
+            String[] c = CASES[i];
+            String rest = c[1] + (c.length > 2 ? ", " + c[2] : "");
+            String func = c[1].startsWith("{") ? "regexpMember" : "regexp";
+            String constant = func + "(" + c[0] + ", " + rest + ")";
+            String variable = "[ p = " + c[0] + "; value = " + func + "(p, "
+                + rest + ") ]";
+            Expr e1 = new ClassAdParser(constant).parse();
+            Expr e2 = ((RecordExpr) new ClassAdParser(variable).parse())
+                        .selectExpr("value");
+            String v1 = show(e1.eval());
+            String v2 = show(e2.eval());
+            if (!v1.equals(v2)) {
+                failures++;
+                System.out.println(constant + " => " + v1 + ", but "
+                    + variable + " => " + v2);
+            }
+        }
+    } // checkConstant()
+
+    /** Evaluate calls with many distinct patterns from several threads at
+     * once and check the results and the cache statistics.
+     */
+    private void checkConcurrent() {
+        final int patterns = 2 * PatternCache.getCapacity();
+        final int calls = 20000;
+        PatternCache.clear();
+        PatternCache.resetCounts();
+        final int[] wrong = new int[threads];
+        Thread[] t = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            t[i] = new Thread() {
+                public void run() {
+                    Random random = new Random(id);
+                    RecordExpr ad = new RecordExpr();
+                    Expr call = new ClassAdParser("regexp(p, s)").parse();
+                    for (int j = 0; j < calls; j++) {
+                        // Mostly a few popular patterns, sometimes others.
+                        int k = random.nextInt(10) < 8
+                            ? random.nextInt(4)
+                            : random.nextInt(patterns);
+                        int n = random.nextInt(patterns);
+                        ad.insertAttribute("p",
+                                ClassAd.constant("^x" + k + "$"));
+                        ad.insertAttribute("s", ClassAd.constant("x" + n));
+                        Expr v = ClassAd.eval("value", call, ad);
+                        if (v.isTrue() != (k == n)) {
+                            wrong[id]++;
+                        }
+                    }
+                }
+            };
+            t[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            try {
+                t[i].join();
+            } catch (InterruptedException e) {
+                failures++;
+            }
+        }
+        for (int i = 0; i < threads; i++) {
+            failures += wrong[i];
+        }
+        long hits = PatternCache.getHits();
+        long misses = PatternCache.getMisses();
+        System.out.println(threads + " threads: " + hits + " hits, " + misses
+            + " misses, " + PatternCache.getEvictions() + " evictions, "
+            + PatternCache.size() + " patterns cached");
+        if (hits + misses != (long) threads * calls) {
+            failures++;
+            System.out.println("expected " + threads * calls + " lookups");
+        }
+        if (PatternCache.size() > PatternCache.getCapacity()) {
+            failures++;
+            System.out.println("cache holds too many patterns");
+        }
+    } // checkConcurrent()
+
+    /** Time regexp() with a constant pattern, with the pattern taken from an
+     * attribute, and with the pattern taken from an attribute and caching
+     * turned off.
+     */
+    private void time() {
+        RecordExpr ad = (RecordExpr) new ClassAdParser(
+            "[ p = \"^vm[12]@host[0-9]*[02468]\\\\.\";"
+            + " Name = \"vm1@host42.cs.wisc.edu\";"
+            + " constant = regexp(\"^vm[12]@host[0-9]*[02468]\\\\.\", Name);"
+            + " variable = regexp(p, Name) ]").parse();
+        Expr constant = ad.selectExpr("constant");
+        Expr variable = ad.selectExpr("variable");
+        int capacity = PatternCache.getCapacity();
+        for (int round = 0; round < 2; round++) {
+            long c = time(constant);
+            long v = time(variable);
+            PatternCache.setCapacity(0);
+            long u = time(variable);
+            PatternCache.setCapacity(capacity);
+            if (round == 1) {
+                System.out.println("constant pattern: " + c + " ns/call");
+                System.out.println("cached pattern:   " + v + " ns/call");
+                System.out.println("uncached pattern: " + u + " ns/call");
+            }
+        }
+    } // time()
+
+    /** Time repeated evaluations of an expression.
+     * @param e the expression, which must evaluate to <b>true</b>.
+     * @return the time per evaluation in nanoseconds.
+     */
+    private long time(Expr e) {
+        long start = System.nanoTime();
+        for (int i = 0; i < reps; i++) {
+            if (!e.eval().isTrue()) {
+                failures++;
+            }
+        }
+        return reps == 0 ? 0 : (System.nanoTime() - start) / reps;
+    } // time(Expr)
+
+    /** Convert a value to a string, including the details of any error or
+     * undefined values.
+     * @param value the value.
+     * @return its string representation.
+     */
+    private static String show(Expr value) {
+        java.io.StringWriter sw = new java.io.StringWriter();
+        ClassAdWriter w = new ClassAdWriter(sw);
+        w.setFormatFlags(ClassAdWriter.SHOW_ERROR_DETAIL);
+        w.print(value);
+        w.flush();
+        return sw.toString();
+    } // show(Expr)
+} // PatternTest
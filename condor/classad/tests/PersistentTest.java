@@ -0,0 +1,327 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.io.StringWriter;
+import java.util.*;
+
+/** Main program to check and measure persistent records (see
+ * {@link PersistentRecord}).
+ * It applies a random series of insertions and removals both to a
+ * RecordExpr, in place, and to a PersistentRecord, keeping every version of
+ * the latter.  After each step it checks that the two print identically
+ * (natively and in XML), have the same attributes in the same order, and
+ * give the same values when each attribute is evaluated, and at the end it
+ * checks that every earlier version is unchanged.  It checks that
+ * matchmaking gives the same results for synthetic ads (see
+ * {@link SyntheticPool}) as RecordExprs and as PersistentRecords.  Finally,
+ * it keeps many versions of a large ad, each differing from the previous
+ * one in a single attribute, and reports the memory and time per version
+ * as PersistentRecords and as copied RecordExprs.
+ * The exit status is non-zero if any check fails.
+ */
+public class PersistentTest {
+    /** Number of random insertions and removals. */
+    private int steps = 5000;
+
+    /** Number of attributes of the large ad. */
+    private int attrs = 80;
+
+    /** Number of versions of the large ad. */
+    private int versions = 10000;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-s<em>nn</em><dd>Apply <em>nn</em> random changes.
+     * <dt>-a<em>nn</em><dd>Give the large ad <em>nn</em> attributes.
+     * <dt>-v<em>nn</em><dd>Keep <em>nn</em> versions of the large ad.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new PersistentTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-s steps] [-a attrs] [-v versions]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "s:a:v:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 's':
+                steps = Integer.parseInt(opts.optarg);
+                break;
+            case 'a':
+                attrs = Integer.parseInt(opts.optarg);
+                break;
+            case 'v':
+                versions = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        checkVersions();
+        checkUnsupported();
+        checkMatch();
+        measure();
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Apply random changes to a RecordExpr and a PersistentRecord and
+     * compare them after each change.
+     */
+    private void checkVersions() {
+        Random random = new Random(42);
+        String[] names = new String[60];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Attr" + i;
+        }
+        RecordExpr rec = new RecordExpr();
+        PersistentRecord p = new PersistentRecord();
+        PersistentRecord[] saved = new PersistentRecord[steps];
+        String[] printed = new String[steps];
+        for (int step = 0; step < steps; step++) {
+            int n = random.nextInt(names.length);
+            // Attribute names are case-insensitive.
+            String name = random.nextBoolean()
+                ? names[n]
+                : names[n].toUpperCase();
+            if (random.nextInt(3) == 0) {
+                rec.removeAttribute(AttrName.fromString(name));
+                p = p.without(name);
+            } else {
+                // Values refer to other attributes, so that evaluating them
+                // exercises the slots remembered by AttrRefs, but only to
+                // earlier names, so that there are no cycles.
+                Expr value = new ClassAdParser(
+                    n == 0 || random.nextBoolean()
+                        ? String.valueOf(step)
+                        : names[random.nextInt(n)] + " + " + step
+                ).parse();
+                rec.insertAttribute(name, value);
+                p = p.with(name, value);
+            }
+            compare("step " + step, rec, p);
+            saved[step] = p;
+            printed[step] = p.toString();
+        }
+        for (int step = 0; step < steps; step++) {
+            if (!saved[step].toString().equals(printed[step])) {
+                failures++;
+                System.out.println("version " + step + " changed:  was "
+                    + printed[step] + ", now " + saved[step]);
+            }
+        }
+        compare("copy", rec, new PersistentRecord(rec));
+        compare("toRecordExpr", p.toRecordExpr(), p);
+    } // checkVersions()
+
+    /** Compare a RecordExpr with a PersistentRecord that should have the
+     * same attributes.
+     * @param what a description of the check.
+     * @param rec the RecordExpr.
+     * @param p the PersistentRecord.
+     */
+    private void compare(String what, RecordExpr rec, PersistentRecord p) {
+        check(what + " toString", p.toString(), rec.toString());
+        check(what + " native", print(p, ClassAdWriter.NATIVE, true),
+              print(rec, ClassAdWriter.NATIVE, true));
+        check(what + " XML", print(p, ClassAdWriter.XML, false),
+              print(rec, ClassAdWriter.XML, false));
+        check(what + " size", String.valueOf(p.size()),
+              String.valueOf(rec.size()));
+        check(what + " sameAs", String.valueOf(p.sameAs(rec)),
+              String.valueOf(rec.sameAs(p)));
+        Iterator i = rec.attributes();
+        Iterator j = p.attributes();
+        while (i.hasNext() && j.hasNext()) {
+            AttrName a = (AttrName) i.next();
+            check(what + " attribute", j.next().toString(), a.toString());
+            check(what + " value of " + a,
+                  new SelectExpr(p, a).eval().toString(),
+                  new SelectExpr(rec, a).eval().toString());
+        }
+        if (i.hasNext() || j.hasNext()) {
+            check(what + " attributes", String.valueOf(j.hasNext()),
+                  String.valueOf(i.hasNext()));
+        }
+    } // compare(String,RecordExpr,PersistentRecord)
+
+    /** Check that a PersistentRecord cannot be modified in place. */
+    private void checkUnsupported() {
+        PersistentRecord p = new PersistentRecord().with("a", Constant.TRUE);
+        try {
+            p.insertAttribute("b", Constant.TRUE);
+            failures++;
+            System.out.println("insertAttribute succeeded");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            p.removeAttribute(AttrName.fromString("a"));
+            failures++;
+            System.out.println("removeAttribute succeeded");
+        } catch (UnsupportedOperationException expected) {
+        }
+        check("after unsupported", p.toString(), "[a=true]");
+    } // checkUnsupported()
+
+    /** Check that matching PersistentRecords gives the same results as
+     * matching RecordExprs.
+     */
+    private void checkMatch() {
+        SyntheticPool pool = new SyntheticPool(7);
+        RecordExpr[] machines = new RecordExpr[100];
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = (RecordExpr) new ClassAdParser(pool.machine(i))
+                .parse();
+        }
+        for (int j = 0; j < 10; j++) {
+            RecordExpr job = (RecordExpr) new ClassAdParser(pool.job(j))
+                .parse();
+            PersistentRecord pjob = new PersistentRecord(job);
+            for (int i = 0; i < machines.length; i++) {
+                PersistentRecord pm = new PersistentRecord(machines[i]);
+                check("match job " + j + " machine " + i,
+                      Arrays.toString(ClassAd.match(pjob, pm)),
+                      Arrays.toString(ClassAd.match(job, machines[i])));
+            }
+        }
+    } // checkMatch()
+
+    /** Compare a result with its expected value.
+     * @param what a description of the check.
+     * @param actual the result.
+     * @param expected the expected result.
+     */
+    private void check(String what, String actual, String expected) {
+        if (!actual.equals(expected)) {
+            failures++;
+            if (failures <= 20) {
+                System.out.println(what + ": expected " + expected
+                    + ", got " + actual);
+            }
+        }
+    } // check(String,String,String)
+
+    /** Print an expression.
+     * @param e the expression.
+     * @param representation ClassAdWriter.NATIVE or ClassAdWriter.XML.
+     * @param multiLine if true, print records on several lines.
+     * @return the printed form.
+     */
+    private static String print(Expr e, int representation,
+                                boolean multiLine)
+    {
+        StringWriter sw = new StringWriter();
+        ClassAdWriter w = new ClassAdWriter(sw, representation);
+        if (multiLine) {
+            w.enableFormatFlags(ClassAdWriter.MULTI_LINE_ADS);
+        }
+        w.print(e);
+        w.flush();
+        return sw.toString();
+    } // print(Expr,int,boolean)
+
+    /** Keep many versions of a large ad, as PersistentRecords and as copied
+     * RecordExprs, and report the memory and time per version.
+     */
+    private void measure() {
+        RecordExpr base = new RecordExpr();
+        for (int i = 0; i < attrs; i++) {
+            base.insertAttribute("Attr" + i, ClassAd.constant(i));
+        }
+        Expr[] values = new Expr[versions];
+        for (int v = 0; v < versions; v++) {
+            values[v] = ClassAd.constant(1000 + v);
+        }
+
+        long before = used();
+        long start = System.nanoTime();
+        PersistentRecord[] persistent = new PersistentRecord[versions];
+        PersistentRecord p = new PersistentRecord(base);
+        for (int v = 0; v < versions; v++) {
+            p = p.with("Attr" + v % attrs, values[v]);
+            persistent[v] = p;
+        }
+        long persistentTime = System.nanoTime() - start;
+        long persistentBytes = used() - before;
+
+        before = used();
+        start = System.nanoTime();
+        RecordExpr[] copies = new RecordExpr[versions];
+        RecordExpr r = base;
+        for (int v = 0; v < versions; v++) {
+            RecordExpr c = new RecordExpr(attrs);
+            for (Iterator i = r.attributes(); i.hasNext(); ) {
+                AttrName a = (AttrName) i.next();
+                c.insertAttribute(a, r.lookup(a));
+            }
+            c.insertAttribute("Attr" + v % attrs, values[v]);
+            copies[v] = r = c;
+        }
+        long copyTime = System.nanoTime() - start;
+        long copyBytes = used() - before;
+
+        check("last version", persistent[versions - 1].toString(),
+              copies[versions - 1].toString());
+        System.out.println(versions + " versions of an ad with " + attrs
+            + " attributes");
+        System.out.println("persistent: " + persistentBytes / versions
+            + " bytes/version, " + persistentTime / versions + " ns/version");
+        System.out.println("copied:     " + copyBytes / versions
+            + " bytes/version, " + copyTime / versions + " ns/version");
+    } // measure()
+
+    /** Estimate the amount of heap in use by reachable objects.
+     * @return the number of bytes in use after garbage collection.
+     */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // used()
+} // PersistentTest
@@ -45,6 +45,13 @@ public class QueryTest {
     /** Output stream for printing results. */
     private ClassAdWriter out = new ClassAdWriter(System.out, true);
 
+    /** The name under which the "where" clause is evaluated. */
+    private static final AttrName REQUIREMENTS =
+        AttrName.fromString("Requirements");
+
+    /** The name under which the selected fields are evaluated. */
+    private static final AttrName VALUE = AttrName.fromString("$value$");
+
     /** Main program.
      * Command-line options are
      * <dl>
@@ -202,6 +209,7 @@ public class QueryTest {
                 out.println("Parsing ads");
             }
             long start = System.currentTimeMillis();
+            List ads = new ArrayList();
             for (;;) { // for each ad
                 RecordExpr ad = (RecordExpr) parser.parse();
                 if (ad == null) {
@@ -213,16 +221,21 @@ public class QueryTest {
                     out.println("Expecting semicolon, found " + lookahead);
                     break;
                 }
-                if (q.whereClause != null) {
-                    // Check whether this ad satisfies the "where" clause.
-                    // Note that this test is a redundant verification of the
-                    // collector's filtering if -s was specified.
+                ads.add(ad);
+            } // for each ad
+            if (q.whereClause != null) {
+                // Check which ads satisfy the "where" clause, all at once.
+                // Note that this test is a redundant verification of the
+                // collector's filtering if -s was specified.
+                BitSet selected
+                    = new BatchEvaluator(REQUIREMENTS, q.whereClause)
+                        .isTrue(ads);
+                for (int i = 0; i < ads.size(); i++) {
+                    RecordExpr ad = (RecordExpr) ads.get(i);
                     if (verbosity == 1) {
                         out.print(".");
                     }
-                    if (ClassAd.eval("Requirements", q.whereClause, ad)
-                            .isTrue())
-                    {
+                    if (selected.get(i)) {
                         if (verbosity > 1) {
                             Expr.db("select " + ad.toString());
                         }
@@ -232,13 +245,15 @@ public class QueryTest {
                             Expr.db("reject " + ad.toString());
                         }
                     }
-                } else {
+                }
+            } else {
+                for (int i = 0; i < ads.size(); i++) {
                     if (verbosity > 0) {
                         out.print("*");
                     }
-                    results.addElement(ad);
+                    results.addElement(ads.get(i));
                 }
-            } // for each ad
+            }
             long elapsed = System.currentTimeMillis() - start;
             int bytesRead;
             if (cflag) {
@@ -321,7 +336,7 @@ public class QueryTest {
         for (Iterator res = results.iterator(); res.hasNext();) {
             RecordExpr ad = (RecordExpr) res.next();
             for (int i = 0; i < fieldCount; i++) {
-                Expr value = ClassAd.eval("$value$", fieldExpr[i], ad);
+                Expr value = ClassAd.eval(VALUE, fieldExpr[i], ad);
                 int ty = 2;
                 switch (value.type) {
                 case Expr.INTEGER:
@@ -383,7 +398,7 @@ public class QueryTest {
                 if (i > 0) {
                     out.print(" | ");
                 }
-                Expr value = ClassAd.eval("$value$", fieldExpr[i], ad);
+                Expr value = ClassAd.eval(VALUE, fieldExpr[i], ad);
                 String s = value.toString();
                 field(s, maxLen[i], type[i]==1);
             }
@@ -0,0 +1,171 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+
+/** Main program to check that the shared shapes of RecordExprs (the lists
+ * of their attribute names) do not outlive the ads that use them.
+ * It builds many pairs of ads, each pair inserting the same attributes in a
+ * different random order and then removing one of them, so that nearly
+ * every pair has a shape of its own.  It checks that an expression
+ * evaluated in each ad gives the right value, and that after the ads are
+ * discarded, the heap they leave behind is small.  It then does the same
+ * again, to check that ads whose shapes are built afresh still give the
+ * right values.
+ * <p>
+ * The memory check is only approximate, since it depends on the garbage
+ * collector actually reclaiming all unreachable objects when asked.
+ * The exit status is non-zero if any check fails.
+ */
+public class ShapeTest {
+    /** Number of pairs of ads. */
+    private int count = 20000;
+
+    /** Number of attributes per ad. */
+    private int attrs = 12;
+
+    /** The most heap, in bytes per pair of ads, that may remain in use
+     * after the ads are discarded.
+     */
+    private static final long MAX_RETAINED = 100;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-n<em>nn</em><dd>Build <em>nn</em> pairs of ads.
+     * <dt>-a<em>nn</em><dd>Give each ad <em>nn</em> attributes.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new ShapeTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-n pairs] [-a attrs]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "n:a:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'n':
+                count = Integer.parseInt(opts.optarg);
+                break;
+            case 'a':
+                attrs = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        Expr sum = new ClassAdParser("Attr0 + Attr1 * 1000").parse();
+        Random random = new Random(42);
+        used();
+        long before = used();
+        build(sum, random);
+        long retained = used() - before;
+        System.out.println(count + " pairs of ads with " + attrs
+            + " attributes: " + retained / count + " bytes/pair retained");
+        if (retained / count > MAX_RETAINED) {
+            failures++;
+            System.out.println("expected at most " + MAX_RETAINED
+                + " bytes/pair");
+        }
+        build(sum, random);
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Build pairs of ads with the attributes inserted in random orders,
+     * check the value of an expression in each, and discard them.
+     * @param sum an expression to evaluate in each ad.
+     * @param random the source of the orders.
+     */
+    private void build(Expr sum, Random random) {
+        int[] order = new int[attrs];
+        for (int i = 0; i < attrs; i++) {
+            order[i] = i;
+        }
+        for (int ad = 0; ad < count; ad++) {
+            for (int i = attrs - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            int removed = 2 + random.nextInt(attrs - 2);
+            // Build two ads the same way, so that the second one finds the
+            // shapes remembered for the first.
+            for (int copy = 0; copy < 2; copy++) {
+                RecordExpr r = new RecordExpr();
+                for (int i = 0; i < attrs; i++) {
+                    r.insertAttribute("Attr" + order[i],
+                                        Constant.getInstance(order[i]));
+                }
+                r.removeAttribute(AttrName.fromString("Attr" + removed));
+                Env env = new Env();
+                env.push(r);
+                Expr value = sum.eval(env);
+                if (!value.toString().equals("1000")) {
+                    failures++;
+                    System.out.println(r + ": expected 1000, got " + value);
+                }
+                if (r.lookup("Attr" + removed) != null) {
+                    failures++;
+                    System.out.println(r + ": Attr" + removed
+                        + " not removed");
+                }
+            }
+        }
+    } // build(Expr,Random)
+
+    /** Estimate the amount of heap in use by reachable objects.
+     * @return the number of bytes in use after garbage collection.
+     */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    } // used()
+} // ShapeTest
@@ -0,0 +1,96 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+package condor.classad.tests;
+
+import java.util.*;
+
+/** Generator of synthetic ads for benchmarks.
+ * It generates the text of machine ads and job ads whose attributes and
+ * Requirements and Rank expressions are similar to those used by Condor.
+ * All machine ads have the same Requirements and Rank expressions, as do
+ * all job ads, except for a few constants, as in a real pool.
+ * Each kind of ad also has a derived attribute that is referred to by both
+ * its Requirements and its Rank.
+ * The values of other attributes are chosen at random, from a generator with
+ * a fixed seed, so a given sequence of calls always gives the same ads.
+ */
+public class SyntheticPool {
+    /** The number of attributes of each machine ad. */
+    public static final int MACHINE_ATTRS = 12;
+
+    /** Source of random attribute values. */
+    private Random random;
+
+    /** Create a generator.
+     * @param seed the seed for choosing attribute values.
+     */
+    public SyntheticPool(long seed) {
+        random = new Random(seed);
+    } // SyntheticPool(long)
+
+    /** Choose one of a set of strings at random.
+     * @param choices the strings.
+     * @return one of them.
+     */
+    private String pick(String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    } // pick(String[])
+
+    /** Generate the text of a machine ad.
+     * @param i the index of the machine.
+     * @return the text of the ad.
+     */
+    public String machine(int i) {
+        return "[ Name = \"vm" + (i % 4 + 1) + "@host" + i / 4
+            + ".cs.wisc.edu\"; "
+            + "Arch = \"" + pick(new String[] { "INTEL", "X86_64", "SUN4u" })
+            + "\"; OpSys = \""
+            + pick(new String[] { "LINUX", "SOLARIS29", "WINNT51" }) + "\"; "
+            + "Memory = " + (256 << random.nextInt(5)) + "; "
+            + "Disk = " + random.nextInt(10000000) + "; "
+            + "KeyboardIdle = " + random.nextInt(7200) + "; "
+            + "LoadAvg = " + random.nextInt(100) / 100.0 + "; "
+            + "State = \""
+            + pick(new String[] { "Unclaimed", "Owner", "Claimed" }) + "\"; "
+            + "Department = \""
+            + pick(new String[] { "CS", "Physics", "Chemistry" }) + "\"; "
+            + "IsIdle = KeyboardIdle > 15 * 60 && LoadAvg < 0.3; "
+            + "Requirements = State == \"Unclaimed\" "
+            + "&& (IsIdle || other.Department == Department); "
+            + "Rank = (other.Department == Department ? 10 : 0) "
+            + "+ (IsIdle ? 1 : 0) ]";
+    } // machine(int)
+
+    /** Generate the text of a job ad.
+     * @param i the index of the job.
+     * @return the text of the ad.
+     */
+    public String job(int i) {
+        return "[ Owner = \"user" + i % 20 + "\"; "
+            + "Department = \""
+            + pick(new String[] { "CS", "Physics", "Chemistry" }) + "\"; "
+            + "ImageSize = " + (100 + random.nextInt(2000)) + "; "
+            + "DiskUsage = " + random.nextInt(1000000) + "; "
+            + "RequestMemory = ImageSize + 64; "
+            + "Requirements = other.Arch == \""
+            + pick(new String[] { "INTEL", "X86_64" }) + "\" "
+            + "&& other.OpSys == \"LINUX\" "
+            + "&& other.Memory >= RequestMemory "
+            + "&& other.Disk >= DiskUsage "
+            + "&& regexp(\"^vm[12]@host[0-9]*[02468]\\\\.\", other.Name); "
+            + "Rank = other.Memory - RequestMemory ]";
+    } // job(int)
+} // SyntheticPool
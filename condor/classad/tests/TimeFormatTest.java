@@ -0,0 +1,340 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/** Main program to check and time the formatting of absolute times (see
+ * {@link TimeFormat}).
+ * It checks that formatTime(), gmtTimeString(), localTimeString(), and the
+ * printed form of absolute-time constants give the same strings as the
+ * SimpleDateFormat patterns they replace, in several time zones and
+ * locales.  It then formats times with more distinct formats than the
+ * cache holds from several threads at once, checking every result.
+ * Finally, it times formatTime() with a new SimpleDateFormat for each call
+ * (as it used to be done), with a cached format, and with caching turned
+ * off.
+ * The exit status is non-zero if any check fails.
+ */
+public class TimeFormatTest {
+    /** Number of threads. */
+    private int threads = 4;
+
+    /** Number of timed calls. */
+    private int reps = 200000;
+
+    /** Number of failed checks. */
+    private int failures = 0;
+
+    /** Formats checked:  pairs of a strftime format and the equivalent
+     * SimpleDateFormat pattern.
+     */
+    private static final String[][] FORMATS = {
+        { "%a %A %b %B", "EEE EEEE MMM MMMM" },
+        { "%c", "EEE MMM dd HH:mm:ss yyyy" },
+        { "%d/%m/%y %H:%M:%S", "dd/MM/yy HH:mm:ss" },
+        { "%I:%M %p", "hh:mm a" },
+        { "day %j of %Y", "'day 'D' of 'yyyy" },
+        { "%w %x %X", "E MM/dd/yy HH:mm:ss" },
+        { "%Y-%m-%dT%H:%M:%S %Z", "yyyy-MM-dd'T'HH:mm:ss zzz" },
+        { "100%% it's %q [{#}]", "'100% it''s %q [{#}]'" },
+        { "", "" },
+        { "%", "'%'" },
+    };
+
+    /** Times checked, in seconds since the epoch. */
+    private static final int[] TIMES = {
+        0, 859917600, 859896000, 1101902400, 946684799, 951782400,
+        1104537600, 1120219199, -1577923200, 2147483647,
+    };
+
+    /** Time zones checked. */
+    private static final String[] ZONES = {
+        "UTC", "America/Chicago", "Europe/Paris", "Asia/Kolkata",
+        "Australia/Adelaide",
+    };
+
+    /** Locales checked. */
+    private static final Locale[] LOCALES = {
+        Locale.US, Locale.FRANCE, Locale.GERMANY, Locale.JAPAN,
+    };
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-t<em>nn</em><dd>Use <em>nn</em> threads.
+     * <dt>-n<em>nn</em><dd>Time <em>nn</em> calls of each form.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new TimeFormatTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-t threads] [-n reps]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if all checks pass).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "t:n:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 't':
+                threads = Integer.parseInt(opts.optarg);
+                break;
+            case 'n':
+                reps = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+        TimeZone zone = TimeZone.getDefault();
+        Locale locale = Locale.getDefault();
+        try {
+            for (int z = 0; z < ZONES.length; z++) {
+                TimeZone.setDefault(TimeZone.getTimeZone(ZONES[z]));
+                for (int l = 0; l < LOCALES.length; l++) {
+                    Locale.setDefault(LOCALES[l]);
+                    checkFormats();
+                    if (LOCALES[l] == Locale.US) {
+                        checkCtime();
+                    }
+                }
+            }
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            Locale.setDefault(Locale.US);
+            checkConstants();
+            checkConcurrent();
+            time();
+        } finally {
+            TimeZone.setDefault(zone);
+            Locale.setDefault(locale);
+        }
+        if (failures > 0) {
+            System.out.println(failures + " failures");
+            return 1;
+        }
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Check formatTime() against SimpleDateFormat in the default time
+     * zone and locale.
+     */
+    private void checkFormats() {
+        for (int i = 0; i < FORMATS.length; i++) {
+            for (int j = 0; j < TIMES.length; j++) {
+                long ms = 1000L * TIMES[j];
+                String expected
+                    = new SimpleDateFormat(FORMATS[i][1]).format(new Date(ms));
+                check("formatTime(" + TIMES[j] + ", \"" + FORMATS[i][0]
+                        + "\")",
+                    Builtin.formatTime(ClassAd.constant(TIMES[j]),
+                                        ClassAd.constant(FORMATS[i][0])),
+                    expected);
+            }
+        }
+    } // checkFormats()
+
+    /** Check gmtTimeString() and localTimeString() against
+     * SimpleDateFormat in the default time zone.
+     */
+    private void checkCtime() {
+        SimpleDateFormat gmt
+            = new SimpleDateFormat("EEE MMM dd HH:mm:ss 'UTC' yyyy");
+        gmt.setTimeZone(TimeZone.getTimeZone("GMT"));
+        SimpleDateFormat local
+            = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy");
+        for (int j = 0; j < TIMES.length; j++) {
+            Expr secs = ClassAd.constant(TIMES[j]);
+            Date when = new Date(1000L * TIMES[j]);
+            check("gmtTimeString(" + secs + ")", Builtin.gmtTimeString(secs),
+                ctime(gmt.format(when)));
+            check("localTimeString(" + secs + ")",
+                Builtin.localTimeString(secs), ctime(local.format(when)));
+        }
+    } // checkCtime()
+
+    /** Check the printed form of absolute-time constants against
+     * SimpleDateFormat.
+     */
+    private void checkConstants() {
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        iso.setTimeZone(TimeZone.getTimeZone("GMT"));
+        int[] offsets = { 0, -21600, 19800, 37800 };
+        for (int i = 0; i < offsets.length; i++) {
+            for (int j = 0; j < TIMES.length; j++) {
+                Expr e = new ClassAdParser("absTime(" + TIMES[j] + ", "
+                                            + offsets[i] + ")").parse();
+                Expr v = e.eval();
+                String s = v.toString();
+                String date = iso.format(
+                    new Date(1000L * TIMES[j] + 1000L * offsets[i]));
+                if (s.indexOf(date) < 0) {
+                    failures++;
+                    System.out.println(e + " => " + s + ", expected " + date);
+                }
+                Expr again = new ClassAdParser(s).parse().eval();
+                if (!again.sameAs(v)) {
+                    failures++;
+                    System.out.println(s + " => " + again);
+                }
+            }
+        }
+    } // checkConstants()
+
+    /** Format times with many distinct formats from several threads at
+     * once and check the results.
+     */
+    private void checkConcurrent() {
+        final int formats = 2 * TimeFormat.getCapacity();
+        final int calls = 20000;
+        TimeFormat.clear();
+        final int[] wrong = new int[threads];
+        Thread[] t = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            t[i] = new Thread() {
+                public void run() {
+                    Random random = new Random(id);
+                    for (int j = 0; j < calls; j++) {
+                        // Mostly a few popular formats, sometimes others.
+                        int k = random.nextInt(10) < 8
+                            ? random.nextInt(4)
+                            : random.nextInt(formats);
+                        int secs = TIMES[random.nextInt(TIMES.length)];
+                        String s = TimeFormat.format(1000L * secs,
+                                            "#" + k + " %Y-%m-%d %H:%M:%S");
+                        if (!s.equals("#" + k + " " + iso(secs))) {
+                            wrong[id]++;
+                        }
+                    }
+                }
+            };
+            t[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            try {
+                t[i].join();
+            } catch (InterruptedException e) {
+                failures++;
+            }
+        }
+        for (int i = 0; i < threads; i++) {
+            failures += wrong[i];
+        }
+        System.out.println(threads + " threads: " + TimeFormat.size()
+            + " formats cached");
+        if (TimeFormat.size() > TimeFormat.getCapacity() + threads) {
+            failures++;
+            System.out.println("cache holds too many formats");
+        }
+    } // checkConcurrent()
+
+    /** Time formatTime() with a new SimpleDateFormat for each call, with a
+     * cached format, and with caching turned off.
+     */
+    private void time() {
+        String fmt = "%a %b %d %H:%M:%S %Y";
+        String pattern = "EEE MMM dd HH:mm:ss yyyy";
+        int capacity = TimeFormat.getCapacity();
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                new SimpleDateFormat(pattern).format(new Date(1000L * i));
+            }
+            long s = elapsed(start);
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                TimeFormat.format(1000L * i, fmt);
+            }
+            long c = elapsed(start);
+            TimeFormat.setCapacity(0);
+            start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                TimeFormat.format(1000L * i, fmt);
+            }
+            long u = elapsed(start);
+            TimeFormat.setCapacity(capacity);
+            if (round == 1) {
+                System.out.println("SimpleDateFormat: " + s + " ns/call");
+                System.out.println("cached format:    " + c + " ns/call");
+                System.out.println("uncached format:  " + u + " ns/call");
+            }
+        }
+    } // time()
+
+    /** Compute the time per call of a timed loop.
+     * @param start the value of System.nanoTime() at the start of the loop.
+     * @return the time per call in nanoseconds.
+     */
+    private long elapsed(long start) {
+        return reps == 0 ? 0 : (System.nanoTime() - start) / reps;
+    } // elapsed(long)
+
+    /** Compare the result of a call to the expected string, printing a
+     * message if they differ.
+     * @param call a description of the call.
+     * @param result the result of the call.
+     * @param expected the expected string.
+     */
+    private void check(String call, Expr result, String expected) {
+        if (result.type != Expr.STRING
+            || !result.stringValue().equals(expected))
+        {
+            failures++;
+            System.out.println(TimeZone.getDefault().getID() + " "
+                + Locale.getDefault() + ": " + call + " => " + result
+                + ", expected \"" + expected + "\"");
+        }
+    } // check(String,Expr,String)
+
+    /** Replace the leading zero of the day of the month in a string in Unix
+     * "ctime" format with a space.
+     * @param s the string.
+     * @return the corrected string.
+     */
+    private static String ctime(String s) {
+        if (s.charAt(8) == '0') {
+            s = s.substring(0, 8) + ' ' + s.substring(9);
+        }
+        return s;
+    } // ctime(String)
+
+    /** Format a time in UTC as yyyy-mm-dd hh:mm:ss.
+     * @param secs the time, in seconds since the epoch.
+     * @return the formatted time.
+     */
+    private static String iso(int secs) {
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        df.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return df.format(new Date(1000L * secs));
+    } // iso(int)
+} // TimeFormatTest
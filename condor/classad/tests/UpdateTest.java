@@ -0,0 +1,277 @@
+/* **************************Copyright-DO-NOT-REMOVE-THIS-LINE**
+ * Condor Copyright Notice
+ *
+ * See LICENSE.TXT for additional notices and disclaimers.
+ *
+ * Copyright (c)1990-2005 Condor Team, Computer Sciences Department,
+ * University of Wisconsin-Madison, Madison, WI.  All Rights Reserved.
+ * Use of the CONDOR Software Program Source Code is authorized
+ * solely under the terms of the Condor Public License (see LICENSE.TXT).
+ * For more information contact:
+ * CONDOR Team, Attention: Professor Miron Livny,
+ * 7367 Computer Sciences, 1210 W. Dayton St., Madison, WI 53706-1685,
+ * (608) 262-0856 or miron@cs.wisc.edu.
+ * ***************************Copyright-DO-NOT-REMOVE-THIS-LINE**/
+
+
+package condor.classad.tests;
+
+import condor.classad.*;
+import java.util.*;
+
+/** Main program to check incremental re-evaluation of ads after updates.
+ * It generates a synthetic pool of machine ads (see {@link SyntheticPool})
+ * and applies a series of random updates to their KeyboardIdle, LoadAvg,
+ * and State attributes, as a collector does.  Each ad is given a number of
+ * extra derived attributes, only some of which depend on the updated
+ * attributes, to resemble real machine ads.  One copy of the pool is
+ * updated with {@link RecordExpr#updateAttribute(AttrName,Expr)}, using an
+ * {@link EvalCache} on each ad, and another copy is updated with
+ * {@link RecordExpr#insertAttribute(AttrName,Expr)}, re-evaluating every
+ * attribute before and after each update to find the ones that changed.
+ * It checks that both methods find the same changes and reports the time
+ * taken by each.  The series of updates is applied twice, and only the
+ * second round is timed, so that both methods are measured after the JVM
+ * has warmed up.  First, it checks that an attribute referring to an
+ * updated one through a selection, as in <code>self.b</code>, is found to
+ * change.
+ * The exit status is non-zero if they differ.
+ */
+public class UpdateTest {
+    /** Number of ads. */
+    private int count = 1000;
+
+    /** Number of updates. */
+    private int updates = 100000;
+
+    /** Number of extra derived attributes in each ad. */
+    private int derived = 20;
+
+    /** The attributes that are updated. */
+    private static final AttrName[] UPDATED = {
+        AttrName.fromString("KeyboardIdle"),
+        AttrName.fromString("LoadAvg"),
+        AttrName.fromString("State"),
+    };
+
+    /** Main program.
+     * Command-line options are
+     * <dl>
+     * <dt>-n<em>nn</em><dd>Generate <em>nn</em> ads.
+     * <dt>-u<em>nn</em><dd>Apply <em>nn</em> updates.
+     * <dt>-d<em>nn</em><dd>Add <em>nn</em> derived attributes to each ad.
+     * </dl>
+     * @param args the command-line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(new UpdateTest().run(args));
+    } // main(String[])
+
+    /** Print a usage message and exit. */
+    private void usage() {
+        System.err.println("usage: java " + getClass().getName()
+            + " [-n ads] [-u updates] [-d derived]");
+        System.exit(1);
+    } // usage()
+
+    /** The main body of the program.
+     * @param args the command-line arguments.
+     * @return the exit status (0 if the two methods agree).
+     */
+    private int run(String[] args) {
+        GetOpt opts = new GetOpt(getClass().getName(), args, "n:u:d:");
+    opt_loop:
+        for (;;) {
+            switch (opts.nextOpt()) {
+            case 'n':
+                count = Integer.parseInt(opts.optarg);
+                break;
+            case 'u':
+                updates = Integer.parseInt(opts.optarg);
+                break;
+            case 'd':
+                derived = Integer.parseInt(opts.optarg);
+                break;
+            case -1:
+                break opt_loop;
+            default:
+                usage();
+            }
+        }
+
+        if (!checkSelections()) {
+            return 1;
+        }
+
+        RecordExpr[] incremental = load();
+        RecordExpr[] full = load();
+        for (int i = 0; i < count; i++) {
+            incremental[i].setEvalCache(new EvalCache(true));
+        }
+
+        // Generate the updates in advance, so that generating them is not
+        // timed.
+        Random random = new Random(17);
+        int[] ad = new int[updates];
+        AttrName[] name = new AttrName[updates];
+        Expr[] value = new Expr[updates];
+        for (int u = 0; u < updates; u++) {
+            ad[u] = random.nextInt(count);
+            switch (random.nextInt(UPDATED.length)) {
+            case 0:
+                name[u] = UPDATED[0];
+                value[u] = ClassAd.constant(random.nextInt(7200));
+                break;
+            case 1:
+                name[u] = UPDATED[1];
+                value[u] = ClassAd.constant(random.nextInt(100) / 100.0);
+                break;
+            default:
+                name[u] = UPDATED[2];
+                value[u] = ClassAd.constant(
+                    random.nextBoolean() ? "Unclaimed" : "Claimed");
+                break;
+            }
+        }
+
+        List[] incrementalChanges = new List[updates];
+        List[] fullChanges = new List[updates];
+        long incrementalTime = 0;
+        long fullTime = 0;
+        int changes = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int u = 0; u < updates; u++) {
+                incrementalChanges[u] =
+                    incremental[ad[u]].updateAttribute(name[u], value[u]);
+            }
+            incrementalTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int u = 0; u < updates; u++) {
+                fullChanges[u] = update(full[ad[u]], name[u], value[u]);
+            }
+            fullTime = System.nanoTime() - start;
+
+            changes = 0;
+            for (int u = 0; u < updates; u++) {
+                if (!incrementalChanges[u].equals(fullChanges[u])) {
+                    System.out.println("update " + u + " (" + name[u] + " = "
+                        + value[u] + " in ad " + ad[u] + "): incremental "
+                        + incrementalChanges[u] + ", full " + fullChanges[u]);
+                    return 1;
+                }
+                changes += fullChanges[u].size();
+            }
+        }
+        System.out.println(count + " ads with " + derived
+            + " extra derived attributes, " + updates + " updates, "
+            + changes + " derived attributes changed");
+        System.out.println("incremental: " + incrementalTime / updates
+            + " ns/update");
+        System.out.println("full: " + fullTime / updates + " ns/update");
+        System.out.println("OK");
+        return 0;
+    } // run(String[])
+
+    /** Check that an attribute that refers to another through a selection
+     * or subscript, as in <code>self.b</code>, is found to depend on it,
+     * so that its memoized value is discarded when the other is updated.
+     * @return true if the checks pass.
+     */
+    private boolean checkSelections() {
+        String[] defs = { "self.b + 1", "self[\"b\"] + 1", "self[n] + 1" };
+        AttrName b = AttrName.fromString("b");
+        boolean ok = true;
+        for (int i = 0; i < defs.length; i++) {
+            RecordExpr ad = (RecordExpr) new ClassAdParser(
+                "[ b = 1; n = \"b\"; x = " + defs[i] + " ]").parse();
+            ad.setEvalCache(new EvalCache(true));
+            RecordExpr outer = (RecordExpr) new ClassAdParser(
+                "[ q = self.x ]").parse();
+            outer.insertAttribute("self", ad);
+            String what = "x = " + defs[i];
+            ok &= checkValue(what, outer, "2");
+            List deps = ad.dependents(b);
+            if (!deps.contains(AttrName.fromString("x"))) {
+                System.out.println(what + ": dependents of b are " + deps);
+                ok = false;
+            }
+            // Evaluated in the ad alone, x is undefined (there is no self),
+            // so only q shows the change.
+            ad.updateAttribute(b, ClassAd.constant(5));
+            ok &= checkValue(what + " after update", outer, "6");
+            ad.insertAttribute("b", ClassAd.constant(9));
+            ok &= checkValue(what + " after insert", outer, "10");
+        }
+        return ok;
+    } // checkSelections()
+
+    /** Check the value of q in a record.
+     * @param what a description of the check.
+     * @param outer the record.
+     * @param expected the expected value, printed.
+     * @return true if the value is as expected.
+     */
+    private static boolean checkValue(String what, RecordExpr outer,
+                                      String expected)
+    {
+        String actual = ClassAd.eval(outer, "q").toString();
+        if (!actual.equals(expected)) {
+            System.out.println(what + ": q = " + actual + ", expected "
+                + expected);
+            return false;
+        }
+        return true;
+    } // checkValue(String,RecordExpr,String)
+
+    /** Parse the synthetic pool and add the extra derived attributes.
+     * Every fourth one depends on the updated attributes.
+     * @return the ads.
+     */
+    private RecordExpr[] load() {
+        SyntheticPool pool = new SyntheticPool(42);
+        RecordExpr[] ads = new RecordExpr[count];
+        for (int i = 0; i < count; i++) {
+            ads[i] = (RecordExpr) new ClassAdParser(pool.machine(i)).parse();
+            for (int k = 0; k < derived; k++) {
+                String def = k % 4 == 0
+                    ? "IsIdle ? Memory * " + k + " : Disk / " + (k + 1)
+                    : "Memory * " + k + " + Disk / " + (k + 1);
+                ads[i].insertAttribute("Derived" + k,
+                    new ClassAdParser(def).parse());
+            }
+        }
+        return ads;
+    } // load()
+
+    /** Update an attribute of an ad, and find the changes by evaluating
+     * every other attribute before and after the update.
+     * @param ad the ad.
+     * @param name the name of the attribute.
+     * @param value its new value.
+     * @return the names of the other attributes whose values changed.
+     */
+    private static List update(RecordExpr ad, AttrName name, Expr value) {
+        List names = new ArrayList();
+        for (Iterator i = ad.attributes(); i.hasNext(); ) {
+            AttrName a = (AttrName) i.next();
+            if (!a.equals(name)) {
+                names.add(a);
+            }
+        }
+        Expr[] before = new Expr[names.size()];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = ClassAd.eval(ad, names.get(i).toString());
+        }
+        ad.insertAttribute(name, value);
+        List result = new ArrayList();
+        for (int i = 0; i < before.length; i++) {
+            Expr after = ClassAd.eval(ad, names.get(i).toString());
+            if (after.type < Expr.UNDEFINED || !after.is(before[i])) {
+                result.add(names.get(i));
+            }
+        }
+        return result;
+    } // update(RecordExpr,AttrName,Expr)
+} // UpdateTest